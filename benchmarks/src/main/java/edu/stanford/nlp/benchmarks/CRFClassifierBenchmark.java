@@ -0,0 +1,52 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the default English three class NER model over each sentence
+ * of the sample text with {@link CRFClassifier#classify(List)}.
+ * The classifier writes its answers onto the tokens, so it gets its own copy of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class CRFClassifierBenchmark {
+
+  private CRFClassifier<CoreLabel> classifier;
+  private List<List<CoreLabel>> sentences;
+
+  @Setup
+  public void setup() throws IOException, ClassNotFoundException {
+    classifier = CRFClassifier.getClassifier(DefaultPaths.DEFAULT_NER_THREECLASS_MODEL);
+    sentences = Fixtures.copySentenceTokens(Fixtures.TAGGED);
+  }
+
+  @Benchmark
+  public void classify(Blackhole bh) {
+    for (List<CoreLabel> sentence : sentences) {
+      bh.consume(classifier.classify(sentence));
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, and fails if the
+ * second one is slower, or allocates more per operation, than the first by more
+ * than the allowed fraction.
+ * <br>
+ * Usage: {@code CompareResults [-maxSlowdown 0.05] [-maxAllocationGrowth 0.05] baseline.json candidate.json}
+ * <br>
+ * Allocation is only compared if both runs used {@code -prof gc}.
+ * Benchmarks which are only in one of the files are reported but do not fail the comparison.
+ */
+public class CompareResults {
+
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  private CompareResults() {} // main method only
+
+  /** The score and bytes allocated per operation for one benchmark, or NaN if the run did not measure it. */
+  private static class Result {
+    final double score;
+    final double allocation;
+
+    Result(double score, double allocation) {
+      this.score = score;
+      this.allocation = allocation;
+    }
+  }
+
+  /** Read a JMH json result file into a map from benchmark name (plus parameters, if any) to result. */
+  private static Map<String, Result> readResults(String path) throws IOException {
+    Map<String, Result> results = new LinkedHashMap<>();
+    try (Reader reader = IOUtils.readerFromString(path);
+         JsonReader json = Json.createReader(reader)) {
+      JsonArray runs = json.readArray();
+      for (JsonValue value : runs) {
+        JsonObject run = (JsonObject) value;
+        String name = run.getString("benchmark");
+        if (run.containsKey("params")) {
+          name = name + run.getJsonObject("params");
+        }
+        double score = run.getJsonObject("primaryMetric").getJsonNumber("score").doubleValue();
+        double allocation = Double.NaN;
+        JsonObject secondary = run.getJsonObject("secondaryMetrics");
+        if (secondary != null && secondary.containsKey(ALLOCATION)) {
+          JsonNumber number = secondary.getJsonObject(ALLOCATION).getJsonNumber("score");
+          allocation = number.doubleValue();
+        }
+        results.put(name, new Result(score, allocation));
+      }
+    }
+    return results;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String[] files = props.getProperty("", "").trim().split("\\s+");
+    if (files.length != 2) {
+      System.err.println("Usage: CompareResults [-maxSlowdown 0.05] [-maxAllocationGrowth 0.05] baseline.json candidate.json");
+      System.exit(2);
+    }
+    double maxSlowdown = PropertiesUtils.getDouble(props, "maxSlowdown", 0.05);
+    double maxAllocationGrowth = PropertiesUtils.getDouble(props, "maxAllocationGrowth", 0.05);
+
+    Map<String, Result> baseline = readResults(files[0]);
+    Map<String, Result> candidate = readResults(files[1]);
+    boolean failed = false;
+    for (Map.Entry<String, Result> entry : candidate.entrySet()) {
+      String name = entry.getKey();
+      Result after = entry.getValue();
+      Result before = baseline.get(name);
+      if (before == null) {
+        System.out.printf("%-80s new benchmark%n", name);
+        continue;
+      }
+      // all of our benchmarks measure throughput, so bigger is better
+      double speed = after.score / before.score - 1.0;
+      double allocation = after.allocation / before.allocation - 1.0;
+      boolean slower = speed < -maxSlowdown;
+      boolean allocates = ! Double.isNaN(allocation) && allocation > maxAllocationGrowth;
+      System.out.printf("%-80s throughput %+7.2f%%  allocation %s%s%n", name, speed * 100.0,
+                        Double.isNaN(allocation) ? "    n/a " : String.format("%+7.2f%%", allocation * 100.0),
+                        (slower || allocates) ? "  REGRESSION" : "");
+      failed |= slower || allocates;
+    }
+    for (String name : baseline.keySet()) {
+      if ( ! candidate.containsKey(name)) {
+        System.out.printf("%-80s missing from candidate%n", name);
+      }
+    }
+    System.exit(failed ? 1 : 0);
+  }
+
+}
@@ -0,0 +1,56 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.CoreMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses each sentence of the sample text with the default English
+ * {@link DependencyParser}, either one sentence at a time or all at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class DependencyParserBenchmark {
+
+  private DependencyParser parser;
+  private List<CoreMap> sentences;
+
+  @Setup
+  public void setup() {
+    parser = DependencyParser.loadFromModelFile(DefaultPaths.DEFAULT_DEPENDENCY_PARSER_MODEL);
+    sentences = Fixtures.sentences(Fixtures.TAGGED);
+  }
+
+  @Benchmark
+  public void predict(Blackhole bh) {
+    for (CoreMap sentence : sentences) {
+      bh.consume(parser.predict(sentence));
+    }
+  }
+
+  @Benchmark
+  public List<GrammaticalStructure> predictAll() {
+    return parser.predictAll(sentences);
+  }
+
+}
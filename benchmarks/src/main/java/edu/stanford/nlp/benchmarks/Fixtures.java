@@ -0,0 +1,88 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.CoreMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Deterministic inputs shared by the benchmarks.
+ * Everything is built from the sample text bundled with this module,
+ * and preprocessed documents are built once per JVM and then reused.
+ */
+public class Fixtures {
+
+  public static final String SAMPLE_TEXT = "edu/stanford/nlp/benchmarks/sample-english.txt";
+  public static final String REGEXNER_MAPPING = "edu/stanford/nlp/benchmarks/regexner-mapping.tab";
+
+  /** The annotators needed by the benchmarks which run on already tagged text */
+  public static final String TAGGED = "tokenize,ssplit,pos";
+  /** The annotators needed by the benchmarks which work on dependency graphs or whole documents */
+  public static final String PARSED = "tokenize,ssplit,pos,lemma,ner,depparse";
+
+  private static final Map<String, Annotation> annotated = new HashMap<>();
+
+  private Fixtures() {} // static methods
+
+  /** The bundled sample text. */
+  public static String sampleText() {
+    try {
+      return IOUtils.slurpReader(IOUtils.readerFromString(SAMPLE_TEXT));
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** The sample text, annotated by a pipeline with the given annotators.  Do not modify the result. */
+  public static synchronized Annotation annotatedSample(String annotators) {
+    return annotated.computeIfAbsent(annotators, key -> {
+      Properties props = new Properties();
+      props.setProperty("annotators", key);
+      props.setProperty("tokenize.language", "en");
+      props.setProperty("ner.useSUTime", "false");
+      props.setProperty("ner.applyFineGrained", "false");
+      props.setProperty("threads", "1");
+      Annotation annotation = new Annotation(sampleText());
+      new StanfordCoreNLP(props).annotate(annotation);
+      return annotation;
+    });
+  }
+
+  /** The sentences of the sample text, annotated by a pipeline with the given annotators. */
+  public static List<CoreMap> sentences(String annotators) {
+    return annotatedSample(annotators).get(CoreAnnotations.SentencesAnnotation.class);
+  }
+
+  /** The tokens of each sentence of the sample text. */
+  public static List<List<CoreLabel>> sentenceTokens(String annotators) {
+    List<List<CoreLabel>> tokens = new ArrayList<>();
+    for (CoreMap sentence : sentences(annotators)) {
+      tokens.add(sentence.get(CoreAnnotations.TokensAnnotation.class));
+    }
+    return tokens;
+  }
+
+  /** A fresh copy of the tokens of each sentence, so that a benchmark can modify them freely. */
+  public static List<List<CoreLabel>> copySentenceTokens(String annotators) {
+    List<List<CoreLabel>> copies = new ArrayList<>();
+    for (List<CoreLabel> sentence : sentenceTokens(annotators)) {
+      List<CoreLabel> copy = new ArrayList<>(sentence.size());
+      for (CoreLabel token : sentence) {
+        copy.add(new CoreLabel(token));
+      }
+      copies.add(copy);
+    }
+    return copies;
+  }
+
+}
@@ -0,0 +1,61 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.ProtobufAnnotationSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the parsed sample document with {@link ProtobufAnnotationSerializer},
+ * and reads it back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ProtobufBenchmark {
+
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+  private Annotation document;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() throws IOException {
+    document = Fixtures.annotatedSample(Fixtures.PARSED);
+    serialized = write();
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.write(document, out).close();
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public Annotation read() throws IOException, ClassNotFoundException {
+    return serializer.read(new ByteArrayInputStream(serialized)).first;
+  }
+
+  @Benchmark
+  public Annotation roundTrip() throws IOException, ClassNotFoundException {
+    return serializer.read(new ByteArrayInputStream(write())).first;
+  }
+
+}
@@ -0,0 +1,72 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexMatcher;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexPattern;
+import edu.stanford.nlp.util.CoreMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches a handful of {@link SemgrexPattern}s of different shapes against
+ * the enhanced++ dependency graph of each sentence of the sample text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SemgrexBenchmark {
+
+  private static final String[] PATTERNS = {
+    "{}=verb >nsubj {}=subject >obj {}=object",
+    "{tag:/VB.*/}=verb >/obl.*/ ({}=oblique >case {})",
+    "{ner:PERSON}=person <nsubj ({}=verb >/ccomp|xcomp/ {}=clause)",
+    "{lemma:university} >compound {ner:ORGANIZATION}",
+    "{}=head >conj {}=dep",
+    "{word:/[A-Z].*/} !> {}",
+  };
+
+  private final List<SemgrexPattern> patterns = new ArrayList<>();
+  private final List<SemanticGraph> graphs = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    for (String pattern : PATTERNS) {
+      patterns.add(SemgrexPattern.compile(pattern));
+    }
+    for (CoreMap sentence : Fixtures.sentences(Fixtures.PARSED)) {
+      graphs.add(sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class));
+    }
+  }
+
+  @Benchmark
+  public int matcher() {
+    int matches = 0;
+    for (SemgrexPattern pattern : patterns) {
+      for (SemanticGraph graph : graphs) {
+        SemgrexMatcher matcher = pattern.matcher(graph);
+        while (matcher.find()) {
+          matches++;
+        }
+      }
+    }
+    return matches;
+  }
+
+}
@@ -0,0 +1,51 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.parser.shiftreduce.ShiftReduceParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses each already tagged sentence of the sample text with the
+ * English {@link ShiftReduceParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ShiftReduceParserBenchmark {
+
+  public static final String MODEL = "edu/stanford/nlp/models/srparser/englishSR.ser.gz";
+
+  private ShiftReduceParser parser;
+  private List<List<CoreLabel>> sentences;
+
+  @Setup
+  public void setup() {
+    parser = ShiftReduceParser.loadModel(MODEL);
+    sentences = Fixtures.sentenceTokens(Fixtures.TAGGED);
+  }
+
+  @Benchmark
+  public void parse(Blackhole bh) {
+    for (List<CoreLabel> sentence : sentences) {
+      bh.consume(parser.apply(sentence));
+    }
+  }
+
+}
@@ -0,0 +1,50 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tags each sentence of the sample text with the default English
+ * {@link MaxentTagger}, using {@link MaxentTagger#tagSentence(List)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TaggerBenchmark {
+
+  private MaxentTagger tagger;
+  private List<List<CoreLabel>> sentences;
+
+  @Setup
+  public void setup() {
+    tagger = new MaxentTagger(DefaultPaths.DEFAULT_POS_MODEL);
+    sentences = Fixtures.sentenceTokens("tokenize,ssplit");
+  }
+
+  @Benchmark
+  public void tagSentence(Blackhole bh) {
+    for (List<CoreLabel> sentence : sentences) {
+      bh.consume(tagger.tagSentence(sentence));
+    }
+  }
+
+}
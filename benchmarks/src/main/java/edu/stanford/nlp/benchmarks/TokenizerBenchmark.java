@@ -0,0 +1,45 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.PTBTokenizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes the whole sample text with {@link PTBTokenizer}, keeping the
+ * character offsets and original text as the tokenize annotator does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TokenizerBenchmark {
+
+  private String text;
+
+  @Setup
+  public void setup() {
+    text = Fixtures.sampleText();
+  }
+
+  @Benchmark
+  public List<CoreLabel> tokenize() {
+    return PTBTokenizer.newPTBTokenizer(new StringReader(text), false, true).tokenize();
+  }
+
+}
@@ -0,0 +1,76 @@
+package edu.stanford.nlp.benchmarks;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.TokensRegexNERAnnotator;
+import edu.stanford.nlp.util.CoreMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link TokensRegexNERAnnotator} with the bundled mapping over the sample text.
+ * The annotator only labels tokens which are not labeled already,
+ * so the labels are reset to O before each pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TokensRegexNERBenchmark {
+
+  private TokensRegexNERAnnotator annotator;
+  private Annotation document;
+  private List<CoreLabel> tokens;
+
+  @Setup
+  public void setup() {
+    Properties props = new Properties();
+    props.setProperty("regexner.mapping", Fixtures.REGEXNER_MAPPING);
+    props.setProperty("regexner.ignorecase", "true");
+    annotator = new TokensRegexNERAnnotator("regexner", props);
+
+    Annotation source = Fixtures.annotatedSample(Fixtures.TAGGED);
+    List<CoreMap> sentences = new ArrayList<>();
+    tokens = new ArrayList<>();
+    for (CoreMap sentence : source.get(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreLabel> copy = new ArrayList<>();
+      for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+        copy.add(new CoreLabel(token));
+      }
+      Annotation sentenceCopy = new Annotation(sentence.get(CoreAnnotations.TextAnnotation.class));
+      sentenceCopy.set(CoreAnnotations.TokensAnnotation.class, copy);
+      sentences.add(sentenceCopy);
+      tokens.addAll(copy);
+    }
+    document = new Annotation(source.get(CoreAnnotations.TextAnnotation.class));
+    document.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    document.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+  }
+
+  @Benchmark
+  public Annotation annotate() {
+    for (CoreLabel token : tokens) {
+      token.setNER("O");
+    }
+    annotator.annotate(document);
+    return document;
+  }
+
+}
@@ -72,6 +72,27 @@ public class CorefProperties {
     return PropertiesUtils.getBool(props, "coref.removeXmlMentions", false);
   }
 
+  // ---------- Long Documents ----------
+
+  /**
+   * If positive, coref is run on windows of this many sentences at a time, and
+   * the chains of the windows are merged, so that long documents take bounded
+   * memory.  Documents no longer than one window are resolved as usual.
+   */
+  public static int windowSentences(Properties props) {
+    return PropertiesUtils.getInt(props, "coref.windowSentences", 0);
+  }
+
+  /** How many sentences each window shares with the window before it */
+  public static int windowOverlap(Properties props) {
+    return PropertiesUtils.getInt(props, "coref.windowOverlap", 2);
+  }
+
+  /** How many entities which left the window are remembered, to be continued by later windows */
+  public static int entityCacheSize(Properties props) {
+    return PropertiesUtils.getInt(props, "coref.entityCacheSize", 1000);
+  }
+
   // ---------- Heuristic Mention Filtering ----------
 
   public static int maxMentionDistance(Properties props) {
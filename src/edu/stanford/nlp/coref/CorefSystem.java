@@ -4,7 +4,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.logging.FileHandler;
@@ -17,7 +19,11 @@ import edu.stanford.nlp.coref.data.CorefCluster;
 import edu.stanford.nlp.coref.data.Dictionaries;
 import edu.stanford.nlp.coref.data.Document;
 import edu.stanford.nlp.coref.data.DocumentMaker;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.logging.NewlineLogFormatter;
@@ -32,6 +38,10 @@ public class CorefSystem {
   private final CorefAlgorithm corefAlgorithm;
   private final boolean removeSingletonClusters;
   private final boolean verbose;
+  /** Sentences per window for long documents, or 0 to resolve the whole document at once */
+  private final int windowSentences;
+  private final int windowOverlap;
+  private final int entityCacheSize;
 
   public CorefSystem(Properties props) {
     try {
@@ -40,20 +50,52 @@ public class CorefSystem {
       corefAlgorithm = CorefAlgorithm.fromProps(props, dictionaries);
       removeSingletonClusters = CorefProperties.removeSingletonClusters(props);
       verbose = CorefProperties.verbose(props);
+      windowSentences = CorefProperties.windowSentences(props);
+      windowOverlap = CorefProperties.windowOverlap(props);
+      entityCacheSize = CorefProperties.entityCacheSize(props);
     } catch (Exception e) {
       throw new RuntimeException("Error initializing coref system", e);
     }
+    checkWindows();
   }
 
   public CorefSystem(DocumentMaker docMaker, CorefAlgorithm corefAlgorithm,
       boolean removeSingletonClusters, boolean verbose) {
+    this(docMaker, corefAlgorithm, removeSingletonClusters, verbose, 0, 0, 0);
+  }
+
+  /**
+   * @param windowSentences If positive, documents longer than this many sentences
+   *                        are resolved a window of sentences at a time
+   * @param windowOverlap How many sentences each window shares with the one before
+   * @param entityCacheSize How many entities which left the window are remembered
+   */
+  public CorefSystem(DocumentMaker docMaker, CorefAlgorithm corefAlgorithm,
+      boolean removeSingletonClusters, boolean verbose,
+      int windowSentences, int windowOverlap, int entityCacheSize) {
     this.docMaker = docMaker;
     this.corefAlgorithm = corefAlgorithm;
     this.removeSingletonClusters = removeSingletonClusters;
     this.verbose = verbose;
+    this.windowSentences = windowSentences;
+    this.windowOverlap = windowOverlap;
+    this.entityCacheSize = entityCacheSize;
+    checkWindows();
+  }
+
+  private void checkWindows() {
+    if (windowSentences > 0 && (windowOverlap < 0 || windowOverlap >= windowSentences)) {
+      throw new IllegalArgumentException("coref.windowOverlap must be at least 0 and less than coref.windowSentences, but was " +
+                                         windowOverlap + " with windows of " + windowSentences);
+    }
   }
 
   public void annotate(Annotation ann) {
+    if (windowSentences > 0 && ann.get(CoreAnnotations.SentencesAnnotation.class).size() > windowSentences) {
+      annotateInWindows(ann);
+      return;
+    }
+
     Document document;
     try {
       document = docMaker.makeDocument(ann);
@@ -75,6 +117,58 @@ public class CorefSystem {
     ann.set(CorefCoreAnnotations.CorefChainAnnotation.class, result);
   }
 
+  /**
+   * Resolves a long document a window of sentences at a time, so that only
+   * one window's {@link Document} and its mention pairs are in memory at once.
+   * Consecutive windows share {@code windowOverlap} sentences, and the chains
+   * of the windows are merged by a {@link CorefWindowMerger}.
+   */
+  private void annotateInWindows(Annotation ann) {
+    List<CoreMap> sentences = ann.get(CoreAnnotations.SentencesAnnotation.class);
+    List<List<Mention>> mentions = new ArrayList<>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      mentions.add(sentence.get(CorefCoreAnnotations.CorefMentionsAnnotation.class));
+    }
+    CorefWindowMerger merger = new CorefWindowMerger(mentions, entityCacheSize);
+
+    int freshStart = 0;
+    for (int start = 0; freshStart < sentences.size(); start += windowSentences - windowOverlap) {
+      int end = Math.min(start + windowSentences, sentences.size());
+      Document document;
+      try {
+        document = docMaker.makeDocument(windowAnnotation(ann, sentences.subList(start, end)));
+      } catch (Exception e) {
+        throw new RuntimeException("Error making document", e);
+      }
+
+      CorefUtils.checkForInterrupt();
+      corefAlgorithm.runCoref(document);
+      merger.addWindow(document.corefClusters.values(), document.positions, start, freshStart);
+      freshStart = end;
+      if (verbose) {
+        Redwood.log(corefAlgorithm.getClass().getName(), "Resolved sentences " + start + " to " + end +
+            " of " + sentences.size() + "; remembering " + merger.numCached() + " entities");
+      }
+    }
+    CorefUtils.checkForInterrupt();
+
+    ann.set(CorefCoreAnnotations.CorefChainAnnotation.class, merger.chains(removeSingletonClusters));
+  }
+
+  /** An annotation of just these sentences of the document */
+  private static Annotation windowAnnotation(Annotation ann, List<CoreMap> sentences) {
+    Annotation window = new Annotation(ann.get(CoreAnnotations.TextAnnotation.class));
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (CoreMap sentence : sentences) {
+      tokens.addAll(sentence.get(CoreAnnotations.TokensAnnotation.class));
+    }
+    window.set(CoreAnnotations.SentencesAnnotation.class, new ArrayList<>(sentences));
+    window.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    window.set(CoreAnnotations.DocIDAnnotation.class, ann.get(CoreAnnotations.DocIDAnnotation.class));
+    window.set(CoreAnnotations.UseMarkedDiscourseAnnotation.class, ann.get(CoreAnnotations.UseMarkedDiscourseAnnotation.class));
+    return window;
+  }
+
   public void initLogger(Logger logger, String logFileName) {
       try {
           FileHandler fh = new FileHandler(logFileName, false);
@@ -0,0 +1,278 @@
+package edu.stanford.nlp.coref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.coref.data.CorefChain;
+import edu.stanford.nlp.coref.data.CorefCluster;
+import edu.stanford.nlp.coref.data.Dictionaries.Animacy;
+import edu.stanford.nlp.coref.data.Dictionaries.Gender;
+import edu.stanford.nlp.coref.data.Dictionaries.Number;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.IntTuple;
+
+/**
+ * Merges the coref clusters found in overlapping windows of sentences into
+ * chains over the whole document.
+ * <br>
+ * Clusters which share a mention, because the mention is in the overlap of two
+ * windows, are joined.  A cluster which only has mentions in sentences no
+ * earlier window saw may also be joined to an entity which has already left
+ * the window: a short summary (head words, gender, number and animacy) is kept
+ * for the most recently seen entities, and the cluster is joined to the most
+ * recent one which shares a non-pronominal head word with it and agrees with
+ * it in gender, number and animacy.  At most {@code entityCacheSize} summaries
+ * are kept, however long the document is.
+ */
+class CorefWindowMerger {
+
+  /** The most head words kept for one entity */
+  static final int MAX_HEADS = 8;
+
+  /** The mentions of the document, in the order of their ids */
+  private final List<Mention> mentions = new ArrayList<>();
+  private final Map<Mention, Integer> ids = new IdentityHashMap<>();
+  private final int[] sentences;
+  private final int[] parents;
+  private final IntTuple[] positions;
+
+  /** Summaries of the most recently seen entities, by the id of their root mention */
+  private final Map<Integer, EntitySummary> cache;
+
+  /**
+   * @param mentionsBySentence The mentions of each sentence of the document.
+   *                           Mentions get ids in this order, as they would in
+   *                           a {@link edu.stanford.nlp.coref.data.Document} of
+   *                           the whole document.
+   * @param entityCacheSize The most entity summaries to keep
+   */
+  CorefWindowMerger(List<List<Mention>> mentionsBySentence, int entityCacheSize) {
+    for (List<Mention> sentenceMentions : mentionsBySentence) {
+      mentions.addAll(sentenceMentions);
+    }
+    sentences = new int[mentions.size()];
+    parents = new int[mentions.size()];
+    positions = new IntTuple[mentions.size()];
+    int id = 0;
+    for (int sentNum = 0; sentNum < mentionsBySentence.size(); ++sentNum) {
+      for (Mention m : mentionsBySentence.get(sentNum)) {
+        ids.put(m, id);
+        sentences[id] = sentNum;
+        parents[id] = id;
+        id++;
+      }
+    }
+    cache = new LinkedHashMap<Integer, EntitySummary>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, EntitySummary> eldest) {
+        return size() > entityCacheSize;
+      }
+    };
+  }
+
+  /**
+   * Adds the clusters found in one window.
+   *
+   * @param clusters The clusters of the window's document
+   * @param windowPositions The positions of the mentions in the window's document
+   * @param windowStart The first sentence of the window
+   * @param freshStart The first sentence of the window no earlier window saw
+   */
+  void addWindow(Collection<CorefCluster> clusters, Map<Mention, IntTuple> windowPositions,
+                 int windowStart, int freshStart) {
+    List<int[]> clusterIds = new ArrayList<>(clusters.size());
+    for (CorefCluster cluster : clusters) {
+      int[] clusterMentions = new int[cluster.getCorefMentions().size()];
+      int i = 0;
+      for (Mention m : cluster.getCorefMentions()) {
+        int id = ids.get(m);
+        clusterMentions[i++] = id;
+        IntTuple position = new IntTuple(2);
+        position.set(0, windowStart + windowPositions.get(m).get(0));
+        position.set(1, windowPositions.get(m).get(1));
+        positions[id] = position;
+      }
+      clusterIds.add(clusterMentions);
+      for (int id : clusterMentions) {
+        union(clusterMentions[0], id);
+      }
+    }
+
+    // clusters which only have fresh mentions may continue an entity which left the window
+    for (int[] clusterMentions : clusterIds) {
+      boolean fresh = true;
+      for (int id : clusterMentions) {
+        fresh = fresh && sentences[id] >= freshStart;
+      }
+      if (fresh) {
+        EntitySummary summary = new EntitySummary();
+        for (int id : clusterMentions) {
+          summary.add(mentions.get(id), sentences[id]);
+        }
+        Integer antecedent = findAntecedent(summary, windowStart);
+        if (antecedent != null) {
+          union(antecedent, clusterMentions[0]);
+        }
+      }
+    }
+
+    for (int[] clusterMentions : clusterIds) {
+      EntitySummary summary = cache.computeIfAbsent(find(clusterMentions[0]), k -> new EntitySummary());
+      for (int id : clusterMentions) {
+        summary.add(mentions.get(id), sentences[id]);
+      }
+    }
+  }
+
+  /** The root of the most recently seen entity which left the window before {@code windowStart} and matches the summary */
+  private Integer findAntecedent(EntitySummary summary, int windowStart) {
+    if (summary.heads.isEmpty()) {
+      return null;
+    }
+    Integer best = null;
+    int bestSentence = -1;
+    for (Map.Entry<Integer, EntitySummary> entry : cache.entrySet()) {
+      EntitySummary candidate = entry.getValue();
+      if (candidate.lastSentence < windowStart && candidate.lastSentence > bestSentence && candidate.matches(summary)) {
+        best = entry.getKey();
+        bestSentence = candidate.lastSentence;
+      }
+    }
+    return best;
+  }
+
+  private int find(int id) {
+    while (parents[id] != id) {
+      parents[id] = parents[parents[id]];
+      id = parents[id];
+    }
+    return id;
+  }
+
+  /** Joins two entities, and their summaries */
+  private void union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA == rootB) {
+      return;
+    }
+    int root = Math.min(rootA, rootB);
+    int other = Math.max(rootA, rootB);
+    parents[other] = root;
+    EntitySummary otherSummary = cache.remove(other);
+    if (otherSummary != null) {
+      EntitySummary summary = cache.get(root);
+      if (summary == null) {
+        cache.put(root, otherSummary);
+      } else {
+        summary.addAll(otherSummary);
+      }
+    }
+  }
+
+  /** The number of entity summaries kept */
+  int numCached() {
+    return cache.size();
+  }
+
+  /**
+   * The chains of the whole document.  Each mention gets back the id and
+   * sentence number it would have in a document of the whole document, and
+   * the id of its chain, which is the smallest id of its mentions.
+   */
+  Map<Integer, CorefChain> chains(boolean removeSingletonClusters) {
+    Map<Integer, Set<Mention>> chainMentions = Generics.newHashMap();
+    for (int id = 0; id < mentions.size(); ++id) {
+      if (positions[id] == null) {
+        // the mention was in no cluster
+        continue;
+      }
+      Mention m = mentions.get(id);
+      m.mentionID = id;
+      m.sentNum = sentences[id];
+      m.corefClusterID = find(id);
+      chainMentions.computeIfAbsent(m.corefClusterID, k -> Generics.newHashSet()).add(m);
+    }
+
+    Map<Mention, IntTuple> documentPositions = Generics.newHashMap();
+    for (int id = 0; id < mentions.size(); ++id) {
+      if (positions[id] != null) {
+        documentPositions.put(mentions.get(id), positions[id]);
+      }
+    }
+    Map<Integer, CorefChain> result = Generics.newHashMap();
+    for (Map.Entry<Integer, Set<Mention>> entry : chainMentions.entrySet()) {
+      if (removeSingletonClusters && entry.getValue().size() == 1) {
+        continue;
+      }
+      CorefCluster cluster = new CorefCluster(entry.getKey(), entry.getValue());
+      result.put(entry.getKey(), new CorefChain(cluster, documentPositions));
+    }
+    return result;
+  }
+
+
+  /** What is kept of an entity once it leaves the window */
+  static class EntitySummary {
+    final Set<String> heads = Generics.newHashSet();
+    Gender gender = Gender.UNKNOWN;
+    Number number = Number.UNKNOWN;
+    Animacy animacy = Animacy.UNKNOWN;
+    int lastSentence = -1;
+
+    void add(Mention m, int sentNum) {
+      if ( ! m.isPronominal() && m.headString != null && heads.size() < MAX_HEADS) {
+        heads.add(m.headString.toLowerCase(Locale.ROOT));
+      }
+      if (gender == Gender.UNKNOWN && m.gender != null) {
+        gender = m.gender;
+      }
+      if (number == Number.UNKNOWN && m.number != null) {
+        number = m.number;
+      }
+      if (animacy == Animacy.UNKNOWN && m.animacy != null) {
+        animacy = m.animacy;
+      }
+      lastSentence = Math.max(lastSentence, sentNum);
+    }
+
+    void addAll(EntitySummary other) {
+      for (String head : other.heads) {
+        if (heads.size() >= MAX_HEADS) {
+          break;
+        }
+        heads.add(head);
+      }
+      if (gender == Gender.UNKNOWN) {
+        gender = other.gender;
+      }
+      if (number == Number.UNKNOWN) {
+        number = other.number;
+      }
+      if (animacy == Animacy.UNKNOWN) {
+        animacy = other.animacy;
+      }
+      lastSentence = Math.max(lastSentence, other.lastSentence);
+    }
+
+    /** Whether the two entities share a head word and don't disagree in gender, number or animacy */
+    boolean matches(EntitySummary other) {
+      boolean sharedHead = false;
+      for (String head : other.heads) {
+        sharedHead = sharedHead || heads.contains(head);
+      }
+      return sharedHead &&
+          (gender == Gender.UNKNOWN || other.gender == Gender.UNKNOWN || gender == other.gender) &&
+          (number == Number.UNKNOWN || other.number == Number.UNKNOWN || number == other.number) &&
+          (animacy == Animacy.UNKNOWN || other.animacy == Animacy.UNKNOWN || animacy == other.animacy);
+    }
+  }
+
+}
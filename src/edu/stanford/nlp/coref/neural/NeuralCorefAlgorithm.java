@@ -1,5 +1,6 @@
 package edu.stanford.nlp.coref.neural;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -13,9 +14,11 @@ import edu.stanford.nlp.coref.data.Dictionaries;
 import edu.stanford.nlp.coref.data.Document;
 import edu.stanford.nlp.coref.data.Mention;
 import edu.stanford.nlp.io.IOUtils;
-import edu.stanford.nlp.stats.ClassicCounter;
-import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.neural.Embedding;
+import edu.stanford.nlp.neural.FlatWordVectors;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.Timing;
 import edu.stanford.nlp.util.logging.Redwood;
 import org.ejml.simple.SimpleMatrix;
 
@@ -40,6 +43,9 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
   private final int maxMentionDistance;
   private final int maxMentionDistanceWithStringMatch;
 
+  /** The most mention pairs to score at once, which bounds the memory used for long documents */
+  private static final int PAIR_BATCH_SIZE = 1024;
+
   private final CategoricalFeatureExtractor featureExtractor;
   private final EmbeddingExtractor embeddingExtractor;
   private final NeuralCorefModel model;
@@ -52,13 +58,24 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
     model = IOUtils.readObjectAnnouncingTimingFromURLOrClasspathOrFileSystem(
         log, "Loading coref model", NeuralCorefProperties.modelPath(props));
     embeddingExtractor = new EmbeddingExtractor(CorefProperties.conll(props),
-        IOUtils.readObjectAnnouncingTimingFromURLOrClasspathOrFileSystem(
-            log, "Loading coref embeddings",
-            NeuralCorefProperties.pretrainedEmbeddingsPath(props)),
+        loadEmbeddings(NeuralCorefProperties.pretrainedEmbeddingsPath(props)),
         model.getWordEmbeddings(), null);
     featureExtractor = new CategoricalFeatureExtractor(props, dictionaries);
   }
 
+  /** Load the pretrained embeddings, which may also have been converted to a memory-mapped {@link FlatWordVectors} file. */
+  private static Embedding loadEmbeddings(String path) {
+    Timing timing = new Timing();
+    try {
+      Embedding embeddings = Embedding.load(path);
+      log.info("Loading coref embeddings " + path + " ... done [" + timing.toSecondsString() + " sec].");
+      return embeddings;
+    } catch (IOException | ClassNotFoundException e) {
+      log.info("Loading coref embeddings " + path + " ... failed! [" + timing.toSecondsString() + " sec].");
+      throw new RuntimeIOException(e);
+    }
+  }
+
   @Override
   public void runCoref(Document document) {
     List<Mention> sortedMentions = CorefUtils.getSortedMentions(document);
@@ -68,29 +85,45 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
       withIndex.add(m);
     }
 
+    if (sortedMentions.isEmpty()) {
+      return;
+    }
+
+    // score all the mentions, and then all the candidate pairs, in batches:
+    // stacking their vectors into matrices makes one big matrix multiplication
+    // per layer rather than many small ones
     SimpleMatrix documentEmbedding = embeddingExtractor.getDocumentEmbedding(document);
-    Map<Integer, SimpleMatrix> antecedentEmbeddings = new HashMap<>();
-    Map<Integer, SimpleMatrix> anaphorEmbeddings = new HashMap<>();
-    Counter<Integer> anaphoricityScores = new ClassicCounter<>();
+    Map<Integer, Integer> mentionColumns = new HashMap<>();
+    SimpleMatrix mentionEmbeddings = null;
+    SimpleMatrix anaphoricityFeatures = null;
     for (Mention m : sortedMentions) {
+      int column = mentionColumns.size();
+      mentionColumns.put(m.mentionID, column);
       SimpleMatrix mentionEmbedding = embeddingExtractor.getMentionEmbeddings(m, documentEmbedding);
-      antecedentEmbeddings.put(m.mentionID, model.getAntecedentEmbedding(mentionEmbedding));
-      anaphorEmbeddings.put(m.mentionID, model.getAnaphorEmbedding(mentionEmbedding));
-      anaphoricityScores.incrementCount(m.mentionID,
-          model.getAnaphoricityScore(mentionEmbedding,
-              featureExtractor.getAnaphoricityFeatures(m, document, mentionsByHeadIndex)));
+      SimpleMatrix features = featureExtractor.getAnaphoricityFeatures(m, document, mentionsByHeadIndex);
+      if (mentionEmbeddings == null) {
+        mentionEmbeddings = new SimpleMatrix(mentionEmbedding.numRows(), sortedMentions.size());
+        anaphoricityFeatures = new SimpleMatrix(features.numRows(), sortedMentions.size());
+      }
+      mentionEmbeddings.insertIntoThis(0, column, mentionEmbedding);
+      anaphoricityFeatures.insertIntoThis(0, column, features);
     }
+    SimpleMatrix antecedentEmbeddings = model.getAntecedentEmbedding(mentionEmbeddings);
+    SimpleMatrix anaphorEmbeddings = model.getAnaphorEmbedding(mentionEmbeddings);
+    double[] anaphoricityScores = model.getAnaphoricityScores(mentionEmbeddings, anaphoricityFeatures);
 
     Map<Integer, List<Integer>> mentionToCandidateAntecedents = CorefUtils.heuristicFilter(sortedMentions,
         maxMentionDistance, maxMentionDistanceWithStringMatch);
+    double[] pairScores = scorePairs(document, mentionsByHeadIndex, mentionToCandidateAntecedents,
+        mentionColumns, antecedentEmbeddings, anaphorEmbeddings);
+
+    int pair = 0;
     for (Map.Entry<Integer, List<Integer>> e : mentionToCandidateAntecedents.entrySet()) {
-      double bestScore = anaphoricityScores.getCount(e.getKey()) - 50 * (greedyness - 0.5);
       int m = e.getKey();
+      double bestScore = anaphoricityScores[mentionColumns.get(m)] - 50 * (greedyness - 0.5);
       Integer antecedent = null;
       for (int ca : e.getValue()) {
-        double score = model.getPairwiseScore(antecedentEmbeddings.get(ca),
-            anaphorEmbeddings.get(m), featureExtractor.getPairFeatures(
-                  new Pair<>(ca, m), document, mentionsByHeadIndex));
+        double score = pairScores[pair++];
         if (score > bestScore) {
           bestScore = score;
           antecedent = ca;
@@ -102,4 +135,45 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
       }
     }
   }
+
+  /**
+   * Scores the candidate pairs, in the order of the map, {@link #PAIR_BATCH_SIZE} pairs at a time.
+   */
+  private double[] scorePairs(Document document, Map<Integer, List<Mention>> mentionsByHeadIndex,
+                              Map<Integer, List<Integer>> mentionToCandidateAntecedents,
+                              Map<Integer, Integer> mentionColumns,
+                              SimpleMatrix antecedentEmbeddings, SimpleMatrix anaphorEmbeddings) {
+    int numPairs = 0;
+    for (List<Integer> candidates : mentionToCandidateAntecedents.values()) {
+      numPairs += candidates.size();
+    }
+    double[] scores = new double[numPairs];
+    int batchSize = Math.min(numPairs, PAIR_BATCH_SIZE);
+    int[] antecedents = new int[batchSize];
+    int[] anaphors = new int[batchSize];
+    SimpleMatrix pairFeatures = null;
+    int inBatch = 0;
+    int scored = 0;
+    for (Map.Entry<Integer, List<Integer>> e : mentionToCandidateAntecedents.entrySet()) {
+      int m = e.getKey();
+      for (int ca : e.getValue()) {
+        SimpleMatrix features = featureExtractor.getPairFeatures(new Pair<>(ca, m), document, mentionsByHeadIndex);
+        if (pairFeatures == null) {
+          pairFeatures = new SimpleMatrix(features.numRows(), batchSize);
+        }
+        pairFeatures.insertIntoThis(0, inBatch, features);
+        antecedents[inBatch] = mentionColumns.get(ca);
+        anaphors[inBatch] = mentionColumns.get(m);
+        inBatch++;
+        if (inBatch == batchSize || scored + inBatch == numPairs) {
+          SimpleMatrix batch = (inBatch == batchSize) ? pairFeatures : pairFeatures.extractMatrix(0, pairFeatures.numRows(), 0, inBatch);
+          double[] batchScores = model.getPairwiseScores(antecedentEmbeddings, anaphorEmbeddings, antecedents, anaphors, batch);
+          System.arraycopy(batchScores, 0, scores, scored, inBatch);
+          scored += inBatch;
+          inBatch = 0;
+        }
+      }
+    }
+    return scores;
+  }
 }
@@ -115,6 +115,67 @@ public class NeuralCorefModel implements Serializable {
     return score(firstLayerOutput, pairwiseModel);
   }
 
+  /**
+   * Scores many mentions at once, with one matrix multiplication per layer.
+   * Column {@code i} of the matrices holds the embedding and the anaphoricity
+   * features of mention {@code i}.  The scores are the same as those of
+   * {@link #getAnaphoricityScore}.
+   */
+  public double[] getAnaphoricityScores(SimpleMatrix mentionEmbeddings,
+      SimpleMatrix anaphoricityFeatures) {
+    SimpleMatrix input = new SimpleMatrix(mentionEmbeddings.numRows() + anaphoricityFeatures.numRows(),
+        mentionEmbeddings.numCols());
+    input.insertIntoThis(0, 0, mentionEmbeddings);
+    input.insertIntoThis(mentionEmbeddings.numRows(), 0, anaphoricityFeatures);
+    return scores(input, anaphoricityModel);
+  }
+
+  /**
+   * Scores many mention pairs at once, with one matrix multiplication per layer.
+   * Pair {@code p} is of the antecedent in column {@code antecedents[p]} of
+   * {@code antecedentEmbeddings} and the anaphor in column {@code anaphors[p]}
+   * of {@code anaphorEmbeddings}, and its features are column {@code p} of
+   * {@code pairFeatures}.  The scores are the same as those of
+   * {@link #getPairwiseScore}, as the sums are added up in the same order.
+   */
+  public double[] getPairwiseScores(SimpleMatrix antecedentEmbeddings, SimpleMatrix anaphorEmbeddings,
+      int[] antecedents, int[] anaphors, SimpleMatrix pairFeatures) {
+    SimpleMatrix firstLayerOutput = pairFeaturesMatrix.mult(pairFeatures);
+    for (int p = 0; p < firstLayerOutput.numCols(); p++) {
+      for (int i = 0; i < firstLayerOutput.numRows(); i++) {
+        double value = antecedentEmbeddings.get(i, antecedents[p]) + anaphorEmbeddings.get(i, anaphors[p])
+            + firstLayerOutput.get(i, p) + pairwiseFirstLayerBias.get(i, 0);
+        firstLayerOutput.set(i, p, Math.max(0, value));
+      }
+    }
+    return scores(firstLayerOutput, pairwiseModel);
+  }
+
+  /** {@link #score} for each column of the features */
+  private static double[] scores(SimpleMatrix features, List<SimpleMatrix> weights) {
+    for (int i = 0; i < weights.size(); i += 2) {
+      SimpleMatrix output = weights.get(i).mult(features);
+      SimpleMatrix bias = weights.get(i + 1);
+      boolean relu = weights.get(i).numRows() > 1;
+      for (int j = 0; j < output.numCols(); j++) {
+        for (int k = 0; k < output.numRows(); k++) {
+          double value = output.get(k, j) + bias.get(k, 0);
+          output.set(k, j, relu ? Math.max(0, value) : value);
+        }
+      }
+      features = output;
+    }
+    double[] scores = new double[features.numCols()];
+    for (int j = 0; j < features.numCols(); j++) {
+      double total = 0;
+      for (int k = 0; k < features.numRows(); k++) {
+        total += features.get(k, j);
+      }
+      scores[j] = total;
+    }
+    return scores;
+  }
+
   private static double score(SimpleMatrix features, List<SimpleMatrix> weights) {
     for (int i = 0; i < weights.size(); i += 2) {
       features = weights.get(i).mult(features).plus(weights.get(i + 1));
@@ -1,13 +1,16 @@
 package edu.stanford.nlp.coref.statistical;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.coref.CorefAlgorithm;
 import edu.stanford.nlp.coref.CorefUtils;
 import edu.stanford.nlp.coref.data.Dictionaries;
 import edu.stanford.nlp.coref.data.Document;
+import edu.stanford.nlp.coref.data.Mention;
 import edu.stanford.nlp.coref.statistical.ClustererDataLoader.ClustererDoc;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
@@ -67,22 +70,45 @@ public class ClusteringCorefAlgorithm implements CorefAlgorithm {
         return;
     }
     Compressor<String> compressor = new Compressor<>();
-    DocumentExamples examples = extractor.extract(0, document, mentionPairs, compressor);
+    Set<Integer> mentionIds = new HashSet<>();
+    for (Pair<Integer, Integer> mentionPair : mentionPairs.keySet()) {
+      mentionIds.add(mentionPair.first);
+      mentionIds.add(mentionPair.second);
+    }
+    Map<Integer, Mention> mentions = document.predictedMentionsByID;
+    Map<Integer, CompressedFeatureVector> mentionFeatures =
+        extractor.extractMentionFeatures(document, mentionIds, compressor);
+    PairwiseScorer classificationScorer =
+        new PairwiseScorer(classificationModel, mentions, mentionFeatures, compressor);
+    PairwiseScorer rankingScorer =
+        new PairwiseScorer(rankingModel, mentions, mentionFeatures, compressor);
+    PairwiseScorer anaphoricityScorer =
+        new PairwiseScorer(anaphoricityModel, mentions, mentionFeatures, compressor);
 
+    // each pair is featurized into the same buffers and scored straight away,
+    // rather than kept as an Example and scored through conjoined feature counters
+    Counter<String> features = new ClassicCounter<>();
+    int[] keys = new int[64];
+    double[] values = new double[keys.length];
     Counter<Pair<Integer, Integer>> classificationScores = new ClassicCounter<>();
     Counter<Pair<Integer, Integer>> rankingScores = new ClassicCounter<>();
     Counter<Integer> anaphoricityScores = new ClassicCounter<>();
-    for (Example example : examples.examples) {
+    for (Pair<Integer, Integer> mentionPair : mentionPairs.keySet()) {
       CorefUtils.checkForInterrupt();
-      Pair<Integer, Integer> mentionPair =
-              new Pair<>(example.mentionId1, example.mentionId2);
-      classificationScores.incrementCount(mentionPair, classificationModel
-              .predict(example, examples.mentionFeatures, compressor));
-      rankingScores.incrementCount(mentionPair, rankingModel
-              .predict(example, examples.mentionFeatures, compressor));
-      if (!anaphoricityScores.containsKey(example.mentionId2)) {
-          anaphoricityScores.incrementCount(example.mentionId2, anaphoricityModel
-                  .predict(new Example(example, false), examples.mentionFeatures, compressor));
+      extractor.getFeatures(document, mentions.get(mentionPair.first),
+          mentions.get(mentionPair.second), features);
+      if (features.size() > keys.length) {
+        keys = new int[2 * features.size()];
+        values = new double[keys.length];
+      }
+      int numFeatures = compressor.compress(features, keys, values);
+      classificationScores.incrementCount(mentionPair, classificationScorer
+              .score(mentionPair.first, mentionPair.second, keys, values, numFeatures));
+      rankingScores.incrementCount(mentionPair, rankingScorer
+              .score(mentionPair.first, mentionPair.second, keys, values, numFeatures));
+      if (!anaphoricityScores.containsKey(mentionPair.second)) {
+          anaphoricityScores.incrementCount(mentionPair.second,
+                  anaphoricityScorer.scoreNewLink(mentionPair.second));
       }
     }
 
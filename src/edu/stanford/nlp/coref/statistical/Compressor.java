@@ -47,6 +47,34 @@ public class Compressor<K> implements Serializable {
     return new CompressedFeatureVector(keys, values);
   }
 
+  /**
+   * Compresses a counter into the given buffers, which must hold at least {@code c.size()} entries.
+   *
+   * @return The number of entries written
+   */
+  public int compress(Counter<K> c, int[] keys, double[] values) {
+    int size = 0;
+    for (Map.Entry<K, Double> e : c.entrySet()) {
+      K key = e.getKey();
+      Integer id = index.get(key);
+      if (id == null) {
+        id = index.size();
+        inverse.put(id, key);
+        index.put(key, id);
+      }
+
+      keys[size] = id;
+      values[size] = e.getValue();
+      size++;
+    }
+    return size;
+  }
+
+  /** The key compressed to this id */
+  public K getKey(int id) {
+    return inverse.get(id);
+  }
+
   public Counter<K> uncompress(CompressedFeatureVector cvf) {
     Counter<K> c = new ClassicCounter<>();
     for (int i = 0; i < cvf.keys.size(); i++) {
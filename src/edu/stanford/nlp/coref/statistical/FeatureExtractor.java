@@ -106,17 +106,6 @@ public class FeatureExtractor {
 
   public DocumentExamples extract(int id, Document document,
       Map<Pair<Integer, Integer>, Boolean> labeledPairs, Compressor<String> compressor) {
-    List<Mention> mentionsList = CorefUtils.getSortedMentions(document);
-    Map<Integer, List<Mention>> mentionsByHeadIndex = new HashMap<>();
-    for (Mention m : mentionsList) {
-      List<Mention> withIndex = mentionsByHeadIndex.get(m.headIndex);
-      if (withIndex == null) {
-        withIndex = new ArrayList<>();
-        mentionsByHeadIndex.put(m.headIndex, withIndex);
-      }
-      withIndex.add(m);
-    }
-
     Map<Integer, Mention> mentions = document.predictedMentionsByID;
     List<Example> examples = new ArrayList<>();
     Set<Integer> mentionsToExtract = new HashSet<>();
@@ -130,13 +119,29 @@ public class FeatureExtractor {
         examples.add(new Example(id, m1, m2, pair.getValue() ? 1.0 : 0.0, features));
     }
 
+    return new DocumentExamples(id, examples, extractMentionFeatures(document, mentionsToExtract, compressor));
+  }
+
+  /** Featurizes the mentions with these ids. */
+  public Map<Integer, CompressedFeatureVector> extractMentionFeatures(Document document,
+      Set<Integer> mentionsToExtract, Compressor<String> compressor) {
+    List<Mention> mentionsList = CorefUtils.getSortedMentions(document);
+    Map<Integer, List<Mention>> mentionsByHeadIndex = new HashMap<>();
+    for (Mention m : mentionsList) {
+      List<Mention> withIndex = mentionsByHeadIndex.get(m.headIndex);
+      if (withIndex == null) {
+        withIndex = new ArrayList<>();
+        mentionsByHeadIndex.put(m.headIndex, withIndex);
+      }
+      withIndex.add(m);
+    }
+
     Map<Integer, CompressedFeatureVector> mentionFeatures = new HashMap<>();
     for (int mentionID : mentionsToExtract) {
         mentionFeatures.put(mentionID, compressor.compress(getFeatures(document,
             document.predictedMentionsByID.get(mentionID), mentionsByHeadIndex)));
     }
-
-    return new DocumentExamples(id, examples, mentionFeatures);
+    return mentionFeatures;
   }
 
   private Counter<String> getFeatures(Document doc, Mention m,
@@ -260,8 +265,18 @@ public class FeatureExtractor {
   }
 
   private Counter<String> getFeatures(Document doc, Mention m1, Mention m2) {
-    assert(m1.appearEarlierThan(m2));
     Counter<String> features = new ClassicCounter<>();
+    getFeatures(doc, m1, m2, features);
+    return features;
+  }
+
+  /**
+   * Featurizes a mention pair into {@code features}, which is cleared first,
+   * so one counter can be reused for all the pairs of a document.
+   */
+  public void getFeatures(Document doc, Mention m1, Mention m2, Counter<String> features) {
+    assert(m1.appearEarlierThan(m2));
+    features.clear();
 
     // global features
     features.incrementCount("bias");
@@ -462,8 +477,6 @@ public class FeatureExtractor {
         m2.mentionSubTree, m2.headIndex - m2.startIndex) > 1;
       features.incrementCount("embedding=" + m1Embedded + "_" + m2Embedded);
     }
-
-    return features;
   }
 
   private static void addNumeric(Counter<String> features, String key, int value) {
@@ -2,6 +2,7 @@ package edu.stanford.nlp.coref.statistical;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -171,24 +172,88 @@ public class MetaFeatureExtractor {
 
   private List<String> identifiers(Counter<String> features, MentionType mentionType) {
     List<String> identifiers = new ArrayList<>();
+    identifiers.add(identifier(features.keySet(), mentionType));
+    return identifiers;
+  }
+
+  /** What features of a mention are conjoined with: its type, or its head word if it is a pronoun */
+  String identifier(Collection<String> features, MentionType mentionType) {
     if (mentionType == MentionType.PRONOMINAL) {
-      for (String feature : features.keySet()) {
+      for (String feature : features) {
         if (feature.startsWith("head-word=")) {
-          identifiers.add(feature.replace("head-word=", ""));
-          return identifiers;
+          return feature.replace("head-word=", "");
         }
       }
     } else if (neTypeConjuntion && mentionType == MentionType.PROPER) {
-      for (String feature : features.keySet()) {
+      for (String feature : features) {
         if (feature.startsWith("head-ne-type=")) {
-          identifiers.add(mentionType.toString() + "_" + feature.replace("head-ne-type=", ""));
-          return identifiers;
+          return mentionType.toString() + "_" + feature.replace("head-ne-type=", "");
         }
       }
     }
 
-    identifiers.add(mentionType.toString());
-    return identifiers;
+    return mentionType.toString();
+  }
+
+  /** Whether {@link #getFeatures} keeps this input feature */
+  boolean isAllowed(String feature) {
+    for (String prefix : disallowedPrefixes) {
+      if (feature.startsWith(prefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The weights below sum the weights of all the features getFeatures makes from one
+  // input feature, so that a linear model can be scored without making them
+
+  /** The summed weight of a pairwise feature between mentions with identifiers id1 and id2 */
+  double pairWeight(SimpleLinearClassifier classifier, String feature, String id1, String id2) {
+    double weight = classifier.getWeight(feature);
+    if (pairConjunctions.contains(PairConjunction.FIRST)) {
+      weight += classifier.getWeight(feature + "_m1=" + id1);
+    }
+    if (pairConjunctions.contains(PairConjunction.LAST)) {
+      weight += classifier.getWeight(feature + "_m2=" + id2);
+    }
+    if (pairConjunctions.contains(PairConjunction.BOTH)) {
+      weight += classifier.getWeight(feature + "_ms=" + id1 + "_" + id2);
+    }
+    return weight;
+  }
+
+  /**
+   * The summed weight of a feature of the first (or second) mention of a pair
+   * between mentions with identifiers id1 and id2.
+   */
+  double mentionWeight(SimpleLinearClassifier classifier, String feature, boolean first,
+      String id1, String id2) {
+    String index = first ? "_1" : "_2";
+    String current = first ? id1 : id2;
+    String other = first ? id2 : id1;
+    double weight = 0;
+    if (singleConjunctions.contains(SingleConjunction.INDEX)) {
+      weight += classifier.getWeight(feature + index);
+    }
+    if (singleConjunctions.contains(SingleConjunction.INDEX_CURRENT)) {
+      weight += classifier.getWeight(feature + index + "_m=" + current);
+    }
+    if (singleConjunctions.contains(SingleConjunction.INDEX_LAST)) {
+      weight += classifier.getWeight(feature + index + "_m2=" + id2);
+    }
+    if (singleConjunctions.contains(SingleConjunction.INDEX_OTHER)) {
+      weight += classifier.getWeight(feature + index + "_m=" + other);
+    }
+    if (singleConjunctions.contains(SingleConjunction.INDEX_BOTH)) {
+      weight += classifier.getWeight(feature + index + "_ms=" + id1 + "_" + id2);
+    }
+    return weight;
+  }
+
+  /** The summed weight of a feature of a mention, with identifier id2, starting a new cluster */
+  double newLinkWeight(SimpleLinearClassifier classifier, String feature, String id2) {
+    return classifier.getWeight(feature + "_NEW") + classifier.getWeight(feature + "_m=" + id2 + "_NEW");
   }
 
   private static Counter<String> getConjunction(Counter<String> original, String suffix) {
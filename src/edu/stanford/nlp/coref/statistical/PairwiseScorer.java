@@ -0,0 +1,220 @@
+package edu.stanford.nlp.coref.statistical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.coref.data.Mention;
+
+/**
+ * Scores the mention pairs of one document with a {@link PairwiseModel}, from
+ * compressed features held in primitive buffers.
+ * <br>
+ * {@link PairwiseModel#predict} makes every conjunction of every feature of a
+ * pair as a string and looks up its weight.  As the model is linear, this
+ * instead splits a pair's score into the part from the pair's own features,
+ * whose conjunctions' summed weights are cached by feature and by the
+ * identifiers of the two mentions, and the parts from the features of each
+ * mention, which are cached by mention and by the identifier of the other
+ * mention.  Once the caches are warm, scoring a pair allocates nothing.  The
+ * scores are those of {@link PairwiseModel#predict}, up to rounding.
+ * <br>
+ * A scorer is only for one document, and only for one thread at a time.
+ */
+public class PairwiseScorer {
+
+  private final SimpleLinearClassifier classifier;
+  private final MetaFeatureExtractor meta;
+  private final Compressor<String> compressor;
+
+  /** The identifiers of the mentions, and which of them each mention has, by mention id */
+  private final List<String> identifiers = new ArrayList<>();
+  private final int[] mentionIdentifiers;
+  private final CompressedFeatureVector[] mentionFeatures;
+
+  /** Products of the weights and the features of each mention, by mention id and the other mention's identifier */
+  private final double[] firstMentionProducts;
+  private final double[] secondMentionProducts;
+  /** Products of the weights and the features of each mention starting a new cluster, by mention id */
+  private final double[] newLinkProducts;
+  private final WeightCache pairWeights = new WeightCache();
+
+  /**
+   * @param model The model to score pairs with
+   * @param mentions The mentions of the document, by id
+   * @param mentionFeatures The compressed features of each mention, by id
+   * @param compressor The compressor the mention (and pair) features are compressed with
+   */
+  public PairwiseScorer(PairwiseModel model, Map<Integer, Mention> mentions,
+      Map<Integer, CompressedFeatureVector> mentionFeatures, Compressor<String> compressor) {
+    this.classifier = model.getClassifier();
+    this.meta = model.meta;
+    this.compressor = compressor;
+
+    int numMentions = 0;
+    for (int mentionId : mentionFeatures.keySet()) {
+      numMentions = Math.max(numMentions, mentionId + 1);
+    }
+    this.mentionFeatures = new CompressedFeatureVector[numMentions];
+    this.mentionIdentifiers = new int[numMentions];
+    Map<String, Integer> identifierIndex = new HashMap<>();
+    for (Map.Entry<Integer, CompressedFeatureVector> e : mentionFeatures.entrySet()) {
+      List<String> features = new ArrayList<>();
+      for (int key : e.getValue().keys) {
+        String feature = compressor.getKey(key);
+        if (meta.isAllowed(feature)) {
+          features.add(feature);
+        }
+      }
+      String identifier = meta.identifier(features, mentions.get(e.getKey()).mentionType);
+      Integer index = identifierIndex.get(identifier);
+      if (index == null) {
+        index = identifiers.size();
+        identifierIndex.put(identifier, index);
+        identifiers.add(identifier);
+      }
+      this.mentionFeatures[e.getKey()] = e.getValue();
+      mentionIdentifiers[e.getKey()] = index;
+    }
+
+    firstMentionProducts = new double[numMentions * identifiers.size()];
+    secondMentionProducts = new double[numMentions * identifiers.size()];
+    newLinkProducts = new double[numMentions];
+    Arrays.fill(firstMentionProducts, Double.NaN);
+    Arrays.fill(secondMentionProducts, Double.NaN);
+    Arrays.fill(newLinkProducts, Double.NaN);
+  }
+
+  /**
+   * The model's score for a pair of mentions, as {@link PairwiseModel#predict} would give for
+   * an {@link Example} of the pair.
+   *
+   * @param keys The compressed ids of the pair's features
+   * @param values The values of the pair's features
+   * @param numFeatures How many of the entries of the buffers are the pair's
+   */
+  public double score(int mentionId1, int mentionId2, int[] keys, double[] values, int numFeatures) {
+    int identifier1 = mentionIdentifiers[mentionId1];
+    int identifier2 = mentionIdentifiers[mentionId2];
+    double product = 0;
+    for (int i = 0; i < numFeatures; ++i) {
+      product += values[i] * pairWeight(keys[i], identifier1, identifier2);
+    }
+    product += mentionProduct(mentionId1, identifier2, true);
+    product += mentionProduct(mentionId2, identifier1, false);
+    return classifier.label(product);
+  }
+
+  /**
+   * The model's score for a mention starting a new cluster, as {@link PairwiseModel#predict}
+   * would give for a new-link {@link Example} of the mention.
+   */
+  public double scoreNewLink(int mentionId) {
+    double product = newLinkProducts[mentionId];
+    if (Double.isNaN(product)) {
+      String identifier = identifiers.get(mentionIdentifiers[mentionId]);
+      product = meta.isAllowed("bias") ? meta.newLinkWeight(classifier, "bias", identifier) : 0;
+      CompressedFeatureVector features = mentionFeatures[mentionId];
+      for (int i = 0; i < features.keys.size(); i++) {
+        String feature = compressor.getKey(features.keys.get(i));
+        if (meta.isAllowed(feature)) {
+          product += features.values.get(i) * meta.newLinkWeight(classifier, feature, identifier);
+        }
+      }
+      newLinkProducts[mentionId] = product;
+    }
+    return classifier.label(product);
+  }
+
+  private double pairWeight(int key, int identifier1, int identifier2) {
+    long cacheKey = ((long) key * identifiers.size() + identifier1) * identifiers.size() + identifier2;
+    double weight = pairWeights.get(cacheKey);
+    if (Double.isNaN(weight)) {
+      String feature = compressor.getKey(key);
+      weight = meta.isAllowed(feature) ?
+          meta.pairWeight(classifier, feature, identifiers.get(identifier1), identifiers.get(identifier2)) : 0;
+      pairWeights.put(cacheKey, weight);
+    }
+    return weight;
+  }
+
+  private double mentionProduct(int mentionId, int otherIdentifier, boolean first) {
+    double[] products = first ? firstMentionProducts : secondMentionProducts;
+    int index = mentionId * identifiers.size() + otherIdentifier;
+    double product = products[index];
+    if (Double.isNaN(product)) {
+      String identifier = identifiers.get(mentionIdentifiers[mentionId]);
+      String other = identifiers.get(otherIdentifier);
+      product = 0;
+      CompressedFeatureVector features = mentionFeatures[mentionId];
+      for (int i = 0; i < features.keys.size(); i++) {
+        String feature = compressor.getKey(features.keys.get(i));
+        if (meta.isAllowed(feature)) {
+          product += features.values.get(i) * meta.mentionWeight(classifier, feature, first,
+              first ? identifier : other, first ? other : identifier);
+        }
+      }
+      products[index] = product;
+    }
+    return product;
+  }
+
+
+  /** An open-addressing map from non-negative longs to doubles */
+  private static class WeightCache {
+    private long[] keys = newKeys(1024);
+    private double[] values = new double[1024];
+    private int size; // = 0;
+
+    private static long[] newKeys(int capacity) {
+      long[] keys = new long[capacity];
+      Arrays.fill(keys, -1L);
+      return keys;
+    }
+
+    private static int hash(long key) {
+      return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /** The value for this key, or NaN if it has none */
+    double get(long key) {
+      int mask = keys.length - 1;
+      for (int slot = hash(key) & mask; keys[slot] != -1L; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+      }
+      return Double.NaN;
+    }
+
+    /** Adds a key which isn't in the map yet */
+    void put(long key, double value) {
+      if (2 * (size + 1) > keys.length) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = newKeys(oldKeys.length * 2);
+        values = new double[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldKeys[i] != -1L) {
+            insert(oldKeys[i], oldValues[i]);
+          }
+        }
+      }
+      insert(key, value);
+      size++;
+    }
+
+    private void insert(long key, double value) {
+      int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (keys[slot] != -1L) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      values[slot] = value;
+    }
+  }
+
+}
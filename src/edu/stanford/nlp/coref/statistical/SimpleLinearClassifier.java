@@ -86,6 +86,15 @@ public class SimpleLinearClassifier {
     return defaultLoss.predict(weightFeatureProduct(features));
   }
 
+  /** The label for a precomputed product of the weights and the features */
+  public double label(double weightFeatureProduct) {
+    return defaultLoss.predict(weightFeatureProduct);
+  }
+
+  public double getWeight(String featureName) {
+    return weights.getCount(featureName);
+  }
+
   public double weightFeatureProduct(Counter<String> features) {
     double product = 0;
     for (Map.Entry<String, Double> feature : features.entrySet()) {
@@ -0,0 +1,118 @@
+package edu.stanford.nlp.ie;
+
+import edu.stanford.nlp.util.Index;
+
+import java.util.Arrays;
+
+
+/**
+ * A read-only map from 64-bit hashes of feature names to their positions in a feature {@link Index}.
+ * <p>
+ * Feature names are hashed with 64-bit FNV-1a over their chars, which can be computed
+ * incrementally as a feature is built up (see {@link #extend(long, char)}).  A feature
+ * extractor can therefore find a feature's index without ever materializing its
+ * name as a String.  The table uses open addressing with linear probing over two
+ * parallel primitive arrays, so a lookup does not allocate.
+ * <p>
+ * If two features in the Index hash to the same value, the table cannot tell them apart;
+ * {@link #hasCollisions()} reports this and callers should then fall back to String lookup.
+ * A feature which is not in the Index matches a stored hash only by accident,
+ * with probability about {@code size() / 2^64} per lookup.
+ */
+public class FeatureHashIndex {
+
+  /** The hash of the empty string. */
+  public static final long EMPTY = 0xcbf29ce484222325L;
+
+  private static final long PRIME = 0x100000001b3L;
+
+  private final long[] keys;
+  /** The feature index for each slot, or -1 for an empty slot. */
+  private final int[] values;
+  private final int mask;
+  private final int size;
+  private int collisions; // = 0;
+
+  /**
+   * Build a table for every feature in the given Index.
+   *
+   * @param featureIndex The feature Index
+   */
+  public FeatureHashIndex(Index<String> featureIndex) {
+    size = featureIndex.size();
+    int capacity = Integer.highestOneBit(Math.max(size, 2) * 2 - 1) << 1;
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, -1);
+    mask = capacity - 1;
+    for (int i = 0; i < size; i++) {
+      put(hash(featureIndex.get(i)), i);
+    }
+  }
+
+  private void put(long key, int value) {
+    for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+      if (values[slot] < 0) {
+        keys[slot] = key;
+        values[slot] = value;
+        return;
+      }
+      if (keys[slot] == key) {
+        collisions++;
+        return;
+      }
+    }
+  }
+
+  private int slot(long key) {
+    // FNV is weak in its low bits, so mix before masking (the MurmurHash3 finalizer)
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+  /**
+   * Find the feature with the given hash.
+   *
+   * @param key A hash built with {@link #hash(CharSequence)} or {@link #extend}
+   * @return The feature's position in the Index, or -1 if it is not there
+   */
+  public int indexOf(long key) {
+    for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+      int value = values[slot];
+      if (value < 0 || keys[slot] == key) {
+        return value;
+      }
+    }
+  }
+
+  /** Whether two different features in the Index have the same hash. */
+  public boolean hasCollisions() {
+    return collisions > 0;
+  }
+
+  /** The number of features in the table. */
+  public int size() {
+    return size;
+  }
+
+  /** Extend the hash of a string with one more char. */
+  public static long extend(long hash, char c) {
+    return (hash ^ c) * PRIME;
+  }
+
+  /** Extend the hash of a string with more chars. */
+  public static long extend(long hash, CharSequence s) {
+    for (int i = 0, len = s.length(); i < len; i++) {
+      hash = (hash ^ s.charAt(i)) * PRIME;
+    }
+    return hash;
+  }
+
+  /** The hash of a whole string; equal to extending {@link #EMPTY} char by char. */
+  public static long hash(CharSequence s) {
+    return extend(EMPTY, s);
+  }
+
+}
@@ -8,6 +8,7 @@ import edu.stanford.nlp.ling.IndexedWord;
 import edu.stanford.nlp.pipeline.DefaultPaths;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.semgraph.semgrex.MultiSemgrexMatcher;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexBatchParser;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexMatcher;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexPattern;
@@ -38,7 +39,7 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
   @ArgumentParser.Option(name="predictions", gloss="Dump model predictions to this file")
   public static Optional<String> PREDICTIONS = Optional.empty();
 
-  private final Map<RelationType, Collection<SemgrexPattern> > rules = new HashMap<>();
+  private final Map<RelationType, MultiSemgrexMatcher> rules = new HashMap<>();
 
   public KBPSemgrexExtractor(String semgrexdir) throws IOException {
     this(semgrexdir, false);
@@ -56,7 +57,7 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
         List<SemgrexPattern> rulesforrel = SemgrexBatchParser.compileStream(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(filename));
         if (verbose)
           logger.log("Read " + rulesforrel.size() + " rules from " + filename + " for relation " + rel);
-        rules.put(rel, rulesforrel);
+        rules.put(rel, new MultiSemgrexMatcher(rulesforrel));
       }
     }
   }
@@ -64,18 +65,30 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
 
   @Override
   public Pair<String, Double> classify(KBPInput input) {
+    // the sentence and its graphs are made and indexed once, for all the relations which have rules for these entities
+    CoreMap sentence = null;
+    MultiSemgrexMatcher.GraphIndex enhanced = null;
+    MultiSemgrexMatcher.GraphIndex alternative = null;
+    boolean alternativeIndexed = false;
     for (RelationType rel : RelationType.values()) {
 
       if (rules.containsKey(rel) &&
           rel.entityType == input.subjectType &&
           rel.validNamedEntityLabels.contains(input.objectType)) {
-        Collection<SemgrexPattern> rulesForRel = rules.get(rel);
-        CoreMap sentence = input.sentence.asCoreMap(Sentence::nerTags, Sentence::dependencyGraph);
-        SemgrexPattern matchedPattern = matches(sentence, rulesForRel, input,
-                                                sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class));
+        if (sentence == null) {
+          sentence = input.sentence.asCoreMap(Sentence::nerTags, Sentence::dependencyGraph);
+          markEntities(sentence, input);
+          enhanced = index(sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class));
+        }
+        MultiSemgrexMatcher rulesForRel = rules.get(rel);
+        SemgrexPattern matchedPattern = matches(rulesForRel, input, enhanced);
         if (matchedPattern == null) {
-          matchedPattern = matches(sentence, rulesForRel, input,
-                                   sentence.get(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class));
+          // (the alternative graph is only indexed if some relation gets this far)
+          if ( ! alternativeIndexed) {
+            alternative = index(sentence.get(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class));
+            alternativeIndexed = true;
+          }
+          matchedPattern = matches(rulesForRel, input, alternative);
         }
         if (matchedPattern != null) {
           //logger.log("MATCH for " + rel +  ".  sentence:" + sentence + " with rules for  " + rel + ": " + matchedPattern);
@@ -89,14 +102,9 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
 
 
   /**
-   * Returns whether any of the given patterns match this tree.
+   * Gives the tokens of the subject and object the types of the entities, if they have none.
    */
-  private SemgrexPattern matches(CoreMap sentence, Collection<SemgrexPattern> rulesForRel,
-                          KBPInput input, SemanticGraph graph) {
-    if (graph == null || graph.isEmpty()) {
-      return null;
-    }
-
+  private static void markEntities(CoreMap sentence, KBPInput input) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     for (int i : input.subjectSpan) {
       if ("O".equals(tokens.get(i).ner())) {
@@ -108,10 +116,32 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
         tokens.get(i).setNER(input.objectType.name);
       }
     }
+  }
+
 
-    for (SemgrexPattern p : rulesForRel) {
+  /**
+   * The index of a graph, or null if there is no graph to match.
+   */
+  private static MultiSemgrexMatcher.GraphIndex index(SemanticGraph graph) {
+    if (graph == null || graph.isEmpty()) {
+      return null;
+    }
+    return MultiSemgrexMatcher.index(graph);
+  }
+
+
+  /**
+   * Returns whether any of the given patterns match this tree.
+   */
+  private SemgrexPattern matches(MultiSemgrexMatcher rulesForRel, KBPInput input, MultiSemgrexMatcher.GraphIndex graph) {
+    if (graph == null) {
+      return null;
+    }
 
-      SemgrexMatcher n = p.matcher(graph);
+    List<SemgrexMatcher> matchers = rulesForRel.matchers(graph, false);
+    for (int r = 0; r < matchers.size(); ++r) {
+      SemgrexPattern p = rulesForRel.patterns().get(r);
+      SemgrexMatcher n = matchers.get(r);
       while (n.find()) {
         IndexedWord entity = n.getNode("entity");
         IndexedWord slot = n.getNode("slot");
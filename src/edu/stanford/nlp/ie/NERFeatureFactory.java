@@ -31,6 +31,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -404,8 +405,33 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
 
 //    log.info(doFE+"\t"+domain);
 
-    // there are two special cases below, because 2 cliques have 2 names
     c.setDomain(domain);
+    addCliqueFeatures(cInfo, loc, clique, c);
+
+    // log.info(StringUtils.join(features,"\n")+"\n");
+    return features;
+  }
+
+  /**
+   * Extract the same features as {@link #getCliqueFeatures}, but as their positions in a
+   * feature index rather than as Strings.  The feature names are hashed as they are built,
+   * so no feature String or collection is created.  Features which are not in the index
+   * are skipped.  The indices found are appended to the collector, without duplicates.
+   *
+   * @param cInfo The complete data set as a List of WordInfo
+   * @param loc  The index at which to extract features.
+   * @param clique The clique to extract features for
+   * @param c The collector to add the feature indices to
+   */
+  public void getCliqueFeatureIndices(PaddedList<IN> cInfo, int loc, Clique clique, IndexedFeatureCollector c) {
+    c.setDomain(cInfo.get(0).get(CoreAnnotations.DomainAnnotation.class));
+    int start = c.size();
+    addCliqueFeatures(cInfo, loc, clique, c);
+    c.removeDuplicates(start);
+  }
+
+  private void addCliqueFeatures(PaddedList<IN> cInfo, int loc, Clique clique, FeatureCollector c) {
+    // there are two special cases below, because 2 cliques have 2 names
     if (clique == cliqueC) {
       //200710: tried making this clique null; didn't improve performance (rafferty)
       featuresC(cInfo, loc, c);
@@ -430,9 +456,6 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     } else {
       throw new IllegalArgumentException("Unknown clique: " + clique);
     }
-
-    // log.info(StringUtils.join(features,"\n")+"\n");
-    return features;
   }
 
   /**
@@ -562,6 +585,107 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
+  /**
+   * A FeatureCollector which looks features up in a {@link FeatureHashIndex} instead of
+   * collecting their names.  The name of the current feature is never built: only its
+   * hash is kept, and the suffixed variants are hashed from there when it is added.
+   * The indices found go into a growable int array which is reused between calls.
+   * <p>
+   * Like FeatureCollector, this class is <em>not thread safe</em>; use one per thread.
+   */
+  public static class IndexedFeatureCollector extends FeatureCollector {
+
+    private final FeatureHashIndex index;
+
+    /** Hash of the current feature name */
+    private long hash = FeatureHashIndex.EMPTY;
+
+    private int[] indices = new int[128];
+    private int size; // = 0;
+
+    public IndexedFeatureCollector(FeatureHashIndex index) {
+      super(null);
+      this.index = index;
+    }
+
+    @Override
+    public FeatureCollector build() {
+      hash = FeatureHashIndex.EMPTY;
+      return this;
+    }
+
+    @Override
+    public FeatureCollector append(String s) {
+      // StringBuilder.append(null) appends "null", so the feature names in the index do too
+      hash = FeatureHashIndex.extend(hash, s == null ? "null" : s);
+      return this;
+    }
+
+    @Override
+    public FeatureCollector append(char c) {
+      hash = FeatureHashIndex.extend(hash, c);
+      return this;
+    }
+
+    @Override
+    public FeatureCollector dash() {
+      hash = FeatureHashIndex.extend(hash, '-');
+      return this;
+    }
+
+    @Override
+    public void add() {
+      long h = FeatureHashIndex.extend(hash, '|');
+      addIndex(index.indexOf(FeatureHashIndex.extend(h, suffix)));
+      if (domain != null) {
+        h = FeatureHashIndex.extend(FeatureHashIndex.extend(h, domain), '-');
+        addIndex(index.indexOf(FeatureHashIndex.extend(h, suffix)));
+      }
+      hash = FeatureHashIndex.EMPTY;
+    }
+
+    private void addIndex(int i) {
+      if (i < 0) {
+        return; // not a feature of the model, e.g., because of feature count thresholds
+      }
+      if (size == indices.length) {
+        indices = Arrays.copyOf(indices, size * 2);
+      }
+      indices[size++] = i;
+    }
+
+    /** Sort the indices added since {@code start} and drop repeats, as the Set in FeatureCollector does. */
+    void removeDuplicates(int start) {
+      if (size - start < 2) {
+        return;
+      }
+      Arrays.sort(indices, start, size);
+      int last = start;
+      for (int i = start + 1; i < size; i++) {
+        if (indices[i] != indices[last]) {
+          indices[++last] = indices[i];
+        }
+      }
+      size = last + 1;
+    }
+
+    /** The number of feature indices collected. */
+    public int size() {
+      return size;
+    }
+
+    /** Forget the collected feature indices. */
+    public void clear() {
+      size = 0;
+    }
+
+    /** A copy of the collected feature indices. */
+    public int[] toArray() {
+      return Arrays.copyOf(indices, size);
+    }
+
+  } // end static class IndexedFeatureCollector
+
   // TODO: when breaking serialization, it seems like it would be better to
   // move the lexicon into (Abstract)SequenceClassifier and to do this
   // annotation as part of the ObjectBankWrapper.  But note that it is
@@ -621,6 +745,16 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
+  /** The distsim lexicon, from word to word class, or null if there is none. */
+  public Map<String,String> getDistSimLexicon() {
+    return lexicon;
+  }
+
+  /** Replace the distsim lexicon, for instance with one read from a flat model file. */
+  public void setDistSimLexicon(Map<String,String> lexicon) {
+    this.lexicon = lexicon;
+  }
+
   private void distSimAnnotate(PaddedList<IN> info) {
     for (CoreLabel fl : info) {
       if (fl.containsKey(CoreAnnotations.DistSimAnnotation.class)) { return; }
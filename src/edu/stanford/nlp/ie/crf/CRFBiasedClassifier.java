@@ -87,13 +87,23 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
     return new CRFDatum<>(features, new CRFLabel(labels), null);
   }
 
+  /** The BIAS feature is added here, not by a feature factory. */
+  @Override
+  protected boolean usesOnlyFactoryFeatures() {
+    return false;
+  }
+
   private void addBiasFeature() {
+    // a flat model's weights and features are read only, in the mapped file
+    copyMappedModelToHeap();
     if ( ! featureIndex.contains(BIAS)) {
       featureIndex.add(BIAS);
       float[][] newWeights = new float[weights.length+1][];
       System.arraycopy(weights,0,newWeights,0,weights.length);
       newWeights[weights.length] = new float[classIndex.size()];
       weights = newWeights;
+      // made again from the new weights when next needed
+      cliquePotentialFunction = null;
     }
   }
 
@@ -44,6 +44,10 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
@@ -97,6 +101,13 @@ import java.util.zip.GZIPOutputStream;
  * To test on multiple files, use the -testFiles option and a comma
  * separated list.
  * <p>
+ * To convert a serialized classifier to a flat model file, which loads almost
+ * instantly because it is memory-mapped rather than deserialized:
+ * <p>
+ * {@code java -mx2g edu.stanford.nlp.ie.crf.CRFClassifier -loadClassifier conll.ner.gz -serializeToFlat conll.ner.flat }
+ * <p>
+ * A flat model file is loaded like any other, for example with {@code -loadClassifier} or {@code ner.model}.
+ * <p>
  * Features are defined by a {@link edu.stanford.nlp.sequences.FeatureFactory}.
  * {@link NERFeatureFactory} is used by default, and you should look
  * there for feature templates and properties or flags that will cause
@@ -140,6 +151,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
   /** Parameter weights of the classifier.  weights[featureIndex][labelIndex] */
   float[][] weights;
+  /** The weights of a classifier loaded from a flat model file, used in place of weights (which is then null) */
+  private MappedCRFWeights mappedWeights;
 
   /** index the features of CRF */
   Index<String> featureIndex;
@@ -167,6 +180,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   private LabelDictionary labelDictionary;
 
+  /** Hashes of the features in featureIndex, for {@link SeqClassifierFlags#featureHashInference}. Built on first use. */
+  private volatile FeatureHashIndex featureHashIndex;
+  /** Set if featureHashInference was asked for but cannot be used with this model */
+  private volatile boolean featureHashUnusable; // = false;
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -214,6 +232,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    copyMappedModelToHeap();
     if (weights == null) return 0;
     int numWeights = 0;
     for (float[] wts : weights) {
@@ -264,6 +283,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    copyMappedModelToHeap();
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -349,6 +369,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    */
   public void combine(CRFClassifier<IN> crf, double weight) {
     Timing timer = new Timing();
+    copyMappedModelToHeap();
+    crf.copyMappedModelToHeap();
 
     // Check the CRFClassifiers are compatible
     if (!this.pad.equals(crf.pad)) {
@@ -391,6 +413,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    copyMappedModelToHeap();
     Index<String> newFeatureIndex = new HashIndex<>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -428,6 +451,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    *         the third element is a double[][][] representing the feature values (optionally null)
    */
   public Triple<int[][][], int[], double[][][]> documentToDataAndLabels(List<IN> document) {
+    FeatureHashIndex hashIndex = getFeatureHashIndex();
+    if (hashIndex != null) {
+      return documentToDataAndLabelsByHash(document, hashIndex);
+    }
     int docSize = document.size();
     // first index is position in the document also the index of the
     // clique/factor table
@@ -491,6 +518,94 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return new Triple<>(data, labels, featureVals);
   }
 
+  /**
+   * Returns the feature hash table to use for {@link #documentToDataAndLabels}, or null to look features up by name.
+   * Hashing is only used if it is turned on with {@code featureHashInference}, every feature
+   * factory is an {@link NERFeatureFactory}, and the features are exactly what they produce
+   * (no embeddings, no extra features from {@link #makeDatum} overrides, no feature printing).
+   */
+  private FeatureHashIndex getFeatureHashIndex() {
+    if ( ! flags.featureHashInference || featureHashUnusable || flags.useEmbedding || flags.printFeatures != null ||
+         ! usesOnlyFactoryFeatures() || featureIndex == null) {
+      return null;
+    }
+    FeatureHashIndex hashIndex = featureHashIndex;
+    if (hashIndex == null || hashIndex.size() != featureIndex.size()) {
+      synchronized (this) {
+        hashIndex = featureHashIndex;
+        if (hashIndex == null || hashIndex.size() != featureIndex.size()) {
+          for (FeatureFactory<IN> featureFactory : featureFactories) {
+            if ( ! (featureFactory instanceof NERFeatureFactory)) {
+              log.info("featureHashInference needs NERFeatureFactory, not " + featureFactory.getClass().getName() + "; looking up features by name");
+              featureHashUnusable = true;
+              return null;
+            }
+          }
+          hashIndex = new FeatureHashIndex(featureIndex);
+          if (hashIndex.hasCollisions()) {
+            log.warn("Feature hashes collide for this model; looking up features by name");
+            featureHashUnusable = true;
+            return null;
+          }
+          featureHashIndex = hashIndex;
+        }
+      }
+    }
+    return hashIndex;
+  }
+
+  /**
+   * Whether {@link #makeDatum} produces exactly the features of the feature factories.
+   * Subclasses which add their own features there should return false, which
+   * disables {@code featureHashInference}.
+   */
+  protected boolean usesOnlyFactoryFeatures() {
+    return true;
+  }
+
+  /**
+   * The same as {@link #documentToDataAndLabels}, but looks up each feature by a hash
+   * computed while it is extracted, so that no feature Strings are built.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"}) // NERFeatureFactory needs CoreLabel, but it is only ever given them
+  private Triple<int[][][], int[], double[][][]> documentToDataAndLabelsByHash(List<IN> document, FeatureHashIndex hashIndex) {
+    int docSize = document.size();
+    int[][][] data = new int[docSize][windowSize][];
+    double[][][] featureVals = new double[docSize][windowSize][];
+    int[] labels = new int[docSize];
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    PaddedList<IN> pInfo = new PaddedList<>(document, pad);
+    NERFeatureFactory.IndexedFeatureCollector collector = new NERFeatureFactory.IndexedFeatureCollector(hashIndex);
+    List<List<Clique>> windowCliques = new ArrayList<>(windowSize);
+    for (int i = 0; i < windowSize; i++) {
+      List<Clique> cliques = new ArrayList<>();
+      FeatureFactory.eachClique(i, 0, cliques::add);
+      windowCliques.add(cliques);
+    }
+    for (int j = 0; j < docSize; j++) {
+      for (int i = 0; i < windowSize; i++) {
+        collector.clear();
+        for (Clique c : windowCliques.get(i)) {
+          for (FeatureFactory<IN> featureFactory : featureFactories) {
+            ((NERFeatureFactory) featureFactory).getCliqueFeatureIndices(pInfo, j, c, collector);
+          }
+        }
+        data[j][i] = collector.toArray();
+      }
+      labels[j] = classIndex.indexOf(document.get(j).get(CoreAnnotations.AnswerAnnotation.class));
+    }
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    return new Triple<>(data, labels, featureVals);
+  }
+
   public void printLabelInformation(String testFile, DocumentReaderAndWriter<IN> readerAndWriter) throws Exception {
     ObjectBank<List<IN>> documents = makeObjectBankFromFile(testFile, readerAndWriter);
     for (List<IN> document : documents) {
@@ -499,6 +614,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void printLabelValue(List<IN> document) {
+    copyMappedModelToHeap();
     if (flags.useReverse) {
       Collections.reverse(document);
     }
@@ -2298,6 +2414,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   protected void serializeTextClassifier(PrintWriter pw) throws Exception {
+    copyMappedModelToHeap();
     pw.printf("labelIndices.length=\t%d%n", labelIndices.size());
     for (int i = 0; i < labelIndices.size(); i++) {
       pw.printf("labelIndices[%d].size()=\t%d%n", i, labelIndices.get(i).size());
@@ -2406,6 +2523,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void serializeWeights(String serializePath) {
+    copyMappedModelToHeap();
     ObjectOutputStream oos = null;
     try {
       oos = IOUtils.writeStreamFromString(serializePath);
@@ -2508,6 +2626,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    */
   @Override
   public void serializeClassifier(ObjectOutputStream oos) {
+    copyMappedModelToHeap();
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
@@ -2536,6 +2655,209 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /** The first 8 bytes of a flat model file: "CRF.FLAT" in ASCII. */
+  private static final long FLAT_MAGIC = 0x4352462e464c4154L;
+  private static final int FLAT_VERSION = 1;
+
+  /**
+   * Serialize the classifier as a flat model file, which {@link #loadClassifier(String, Properties)}
+   * memory-maps rather than deserializes.
+   * <p>
+   * The file starts with the 8 bytes "CRF.FLAT" and a version number.  Then comes a small
+   * Java-serialized header with everything except the feature index, the weights and the
+   * distsim lexicons: label indices, flags, feature factories, windowSize, knownLCWords and the label dictionary.
+   * Then the feature index as a {@link MappedStringIndex}, the weights as {@link MappedCRFWeights},
+   * and the distsim lexicon of each {@link NERFeatureFactory} which has one as a {@link MappedStringMap}.
+   * These three are used in place from the mapped file, so loading takes little time, and
+   * several processes using the same model share one copy of it in the page cache.
+   *
+   * @param serializePath File to write the model to
+   */
+  public void serializeFlatClassifier(String serializePath) {
+    log.info("Serializing flat classifier to " + serializePath + "...");
+    copyMappedModelToHeap();
+    // the lexicons are written separately, so take them out of the feature factories while they are serialized
+    List<Map<String,String>> lexicons = new ArrayList<>();
+    for (FeatureFactory<IN> ff : featureFactories) {
+      Map<String,String> lexicon = null;
+      if (ff instanceof NERFeatureFactory) {
+        lexicon = ((NERFeatureFactory<?>) ff).getDistSimLexicon();
+        ((NERFeatureFactory<?>) ff).setDistSimLexicon(null);
+      }
+      lexicons.add(lexicon);
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(serializePath)))) {
+      out.writeLong(FLAT_MAGIC);
+      out.writeInt(FLAT_VERSION);
+
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(header)) {
+        oos.writeObject(labelIndices);
+        oos.writeObject(classIndex);
+        oos.writeObject(flags);
+        if (flags.useEmbedding) {
+          oos.writeObject(embeddings);
+        }
+        oos.writeObject(featureFactories.size());
+        for (FeatureFactory<IN> ff : featureFactories) {
+          oos.writeObject(ff);
+        }
+        oos.writeInt(windowSize);
+        oos.writeObject(knownLCWords);
+        oos.writeObject(labelDictionary);
+      }
+      out.writeInt(header.size());
+      header.writeTo(out);
+      for (int i = header.size(); i % 4 != 0; i++) {
+        out.writeByte(0);
+      }
+
+      MappedStringIndex.write(out, featureIndex.objectsList());
+      MappedCRFWeights.write(out, weights);
+      int numLexicons = 0;
+      for (Map<String,String> lexicon : lexicons) {
+        if (lexicon != null) {
+          numLexicons++;
+        }
+      }
+      out.writeInt(numLexicons);
+      for (int i = 0; i < lexicons.size(); i++) {
+        if (lexicons.get(i) != null) {
+          out.writeInt(i);
+          MappedStringMap.write(out, lexicons.get(i));
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException("Serializing flat classifier to " + serializePath + "... FAILED", e);
+    } finally {
+      for (int i = 0; i < lexicons.size(); i++) {
+        if (lexicons.get(i) != null) {
+          ((NERFeatureFactory<?>) featureFactories.get(i)).setDistSimLexicon(lexicons.get(i));
+        }
+      }
+    }
+    log.info("Serializing flat classifier to " + serializePath + "... done.");
+  }
+
+  /**
+   * Whether the given path is a file written by {@link #serializeFlatClassifier}.
+   * Resources on the classpath or at URLs cannot be memory-mapped, so they never are.
+   */
+  public static boolean isFlatClassifier(String path) {
+    File file = new File(path);
+    if ( ! file.isFile()) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readLong() == FLAT_MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Load a classifier written by {@link #serializeFlatClassifier}.  The feature index, weights and
+   * distsim lexicons stay in the memory-mapped file; the classifier copies them onto the
+   * heap only if it is modified or serialized in another format.
+   *
+   * @param path The flat model file
+   * @param props If non-null, properties which override those stored in the model
+   */
+  @SuppressWarnings("unchecked")
+  public void loadFlatClassifier(String path, Properties props) throws IOException, ClassCastException, ClassNotFoundException {
+    Timing t = new Timing();
+    ByteBuffer buf;
+    try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Flat classifiers of over 2GB are not supported: " + path);
+      }
+      // the mapping stays valid after the channel is closed
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buf.getLong() != FLAT_MAGIC) {
+      throw new IOException("Not a flat classifier: " + path);
+    }
+    int version = buf.getInt();
+    if (version != FLAT_VERSION) {
+      throw new IOException("Unsupported flat classifier version " + version + " in " + path);
+    }
+
+    int headerLength = buf.getInt();
+    byte[] header = new byte[headerLength];
+    MappedStringIndex.slice(buf, (headerLength + 3) & ~3).get(header);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(header))) {
+      labelIndices = (List<Index<CRFLabel>>) ois.readObject();
+      classIndex = (Index<String>) ois.readObject();
+      flags = (SeqClassifierFlags) ois.readObject();
+      if (flags.useEmbedding) {
+        embeddings = (Map<String, double[]>) ois.readObject();
+      }
+      int numFeatureFactories = (Integer) ois.readObject();
+      featureFactories = Generics.newArrayList(numFeatureFactories);
+      for (int i = 0; i < numFeatureFactories; i++) {
+        featureFactories.add((FeatureFactory<IN>) ois.readObject());
+      }
+      windowSize = ois.readInt();
+      Set<String> lcWords = (Set<String>) ois.readObject();
+      if (lcWords instanceof MaxSizeConcurrentHashSet) {
+        knownLCWords = (MaxSizeConcurrentHashSet<String>) lcWords;
+      } else {
+        knownLCWords = new MaxSizeConcurrentHashSet<>(lcWords);
+      }
+      labelDictionary = (LabelDictionary) ois.readObject();
+    }
+
+    featureIndex = MappedStringIndex.read(buf);
+    weights = null;
+    mappedWeights = MappedCRFWeights.read(buf);
+    int numLexicons = buf.getInt();
+    for (int i = 0; i < numLexicons; i++) {
+      int factory = buf.getInt();
+      // set before reinit(), so that NERFeatureFactory.init() does not try to load the lexicon file
+      ((NERFeatureFactory<?>) featureFactories.get(factory)).setDistSimLexicon(MappedStringMap.read(buf));
+    }
+
+    if (props != null) {
+      flags.setProperties(props, false);
+    }
+    reinit();
+    cliquePotentialFunction = mappedWeights;
+    featureHashIndex = null;
+    featureHashUnusable = false;
+    flags.loadClassifier = path;
+    t.done(log, "Loading flat classifier from " + path);
+  }
+
+  /**
+   * A classifier loaded by {@link #loadFlatClassifier} uses its weights and feature index in place
+   * in the mapped file.  Copy them onto the heap before anything modifies them or
+   * needs the {@code weights} array.
+   */
+  protected void copyMappedModelToHeap() {
+    if (mappedWeights != null) {
+      weights = mappedWeights.toArrays();
+      mappedWeights = null;
+      cliquePotentialFunction = null;
+    }
+    if (featureIndex instanceof MappedStringIndex) {
+      featureIndex = new HashIndex<>(featureIndex.objectsList());
+      featureHashIndex = null;
+    }
+  }
+
+  /**
+   * Loads a classifier from the given path, which may be a file written by
+   * {@link #serializeFlatClassifier}.  Otherwise, as in {@link AbstractSequenceClassifier}.
+   */
+  @Override
+  public void loadClassifier(String loadPath, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (isFlatClassifier(loadPath)) {
+      loadFlatClassifier(loadPath, props);
+    } else {
+      super.loadClassifier(loadPath, props);
+    }
+  }
+
   /**
    * Loads a classifier from the specified InputStream. This version works
    * quietly (unless VERBOSE is true). If props is non-null then any properties
@@ -2735,6 +3057,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void writeWeights(PrintStream p) {
+    copyMappedModelToHeap();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
@@ -2751,6 +3074,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public Map<String, Counter<String>> topWeights() {
+    copyMappedModelToHeap();
     Map<String, Counter<String>> w = new HashMap<>();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
@@ -3023,6 +3347,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeTextClassifier(serializeToText);
     }
 
+    if (crf.flags.serializeToFlat != null) {
+      crf.serializeFlatClassifier(crf.flags.serializeToFlat);
+    }
+
     if (testFile != null) {
       // todo: Change testFile to call testFiles with a singleton list
       DocumentReaderAndWriter<CoreLabel> readerAndWriter = crf.defaultReaderAndWriter();
@@ -0,0 +1,95 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import edu.stanford.nlp.util.MappedStringIndex;
+
+/**
+ * CRF weights stored flat in a {@link ByteBuffer}, typically a memory-mapped file,
+ * and used in place as a linear {@link CliquePotentialFunction}.
+ * <p>
+ * The rows of {@code weights[featureIndex][labelIndex]} have different lengths, so they are stored
+ * one after another: the number of rows {@code n}, then {@code n + 1} ints giving where each
+ * row starts, then all the floats (big-endian).
+ */
+public class MappedCRFWeights implements CliquePotentialFunction {
+
+  private final IntBuffer rowStarts;
+  private final FloatBuffer weights;
+
+  private MappedCRFWeights(IntBuffer rowStarts, FloatBuffer weights) {
+    this.rowStarts = rowStarts;
+    this.weights = weights;
+  }
+
+  /**
+   * Open weights stored at the current position of the buffer, and advance the buffer past them.
+   */
+  public static MappedCRFWeights read(ByteBuffer buf) {
+    int numRows = buf.getInt();
+    IntBuffer rowStarts = MappedStringIndex.slice(buf, 4 * (numRows + 1)).asIntBuffer();
+    FloatBuffer weights = MappedStringIndex.slice(buf, 4 * rowStarts.get(numRows)).asFloatBuffer();
+    return new MappedCRFWeights(rowStarts, weights);
+  }
+
+  /** Write the weights in the layout read by {@link #read}. */
+  public static void write(DataOutputStream out, float[][] weights) throws IOException {
+    out.writeInt(weights.length);
+    long start = 0;
+    for (float[] row : weights) {
+      out.writeInt((int) start);
+      start += row.length;
+    }
+    if (start > Integer.MAX_VALUE / 4) {
+      throw new IllegalArgumentException("Too many weights for a flat model: " + start);
+    }
+    out.writeInt((int) start);
+    for (float[] row : weights) {
+      for (float w : row) {
+        out.writeFloat(w);
+      }
+    }
+  }
+
+  /** The number of features, that is, rows of weights. */
+  public int numFeatures() {
+    return rowStarts.capacity() - 1;
+  }
+
+  /** The weight of the given feature for the given label. */
+  public float get(int feature, int label) {
+    return weights.get(rowStarts.get(feature) + label);
+  }
+
+  /** Copy the weights onto the heap, in the usual {@code weights[featureIndex][labelIndex]} form. */
+  public float[][] toArrays() {
+    float[][] arrays = new float[numFeatures()][];
+    for (int i = 0; i < arrays.length; i++) {
+      int start = rowStarts.get(i);
+      arrays[i] = new float[rowStarts.get(i + 1) - start];
+      for (int j = 0; j < arrays[i].length; j++) {
+        arrays[i][j] = weights.get(start + j);
+      }
+    }
+    return arrays;
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+                                       int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double dotProd = weights.get(rowStarts.get(cliqueFeatures[m]) + labelIndex);
+      if (featureVal != null) {
+        dotProd *= featureVal[m];
+      }
+      output += dotProd;
+    }
+    return output;
+  }
+
+}
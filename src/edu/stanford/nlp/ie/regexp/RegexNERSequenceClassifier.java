@@ -8,9 +8,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Properties;
 
@@ -55,8 +57,10 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries whose first regex is a plain literal word (no regex metacharacters) are indexed by
+ * that word, so for each sentence only those entries whose first word occurs in it are tried,
+ * and only at the positions where it occurs.  Entries starting with any other regex are still
+ * evaluated at every token position, so a lot of such patterns will make this classifier slow.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -74,6 +78,12 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   private final boolean ignoreCase;
 
+  /** Indices in {@code entries} of the entries whose first regex is a literal, by that literal (folded if ignoreCase) */
+  private final Map<String, int[]> entriesByFirstWord;
+
+  /** Indices in {@code entries} of the entries whose first regex is not a literal */
+  private final BitSet otherEntries;
+
   // Make this a property?  (But already done as a property at CoreNLP level.)
   // ms: but really this should be rewritten from scratch
   //     we should have a language to specify regexes over *tokens*, where each token could be a regular Java regex (over words, POSs, etc.)
@@ -116,6 +126,11 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    entriesByFirstWord = indexByFirstWord(entries);
+    otherEntries = new BitSet(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i).firstWord == null) otherEntries.set(i);
+    }
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -158,6 +173,11 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    entriesByFirstWord = indexByFirstWord(entries);
+    otherEntries = new BitSet(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i).firstWord == null) otherEntries.set(i);
+    }
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -181,14 +201,50 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     return myLabels;
   }
 
+  /** A regex which is just a string to match, with no metacharacters or surrogate pairs. */
+  private static final Pattern LITERAL_PATTERN = Pattern.compile("[^\\\\.\\[\\]{}()*+?^$|\\uD800-\\uDFFF]+");
+
+  /**
+   * The key by which a word is looked up in {@link #entriesByFirstWord}.  When ignoring case,
+   * each char is folded the way both {@link String#equalsIgnoreCase} and a
+   * {@code CASE_INSENSITIVE | UNICODE_CASE} pattern compare chars, so that a word
+   * has the same key as every literal pattern which matches it.
+   */
+  private static String firstWordKey(String word, boolean ignoreCase) {
+    if ( ! ignoreCase) {
+      return word;
+    }
+    char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  private static Map<String, int[]> indexByFirstWord(List<Entry> entries) {
+    Map<String, List<Integer>> lists = Generics.newHashMap();
+    for (int i = 0; i < entries.size(); i++) {
+      String firstWord = entries.get(i).firstWord;
+      if (firstWord != null) {
+        lists.computeIfAbsent(firstWord, k -> new ArrayList<>()).add(i);
+      }
+    }
+    Map<String, int[]> index = Generics.newHashMap(lists.size());
+    for (Map.Entry<String, List<Integer>> list : lists.entrySet()) {
+      index.put(list.getKey(), list.getValue().stream().mapToInt(Integer::intValue).toArray());
+    }
+    return index;
+  }
+
   private static class Entry implements Comparable<Entry> {
     public List<Pattern> regex; // the regex, tokenized by splitting on white space
     public List<String> exact = new ArrayList<>();
+    public String firstWord; // the key of the first regex if it is a literal, otherwise null
     public String type; // the associated type
     public Set<String> overwritableTypes;
     public double priority;
 
-    public Entry(List<Pattern> regex, String type, Set<String> overwritableTypes, double priority) {
+    public Entry(List<Pattern> regex, String type, Set<String> overwritableTypes, double priority, boolean ignoreCase) {
       this.regex = regex;
       this.type = type.intern();
       this.overwritableTypes = overwritableTypes;
@@ -201,6 +257,10 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
           exact.add(null);
         }
       }
+      String first = regex.get(0).toString();
+      if (LITERAL_PATTERN.matcher(first).matches()) {
+        firstWord = firstWordKey(first, ignoreCase);
+      }
     }
 
     /** If the given priorities are equal, an entry whose regex has more tokens is assigned
@@ -238,30 +298,56 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // log.info("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
-          }
+    // Entries are still applied one at a time in priority order, each from left to right, since a match
+    // changes which later matches are allowed.  But only entries whose first word occurs in the document
+    // (or which don't start with a literal) are tried, and only at the positions where that word occurs.
+    Map<String, List<Integer>> positions = Generics.newHashMap();
+    for (int i = 0; i < document.size(); i++) {
+      String word = document.get(i).word();
+      if (word != null) {
+        positions.computeIfAbsent(firstWordKey(word, ignoreCase), k -> new ArrayList<>()).add(i);
+      }
+    }
+    BitSet candidates = (BitSet) otherEntries.clone();
+    for (String word : positions.keySet()) {
+      int[] bucket = entriesByFirstWord.get(word);
+      if (bucket != null) {
+        for (int i : bucket) candidates.set(i);
+      }
+    }
+
+    for (int e = candidates.nextSetBit(0); e >= 0; e = candidates.nextSetBit(e + 1)) {
+      Entry entry = entries.get(e);
+      int last = document.size() - entry.regex.size();
+      if (entry.firstWord == null) {
+        for (int start = 0; start <= last; start++) {
+          annotateIfMatches(entry, document, start);
+        }
+      } else {
+        for (int start : positions.get(entry.firstWord)) {
+          if (start > last) break;
+          annotateIfMatches(entry, document, start);
         }
-        start++;
       }
     }
     return document;
   }
 
+  private void annotateIfMatches(Entry entry, List<CoreLabel> document, int start) {
+    // log.info("REGEX FIND MATCH FOR " + entry.regex.toString());
+    if ( ! matchesAt(entry, document, start, myLabels, ignoreCase)) {
+      return;
+    }
+    // make sure we annotate only valid POS tags
+    if (containsValidPos(document, start, start + entry.regex.size())) {
+      // annotate each matching token
+      for (int i = start; i < start + entry.regex.size(); i++) {
+        CoreLabel token = document.get(i);
+        token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
+      }
+    }
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping file, and sorts them by
    *  first by priority, then the number of tokens in the regex.
@@ -312,7 +398,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
         throw new IllegalArgumentException("ERROR: Invalid line " + lineCount + " in regexner file " + mapping + ": \"" + line + "\"!", e);
       }
 
-      entries.add(new Entry(tokens, type, overwritableTypes, priority));
+      entries.add(new Entry(tokens, type, overwritableTypes, priority, ignoreCase));
     }
 
     Collections.sort(entries);
@@ -322,51 +408,43 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
   }
 
   /**
-   * Checks if the entry's regex sequence is contained in the tokenized document, starting the search
-   * from index searchStart. Also requires that each token's current NER-type be overwritable,
-   * and that each token has not yet been Answer-annotated.
+   * Checks if the entry's regex sequence matches the tokenized document starting at index start,
+   * which must leave room for the whole sequence. Also requires that each token's current NER-type
+   * be overwritable, and that each token has not yet been Answer-annotated.
    *
    * @param entry
    * @param document
-   * @return on success, the index of the first token in the matching sequence, otherwise -1
+   * @return whether the sequence matches at start
    */
-  private static int findStartIndex(Entry entry, List<CoreLabel> document, int searchStart, Set<String> myLabels, boolean ignoreCase) {
+  private static boolean matchesAt(Entry entry, List<CoreLabel> document, int start, Set<String> myLabels, boolean ignoreCase) {
     List<Pattern> regex = entry.regex;
     int rSize = regex.size();
     // log.info("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
-
-    for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        // Note that we allow currentType to be overwritable, but not in our set of provided labels
-        // The logic here is that if a higher priority regex matches a section, we don't want
-        // a lower priority regex to overwrite it
-        // see edu.stanford.nlp.pipeline.RegexNERAnnotatorITest::testPriority for an example
-        // TODO: perhaps we could let the current type be the same as the entry's type?
-        if (
-            (currentType != null && !entry.overwritableTypes.contains(currentType)) ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
-        }
-      }
-      if (! failed) {
-        // log.info("MATCHED REGEX:");
-        // for(int i = start; i < start + regex.size(); i ++) log.info(" " + document.get(i).word());
-        // log.info();
-        return start;
+    for (int i = 0; i < rSize; i++) {
+      Pattern pattern = regex.get(i);
+      String exact = entry.exact.get(i);
+      CoreLabel token = document.get(start + i);
+      String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
+
+      // Note that we allow currentType to be overwritable, but not in our set of provided labels
+      // The logic here is that if a higher priority regex matches a section, we don't want
+      // a lower priority regex to overwrite it
+      // see edu.stanford.nlp.pipeline.RegexNERAnnotatorITest::testPriority for an example
+      // TODO: perhaps we could let the current type be the same as the entry's type?
+      if (
+          (currentType != null && !entry.overwritableTypes.contains(currentType)) ||
+          (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
+          ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
+          ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
+          ) {
+        return false;
       }
     }
-    return -1;
+    // log.info("MATCHED REGEX:");
+    // for(int i = start; i < start + regex.size(); i ++) log.info(" " + document.get(i).word());
+    // log.info();
+    return true;
   }
 
 
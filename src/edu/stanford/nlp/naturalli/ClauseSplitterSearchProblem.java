@@ -506,7 +506,23 @@ public class ClauseSplitterSearchProblem  {
    * @return The resulting {@link edu.stanford.nlp.naturalli.SentenceFragment} objects, representing the top clauses of the sentence.
    */
   public List<SentenceFragment> topClauses(double thresholdProbability, int maxClauses) {
+    return topClauses(thresholdProbability, maxClauses, SearchBudget.unlimited());
+  }
+
+  /**
+   * Get the top few clauses from this searcher, cutting off at the given minimum
+   * probability, or when the given budget runs out.
+   * Clauses which keep the same edges of the tree are only returned once.
+   *
+   * @param thresholdProbability The threshold under which to stop returning clauses. This should be between 0 and 1.
+   * @param maxClauses A hard limit on the number of clauses to return.
+   * @param budget The budget to charge each expanded search state to.
+   *
+   * @return The resulting {@link edu.stanford.nlp.naturalli.SentenceFragment} objects, representing the top clauses of the sentence.
+   */
+  public List<SentenceFragment> topClauses(double thresholdProbability, int maxClauses, SearchBudget budget) {
     List<SentenceFragment> results = new ArrayList<>();
+    Set<Long> seenClauses = new HashSet<>();
     search(triple -> {
       assert triple.first <= 0.0;
       double prob = Math.exp(triple.first);
@@ -516,12 +532,14 @@ public class ClauseSplitterSearchProblem  {
       if (prob >= thresholdProbability) {
         SentenceFragment fragment = triple.third.get();
         fragment.score = prob;
-        results.add(fragment);
+        if (seenClauses.add(fragment.keptEdgesHash())) {
+          results.add(fragment);
+        }
         return true;
       } else {
         return false;
       }
-    });
+    }, budget);
     return results;
   }
 
@@ -533,12 +551,25 @@ public class ClauseSplitterSearchProblem  {
    * @param candidateFragments The callback function for results. The return value defines whether to continue searching.
    */
   public void search(final Predicate<Triple<Double, List<Counter<String>>, Supplier<SentenceFragment>>> candidateFragments) {
+    search(candidateFragments, SearchBudget.unlimited());
+  }
+
+  /**
+   * Search, using the default weights / featurizer, and stopping when the given budget runs out.
+   *
+   * @see ClauseSplitterSearchProblem#search(Predicate)
+   *
+   * @param candidateFragments The callback function for results. The return value defines whether to continue searching.
+   * @param budget The budget to charge each expanded search state to.
+   */
+  public void search(final Predicate<Triple<Double, List<Counter<String>>, Supplier<SentenceFragment>>> candidateFragments,
+                     SearchBudget budget) {
     if (!isClauseClassifier.isPresent()) {
       search(candidateFragments,
           new LinearClassifier<>(new ClassicCounter<>()),
           HARD_SPLITS,
           this.featurizer.orElse(DEFAULT_FEATURIZER),
-          1000);
+          1000, budget);
     } else {
       if (!(isClauseClassifier.get() instanceof LinearClassifier)) {
         throw new IllegalArgumentException("For now, only linear classifiers are supported");
@@ -547,7 +578,7 @@ public class ClauseSplitterSearchProblem  {
           isClauseClassifier.get(),
           HARD_SPLITS,
           this.featurizer.get(),
-          1000);
+          1000, budget);
     }
   }
 
@@ -570,6 +601,24 @@ public class ClauseSplitterSearchProblem  {
       final Map<String, List<String>> hardCodedSplits,
       final Function<Triple<State, Action, State>, Counter<String>> featurizer,
       final int maxTicks
+  ) {
+    search(candidateFragments, classifier, hardCodedSplits, featurizer, maxTicks, SearchBudget.unlimited());
+  }
+
+  /**
+   * @see ClauseSplitterSearchProblem#search(Predicate, Classifier, Map, Function, int)
+   *
+   * @param budget The budget to charge each expanded search state to, in addition to the maximum number of ticks.
+   */
+  public void search(
+      // The output specs
+      final Predicate<Triple<Double, List<Counter<String>>, Supplier<SentenceFragment>>> candidateFragments,
+      // The learning specs
+      final Classifier<ClauseSplitter.ClauseClassifierLabel, String> classifier,
+      final Map<String, List<String>> hardCodedSplits,
+      final Function<Triple<State, Action, State>, Counter<String>> featurizer,
+      final int maxTicks,
+      final SearchBudget budget
   ) {
     Collection<Action> actionSpace = new ArrayList<>();
 
@@ -740,7 +789,7 @@ public class ClauseSplitterSearchProblem  {
     });
 
     for (IndexedWord root : tree.getRoots()) {
-      search(root, candidateFragments, classifier, hardCodedSplits, featurizer, actionSpace, maxTicks);
+      search(root, candidateFragments, classifier, hardCodedSplits, featurizer, actionSpace, maxTicks, budget);
     }
   }
 
@@ -780,6 +829,8 @@ public class ClauseSplitterSearchProblem  {
    * @param classifier The classifier for whether an arc should be on the path to a clause split, a clause split itself, or neither.
    * @param featurizer The featurizer to use. Make sure this matches the weights!
    * @param actionSpace The action space we are allowed to take. Each action defines a means of splitting a clause on a dependency boundary.
+   * @param maxTicks The maximum number of states to expand from this root.
+   * @param budget The budget to charge each expanded search state to. The search stops early when this runs out.
    */
   protected void search(
       // The root to search from
@@ -791,7 +842,8 @@ public class ClauseSplitterSearchProblem  {
       Map<String, ? extends List<String>> hardCodedSplits,
       final Function<Triple<State, Action, State>, Counter<String>> featurizer,
       final Collection<Action> actionSpace,
-      final int maxTicks
+      final int maxTicks,
+      final SearchBudget budget
   ) {
     // (the fringe)
     PriorityQueue<Pair<State, List<Counter<String>>>> fringe = new FixedPrioritiesPriorityQueue<>();
@@ -808,6 +860,9 @@ public class ClauseSplitterSearchProblem  {
 //        log.info("WARNING! Timed out on search with " + ticks + " ticks");
         return;
       }
+      if (!budget.tick()) {
+        return;
+      }
       // Useful variables
       double logProbSoFar = fringe.getPriority();
       assert logProbSoFar <= 0.0;
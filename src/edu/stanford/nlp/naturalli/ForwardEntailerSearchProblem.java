@@ -6,7 +6,9 @@ import edu.stanford.nlp.ling.IndexedWord;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.util.Lazy;
+import edu.stanford.nlp.util.FixedPrioritiesPriorityQueue;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.PriorityQueue;
 import edu.stanford.nlp.util.StringUtils;
 
 import java.util.*;
@@ -115,9 +117,22 @@ public class ForwardEntailerSearchProblem  {
    *
    * @return A list of entailed fragments.
    */
-  @SuppressWarnings("unchecked")
   public List<SentenceFragment> search() {
-    return searchImplementation().stream()
+    return search(SearchBudget.unlimited());
+  }
+
+  /**
+   * Run a search from this entailer, stopping when the given budget runs out.
+   * The search is best-first, so the fragments found before the budget runs out are
+   * the most confident ones.
+   *
+   * @param budget The budget to charge each expanded search state to. This is usually shared by every search over a sentence.
+   *
+   * @return A list of entailed fragments.
+   */
+  @SuppressWarnings("unchecked")
+  public List<SentenceFragment> search(SearchBudget budget) {
+    return searchImplementation(budget).stream()
         .map(x -> new SentenceFragment(x.tree, truthOfPremise, false).changeScore(x.confidence))
         .filter(x -> x.words.size() > 0 )
         .collect(Collectors.toList());
@@ -126,10 +141,12 @@ public class ForwardEntailerSearchProblem  {
   /**
    * The search algorithm, starting with a full sentence and iteratively shortening it to its entailed sentences.
    *
+   * @param budget The budget to charge each expanded search state to.
+   *
    * @return A list of search results, corresponding to shortenings of the sentence.
    */
   @SuppressWarnings("unchecked")
-  private List<SearchResult> searchImplementation() {
+  private List<SearchResult> searchImplementation(SearchBudget budget) {
     // Pre-process the tree
     SemanticGraph parseTree = new SemanticGraph(this.parseTree);
     assert Util.isTree(parseTree);
@@ -233,8 +250,11 @@ public class ForwardEntailerSearchProblem  {
     if (topologicalVertices.isEmpty()) {
       return results;
     }
-    Stack<SearchState> fringe = new Stack<>();
-    fringe.push(new SearchState(new BitSet(256), 0, parseTree, null, null, 1.0));
+    // (best-first, so that the most confident shortenings are found before we run out of ticks or budget)
+    PriorityQueue<SearchState> fringe = new FixedPrioritiesPriorityQueue<>();
+    fringe.add(new SearchState(new BitSet(256), 0, parseTree, null, null, 1.0), 1.0);
+    // (avoid registering the same shortening twice)
+    Set<Long> seenResults = new HashSet<>();
 
     // Start the search
     int numTicks = 0;
@@ -247,7 +267,10 @@ public class ForwardEntailerSearchProblem  {
       if (results.size() >= maxResults) {
         return results;
       }
-      SearchState state = fringe.pop();
+      if (!budget.tick()) {
+        return results;
+      }
+      SearchState state = fringe.removeFirst();
       assert state.score > 0.0;
       IndexedWord currentWord = topologicalVertices.get(state.currentIndex);
 
@@ -258,7 +281,7 @@ public class ForwardEntailerSearchProblem  {
         IndexedWord nextWord = topologicalVertices.get(nextIndex);
         assert nextWord.index() > 0;
         if (!state.deletionMask.get(nextWord.index() - 1)) {
-          fringe.push(new SearchState(state.deletionMask, nextIndex, state.tree, null, state, state.score));
+          fringe.add(new SearchState(state.deletionMask, nextIndex, state.tree, null, state, state.score), state.score);
           break;
         } else {
           nextIndex += 1;
@@ -326,9 +349,11 @@ public class ForwardEntailerSearchProblem  {
           SemanticGraph resultTree = new SemanticGraph(treeWithDeletionsAndNewMask.get().first);
           andsToAdd.stream().filter(edge -> resultTree.containsVertex(edge.getGovernor()) && resultTree.containsVertex(edge.getDependent()))
               .forEach(edge -> resultTree.addEdge(edge.getGovernor(), edge.getDependent(), edge.getRelation(), Double.NEGATIVE_INFINITY, false));
-          results.add(new SearchResult(resultTree,
-              aggregateDeletedEdges(state, state.tree.incomingEdgeIterable(currentWord), determinerRemovals),
-              newScore));
+          if (seenResults.add(SentenceFragment.keptEdgesHash(resultTree))) {
+            results.add(new SearchResult(resultTree,
+                aggregateDeletedEdges(state, state.tree.incomingEdgeIterable(currentWord), determinerRemovals),
+                newScore));
+          }
 
           // Push the state with this subtree deleted
           nextIndex = state.currentIndex + 1;
@@ -339,7 +364,7 @@ public class ForwardEntailerSearchProblem  {
             SemanticGraph treeWithDeletions = treeWithDeletionsAndNewMask.get().first;
             if ( !newMask.get(nextWord.index() - 1) ) {
               assert treeWithDeletions.containsVertex(topologicalVertices.get(nextIndex));
-              fringe.push(new SearchState(newMask, nextIndex, treeWithDeletions, null, state, newScore));
+              fringe.add(new SearchState(newMask, nextIndex, treeWithDeletions, null, state, newScore), newScore);
               break;
             } else {
               nextIndex += 1;
@@ -32,6 +32,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 
@@ -126,6 +127,21 @@ public class OpenIE implements Annotator  {
   @ArgumentParser.Option(name="strip_entailments", gloss="If true, don't keep the entailed sentences annotations around.")
   private boolean stripEntailments = false;
 
+  @ArgumentParser.Option(name="budget.max_states", gloss="The maximum number of search states to expand per sentence, over clause splitting and entailment. Negative for no limit.")
+  private long budgetMaxStates = -1;
+
+  @ArgumentParser.Option(name="budget.max_millis", gloss="The maximum number of milliseconds to search per sentence, over clause splitting and entailment. Negative for no limit.")
+  private long budgetMaxMillis = -1;
+
+  /** The number of sentences searched for clauses and entailments. */
+  private final AtomicLong sentencesSearched = new AtomicLong();
+
+  /** The number of sentences whose search ran out of states before it finished. */
+  private final AtomicLong sentencesOutOfStates = new AtomicLong();
+
+  /** The number of sentences whose search ran out of time before it finished. */
+  private final AtomicLong sentencesOutOfTime = new AtomicLong();
+
   /**
    * The natural logic weights loaded from the models file.
    * This is primarily the prepositional attachment statistics.
@@ -204,6 +220,30 @@ public class OpenIE implements Annotator  {
     segmenter = new RelationTripleSegmenter(allNominals);
   }
 
+  /**
+   * Create the budget for searching a single sentence, from the <i>budget.max_states</i>
+   * and <i>budget.max_millis</i> options.
+   * The clock starts when this is called.
+   */
+  public SearchBudget newSentenceBudget() {
+    return new SearchBudget(budgetMaxStates, budgetMaxMillis);
+  }
+
+  /** The number of sentences searched for clauses and entailments by {@link OpenIE#annotateSentence(CoreMap, Map)}. */
+  public long sentencesSearched() {
+    return sentencesSearched.get();
+  }
+
+  /** The number of sentences whose search was cut short by <i>budget.max_states</i>. */
+  public long sentencesOutOfStates() {
+    return sentencesOutOfStates.get();
+  }
+
+  /** The number of sentences whose search was cut short by <i>budget.max_millis</i>. */
+  public long sentencesOutOfTime() {
+    return sentencesOutOfTime.get();
+  }
+
   /**
    * Find the clauses in a sentence, where the sentence is expressed as a dependency tree.
    *
@@ -213,10 +253,21 @@ public class OpenIE implements Annotator  {
    *
    * @return A set of clauses extracted from the sentence. This includes the original sentence.
    */
-  @SuppressWarnings("unchecked")
   public List<SentenceFragment> clausesInSentence(SemanticGraph tree, boolean assumedTruth) {
+    return clausesInSentence(tree, assumedTruth, newSentenceBudget());
+  }
+
+  /**
+   * Find the clauses in a sentence, stopping with the best clauses found so far if the budget runs out.
+   *
+   * @see OpenIE#clausesInSentence(SemanticGraph, boolean)
+   *
+   * @param budget The search budget for the sentence.
+   */
+  @SuppressWarnings("unchecked")
+  public List<SentenceFragment> clausesInSentence(SemanticGraph tree, boolean assumedTruth, SearchBudget budget) {
     if (clauseSplitter.isPresent()) {
-      return clauseSplitter.get().apply(tree, assumedTruth).topClauses(splitterThreshold, 32);
+      return clauseSplitter.get().apply(tree, assumedTruth).topClauses(splitterThreshold, 32, budget);
     } else {
       return Collections.emptyList();
     }
@@ -245,15 +296,27 @@ public class OpenIE implements Annotator  {
    *
    * @return A list of entailed clauses.
    */
-  @SuppressWarnings("unchecked")
   public List<SentenceFragment> entailmentsFromClause(SentenceFragment clause) {
+    return entailmentsFromClause(clause, newSentenceBudget());
+  }
+
+  /**
+   * Returns the entailed shortened clauses from the given clause, stopping with the most
+   * confident ones found so far if the budget runs out.
+   *
+   * @see OpenIE#entailmentsFromClause(SentenceFragment)
+   *
+   * @param budget The search budget for the sentence the clause is from.
+   */
+  @SuppressWarnings("unchecked")
+  public List<SentenceFragment> entailmentsFromClause(SentenceFragment clause, SearchBudget budget) {
     if (clause.parseTree.isEmpty()) {
       return Collections.emptyList();
     } else {
       // Get the forward entailments
       List<SentenceFragment> list = new ArrayList<>();
       if (entailmentsPerSentence > 0) {
-        list.addAll(forwardEntailer.apply(clause.parseTree, true).search()
+        list.addAll(forwardEntailer.apply(clause.parseTree, true).search(budget)
             .stream().map(x -> x.changeScore(x.score * clause.score)).collect(Collectors.toList()));
       }
       list.add(clause);
@@ -309,9 +372,21 @@ public class OpenIE implements Annotator  {
    * @return A set of sentence fragments corresponding to the maximally shortened entailed clauses.
    */
   public Set<SentenceFragment> entailmentsFromClauses(Collection<SentenceFragment> clauses) {
+    return entailmentsFromClauses(clauses, newSentenceBudget());
+  }
+
+  /**
+   * Returns the maximally shortened entailed fragments from the given collection of clauses,
+   * charging all of the searches to a single budget.
+   *
+   * @see OpenIE#entailmentsFromClauses(Collection)
+   *
+   * @param budget The search budget for the sentence the clauses are from.
+   */
+  public Set<SentenceFragment> entailmentsFromClauses(Collection<SentenceFragment> clauses, SearchBudget budget) {
     Set<SentenceFragment> entailments = new HashSet<>();
     for (SentenceFragment clause : clauses) {
-      entailments.addAll(entailmentsFromClause(clause));
+      entailments.addAll(entailmentsFromClause(clause, budget));
     }
     return entailments;
   }
@@ -376,7 +451,9 @@ public class OpenIE implements Annotator  {
    * @see OpenIE#relationsInFragments(Collection)
    */
   public List<RelationTriple> relationsInSentence(CoreMap sentence) {
-    return relationsInFragments(entailmentsFromClauses(clausesInSentence(sentence)));
+    SearchBudget budget = newSentenceBudget();
+    SemanticGraph tree = sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class);
+    return relationsInFragments(entailmentsFromClauses(clausesInSentence(tree, true, budget), budget));
   }
 
 
@@ -480,10 +557,18 @@ public class OpenIE implements Annotator  {
       }
 
       // Run OpenIE
+      SearchBudget budget = newSentenceBudget();
       // (clauses)
-      List<SentenceFragment> clauses = clausesInSentence(canonicalizedParse, true);  // note: uses coref-canonicalized parse
+      List<SentenceFragment> clauses = clausesInSentence(canonicalizedParse, true, budget);  // note: uses coref-canonicalized parse
       // (entailment)
-      Set<SentenceFragment> fragments = entailmentsFromClauses(clauses);
+      Set<SentenceFragment> fragments = entailmentsFromClauses(clauses, budget);
+      // (record whether we had to cut the search short)
+      sentencesSearched.incrementAndGet();
+      if (budget.isOutOfStates()) {
+        sentencesOutOfStates.incrementAndGet();
+      } else if (budget.isOutOfTime()) {
+        sentencesOutOfTime.incrementAndGet();
+      }
       // (segment)
       List<RelationTriple> extractions = segmenter.extract(parse, tokens);  // note: uses non-coref-canonicalized parse!
       extractions.addAll(relationsInFragments(fragments, sentence));
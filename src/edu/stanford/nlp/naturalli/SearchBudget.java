@@ -0,0 +1,82 @@
+package edu.stanford.nlp.naturalli;
+
+/**
+ * A bound on the compute spent on the searches over one sentence: the clause splitting search
+ * and the forward entailment searches from each of its clauses share a single budget.
+ * The budget is a maximum number of search states expanded, and a maximum wall-clock time.
+ * Once either runs out, every search using the budget stops and returns what it has found so far.
+ * <br>
+ * A budget is for one sentence on one thread; it is not thread safe.
+ *
+ * @see OpenIE
+ */
+public class SearchBudget {
+
+  /** The maximum number of states to expand, or a negative number for no limit */
+  public final long maxStates;
+
+  /** The wall-clock time (in the units of {@link System#nanoTime()}) after which to stop, or {@link Long#MAX_VALUE} */
+  private final long deadline;
+
+  private long statesExpanded; // = 0;
+  private boolean outOfStates; // = false;
+  private boolean outOfTime; // = false;
+
+  /**
+   * Create a new budget, starting the clock now.
+   *
+   * @param maxStates The maximum number of search states to expand, or a negative number for no limit.
+   * @param maxMillis The maximum number of milliseconds to search for, or a negative number for no limit.
+   */
+  public SearchBudget(long maxStates, long maxMillis) {
+    this.maxStates = maxStates;
+    this.deadline = maxMillis < 0 ? Long.MAX_VALUE : System.nanoTime() + maxMillis * 1000000L;
+  }
+
+  /** A budget which never runs out. */
+  public static SearchBudget unlimited() {
+    return new SearchBudget(-1, -1);
+  }
+
+  /**
+   * Register the expansion of a search state, if there is budget left for it.
+   *
+   * @return True if the state may be expanded; false if the budget is exhausted and the search should stop.
+   */
+  public boolean tick() {
+    if (outOfStates || outOfTime) {
+      return false;
+    }
+    if (maxStates >= 0 && statesExpanded >= maxStates) {
+      outOfStates = true;
+      return false;
+    }
+    if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+      outOfTime = true;
+      return false;
+    }
+    statesExpanded += 1;
+    return true;
+  }
+
+  /** The number of states expanded against this budget so far. */
+  public long statesExpanded() {
+    return statesExpanded;
+  }
+
+  /** Whether a search stopped because the maximum number of states was reached. */
+  public boolean isOutOfStates() {
+    return outOfStates;
+  }
+
+  /** Whether a search stopped because the wall-clock time ran out. */
+  public boolean isOutOfTime() {
+    return outOfTime;
+  }
+
+  /** Whether a search stopped early on this budget, for either reason. */
+  public boolean isExhausted() {
+    return outOfStates || outOfTime;
+  }
+
+}
@@ -65,6 +65,41 @@ public class SentenceFragment {
     return this;
   }
 
+  /**
+   * A 64 bit hash of the edges (and roots) kept in this fragment's parse tree.
+   * Two fragments which keep the same edges of the same sentence are equivalent, however
+   * they were found; the search uses this to avoid extracting from a fragment twice.
+   *
+   * @see SentenceFragment#keptEdgesHash(SemanticGraph)
+   */
+  public long keptEdgesHash() {
+    return keptEdgesHash(parseTree);
+  }
+
+  /**
+   * @see SentenceFragment#keptEdgesHash()
+   */
+  public static long keptEdgesHash(SemanticGraph tree) {
+    // A sum of mixed hashes, so that the order the edges are iterated in doesn't matter
+    long hash = 0;
+    for (IndexedWord root : tree.getRoots()) {
+      hash += mix(((long) root.index() << 32) ^ root.copyCount());
+    }
+    for (SemanticGraphEdge edge : tree.edgeIterable()) {
+      long nodes = ((long) edge.getGovernor().index() << 42) ^ ((long) edge.getGovernor().copyCount() << 32) ^
+          ((long) edge.getDependent().index() << 10) ^ edge.getDependent().copyCount();
+      hash += mix(mix(nodes) ^ edge.getRelation().toString().hashCode());
+    }
+    return hash;
+  }
+
+  /** The finalizer of the SplitMix64 generator: a cheap, well distributed mix of the bits of a long */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
   /**
    * Return the tokens in this fragment, but padded with null so that the index in this
    * sentence matches the index of the parse tree.
@@ -1,21 +1,30 @@
 package edu.stanford.nlp.neural;
 
-import java.io.IOException;
-import java.io.Serializable;
+import java.io.*;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.ejml.simple.SimpleMatrix;
 
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.util.ErasureUtils;
 import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.logging.Redwood;
 
 /**
+ * A map from words to word vectors, with handling of unknown words.
+ * <p>
+ * The vectors are normally a HashMap of {@link SimpleMatrix}.  For large vocabularies, an
+ * Embedding can instead be backed by {@link FlatWordVectors}, which keeps all of the vectors in
+ * one block of floats, memory-mapped from a file when possible.  Use {@link #writeFlatToFile}
+ * or {@link #main} to convert an Embedding, and {@link #load} to read either format.
+ *
  * @author Minh-Thang Luong {@code <lmthang@stanford.edu>}
  * @author John Bauer
  * @author Richard Socher
@@ -236,6 +245,43 @@ public class Embedding implements Serializable  {
     IOUtils.writeObjectToFile(wordVectors, filename);
   }
 
+  /**
+   * Write the word vectors as a {@link FlatWordVectors} file, which {@link #load} reads
+   * by memory-mapping it.  The values are stored as floats.
+   */
+  public void writeFlatToFile(String filename) throws IOException {
+    Map<String, SimpleMatrix> vectors = wordVectors;
+    if ( ! vectors.containsKey(UNKNOWN_WORD)) {
+      // vectors read from text may only have another spelling of it, which FlatWordVectors cannot add later
+      vectors = Generics.newHashMap(wordVectors);
+      getEmbeddingSize(vectors);
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+      FlatWordVectors.write(out, vectors, embeddingSize);
+    }
+  }
+
+  /**
+   * Load an Embedding from a file, classpath resource or URL.  This may be a
+   * {@link FlatWordVectors} file, a serialized Embedding, or a serialized
+   * {@code Map<String, SimpleMatrix>} as written by {@link #writeToFile}.
+   */
+  public static Embedding load(String path) throws IOException, ClassNotFoundException {
+    try (InputStream in = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)) {
+      if (FlatWordVectors.isFlat(in)) {
+        return new Embedding(FlatWordVectors.load(path));
+      }
+      Object o = new ObjectInputStream(in).readObject();
+      if (o instanceof Embedding) {
+        return (Embedding) o;
+      } else if (o instanceof Map) {
+        return new Embedding(ErasureUtils.<Map<String, SimpleMatrix>>uncheckedCast(o));
+      } else {
+        throw new ClassCastException("Expected an Embedding or a Map in " + path + " but got " + o.getClass().getName());
+      }
+    }
+  }
+
   /* -- Getters and Setters -- */
 
   public int size(){
@@ -255,8 +301,10 @@ public class Embedding implements Serializable  {
   }
 
   public SimpleMatrix get(String word) {
-    if(wordVectors.containsKey(word)){
-      return wordVectors.get(word);
+    // the maps used here have no null values, so one lookup is enough
+    SimpleMatrix vector = wordVectors.get(word);
+    if (vector != null) {
+      return vector;
     } else {
       return wordVectors.get(UNKNOWN_WORD);
     }
@@ -312,4 +360,32 @@ public class Embedding implements Serializable  {
     return wordVectors.get(UNKNOWN_WORD).getNumElements();
   }
 
+  /**
+   * Converts word vectors to a {@link FlatWordVectors} file.
+   * <br>
+   * Usage: {@code java edu.stanford.nlp.neural.Embedding -output vectors.flat}
+   * followed by one of {@code -input embedding.ser.gz} (a serialized Embedding or Map),
+   * {@code -wordVectorFile vectors.txt} (one word and its vector per line),
+   * or {@code -wordFile words.txt -vectorFile vectors.txt}.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    Properties props = StringUtils.argsToProperties(args);
+    String output = props.getProperty("output");
+    if (output == null) {
+      throw new IllegalArgumentException("Please specify -output");
+    }
+    Embedding embedding;
+    if (props.containsKey("input")) {
+      embedding = load(props.getProperty("input"));
+    } else if (props.containsKey("wordVectorFile")) {
+      embedding = new Embedding(props.getProperty("wordVectorFile"));
+    } else if (props.containsKey("wordFile") && props.containsKey("vectorFile")) {
+      embedding = new Embedding(props.getProperty("wordFile"), props.getProperty("vectorFile"));
+    } else {
+      throw new IllegalArgumentException("Please specify -input, -wordVectorFile, or -wordFile and -vectorFile");
+    }
+    embedding.writeFlatToFile(output);
+    log.info("Wrote " + embedding.size() + " vectors of size " + embedding.getEmbeddingSize() + " to " + output);
+  }
+
 }
@@ -0,0 +1,217 @@
+package edu.stanford.nlp.neural;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.util.MappedStringIndex;
+
+/**
+ * A read-only map from words to column vectors, stored as one contiguous block of floats plus a
+ * {@link MappedStringIndex} of the words, instead of one {@link SimpleMatrix} per word.
+ * The block is either a memory-mapped file or a single array on the heap.
+ * <p>
+ * {@link #get} returns a new SimpleMatrix each time, so changing a returned vector
+ * does not change the map, and vectors should not be compared by identity.
+ * The values are stored as floats, so they may differ from double-precision originals in the 8th digit.
+ * <p>
+ * The file layout, written by {@link #write}, is the 8 bytes "EMB.FLAT", a version number,
+ * the vector size, the words as a {@link MappedStringIndex}, and then the vector of each word in order.
+ * When it is Java-serialized, a {@link HashMap} of SimpleMatrix is written instead, as
+ * {@link Embedding} has always used.
+ */
+public class FlatWordVectors extends AbstractMap<String, SimpleMatrix> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final long MAGIC = 0x454d422e464c4154L;
+  private static final int VERSION = 1;
+
+  private final MappedStringIndex words;
+  private final FloatBuffer vectors;
+  private final int dimension;
+
+  private FlatWordVectors(MappedStringIndex words, FloatBuffer vectors, int dimension) {
+    this.words = words;
+    this.vectors = vectors;
+    this.dimension = dimension;
+  }
+
+  /**
+   * Whether the stream starts like a file written by {@link #write}.
+   * The stream must support mark and reset, and is left where it was.
+   */
+  public static boolean isFlat(InputStream in) throws IOException {
+    in.mark(8);
+    try {
+      return new DataInputStream(in).readLong() == MAGIC;
+    } catch (EOFException e) {
+      return false;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Read vectors from a buffer as written by {@link #write}.  The vectors are used in place.
+   */
+  public static FlatWordVectors read(ByteBuffer buf) throws IOException {
+    if (buf.getLong() != MAGIC) {
+      throw new IOException("Not a flat word vector file");
+    }
+    int version = buf.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported flat word vector version " + version);
+    }
+    int dimension = buf.getInt();
+    MappedStringIndex words = MappedStringIndex.read(buf);
+    FloatBuffer vectors = MappedStringIndex.slice(buf, 4 * dimension * words.size()).asFloatBuffer();
+    return new FlatWordVectors(words, vectors, dimension);
+  }
+
+  /**
+   * Load vectors written by {@link #write}.  A plain file is memory-mapped, so that the vectors
+   * are not on the heap at all and processes using the same file share it.  Anything else
+   * (a classpath resource, a URL or a gzipped file) is read into a single heap array.
+   */
+  public static FlatWordVectors load(String path) throws IOException {
+    File file = new File(path);
+    if (file.isFile() && ! path.endsWith(".gz")) {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException("Flat word vector files of over 2GB are not supported: " + path);
+        }
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+    try (InputStream in = IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(path)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] chunk = new byte[1 << 16];
+      for (int n; (n = in.read(chunk)) > 0; ) {
+        bytes.write(chunk, 0, n);
+      }
+      return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+  }
+
+  /**
+   * Write word vectors in the flat format.
+   *
+   * @param out Where to write
+   * @param wordVectors The vectors; each must be a column vector with {@code dimension} elements
+   * @param dimension The size of the vectors
+   */
+  public static void write(DataOutputStream out, Map<String, SimpleMatrix> wordVectors, int dimension) throws IOException {
+    List<String> words = new ArrayList<>(wordVectors.keySet());
+    out.writeLong(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(dimension);
+    MappedStringIndex.write(out, words);
+    for (String word : words) {
+      SimpleMatrix vector = wordVectors.get(word);
+      if (vector.getNumElements() != dimension) {
+        throw new IllegalArgumentException("Vector for " + word + " has " + vector.getNumElements() + " elements, not " + dimension);
+      }
+      for (int i = 0; i < dimension; i++) {
+        out.writeFloat((float) vector.get(i));
+      }
+    }
+  }
+
+  /** The size of each vector. */
+  public int dimension() {
+    return dimension;
+  }
+
+  @Override
+  public SimpleMatrix get(Object word) {
+    if ( ! (word instanceof String)) {
+      return null;
+    }
+    int index = words.indexOf((String) word);
+    return index < 0 ? null : vector(index);
+  }
+
+  private SimpleMatrix vector(int index) {
+    SimpleMatrix vector = new SimpleMatrix(dimension, 1);
+    int start = index * dimension;
+    for (int i = 0; i < dimension; i++) {
+      vector.set(i, vectors.get(start + i));
+    }
+    return vector;
+  }
+
+  @Override
+  public boolean containsKey(Object word) {
+    return words.contains(word);
+  }
+
+  @Override
+  public int size() {
+    return words.size();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return words.iterator();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return words.contains(o);
+      }
+
+      @Override
+      public int size() {
+        return words.size();
+      }
+    };
+  }
+
+  @Override
+  public Set<Map.Entry<String, SimpleMatrix>> entrySet() {
+    return new AbstractSet<Map.Entry<String, SimpleMatrix>>() {
+      @Override
+      public Iterator<Map.Entry<String, SimpleMatrix>> iterator() {
+        return new Iterator<Map.Entry<String, SimpleMatrix>>() {
+          private int index; // = 0;
+
+          @Override
+          public boolean hasNext() {
+            return index < words.size();
+          }
+
+          @Override
+          public Map.Entry<String, SimpleMatrix> next() {
+            if ( ! hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<String, SimpleMatrix> entry = new AbstractMap.SimpleImmutableEntry<>(words.get(index), vector(index));
+            index++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return words.size();
+      }
+    };
+  }
+
+  /** Serialize as an ordinary HashMap, since the buffer cannot be serialized. */
+  private Object writeReplace() {
+    return new HashMap<>(this);
+  }
+
+}
@@ -73,4 +73,11 @@ public interface ParserQuery {
   boolean parseUnparsable();
 
   List<? extends HasWord> originalSentence();
+
+  /**
+   * Gives back any memory borrowed for the most recent parse, after
+   * which its results may no longer be available.  Parsers which don't
+   * share their memory don't need to do anything.
+   */
+  default void release() {}
 }
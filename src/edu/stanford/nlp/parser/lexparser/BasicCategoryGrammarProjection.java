@@ -0,0 +1,100 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/** Projects a grammar onto the basic categories of its states (so NP^S and NP^VP
+ *  both become NP, and {@code @NP|DT} becomes {@code @NP}).  Each rule of the
+ *  projected grammar scores the best of the rules which project onto it, so a
+ *  parse in the projected grammar always scores at least as well as any parse
+ *  which projects onto it.  This is the coarse grammar used by
+ *  {@link CoarseToFinePruner}.
+ */
+class BasicCategoryGrammarProjection implements GrammarProjection {
+
+  private final BinaryGrammar sourceBG;
+  private final UnaryGrammar sourceUG;
+  private final BinaryGrammar targetBG;
+  private final UnaryGrammar targetUG;
+
+  private final Index<String> targetIndex = new HashIndex<>();
+  private final int[] projection;
+
+  BasicCategoryGrammarProjection(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex, TreebankLanguagePack tlp) {
+    this.sourceBG = bg;
+    this.sourceUG = ug;
+    projection = new int[stateIndex.size()];
+    for (int state = 0; state < projection.length; state++) {
+      projection[state] = targetIndex.addToIndex(tlp.basicCategory(stateIndex.get(state)));
+    }
+
+    Map<BinaryRule, BinaryRule> binaries = Generics.newHashMap();
+    for (BinaryRule rule : bg) {
+      BinaryRule projected = new BinaryRule(project(rule.parent), project(rule.leftChild), project(rule.rightChild), rule.score);
+      BinaryRule best = binaries.putIfAbsent(projected, projected);
+      if (best != null && best.score < projected.score) {
+        best.score = projected.score;
+      }
+    }
+    targetBG = new BinaryGrammar(targetIndex);
+    for (BinaryRule rule : binaries.values()) {
+      targetBG.addRule(rule);
+    }
+    targetBG.splitRules();
+
+    // the closed rules already include chains of unaries
+    Map<UnaryRule, UnaryRule> unaries = Generics.newHashMap();
+    for (Iterator<UnaryRule> iter = ug.closedRuleIterator(); iter.hasNext(); ) {
+      UnaryRule rule = iter.next();
+      UnaryRule projected = new UnaryRule(project(rule.parent), project(rule.child), rule.score);
+      if (projected.parent == projected.child) {
+        continue;
+      }
+      UnaryRule best = unaries.putIfAbsent(projected, projected);
+      if (best != null && best.score < projected.score) {
+        best.score = projected.score;
+      }
+    }
+    targetUG = new UnaryGrammar(targetIndex);
+    for (UnaryRule rule : unaries.values()) {
+      targetUG.addRule(rule);
+    }
+    targetUG.purgeRules();
+  }
+
+  @Override
+  public int project(int state) {
+    return projection[state];
+  }
+
+  /** The states of the projected grammar. */
+  public Index<String> targetIndex() {
+    return targetIndex;
+  }
+
+  @Override
+  public UnaryGrammar sourceUG() {
+    return sourceUG;
+  }
+
+  @Override
+  public BinaryGrammar sourceBG() {
+    return sourceBG;
+  }
+
+  @Override
+  public UnaryGrammar targetUG() {
+    return targetUG;
+  }
+
+  @Override
+  public BinaryGrammar targetBG() {
+    return targetBG;
+  }
+
+}
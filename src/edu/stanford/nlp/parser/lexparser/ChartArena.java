@@ -0,0 +1,127 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+/** The chart of an {@link ExhaustivePCFGParser}: the inside and outside
+ *  scores and the other arrays it uses to parse sentences up to some length.
+ *  A chart can be used by one parser after another through a
+ *  {@link ChartArenaPool}, rather than each parser allocating its own.
+ *  <br>
+ *  The chart is only used by one parser at a time, and the parser resets
+ *  each array before using it.
+ */
+class ChartArena {
+
+  /** The longest sentence (including the boundary symbol) the chart holds, plus one */
+  final int capacity;
+  final int numStates;
+  /** Whether the chart has outside scores and the arrays for the factored parser */
+  final boolean outside;
+  final boolean lengthNormalization;
+  /** The most memory the chart may use, which is what it uses unless it is pruned */
+  final long bytes;
+
+  float[][][] iScore;  // start idx, end idx, state -> logProb
+  float[][][] oScore;  // start idx, end idx, state -> logProb
+  int[][][] wordsInSpan;
+
+  int[][] narrowLExtent;
+  int[][] wideLExtent;
+  int[][] narrowRExtent;
+  int[][] wideRExtent;
+
+  boolean[][] iPossibleByL;
+  boolean[][] iPossibleByR;
+  boolean[][] oPossibleByL;
+  boolean[][] oPossibleByR;
+
+  boolean[][] tags;
+
+  /** The cell of every span which a pruned parse doesn't build in.  It is all
+   *  NEGATIVE_INFINITY, and is never written to.
+   */
+  final float[] deadCell;
+
+  /**
+   * @param capacity The longest sentence (including the boundary symbol) the chart holds, plus one
+   * @param numStates The number of states of the grammar
+   * @param numTags The number of tags of the grammar
+   * @param outside Whether to make outside scores and the arrays for the factored parser
+   * @param lengthNormalization Whether to count the words in each span
+   * @param sparse If true, only the cells of one word spans are made here, and
+   *               the parser makes the others as it needs them
+   */
+  ChartArena(int capacity, int numStates, int numTags, boolean outside, boolean lengthNormalization, boolean sparse) {
+    this.capacity = capacity;
+    this.numStates = numStates;
+    this.outside = outside;
+    this.lengthNormalization = lengthNormalization;
+    this.bytes = bytes(capacity, numStates, numTags, outside, lengthNormalization);
+
+    // allocate just the parts of iScore and oScore used (end > start, etc.)
+    iScore = new float[capacity][capacity + 1][];
+    for (int start = 0; start < capacity; start++) {
+      for (int end = start + 1; end <= (sparse ? start + 1 : capacity); end++) {
+        iScore[start][end] = new float[numStates];
+      }
+    }
+    if (outside) {
+      oScore = new float[capacity][capacity + 1][];
+      for (int start = 0; start < capacity; start++) {
+        for (int end = start + 1; end <= (sparse ? start + 1 : capacity); end++) {
+          oScore[start][end] = new float[numStates];
+        }
+      }
+    }
+    narrowRExtent = new int[capacity][numStates];
+    wideRExtent = new int[capacity][numStates];
+    narrowLExtent = new int[capacity + 1][numStates];
+    wideLExtent = new int[capacity + 1][numStates];
+    if (outside) {
+      iPossibleByL = new boolean[capacity][numStates];
+      iPossibleByR = new boolean[capacity + 1][numStates];
+      oPossibleByL = new boolean[capacity][numStates];
+      oPossibleByR = new boolean[capacity + 1][numStates];
+    }
+    tags = new boolean[capacity][numTags];
+
+    if (lengthNormalization) {
+      wordsInSpan = new int[capacity][capacity + 1][];
+      for (int start = 0; start < capacity; start++) {
+        for (int end = start + 1; end <= capacity; end++) {
+          wordsInSpan[start][end] = new int[numStates];
+        }
+      }
+    }
+
+    deadCell = new float[numStates];
+    Arrays.fill(deadCell, Float.NEGATIVE_INFINITY);
+  }
+
+  /** Whether a parser with these options can parse a sentence of this length with this chart. */
+  boolean fits(int capacity, boolean outside, boolean lengthNormalization) {
+    return capacity <= this.capacity && outside == this.outside && lengthNormalization == this.lengthNormalization;
+  }
+
+  /** About how many bytes a chart with these arguments uses when all its cells are made. */
+  static long bytes(int capacity, int numStates, int numTags, boolean outside, boolean lengthNormalization) {
+    long cells = (long) capacity * (capacity + 1) / 2;
+    long bytes = cells * numStates * 4;                       // iScore
+    if (outside) {
+      bytes += cells * numStates * 4;                         // oScore
+      bytes += (4L * capacity + 2) * numStates;               // iPossible and oPossible
+    }
+    if (lengthNormalization) {
+      bytes += cells * numStates * 4;                         // wordsInSpan
+    }
+    bytes += (4L * capacity + 2) * numStates * 4;             // extents
+    bytes += (long) capacity * numTags;                       // tags
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ChartArena[capacity=" + capacity + ", " + bytes + " bytes]";
+  }
+
+}
@@ -0,0 +1,207 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+/**
+ * A bounded pool of {@link ChartArena}s shared by the queries of a
+ * {@link LexicalizedParser}, so that the parser's charts use at most a fixed
+ * amount of memory however many threads are parsing, and the charts of one
+ * sentence are reused for the next rather than allocated again.
+ * <br>
+ * A query borrows a chart big enough for its sentence when it parses, and
+ * gives it back when it is {@link edu.stanford.nlp.parser.common.ParserQuery#release() released}
+ * (or, failing that, when the query is garbage collected).  Charts are made in
+ * sizes of whole buckets of words, so they can be reused for sentences of
+ * similar lengths.  If all the memory is in use, a query waits for another
+ * to give back a chart, dropping unused charts to make room if need be.  A
+ * sentence whose chart alone would be more than the budget isn't parsed: the
+ * query skips it, as it does sentences longer than {@code -maxLength}.
+ * <br>
+ * The pool is turned on with {@code -chartArenaBytes n}.
+ */
+public class ChartArenaPool {
+
+  /** Charts are made for sentences of a multiple of this many words */
+  static final int BUCKET_SIZE = 10;
+
+  private final long maxBytes;
+  private final int numStates;
+  private final int numTags;
+
+  private final List<ChartArena> idle = new ArrayList<>();
+  /** The charts in use, by the parser using them.  A parser which is
+   *  thrown away without giving its chart back drops out of this map.
+   */
+  private final Map<Object, ChartArena> borrowed = new WeakHashMap<>();
+  private long idleBytes; // = 0;
+
+  private long allocated; // = 0;
+  private long reused; // = 0;
+  private long dropped; // = 0;
+  private long waited; // = 0;
+  private long refused; // = 0;
+
+  /**
+   * @param maxBytes The most memory for the charts to use, as estimated by {@link ChartArena#bytes}
+   * @param numStates The number of states of the grammar
+   * @param numTags The number of tags of the grammar
+   */
+  public ChartArenaPool(long maxBytes, int numStates, int numTags) {
+    this.maxBytes = maxBytes;
+    this.numStates = numStates;
+    this.numTags = numTags;
+  }
+
+  /** The longest sentence (including the boundary symbol) whose chart fits in the budget,
+   *  for a parser with these options.
+   */
+  public int maxLength(boolean outside, boolean lengthNormalization) {
+    int capacity = BUCKET_SIZE;
+    while (ChartArena.bytes(capacity + BUCKET_SIZE, numStates, numTags, outside, lengthNormalization) <= maxBytes) {
+      capacity += BUCKET_SIZE;
+    }
+    return capacity - 1;
+  }
+
+  /**
+   * Borrows a chart, waiting for other parsers to give charts back if there isn't room for it.
+   * The parser should give back any chart it has before borrowing another.
+   *
+   * @param borrower The parser which will use the chart
+   * @param capacity The longest sentence (including the boundary symbol) the chart needs to hold, plus one
+   * @param outside Whether the chart needs outside scores
+   * @param lengthNormalization Whether the chart needs to count the words in each span
+   * @param sparse Whether the parser prunes its chart, and so makes most cells itself
+   * @throws ChartTooLargeException If the chart would be bigger than the whole budget
+   */
+  ChartArena acquire(Object borrower, int capacity, boolean outside, boolean lengthNormalization, boolean sparse) {
+    int bucket = (capacity + BUCKET_SIZE - 1) / BUCKET_SIZE * BUCKET_SIZE;
+    long bytes = ChartArena.bytes(bucket, numStates, numTags, outside, lengthNormalization);
+    synchronized (this) {
+      if (bytes > maxBytes) {
+        refused += 1;
+        throw new ChartTooLargeException("Sentence too long for a chart of at most " + maxBytes + " bytes: length " + (capacity - 1));
+      }
+      boolean counted = false;
+      while (true) {
+        // the smallest idle chart which is big enough
+        ChartArena best = null;
+        for (ChartArena arena : idle) {
+          if (arena.fits(capacity, outside, lengthNormalization) && (best == null || arena.capacity < best.capacity)) {
+            best = arena;
+          }
+        }
+        if (best != null) {
+          idle.remove(best);
+          idleBytes -= best.bytes;
+          borrowed.put(borrower, best);
+          reused += 1;
+          return best;
+        }
+        // otherwise make a new one, if there is room or we can make room by dropping idle charts
+        long borrowedBytes = sumBorrowedBytes();
+        if (borrowedBytes + bytes <= maxBytes) {
+          for (Iterator<ChartArena> iter = idle.iterator(); iter.hasNext() && borrowedBytes + idleBytes + bytes > maxBytes; ) {
+            ChartArena arena = iter.next();
+            iter.remove();
+            idleBytes -= arena.bytes;
+            dropped += 1;
+          }
+          break;
+        }
+        if ( ! counted) {
+          waited += 1;
+          counted = true;
+        }
+        try {
+          // also check now and then for charts whose parsers were thrown away
+          wait(1000);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        }
+      }
+      allocated += 1;
+    }
+    // make the chart outside the lock; the budget already counts it
+    ChartArena arena;
+    try {
+      arena = new ChartArena(bucket, numStates, numTags, outside, lengthNormalization, sparse);
+    } catch (OutOfMemoryError e) {
+      synchronized (this) {
+        notifyAll();
+      }
+      throw e;
+    }
+    synchronized (this) {
+      borrowed.put(borrower, arena);
+    }
+    return arena;
+  }
+
+  /** Gives back a chart.  The parser mustn't use it afterwards. */
+  synchronized void release(Object borrower, ChartArena arena) {
+    if (borrowed.get(borrower) == arena) {
+      borrowed.remove(borrower);
+      idle.add(arena);
+      idleBytes += arena.bytes;
+      notifyAll();
+    }
+  }
+
+  private long sumBorrowedBytes() {
+    long bytes = 0;
+    for (ChartArena arena : borrowed.values()) {
+      bytes += arena.bytes;
+    }
+    return bytes;
+  }
+
+  /** The most memory for the charts to use. */
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  /** The memory of the charts in use. */
+  public synchronized long bytesInUse() {
+    return sumBorrowedBytes();
+  }
+
+  /** The memory of the charts waiting to be reused. */
+  public synchronized long idleBytes() {
+    return idleBytes;
+  }
+
+  /** The number of charts made. */
+  public synchronized long allocated() {
+    return allocated;
+  }
+
+  /** The number of times a chart was reused. */
+  public synchronized long reused() {
+    return reused;
+  }
+
+  /** The number of times a parser had to wait for another to give back a chart. */
+  public synchronized long waited() {
+    return waited;
+  }
+
+  /** The number of sentences whose chart would be bigger than the budget. */
+  public synchronized long refused() {
+    return refused;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ChartArenaPool[" + borrowed.size() + " charts in use (" + sumBorrowedBytes() + " bytes), " +
+        idle.size() + " idle (" + idleBytes + " bytes), max " + maxBytes + " bytes; " +
+        allocated + " allocated, " + reused + " reused, " + dropped + " dropped, " + waited + " waits, " + refused + " refused]";
+  }
+
+}
@@ -0,0 +1,16 @@
+package edu.stanford.nlp.parser.lexparser;
+
+/**
+ * Thrown by a {@link ChartArenaPool} when the chart for a sentence would be
+ * bigger than the pool's whole budget, so the sentence can't be parsed
+ * however long the parser waits.
+ */
+public class ChartTooLargeException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public ChartTooLargeException(String message) {
+    super(message);
+  }
+
+}
@@ -0,0 +1,220 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** The coarse pass of coarse-to-fine PCFG parsing.  Before the
+ *  {@link ExhaustivePCFGParser} fills in its chart, the sentence is parsed
+ *  with the grammar projected onto basic categories by a
+ *  {@link BasicCategoryGrammarProjection}, which has far fewer states.  The
+ *  inside and outside scores of this parse bound the score of the best parse
+ *  through each basic category over each span, and states whose basic
+ *  category can't come within a threshold of the best coarse parse are not
+ *  built by the full grammar.  Spans where nothing survives aren't given
+ *  a chart cell at all.
+ *  <br>
+ *  The coarse pass starts from the one word spans of the full chart, so it
+ *  uses the full lexicon's taggings without needing a lexicon of its own.
+ *  A pruner isn't threadsafe, but one parser only parses one sentence at a time.
+ */
+class CoarseToFinePruner {
+
+  private final int[] projection;
+  private final int numStates;
+
+  private final BinaryRule[][] rulesWithLC;
+  private final BinaryRule[][] rulesWithParent;
+  private final UnaryRule[][] unariesWithChild;
+  private final UnaryRule[][] unariesWithParent;
+
+  private float[][][] iScore; // start idx, end idx, coarse state -> logProb
+  private float[][][] oScore; // start idx, end idx, coarse state -> logProb
+  private float[] scratch;
+  private int arraySize; // = 0;
+
+  CoarseToFinePruner(BasicCategoryGrammarProjection gp, int numFineStates) {
+    projection = new int[numFineStates];
+    for (int state = 0; state < numFineStates; state++) {
+      projection[state] = gp.project(state);
+    }
+    numStates = gp.targetIndex().size();
+    BinaryGrammar bg = gp.targetBG();
+    UnaryGrammar ug = gp.targetUG();
+    rulesWithLC = new BinaryRule[numStates][];
+    rulesWithParent = new BinaryRule[numStates][];
+    unariesWithChild = new UnaryRule[numStates][];
+    unariesWithParent = new UnaryRule[numStates][];
+    for (int state = 0; state < numStates; state++) {
+      List<BinaryRule> rules = bg.ruleListByLeftChild(state);
+      rulesWithLC[state] = rules.toArray(new BinaryRule[rules.size()]);
+      rules = bg.ruleListByParent(state);
+      rulesWithParent[state] = rules.toArray(new BinaryRule[rules.size()]);
+      unariesWithChild[state] = ug.closedRulesByChild(state);
+      unariesWithParent[state] = ug.closedRulesByParent(state);
+    }
+    scratch = new float[numStates];
+  }
+
+  /** The coarse state of each state of the full grammar. */
+  int[] projection() {
+    return projection;
+  }
+
+  /** Parses with the coarse grammar, and finds the coarse states which may be
+   *  built over each span.  The spans are the ones the
+   *  {@link ExhaustivePCFGParser} builds: every span of two or more words not
+   *  including the boundary symbol, and the whole sentence.
+   *
+   *  @param fineIScore The chart of the full grammar, with the one word spans
+   *                    (and their unaries) filled in
+   *  @param length The length of the sentence, including the boundary symbol
+   *  @param goal The goal state of the full grammar
+   *  @param threshold How far (as a log probability) below the best coarse parse a
+   *                   coarse state's best parse may be and still be built
+   *  @return [start][end][coarse state] true for the coarse states which may be built,
+   *          where [start][end] is null if no state can be built over the span; or
+   *          null if the coarse grammar can't parse the sentence, in which case
+   *          nothing should be pruned
+   */
+  boolean[][][] prune(float[][][] fineIScore, int length, int goal, double threshold) {
+    if (length > arraySize) {
+      iScore = new float[length][length + 1][numStates];
+      oScore = new float[length][length + 1][numStates];
+      arraySize = length;
+    }
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
+        Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
+      }
+      float[] fine = fineIScore[start][start + 1];
+      float[] coarse = iScore[start][start + 1];
+      for (int state = 0; state < fine.length; state++) {
+        if (fine[state] > coarse[projection[state]]) {
+          coarse[projection[state]] = fine[state];
+        }
+      }
+    }
+
+    for (int diff = 2; diff <= length; diff++) {
+      for (int start = 0; start < ((diff == length) ? 1 : length - diff); start++) {
+        doInsideCell(start, start + diff);
+      }
+    }
+    int coarseGoal = projection[goal];
+    float bestScore = iScore[0][length][coarseGoal];
+    if (bestScore == Float.NEGATIVE_INFINITY) {
+      return null;
+    }
+
+    oScore[0][length][coarseGoal] = 0.0f;
+    for (int diff = length; diff >= 2; diff--) {
+      for (int start = 0; start < ((diff == length) ? 1 : length - diff); start++) {
+        doOutsideCell(start, start + diff);
+      }
+    }
+
+    float cutoff = (float) (bestScore - threshold);
+    boolean[][][] live = new boolean[length][length + 1][];
+    for (int diff = 2; diff <= length; diff++) {
+      for (int start = 0; start < ((diff == length) ? 1 : length - diff); start++) {
+        int end = start + diff;
+        float[] iScore_start_end = iScore[start][end];
+        float[] oScore_start_end = oScore[start][end];
+        for (int state = 0; state < numStates; state++) {
+          if (iScore_start_end[state] + oScore_start_end[state] >= cutoff) {
+            if (live[start][end] == null) {
+              live[start][end] = new boolean[numStates];
+            }
+            live[start][end][state] = true;
+          }
+        }
+      }
+    }
+    return live;
+  }
+
+  private void doInsideCell(int start, int end) {
+    float[] iScore_start_end = iScore[start][end];
+    for (int split = start + 1; split < end; split++) {
+      float[] left = iScore[start][split];
+      float[] right = iScore[split][end];
+      for (int leftState = 0; leftState < numStates; leftState++) {
+        float lS = left[leftState];
+        if (lS == Float.NEGATIVE_INFINITY) {
+          continue;
+        }
+        for (BinaryRule rule : rulesWithLC[leftState]) {
+          float rS = right[rule.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float tot = lS + rS + rule.score;
+          if (tot > iScore_start_end[rule.parent]) {
+            iScore_start_end[rule.parent] = tot;
+          }
+        }
+      }
+    }
+    // the rules are closed, so one unary over the binary scores is enough
+    System.arraycopy(iScore_start_end, 0, scratch, 0, numStates);
+    for (int state = 0; state < numStates; state++) {
+      float iS = scratch[state];
+      if (iS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule rule : unariesWithChild[state]) {
+        float tot = iS + rule.score;
+        if (tot > iScore_start_end[rule.parent]) {
+          iScore_start_end[rule.parent] = tot;
+        }
+      }
+    }
+  }
+
+  private void doOutsideCell(int start, int end) {
+    float[] iScore_start_end = iScore[start][end];
+    float[] oScore_start_end = oScore[start][end];
+    System.arraycopy(oScore_start_end, 0, scratch, 0, numStates);
+    for (int state = 0; state < numStates; state++) {
+      float oS = scratch[state];
+      if (oS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (UnaryRule rule : unariesWithParent[state]) {
+        float tot = oS + rule.score;
+        if (tot > oScore_start_end[rule.child] && iScore_start_end[rule.child] > Float.NEGATIVE_INFINITY) {
+          oScore_start_end[rule.child] = tot;
+        }
+      }
+    }
+    for (int state = 0; state < numStates; state++) {
+      float oS = oScore_start_end[state];
+      if (oS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      for (BinaryRule rule : rulesWithParent[state]) {
+        float pS = rule.score;
+        for (int split = start + 1; split < end; split++) {
+          float lS = iScore[start][split][rule.leftChild];
+          if (lS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float rS = iScore[split][end][rule.rightChild];
+          if (rS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          float totL = pS + rS + oS;
+          if (totL > oScore[start][split][rule.leftChild]) {
+            oScore[start][split][rule.leftChild] = totL;
+          }
+          float totR = pS + lS + oS;
+          if (totR > oScore[split][end][rule.rightChild]) {
+            oScore[split][end][rule.rightChild] = totR;
+          }
+        }
+      }
+    }
+  }
+
+}
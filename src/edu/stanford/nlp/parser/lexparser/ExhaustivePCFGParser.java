@@ -122,6 +122,28 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
    */
   protected List<ParserConstraint> constraints = null;
 
+  /** The coarse pass of coarse-to-fine parsing, or null if the chart is never pruned */
+  private CoarseToFinePruner pruner; // = null;
+
+  /** [start][end][coarse state]: the coarse states which the coarse pass let this parse build,
+   *  or null if this parse isn't pruned.  See {@link CoarseToFinePruner#prune}.
+   */
+  private boolean[][][] liveStates; // = null;
+
+  /** Set while reparsing a sentence which had no parse left after pruning */
+  private boolean unpruned; // = false;
+
+  /** The cell of every span which the coarse pass pruned entirely.  It is all
+   *  NEGATIVE_INFINITY, and nothing is ever built in it.
+   */
+  private float[] deadCell; // = null;
+
+  /** Where this parser borrows its chart from, or null if it makes its own */
+  private ChartArenaPool arenas; // = null;
+
+  /** The chart this parser is using, which it borrowed from {@link #arenas} if that isn't null */
+  private ChartArena arena; // = null;
+
   private CoreLabel getCoreLabel(int labelIndex) {
     if (originalCoreLabels[labelIndex] != null) {
       CoreLabel terminalLabel = originalCoreLabels[labelIndex];
@@ -336,6 +358,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
 
   public boolean parse(List<? extends HasWord> sentence) {
     lr = null; // better nullPointer exception than silent error
+    liveStates = null;
     //System.out.println("is it a taggedword?" + (sentence.get(0) instanceof TaggedWord)); //debugging
     if (sentence != this.sentence) {
       this.sentence = sentence;
@@ -351,6 +374,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     if (length > arraySize) {
       considerCreatingArrays(length);
     }
+    boolean pruning = canPrune();
     int goal = stateIndex.indexOf(goalStr);
     if (op.testOptions.verbose) {
       // System.out.println(numStates + " states, " + goal + " is the goal state.");
@@ -423,7 +447,9 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
       throw new RuntimeInterruptedException();
     }
     for (int start = 0; start < length; start++) {
-      for (int end = start + 1; end <= length; end++) {
+      // when pruning, the longer spans are set up after the coarse pass
+      for (int end = start + 1; end <= (pruning ? start + 1 : length); end++) {
+        ensureCells(start, end);
         Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
         if (op.doDep && ! op.testOptions.useFastFactored) {
           Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
@@ -462,6 +488,29 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     initializeChart(sentence);
     //if (op.testOptions.outsideFilter)
     // buildOFilter();
+    if (pruning) {
+      if (op.testOptions.verbose) {
+        Timing.tick("done.");
+        log.info("Starting coarse pass...");
+      }
+      liveStates = pruner.prune(iScore, length, goal, op.testOptions.coarseToFineThreshold);
+      for (int start = 0; start < length; start++) {
+        for (int end = start + 2; end <= length; end++) {
+          if (liveStates == null || liveStates[start][end] != null) {
+            ensureCells(start, end);
+            Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
+            if (op.doDep && ! op.testOptions.useFastFactored) {
+              Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
+            }
+          } else {
+            iScore[start][end] = deadCell;
+            if (op.doDep && ! op.testOptions.useFastFactored) {
+              oScore[start][end] = deadCell;
+            }
+          }
+        }
+      }
+    }
     if (op.testOptions.verbose) {
       Timing.tick("done.");
       log.info("Starting insides...");
@@ -475,6 +524,15 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     }
     bestScore = iScore[0][length][goal];
     boolean succeeded = hasParse();
+    if (liveStates != null && ! succeeded) {
+      // the coarse pass pruned away every parse, so try again without it
+      unpruned = true;
+      try {
+        return parse(sentence);
+      } finally {
+        unpruned = false;
+      }
+    }
     if (op.testOptions.doRecovery && !succeeded && !floodTags) {
       floodTags = true; // sentence will try to reparse
       // ms: disabled message. this is annoying and it doesn't really provide much information
@@ -535,6 +593,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
 
   public boolean parse(Lattice lr) {
     sentence = null; // better nullPointer exception than silent error
+    liveStates = null;
     if (lr != this.lr) {
       this.lr = lr;
       floodTags = false;
@@ -587,6 +646,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
 
     for (int start = 0; start < length; start++) {
     	for (int end = start + 1; end <= length; end++) {
+    		ensureCells(start, end);
     		Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
     		if (op.doDep) Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
     	}
@@ -878,6 +938,17 @@ oScore[split][end][br.rightChild] = totR;
     float[][] iScore_start = iScore[start];
     float[] iScore_start_end = iScore_start[end];
 
+    // the coarse states which may be built over this span, if it is pruned
+    boolean[] live = null;
+    int[] coarseStates = null;
+    if (liveStates != null) {
+      live = liveStates[start][end];
+      if (live == null) {
+        return;
+      }
+      coarseStates = pruner.projection();
+    }
+
     for (int leftState = 0; leftState < numStates; leftState++) {
       int narrowR = narrowRExtent_start[leftState];
       if (narrowR >= end) {  // can this left constituent leave space for a right constituent?
@@ -886,6 +957,9 @@ oScore[split][end][br.rightChild] = totR;
       BinaryRule[] leftRules = bg.splitRulesWithLC(leftState);
       //      if (spillGuts) System.out.println("Found " + leftRules.length + " left rules for state " + stateIndex.get(leftState));
       for (BinaryRule rule : leftRules) {
+        if (live != null && ! live[coarseStates[rule.parent]]) {
+          continue;
+        }
         int rightChild = rule.rightChild;
         int narrowL = narrowLExtent_end[rightChild];
         if (narrowL < narrowR) { // can this right constituent fit next to the left constituent?
@@ -1016,6 +1090,9 @@ oScore[split][end][br.rightChild] = totR;
       for (BinaryRule rule : rightRules) {
         //      if (spillGuts) System.out.println("Considering rule for " + start + " to " + end + ": " + rightRules[i]);
 
+        if (live != null && ! live[coarseStates[rule.parent]]) {
+          continue;
+        }
         int leftChild = rule.leftChild;
         int narrowR = narrowRExtent_start[leftChild];
         if (narrowR > narrowL) {
@@ -1147,6 +1224,9 @@ oScore[split][end][br.rightChild] = totR;
 
       UnaryRule[] unaries = ug.closedRulesByChild(state);
       for (UnaryRule ur : unaries) {
+        if (live != null && ! live[coarseStates[ur.parent]]) {
+          continue;
+        }
 
         if (constraints != null) {
           boolean skip = false;
@@ -2172,6 +2252,64 @@ oScore[split][end][br.rightChild] = totR;
   }
 
 
+  /** Prunes the chart of this parser with a coarse pass using the given grammar
+   *  (see {@link CoarseToFinePruner}), when {@code op.testOptions.coarseToFineThreshold}
+   *  is positive.  The projection takes a while to build, so it should be shared by
+   *  all the parsers of a grammar.
+   */
+  void setCoarseGrammar(BasicCategoryGrammarProjection gp) {
+    if (gp == null) {
+      pruner = null;
+    } else {
+      pruner = new CoarseToFinePruner(gp, numStates);
+    }
+  }
+
+  /** Borrows this parser's chart from the given pool rather than making
+   *  its own, so it is limited to the memory the pool allows.  The chart
+   *  should be given back with {@link #releaseArrays()} after each parse.
+   */
+  void setChartArenaPool(ChartArenaPool arenas) {
+    releaseArrays();
+    this.arenas = arenas;
+  }
+
+  /** Gives back the chart to the {@link ChartArenaPool}, if the parser uses
+   *  one, so another parser can use it.  The results of the last parse
+   *  aren't available afterwards.  Without a pool, this does nothing, and
+   *  the parser keeps its chart for the next sentence.
+   */
+  public void releaseArrays() {
+    if (arenas != null && arena != null) {
+      arenas.release(this, arena);
+      arena = null;
+      clearArrays();
+      arraySize = 0;
+    }
+  }
+
+  /** Whether this parse is pruned.  The coarse pass doesn't know about
+   *  constraints, multiword taggings, or length normalization, and recovery
+   *  parses score too far below the coarse parse to survive pruning.
+   */
+  private boolean canPrune() {
+    return pruner != null && ! unpruned && ! floodTags && op.testOptions.coarseToFineThreshold > 0 &&
+        (constraints == null || constraints.isEmpty()) &&
+        op.testOptions.maxSpanForTags <= 1 && ! op.testOptions.lengthNormalization;
+  }
+
+  /** Gives a span cells of its own, if it doesn't have any yet or only
+   *  has the {@link #deadCell}, as happens when pruning.
+   */
+  private void ensureCells(int start, int end) {
+    if (iScore[start][end] == null || iScore[start][end] == deadCell) {
+      iScore[start][end] = new float[numStates];
+    }
+    if (oScore != null && (oScore[start][end] == null || oScore[start][end] == deadCell)) {
+      oScore[start][end] = new float[numStates];
+    }
+  }
+
   public void nudgeDownArraySize() {
     try {
       if (arraySize > 2) {
@@ -2183,7 +2321,18 @@ oScore[split][end][br.rightChild] = totR;
   }
 
   private void considerCreatingArrays(int length) {
-    if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
+    if (arenas != null) {
+      // the pool has its own budget, and waits or refuses rather than running out of memory
+      releaseArrays();
+      if (length > op.testOptions.maxLength + 1) {
+        throw new OutOfMemoryError("Refusal to create such large arrays.");
+      }
+      useArena(arenas.acquire(this, length + 1, op.doDep && ! op.testOptions.useFastFactored,
+                              op.testOptions.lengthNormalization, pruner != null));
+      if (op.testOptions.verbose) {
+        log.info("Borrowed PCFG parser arrays of size " + arraySize + " from " + arenas);
+      }
+    } else if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
       throw new OutOfMemoryError("Refusal to create such large arrays.");
     } else {
       try {
@@ -2210,48 +2359,28 @@ oScore[split][end][br.rightChild] = totR;
     // zero out some stuff first in case we recently ran out of memory and are reallocating
     clearArrays();
 
-    int numTags = tagIndex.size();
-    // allocate just the parts of iScore and oScore used (end > start, etc.)
-    // todo: with some modifications to doInsideScores, we wouldn't need to allocate iScore[i,length] for i != 0 and i != length
-    //    System.out.println("initializing iScore arrays with length " + length + " and numStates " + numStates);
-    iScore = new float[length][length + 1][];
-    for (int start = 0; start < length; start++) {
-      for (int end = start + 1; end <= length; end++) {
-        iScore[start][end] = new float[numStates];
-      }
-    }
-    //    System.out.println("finished initializing iScore arrays");
-    if (op.doDep && !op.testOptions.useFastFactored) {
-      //      System.out.println("initializing oScore arrays with length " + length + " and numStates " + numStates);
-      oScore = new float[length][length + 1][];
-      for (int start = 0; start < length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          oScore[start][end] = new float[numStates];
-        }
-      }
-      // System.out.println("finished initializing oScore arrays");
-    }
-    narrowRExtent = new int[length][numStates];
-    wideRExtent = new int[length][numStates];
-    narrowLExtent = new int[length + 1][numStates];
-    wideLExtent = new int[length + 1][numStates];
-    if (op.doDep && !op.testOptions.useFastFactored) {
-      iPossibleByL = new boolean[length][numStates];
-      iPossibleByR = new boolean[length + 1][numStates];
-      oPossibleByL = new boolean[length][numStates];
-      oPossibleByR = new boolean[length + 1][numStates];
-    }
-    tags = new boolean[length][numTags];
-
-    if (op.testOptions.lengthNormalization) {
-      wordsInSpan = new int[length][length + 1][];
-      for (int start = 0; start < length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          wordsInSpan[start][end] = new int[numStates];
-        }
-      }
-    }
-    //    System.out.println("ExhaustivePCFGParser constructor finished.");
+    // when pruning, only the one word spans get cells here, and the others get them in parse()
+    // if the coarse pass doesn't prune them
+    useArena(new ChartArena(length, numStates, tagIndex.size(), op.doDep && ! op.testOptions.useFastFactored,
+                            op.testOptions.lengthNormalization, pruner != null));
+  }
+
+  private void useArena(ChartArena arena) {
+    this.arena = arena;
+    iScore = arena.iScore;
+    oScore = arena.oScore;
+    wordsInSpan = arena.wordsInSpan;
+    narrowLExtent = arena.narrowLExtent;
+    wideLExtent = arena.wideLExtent;
+    narrowRExtent = arena.narrowRExtent;
+    wideRExtent = arena.wideRExtent;
+    iPossibleByL = arena.iPossibleByL;
+    iPossibleByR = arena.iPossibleByR;
+    oPossibleByL = arena.oPossibleByL;
+    oPossibleByR = arena.oPossibleByR;
+    tags = arena.tags;
+    deadCell = arena.deadCell;
+    arraySize = arena.capacity;
   }
 
   private void clearArrays() {
@@ -2260,6 +2389,8 @@ oScore[split][end][br.rightChild] = totR;
     oFilteredEnd = oFilteredStart = null;
     tags = null;
     narrowRExtent = wideRExtent = narrowLExtent = wideLExtent = null;
+    wordsInSpan = null;
+    arena = null;
   }
 
 } // end class ExhaustivePCFGParser
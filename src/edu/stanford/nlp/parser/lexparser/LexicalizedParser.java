@@ -105,6 +105,34 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
 
   public Reranker reranker; // = null;
 
+  /** The grammar projected onto basic categories, for the coarse pass of -coarseToFine parsing */
+  private transient BasicCategoryGrammarProjection coarseGrammar; // = null;
+
+  /** The grammar projected onto basic categories, which is built the first time it's needed. */
+  synchronized BasicCategoryGrammarProjection coarseGrammar() {
+    if (coarseGrammar == null) {
+      coarseGrammar = new BasicCategoryGrammarProjection(bg, ug, stateIndex, op.langpack());
+    }
+    return coarseGrammar;
+  }
+
+  /** The pool of charts shared by the parser queries, for -chartArenaBytes */
+  private transient ChartArenaPool chartArenaPool; // = null;
+
+  /** The pool of charts shared by the parser queries, or null if
+   *  {@code op.testOptions.chartArenaBytes} isn't positive.
+   */
+  public synchronized ChartArenaPool chartArenaPool() {
+    long maxBytes = op.testOptions.chartArenaBytes;
+    if (maxBytes <= 0) {
+      return null;
+    }
+    if (chartArenaPool == null || chartArenaPool.maxBytes() != maxBytes) {
+      chartArenaPool = new ChartArenaPool(maxBytes, stateIndex.size(), tagIndex.size());
+    }
+    return chartArenaPool;
+  }
+
   @Override
   public TreebankLangParserParams getTLPParams() { return op.tlpParams; }
 
@@ -265,8 +293,8 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
    */
   @Override
   public Tree parse(List<? extends HasWord> lst) {
+    ParserQuery pq = parserQuery();
     try {
-      ParserQuery pq = parserQuery();
       if (pq.parse(lst)) {
         Tree bestparse = pq.getBestParse();
         // -10000 denotes unknown words
@@ -277,6 +305,8 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
       log.info("Following exception caught during parsing:");
       e.printStackTrace();
       log.info("Recovering using fall through strategy: will construct an (X ...) tree.");
+    } finally {
+      pq.release();
     }
     // if can't parse or exception, fall through
     return ParserUtils.xTree(lst);
@@ -334,10 +364,14 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
   @Override
   public Tree parseTree(List<? extends HasWord> sentence) {
     ParserQuery pq = parserQuery();
-    if (pq.parse(sentence)) {
-      return pq.getBestParse();
-    } else {
-      return null;
+    try {
+      if (pq.parse(sentence)) {
+        return pq.getBestParse();
+      } else {
+        return null;
+      }
+    } finally {
+      pq.release();
     }
   }
 
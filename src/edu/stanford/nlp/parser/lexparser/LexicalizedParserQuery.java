@@ -101,6 +101,14 @@ public class LexicalizedParserQuery implements ParserQuery  {
   @Override
   public List<? extends HasWord> originalSentence() { return originalSentence; }
 
+  /** Gives the PCFG chart back to the parser's pool, if it has one (see -chartArenaBytes). */
+  @Override
+  public void release() {
+    if (pparser != null) {
+      pparser.releaseArrays();
+    }
+  }
+
   /** Keeps track of whether the sentence had punctuation added, which affects the expected length of the sentence */
   private boolean addedPunct = false;
 
@@ -131,6 +139,12 @@ public class LexicalizedParserQuery implements ParserQuery  {
         pparser = new IterativeCKYPCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       } else {
         pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+        if (op.testOptions.coarseToFineThreshold > 0) {
+          pparser.setCoarseGrammar(parser.coarseGrammar());
+        }
+      }
+      if (op.testOptions.chartArenaBytes > 0) {
+        pparser.setChartArenaPool(parser.chartArenaPool());
       }
     } else {
       pparser = null;
@@ -671,7 +685,7 @@ public class LexicalizedParserQuery implements ParserQuery  {
         parseNoMemory = true;
         return false;
       }
-    } catch (UnsupportedOperationException uoe) {
+    } catch (UnsupportedOperationException | ChartTooLargeException e) {
       parseSkipped = true;
       return false;
     }
@@ -243,6 +243,11 @@ public class RerankingParserQuery implements ParserQuery {
     return parserQuery.originalSentence();
   }
 
+  @Override
+  public void release() {
+    parserQuery.release();
+  }
+
   public RerankerQuery rerankerQuery() {
     return rerankerQuery;
   }
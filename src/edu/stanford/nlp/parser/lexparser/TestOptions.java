@@ -69,6 +69,23 @@ public class TestOptions implements Serializable  {
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * If positive, the PCFG parser first parses with its grammar projected
+   * onto basic categories, and then only builds the states over a span
+   * whose basic category's best parse there is within this log probability
+   * of the best coarse parse.  Smaller values prune more, and are faster
+   * but less accurate.  Set with -coarseToFine threshold.
+   */
+  public double coarseToFineThreshold = 0.0;
+
+  /**
+   * If positive, the PCFG parsers of a LexicalizedParser share their
+   * charts through a pool which uses at most about this many bytes, and
+   * a sentence whose chart alone would need more is skipped.  Set with
+   * -chartArenaBytes n.
+   */
+  public long chartArenaBytes = 0;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
@@ -8,6 +8,7 @@ import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 import edu.stanford.nlp.util.logging.Redwood;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -723,8 +724,105 @@ public class Classifier  {
     return matrixMultiply(W2, hidden);
   }
 
+  /**
+   * Feed a batch of feature vectors forward through the network together.
+   * The hidden layer for the whole batch is one contiguous row-major buffer,
+   * and the output layer is computed one weight row at a time over all rows of
+   * the batch, so that each row of {@code W2} is reused while it is in cache.
+   * <br>
+   * Every value is accumulated in the same order as in {@link #computeScores(int[])},
+   * so the scores are bit-for-bit the same as scoring each vector separately.
+   *
+   * @param features The feature vectors; only the first {@code batchSize} are used
+   * @param batchSize The number of feature vectors to score
+   * @param hidden Scratch space of at least {@code batchSize * hiddenSize}
+   * @param scores Filled with the output layer, {@code numLabels} values per feature vector
+   */
+  void computeScores(int[][] features, int batchSize, double[] hidden, double[] scores) {
+    final int hiddenSize = config.hiddenSize;
+    final int numTokens = config.numTokens;
+    final int embeddingSize = config.embeddingSize;
+    Arrays.fill(hidden, 0, batchSize * hiddenSize, 0.0);
+
+    for (int j = 0, offset = 0; j < numTokens; j++, offset += embeddingSize) {
+      for (int b = 0; b < batchSize; b++) {
+        int tok = features[b][j];
+        int index = tok * numTokens + j;
+        int row = b * hiddenSize;
+        Integer idInteger = preMap.get(index);
+        if (idInteger != null) {
+          addInPlace(hidden, row, saved[idInteger]);
+        } else if (isTraining || config.numCached == 0) {
+          matrixMultiplySliceSum(hidden, row, W1, E[tok], offset);
+        } else {
+          float[] cached;
+          synchronized (cache) {
+            cached = cache.getOrDefault(index, null);
+          }
+          if (cached == null) {
+            cached = matrixMultiplySlice(W1, E[tok], offset);
+            synchronized (cache) {
+              cache.add(index, cached);
+            }
+          }
+          addInPlace(hidden, row, cached);
+        }
+      }
+    }
+
+    for (int b = 0; b < batchSize; b++) {
+      addCubeInPlace(hidden, b * hiddenSize, b1);
+    }
+
+    for (int i = 0; i < numLabels; i++) {
+      float[] weights = W2[i];
+      for (int b = 0; b < batchSize; b++) {
+        int row = b * hiddenSize;
+        double result = 0;
+        for (int k = 0; k < hiddenSize; k++) {
+          result += hidden[row + k] * weights[k];
+        }
+        scores[b * numLabels + i] = result;
+      }
+    }
+  }
+
+  /** The number of output labels (transitions) this classifier scores. */
+  int numLabels() {
+    return numLabels;
+  }
+
   // extracting these small methods makes things faster; hotspot likes them
 
+  private static void addInPlace(double[] to, int toOffset, double[] from) {
+    for (int i = 0; i < from.length; i++) {
+      to[toOffset + i] += from[i];
+    }
+  }
+
+  private static void addInPlace(double[] to, int toOffset, float[] from) {
+    for (int i = 0; i < from.length; i++) {
+      to[toOffset + i] += from[i];
+    }
+  }
+
+  private static void matrixMultiplySliceSum(double[] sum, int sumOffset, float[][] matrix, float[] vector, int leftColumnOffset) {
+    for (int i = 0; i < matrix.length; i++) {
+      double partial = sum[sumOffset + i];
+      for (int j = 0; j < vector.length; j++) {
+        partial += matrix[i][leftColumnOffset + j] * vector[j];
+      }
+      sum[sumOffset + i] = partial;
+    }
+  }
+
+  private static void addCubeInPlace(double[] vector, int offset, float[] bias) {
+    for (int i = 0; i < bias.length; i++) {
+      double v = vector[offset + i] + bias[i]; // add bias
+      vector[offset + i] = v * v * v;  // cube nonlinearity
+    }
+  }
+
   private static double[] matrixMultiply(double[][] matrix, float[] vector) {
     double[] result = new double[matrix.length];
     for (int i = 0; i < matrix.length; i++) {
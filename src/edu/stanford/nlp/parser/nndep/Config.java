@@ -218,6 +218,14 @@ public class Config {
    */
   public boolean preTokenized = false;
 
+  /**
+   * Maximum number of sentences which are parsed together by
+   * {@link DependencyParser#predictAll(List)}.  All of the sentences
+   * in a batch take their transitions in lockstep, so that each
+   * step is scored for the whole batch at once.
+   */
+  public int predictBatchSize = 64;
+
 
   public Config(Properties properties) {
     setProperties(properties);
@@ -264,6 +272,7 @@ public class Config {
     }
     tlp = language.params.treebankLanguagePack();
     preTokenized = PropertiesUtils.getBool(props, "tokenized", preTokenized);
+    predictBatchSize = PropertiesUtils.getInt(props, "predictBatchSize", predictBatchSize);
 
     // if a tlp was specified go with that
     String tlpCanonicalName = props.getProperty("tlp");
@@ -965,6 +965,83 @@ public class DependencyParser  {
     return c.tree;
   }
 
+  /**
+   * Determine the dependency parses of several sentences at once.
+   * <p>
+   * Up to {@link Config#predictBatchSize} sentences are parsed together: at every step,
+   * the configurations of all unfinished sentences in the batch are scored by the classifier
+   * in one pass (see {@link Classifier#computeScores(int[][], int, double[], double[])}),
+   * then each takes its best transition.  The trees are exactly those which
+   * {@link #predictInner(CoreMap)} would produce for each sentence.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.numTransitions();
+    int batchSize = Math.max(1, Math.min(config.predictBatchSize, sentences.size()));
+    int[][] features = new int[batchSize][];
+    double[] hidden = new double[batchSize * config.hiddenSize];
+    double[] scores = new double[batchSize * classifier.numLabels()];
+    Configuration[] active = new Configuration[batchSize];
+    int[] activeIndex = new int[batchSize];
+
+    DependencyTree[] results = new DependencyTree[sentences.size()];
+    int next = 0;
+    int numActive = 0;
+    while (numActive > 0 || next < sentences.size()) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      // top up the batch with new sentences as others finish
+      while (numActive < batchSize && next < sentences.size()) {
+        Configuration c = system.initialConfiguration(sentences.get(next));
+        if (system.isTerminal(c)) {
+          results[next] = c.tree;
+        } else {
+          active[numActive] = c;
+          activeIndex[numActive] = next;
+          numActive++;
+        }
+        next++;
+      }
+      if (numActive == 0) {
+        break;
+      }
+
+      for (int b = 0; b < numActive; b++) {
+        features[b] = getFeatureArray(active[b]);
+      }
+      classifier.computeScores(features, numActive, hidden, scores);
+
+      int kept = 0;
+      for (int b = 0; b < numActive; b++) {
+        Configuration c = active[b];
+        int offset = b * numTrans;
+        double optScore = Double.NEGATIVE_INFINITY;
+        String optTrans = null;
+
+        for (int j = 0; j < numTrans; ++j) {
+          if (scores[offset + j] > optScore) {
+            String tr = system.transitions.get(j);
+            if (system.canApply(c, tr)) {
+              optScore = scores[offset + j];
+              optTrans = tr;
+            }
+          }
+        }
+        system.apply(c, optTrans);
+
+        if (system.isTerminal(c)) {
+          results[activeIndex[b]] = c.tree;
+        } else {
+          active[kept] = c;
+          activeIndex[kept] = activeIndex[b];
+          kept++;
+        }
+      }
+      numActive = kept;
+    }
+    return Arrays.asList(results);
+  }
+
   /**
    * Determine the dependency parse of the given sentence using the loaded model.
    * You must first load a parser before calling this method.
@@ -977,21 +1054,64 @@ public class DependencyParser  {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, predictInner(sentence));
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Determine the dependency parses of the given sentences using the loaded model,
+   * scoring the transitions of many sentences together.
+   * This gives the same results as calling {@link #predict(CoreMap)} on each sentence,
+   * but is faster when there are many sentences.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictAll(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> results = predictInner(sentences);
+    List<GrammaticalStructure> structures = new ArrayList<>(sentences.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      structures.add(toGrammaticalStructure(sentences.get(i), results.get(i)));
+    }
+    return structures;
+  }
 
+  /**
+   * Convert the package-local representation of a parse into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
+    int[] heads = new int[result.n];
+    String[] labels = new String[result.n];
+    for (int i = 1; i <= result.n; i++) {
+      heads[i - 1] = result.getHead(i);
+      labels[i - 1] = result.getLabel(i);
+    }
+    return toGrammaticalStructure(sentence, heads, labels);
+  }
+
+  /**
+   * Build a CoreNLP-standard GrammaticalStructure from the head and label of each word,
+   * as they are in the typed dependencies of a parse from {@link #predict(CoreMap)}.
+   * This can give the parse of one sentence to another with the same words and tags.
+   *
+   * @param sentence The sentence, whose tokens the GrammaticalStructure is built on
+   * @param heads The index of the head of each word (from 1, or 0 for the root)
+   * @param labels The label of the dependency of each word on its head
+   */
+  public GrammaticalStructure toGrammaticalStructure(CoreMap sentence, int[] heads, String[] labels) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
     IndexedWord root = new IndexedWord(new Word("ROOT"));
     root.set(CoreAnnotations.IndexAnnotation.class, 0);
 
-    for (int i = 1; i <= result.n; i++) {
-      int head = result.getHead(i);
-      String label = result.getLabel(i);
+    for (int i = 1; i <= heads.length; i++) {
+      int head = heads[i - 1];
+      String label = labels[i - 1];
 
       IndexedWord thisWord = new IndexedWord(tokens.get(i - 1));
       IndexedWord headWord = head == 0 ? root
@@ -1124,7 +1244,7 @@ public class DependencyParser  {
     }
     log.info(String.format("OOV Words: %d / %d = %.2f%%\n", numOOVWords, numWords, numOOVWords * 100.0 / numWords));
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
 
     double uas = config.noPunc ? result.get("UASnoPunc") : result.get("UAS");
@@ -16,6 +16,17 @@ public abstract class FeatureFactory implements Serializable {
 
   abstract public List<String> featurize(State state, List<String> features);
 
+  /**
+   * Puts the features of the state in the sink.  The parser uses this
+   * with a {@link HashedFeatureSink}, which doesn't need the features as
+   * Strings; factories which don't override it make the Strings anyway.
+   */
+  public void featurize(State state, FeatureSink features) {
+    for (String feature : featurize(state)) {
+      features.add(feature);
+    }
+  }
+
   enum Transition {
     LEFT, RIGHT, UNARY
   };
@@ -0,0 +1,36 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+/**
+ * Where a {@link FeatureFactory} puts the features of a state.  Each
+ * feature is built up from pieces, such as a template name and the
+ * words and tags it is over, with
+ * {@code features.start(name).append(word).append('-').append(tag).end()}.
+ * <br>
+ * Training needs the features as strings, which a
+ * {@link StringFeatureSink} makes, but the parser only needs to look the
+ * features up, and a {@link HashedFeatureSink} hashes the pieces instead
+ * of building strings out of them.
+ *
+ * @see PerceptronModel#findHighestScoringTransitions(java.util.List, boolean, int, java.util.List)
+ */
+public abstract class FeatureSink {
+
+  /** Starts a new feature with the given piece */
+  public abstract FeatureSink start(String piece);
+
+  public abstract FeatureSink append(String piece);
+
+  public abstract FeatureSink append(char piece);
+
+  /** Appends the number as {@link Integer#toString(int)} would */
+  public abstract FeatureSink append(int piece);
+
+  /** Finishes the feature started with {@link #start} */
+  public abstract void end();
+
+  /** Adds a feature which is already one String */
+  public void add(String feature) {
+    start(feature).end();
+  }
+
+}
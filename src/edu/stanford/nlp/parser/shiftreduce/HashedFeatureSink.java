@@ -0,0 +1,107 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * Hashes each feature to a 64 bit key instead of building it as a
+ * String.  The key is the FNV-1a hash of the characters the feature
+ * would have, so a feature built here has the same key as
+ * {@link #hash(String)} gives the String version of that feature, which
+ * is how {@link HashedWeightMap} finds its weights.
+ * <br>
+ * The keys of all the features added are kept in order, so the features
+ * of several states can be put in one sink, one state after another.
+ */
+class HashedFeatureSink extends FeatureSink {
+
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private long hash;
+  private long[] keys;
+  private int size; // = 0;
+
+  HashedFeatureSink() {
+    this(256);
+  }
+
+  HashedFeatureSink(int capacity) {
+    keys = new long[capacity];
+  }
+
+  /** The key of the feature with the given String. */
+  static long hash(String feature) {
+    return hash(OFFSET_BASIS, feature);
+  }
+
+  private static long hash(long hash, String piece) {
+    if (piece == null) {
+      // as string concatenation does
+      piece = "null";
+    }
+    final int length = piece.length();
+    for (int i = 0; i < length; ++i) {
+      hash = (hash ^ piece.charAt(i)) * PRIME;
+    }
+    return hash;
+  }
+
+  @Override
+  public FeatureSink start(String piece) {
+    hash = hash(OFFSET_BASIS, piece);
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(String piece) {
+    hash = hash(hash, piece);
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(char piece) {
+    hash = (hash ^ piece) * PRIME;
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(int piece) {
+    if (piece < 0) {
+      if (piece == Integer.MIN_VALUE) {
+        return append(Integer.toString(piece));
+      }
+      append('-');
+      piece = -piece;
+    }
+    int divisor = 1;
+    while (piece / divisor >= 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      append((char) ('0' + (piece / divisor) % 10));
+    }
+    return this;
+  }
+
+  @Override
+  public void end() {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+    }
+    keys[size++] = hash;
+  }
+
+  /** The keys of the features added so far, of which there are {@link #size()}. */
+  long[] keys() {
+    return keys;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+}
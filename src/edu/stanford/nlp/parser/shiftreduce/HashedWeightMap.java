@@ -0,0 +1,97 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The weights of a {@link WeightMap}, keyed by the 64 bit hashes of
+ * their features (see {@link HashedFeatureSink}) instead of Strings.
+ * The keys are kept in an open addressing table, and the packed rows of
+ * all the {@link Weight}s are copied end to end into one array, so
+ * looking up and scoring a feature doesn't touch any objects.
+ * <br>
+ * This is only for parsing: it is a copy of the weights when it was
+ * made, and doesn't change when they do.  Features the model doesn't
+ * know are ignored, as with the WeightMap, unless one happens to have
+ * the same 64 bit hash as a known feature, which is vanishingly unlikely.
+ */
+class HashedWeightMap {
+
+  private final long[] keys;
+  /** The row of each slot of the table, or -1 if the slot is empty */
+  private final int[] rows;
+  /** Row i is packed[rowStarts[i]..rowStarts[i + 1]) */
+  private final int[] rowStarts;
+  private final short[] packed;
+  private final int mask;
+
+  private HashedWeightMap(int numRows, int numShorts) {
+    int capacity = 16;
+    while (capacity < numRows * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    rows = new int[capacity];
+    Arrays.fill(rows, -1);
+    mask = capacity - 1;
+    rowStarts = new int[numRows + 1];
+    packed = new short[numShorts];
+  }
+
+  /**
+   * Copies the weights into a new table.
+   *
+   * @return The table, or null if two of the features have the same hash
+   */
+  static HashedWeightMap fromWeights(WeightMap weights) {
+    int numShorts = 0;
+    for (Map.Entry<String, Weight> entry : weights.entrySet()) {
+      numShorts += entry.getValue().packed().length;
+    }
+    HashedWeightMap table = new HashedWeightMap(weights.size(), numShorts);
+    int row = 0;
+    int position = 0;
+    for (Map.Entry<String, Weight> entry : weights.entrySet()) {
+      long key = HashedFeatureSink.hash(entry.getKey());
+      int slot = table.slot(key);
+      if (table.rows[slot] >= 0) {
+        return null;
+      }
+      short[] rowPacked = entry.getValue().packed();
+      System.arraycopy(rowPacked, 0, table.packed, position, rowPacked.length);
+      table.keys[slot] = key;
+      table.rows[slot] = row;
+      table.rowStarts[row] = position;
+      position += rowPacked.length;
+      ++row;
+    }
+    table.rowStarts[row] = position;
+    return table;
+  }
+
+  /** The slot which has the key, or else the empty slot where it would go */
+  private int slot(long key) {
+    // the low bits of an FNV hash are mixed about as well as the high bits,
+    // but fold the high bits in anyway
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    while (rows[slot] >= 0 && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Adds the weights of the feature with this key to {@code scores}, starting from {@code offset}. */
+  void score(long key, float[] scores, int offset) {
+    int row = rows[slot(key)];
+    if (row < 0) {
+      // Features not in our index are ignored
+      return;
+    }
+    Weight.score(packed, rowStarts[row], rowStarts[row + 1], scores, offset);
+  }
+
+  int size() {
+    return rowStarts.length - 1;
+  }
+
+}
@@ -47,6 +47,13 @@ public class PerceptronModel extends BaseModel  {
   WeightMap featureWeights;
   final FeatureFactory featureFactory;
 
+  /** The weights keyed by the hashes of their features, for parsing, or null if
+   *  they haven't been hashed since they last changed
+   */
+  private transient HashedWeightMap hashedWeights; // = null;
+  /** Set if two features hash to the same key, in which case the parser looks up Strings */
+  private transient boolean hashCollision; // = false;
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
@@ -111,6 +118,7 @@ public class PerceptronModel extends BaseModel  {
     }
 
     featureWeights = new WeightMap();
+    weightsChanged();
     for (String feature : features) {
       featureWeights.put(feature, new Weight());
     }
@@ -132,6 +140,7 @@ public class PerceptronModel extends BaseModel  {
    * Any feature with no transitions left is then removed
    */
   private void condenseFeatures() {
+    weightsChanged();
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       String feature = featureIt.next();
@@ -144,6 +153,7 @@ public class PerceptronModel extends BaseModel  {
   }
 
   private void filterFeatures(Set<String> keep) {
+    weightsChanged();
     Iterator<String> featureIt = featureWeights.keySet().iterator();
     while (featureIt.hasNext()) {
       if (!keep.contains(featureIt.next())) {
@@ -248,10 +258,56 @@ public class PerceptronModel extends BaseModel  {
       weight.score(scores);
     }
 
+    return highestScoringTransitions(state, scores, 0, requireLegal, numTransitions, constraints);
+  }
+
+  /**
+   * Finds the highest scoring transitions of each of the states, as
+   * {@link #findHighestScoringTransitions(State, boolean, int, List)}
+   * would for each one.  This is what the parser uses for a beam: the
+   * features of the states are hashed rather than built as Strings,
+   * looked up in a {@link HashedWeightMap}, and scored into one array.
+   */
+  public List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
+    List<Collection<ScoredObject<Integer>>> transitions = new ArrayList<>(states.size());
+    HashedWeightMap weights = hashedWeights();
+    if (weights == null) {
+      for (State state : states) {
+        transitions.add(findHighestScoringTransitions(state, requireLegal, numTransitions, constraints));
+      }
+      return transitions;
+    }
+
+    HashedFeatureSink features = new HashedFeatureSink(states.size() * 256);
+    int[] ends = new int[states.size()];
+    for (int i = 0; i < states.size(); ++i) {
+      featureFactory.featurize(states.get(i), features);
+      ends[i] = features.size();
+    }
+
+    final int numScores = transitionIndex.size();
+    final long[] keys = features.keys();
+    float[] scores = new float[states.size() * numScores];
+    for (int i = 0, feature = 0; i < states.size(); ++i) {
+      final int offset = i * numScores;
+      for (; feature < ends[i]; ++feature) {
+        weights.score(keys[feature], scores, offset);
+      }
+    }
+
+    for (int i = 0; i < states.size(); ++i) {
+      transitions.add(highestScoringTransitions(states.get(i), scores, i * numScores, requireLegal, numTransitions, constraints));
+    }
+    return transitions;
+  }
+
+  /** The best transitions given the scores of the state in {@code scores[offset..offset + transitionIndex.size())} */
+  private Collection<ScoredObject<Integer>> highestScoringTransitions(State state, float[] scores, int offset, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
-    for (int i = 0; i < scores.length; ++i) {
+    final int numScores = transitionIndex.size();
+    for (int i = 0; i < numScores; ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
-        queue.add(new ScoredObject<>(i, scores[i]));
+        queue.add(new ScoredObject<>(i, scores[offset + i]));
         if (queue.size() > numTransitions) {
           queue.poll();
         }
@@ -261,6 +317,24 @@ public class PerceptronModel extends BaseModel  {
     return queue;
   }
 
+  /** The weights keyed by the hashes of their features, which are made the first time they're needed */
+  private synchronized HashedWeightMap hashedWeights() {
+    if (hashedWeights == null && ! hashCollision) {
+      hashedWeights = HashedWeightMap.fromWeights(featureWeights);
+      if (hashedWeights == null) {
+        log.warn("Two features of the model have the same hash; looking up features by String instead");
+        hashCollision = true;
+      }
+    }
+    return hashedWeights;
+  }
+
+  /** Forgets the hashed weights.  This has to be done whenever the weights change. */
+  private synchronized void weightsChanged() {
+    hashedWeights = null;
+    hashCollision = false;
+  }
+
   /**
    * index: the tree to train
    * binarizedTrees: a list of all the training trees we know about, binarized
@@ -657,6 +731,8 @@ public class PerceptronModel extends BaseModel  {
         }
       }
 
+      weightsChanged();
+
       trainingTimer.done("Iteration " + iteration);
       outputStats(new TrainingResult(results));
 
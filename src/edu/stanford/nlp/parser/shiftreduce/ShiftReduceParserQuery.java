@@ -3,6 +3,7 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -99,11 +100,15 @@ public class ShiftReduceParserQuery implements ParserQuery  {
       nextBeam = temp;
 
       State bestState = null;
-      for (State state : oldBeam) {
+      // the whole beam is scored at once
+      List<State> states = new ArrayList<>(oldBeam);
+      List<Collection<ScoredObject<Integer>>> beamTransitions = parser.model.findHighestScoringTransitions(states, true, maxBeamSize, constraints);
+      for (int i = 0; i < states.size(); ++i) {
         if (Thread.interrupted()) {  // Allow interrupting the parser
           throw new RuntimeInterruptedException();
         }
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
+        State state = states.get(i);
+        Collection<ScoredObject<Integer>> predictedTransitions = beamTransitions.get(i);
         // log.info("Examining state: " + state);
         for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
           Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
@@ -0,0 +1,52 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Builds each feature as a String and adds it to a list.
+ */
+class StringFeatureSink extends FeatureSink {
+
+  private final List<String> features;
+  private final StringBuilder builder = new StringBuilder();
+
+  StringFeatureSink(List<String> features) {
+    this.features = features;
+  }
+
+  @Override
+  public FeatureSink start(String piece) {
+    builder.setLength(0);
+    builder.append(piece);
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(String piece) {
+    builder.append(piece);
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(char piece) {
+    builder.append(piece);
+    return this;
+  }
+
+  @Override
+  public FeatureSink append(int piece) {
+    builder.append(piece);
+    return this;
+  }
+
+  @Override
+  public void end() {
+    features.add(builder.toString());
+  }
+
+  @Override
+  public void add(String feature) {
+    features.add(feature);
+  }
+
+}
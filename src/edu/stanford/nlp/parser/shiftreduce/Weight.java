@@ -84,7 +84,17 @@ public class Weight implements Serializable {
     if (packed.length > scores.length * 3) {
       throw new AssertionError("Called with an array of scores too small to fit");
     }
-    for (int i = 0; i < packed.length; ) {
+    score(packed, 0, packed.length, scores, 0);
+  }
+
+  /**
+   * Adds the scores packed in {@code packed[from..to)} to
+   * {@code scores}, starting from {@code offset}.  This lets
+   * {@link HashedWeightMap} keep many rows in one array and score
+   * several states into one array.
+   */
+  static void score(short[] packed, int from, int to, float[] scores, int offset) {
+    for (int i = from; i < to; ) {
       // Since this is the critical method, we optimize it even further.
       // We could do this:
       // int index = unpackIndex; float score = unpackScore;
@@ -95,7 +105,7 @@ public class Weight implements Serializable {
       final int bits = high | low;
       // final int bits = (((int) packed[i++]) << 16) | (packed[i++] & 0x0000FFFF);
       final float score = Float.intBitsToFloat(bits);
-      scores[index] += score;
+      scores[offset + index] += score;
     }
   }
 
@@ -257,6 +267,11 @@ public class Weight implements Serializable {
 
   private short[] packed;
 
+  /** The packed (index, score) triples of this row; see {@link #score(short[], int, int, float[], int)} */
+  short[] packed() {
+    return packed;
+  }
+
   void writeBytes(ByteArrayOutputStream bout) {
     ByteArrayUtils.writeInt(bout, packed.length);
     for (int i = 0; i < packed.length; ++i) {
@@ -0,0 +1,314 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Runs the annotation requests of {@link StanfordCoreNLPServer} on a fixed number of threads,
+ * admitting only as many requests to wait for a thread as can be served in reasonable time.
+ * <p>
+ * A request is admitted if fewer than {@code maxQueued} requests are waiting, and the total cost
+ * of the waiting requests, including this one, is at most {@code maxQueuedCost}.  (A request is always
+ * admitted if nothing is waiting, however costly it is.)  The cost of a request is its length in
+ * characters times the total weight of its annotators (see {@link #cost(int, String)}).
+ * A request which is not admitted is refused at once with a {@link RequestRejectedException},
+ * which gives an estimate of when it is worth retrying, so that a load balancer can send it elsewhere
+ * rather than have it time out in the queue.
+ * <p>
+ * Each admitted request has a deadline (when its client stops waiting for it).  A request still
+ * waiting at its deadline is dropped without being run, and cancelling the future of a waiting request
+ * frees its place in the queue straight away.
+ * <p>
+ * The queue depth, the time requests wait and the time they and each annotator take
+ * are available in the Prometheus text format from {@link #metrics()}.
+ */
+public class AdmissionController {
+
+  /**
+   * Thrown when a request is not admitted because the server is too busy.
+   */
+  public static class RequestRejectedException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** About how many seconds it will be until the queue has room for the request. */
+    public final int retryAfterSeconds;
+
+    public RequestRejectedException(String message, int retryAfterSeconds) {
+      super(message);
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+  } // end static class RequestRejectedException
+
+
+  /** The relative cost per character of each annotator; others have weight {@link #DEFAULT_WEIGHT}. */
+  private static final Map<String, Integer> ANNOTATOR_WEIGHTS = Generics.newHashMap();
+  private static final int DEFAULT_WEIGHT = 2;
+
+  static {
+    for (String annotator : new String[] { "tokenize", "cleanxml", "ssplit", "lemma", "regexner", "entitymentions", "docdate", "udfeats" }) {
+      ANNOTATOR_WEIGHTS.put(annotator, 1);
+    }
+    for (String annotator : new String[] { "pos", "quote", "natlog", "truecase", "tokensregex", "gender" }) {
+      ANNOTATOR_WEIGHTS.put(annotator, 2);
+    }
+    ANNOTATOR_WEIGHTS.put("ner", 4);
+    ANNOTATOR_WEIGHTS.put("depparse", 4);
+    ANNOTATOR_WEIGHTS.put("sentiment", 6);
+    ANNOTATOR_WEIGHTS.put("relation", 6);
+    ANNOTATOR_WEIGHTS.put("openie", 8);
+    ANNOTATOR_WEIGHTS.put("kbp", 8);
+    ANNOTATOR_WEIGHTS.put("dcoref", 12);
+    ANNOTATOR_WEIGHTS.put("parse", 20);
+    ANNOTATOR_WEIGHTS.put("coref", 20);
+  }
+
+  private final int threads;
+  private final int maxQueued;
+  private final long maxQueuedCost;
+  private final ThreadPoolExecutor executor;
+
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicLong queuedCost = new AtomicLong();
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder expired = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+  private final Timer waitTime = new Timer();
+  private final Timer serviceTime = new Timer();
+  private final ConcurrentMap<String, Timer> annotatorTimes = new ConcurrentHashMap<>();
+
+  /**
+   * @param threads The number of threads to run requests on
+   * @param maxQueued The most requests which may wait for a thread (non-positive means no limit)
+   * @param maxQueuedCost The most total cost of the requests waiting for a thread (non-positive means no limit)
+   */
+  public AdmissionController(int threads, int maxQueued, long maxQueuedCost) {
+    this.threads = threads;
+    this.maxQueued = maxQueued;
+    this.maxQueuedCost = maxQueuedCost;
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+  }
+
+  /**
+   * The cost of annotating a document.
+   *
+   * @param length The length of the document in characters
+   * @param annotators The comma separated annotators it is annotated with
+   * @return The length times the total weight of the annotators (at least the length)
+   */
+  public static long cost(int length, String annotators) {
+    long weight = 0;
+    if (annotators != null) {
+      for (String annotator : annotators.split("[, \t]+")) {
+        annotator = annotator.trim().toLowerCase(Locale.ROOT);
+        if ( ! annotator.isEmpty()) {
+          weight += ANNOTATOR_WEIGHTS.getOrDefault(annotator, DEFAULT_WEIGHT);
+        }
+      }
+    }
+    return Math.max(1, weight) * Math.max(0, length);
+  }
+
+  /**
+   * Submit a request, if it is admitted.
+   *
+   * @param cost The cost of the request, from {@link #cost(int, String)}
+   * @param deadline The time (as in {@link System#currentTimeMillis()}) after which
+   *                 the request should not be started
+   * @param task The work to do
+   * @return The future result of the request.  If it is cancelled while waiting, it is removed from the queue.
+   * @throws RequestRejectedException If the request is not admitted
+   */
+  public <T> Future<T> submit(long cost, long deadline, Callable<T> task) {
+    Request<T> request = new Request<>(task, cost, deadline);
+    synchronized (this) {
+      int waiting = queued.get();
+      long waitingCost = queuedCost.get();
+      if (maxQueued > 0 && waiting >= maxQueued) {
+        rejected.increment();
+        throw new RequestRejectedException("Server is busy: " + waiting + " requests are waiting", retryAfterSeconds());
+      }
+      if (maxQueuedCost > 0 && waiting > 0 && waitingCost + cost > maxQueuedCost) {
+        rejected.increment();
+        throw new RequestRejectedException("Server is busy: the requests waiting cost " + waitingCost, retryAfterSeconds());
+      }
+      queued.incrementAndGet();
+      queuedCost.addAndGet(cost);
+      admitted.increment();
+    }
+    executor.execute(request);
+    return request;
+  }
+
+  /**
+   * An estimate of how long until a request would be admitted: the time it takes to
+   * serve all the waiting requests, given the average time of a request.
+   */
+  int retryAfterSeconds() {
+    double meanSeconds = serviceTime.count.sum() == 0 ? 1.0 : serviceTime.totalNanos.sum() / (1e9 * serviceTime.count.sum());
+    return (int) Math.max(1, Math.ceil(meanSeconds * (queued.get() + 1) / threads));
+  }
+
+  /** Record that an annotator took the given time on a request. */
+  public void recordAnnotatorTime(Annotator annotator, long milliseconds) {
+    annotatorTimes.computeIfAbsent(StringUtils.getShortClassName(annotator), k -> new Timer()).add(milliseconds * 1000000L);
+  }
+
+  /** The number of requests waiting for a thread. */
+  public int queueDepth() {
+    return queued.get();
+  }
+
+  /** The number of requests being run. */
+  public int running() {
+    return running.get();
+  }
+
+  /**
+   * The statistics of the requests, in the Prometheus text format.
+   * Times are in seconds, and counts are since the server started.
+   */
+  public String metrics() {
+    StringBuilder sb = new StringBuilder();
+    gauge(sb, "corenlp_queue_depth", "Requests waiting for a thread", queued.get());
+    gauge(sb, "corenlp_queue_cost", "Total cost of the requests waiting for a thread", queuedCost.get());
+    gauge(sb, "corenlp_running", "Requests being run", running.get());
+    gauge(sb, "corenlp_threads", "Threads running requests", threads);
+    counter(sb, "corenlp_requests_admitted_total", "Requests admitted to the queue", admitted.sum());
+    counter(sb, "corenlp_requests_rejected_total", "Requests refused because the queue was full", rejected.sum());
+    counter(sb, "corenlp_requests_expired_total", "Requests dropped because their deadline passed while waiting", expired.sum());
+    counter(sb, "corenlp_requests_cancelled_total", "Requests cancelled while waiting", cancelled.sum());
+    waitTime.write(sb, "corenlp_queue_wait_seconds", "Time requests waited for a thread", null);
+    serviceTime.write(sb, "corenlp_service_seconds", "Time requests took once started", null);
+    Map<String, Timer> byAnnotator = new TreeMap<>(annotatorTimes);
+    boolean first = true;
+    for (Map.Entry<String, Timer> entry : byAnnotator.entrySet()) {
+      entry.getValue().write(sb, "corenlp_annotator_seconds", first ? "Time spent in each annotator" : null, entry.getKey());
+      first = false;
+    }
+    return sb.toString();
+  }
+
+  static void gauge(StringBuilder sb, String name, String help, long value) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(" gauge\n");
+    sb.append(name).append(' ').append(value).append('\n');
+  }
+
+  static void counter(StringBuilder sb, String name, String help, long value) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(" counter\n");
+    sb.append(name).append(' ').append(value).append('\n');
+  }
+
+  /** Stop the threads, interrupting any running requests. */
+  public void shutdownNow() {
+    executor.shutdownNow();
+  }
+
+
+  /** A total time and count, written as a Prometheus summary. */
+  private static class Timer {
+
+    final LongAdder totalNanos = new LongAdder();
+    final LongAdder count = new LongAdder();
+
+    void add(long nanos) {
+      totalNanos.add(nanos);
+      count.increment();
+    }
+
+    /** Write the summary, with the HELP and TYPE lines if help is not null. */
+    void write(StringBuilder sb, String name, String help, String annotator) {
+      if (help != null) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" summary\n");
+      }
+      String labels = annotator == null ? "" : "{annotator=\"" + annotator + "\"}";
+      sb.append(name).append("_sum").append(labels).append(' ').append(totalNanos.sum() / 1e9).append('\n');
+      sb.append(name).append("_count").append(labels).append(' ').append(count.sum()).append('\n');
+    }
+
+  } // end static class Timer
+
+
+  private static final int QUEUED = 0;
+  private static final int STARTED = 1;
+  private static final int CANCELLED = 2;
+
+  /** A request in the queue, which keeps the counts of waiting and running requests up to date. */
+  private class Request<T> extends FutureTask<T> {
+
+    private final long cost;
+    private final long deadline;
+    private final long submitted = System.nanoTime();
+    private final AtomicInteger phase = new AtomicInteger(QUEUED);
+    private long started; // = 0;
+
+    Request(Callable<T> task, long cost, long deadline) {
+      super(task);
+      this.cost = cost;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+      if ( ! phase.compareAndSet(QUEUED, STARTED)) {
+        return;  // cancelled while waiting
+      }
+      started = System.nanoTime();
+      queued.decrementAndGet();
+      queuedCost.addAndGet(-cost);
+      running.incrementAndGet();
+      waitTime.add(started - submitted);
+      try {
+        if (System.currentTimeMillis() > deadline) {
+          expired.increment();
+          cancel(false);
+          return;
+        }
+        super.run();
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    // The service time is recorded before the result is, so that it is counted by the time anyone sees the result
+    @Override
+    protected void set(T result) {
+      serviceTime.add(System.nanoTime() - started);
+      super.set(result);
+    }
+
+    @Override
+    protected void setException(Throwable t) {
+      serviceTime.add(System.nanoTime() - started);
+      super.setException(t);
+    }
+
+    @Override
+    protected void done() {
+      // Only a request cancelled while waiting needs to leave the queue here; a started request is counted by run()
+      if (phase.compareAndSet(QUEUED, CANCELLED)) {
+        queued.decrementAndGet();
+        queuedCost.addAndGet(-cost);
+        cancelled.increment();
+        executor.remove(this);
+      }
+    }
+
+  } // end class Request
+
+}
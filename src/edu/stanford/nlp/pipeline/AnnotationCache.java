@@ -0,0 +1,308 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.TypesafeMap;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * A cache of annotated documents, so that a document which has been annotated before
+ * is read back rather than annotated again.
+ * <p>
+ * Documents are keyed by a hash of their text, their date, and the signatures of the annotators of the
+ * pipeline (as in {@link StanfordCoreNLP#GLOBAL_ANNOTATOR_CACHE}), so a pipeline with different annotators
+ * or annotator properties never sees another's results.  Only documents which are given to the pipeline
+ * as plain text are cached.  The annotated documents are stored as {@link ProtobufAnnotationSerializer} bytes:
+ * up to {@code documentCache.maxBytes} of them in memory, dropping the least recently used when full,
+ * and, if {@code documentCache.dir} is set, all of them in files in that directory, which can be shared
+ * between runs.  A document whose annotations can't be serialized losslessly is not cached.
+ * Whatever the caller set on a document before annotating it (such as its docID) is kept when the
+ * document is read from the cache, so two files with the same text keep their own docIDs.
+ * <p>
+ * The cache is used by {@link StanfordCoreNLP#annotate(Annotation)} when these properties are set,
+ * so it works the same way for the server and for annotating files, and also by the staged
+ * ({@code pipeline.staged}) and streaming ({@code -stream}) modes, where documents found in the cache
+ * skip the annotators.  Pipelines with the same cache properties share one cache.
+ */
+public class AnnotationCache {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(AnnotationCache.class);
+
+  /** The caches in use, by their properties. */
+  private static final Map<String, AnnotationCache> CACHES = Generics.newHashMap();
+
+  private final long maxBytes;
+  private final File dir;
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(true);
+
+  private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes; // = 0;
+
+  private long hits; // = 0;
+  private long diskHits; // = 0;
+  private long misses; // = 0;
+  private long uncacheable; // = 0;
+
+  /**
+   * @param maxBytes The most bytes of documents to keep in memory
+   * @param dir The directory to keep all the documents in, or null to only keep them in memory
+   */
+  public AnnotationCache(long maxBytes, File dir) {
+    this.maxBytes = maxBytes;
+    this.dir = dir;
+    if (dir != null && ! dir.isDirectory() && ! dir.mkdirs()) {
+      throw new IllegalArgumentException("Could not create document cache directory " + dir);
+    }
+  }
+
+  /**
+   * The cache for a pipeline with these properties, or null if they don't ask for one.
+   * The cache is enabled by setting {@code documentCache.maxBytes} to a positive number,
+   * or by setting {@code documentCache.dir}.
+   */
+  public static AnnotationCache fromProperties(Properties props) {
+    long maxBytes = PropertiesUtils.getLong(props, "documentCache.maxBytes", 0);
+    String dir = props.getProperty("documentCache.dir");
+    if (maxBytes <= 0 && dir == null) {
+      return null;
+    }
+    synchronized (CACHES) {
+      return CACHES.computeIfAbsent(maxBytes + ";" + dir, k -> new AnnotationCache(maxBytes, dir == null ? null : new File(dir)));
+    }
+  }
+
+  /**
+   * The signature of a pipeline's annotators, which goes into the key of each document.
+   *
+   * @param annotators The names of the annotators
+   * @param props The properties of the pipeline
+   */
+  public static String signature(List<String> annotators, Properties props) {
+    StringBuilder sb = new StringBuilder();
+    for (String annotator : annotators) {
+      // the properties of a signature are in no particular order
+      List<String> properties = new ArrayList<>(Arrays.asList(PropertiesUtils.getSignature(annotator, props).split(";")));
+      Collections.sort(properties);
+      sb.append(annotator).append('{').append(String.join(";", properties)).append('}');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The key of a document, or null if it can't be cached because it isn't plain text.
+   *
+   * @param annotation The document, before it is annotated
+   * @param signature The signature of the pipeline, from {@link #signature(List, Properties)}
+   */
+  public static String key(Annotation annotation, String signature) {
+    String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+    if (text == null ||
+        annotation.containsKey(CoreAnnotations.TokensAnnotation.class) ||
+        annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      return null;
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);  // every JVM has SHA-256
+    }
+    for (String part : new String[] { text, annotation.get(CoreAnnotations.DocDateAnnotation.class), signature }) {
+      if (part != null) {
+        digest.update(part.getBytes(StandardCharsets.UTF_8));
+      }
+      digest.update((byte) 0);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Fill in a document from the cache, if it is there.
+   *
+   * @param key The key of the document, from {@link #key(Annotation, String)}
+   * @param annotation The document, which is given all the annotations of the cached one that it doesn't have yet
+   * @return True if the document was in the cache
+   */
+  public boolean get(String key, Annotation annotation) {
+    byte[] serialized;
+    synchronized (this) {
+      serialized = memory.get(key);
+      if (serialized != null) {
+        hits += 1;
+      }
+    }
+    if (serialized == null && dir != null) {
+      File file = file(key);
+      if (file.exists()) {
+        try {
+          serialized = Files.readAllBytes(file.toPath());
+          synchronized (this) {
+            diskHits += 1;
+          }
+          remember(key, serialized);
+        } catch (IOException e) {
+          log.warn("Could not read cached document " + file + ": " + e);
+        }
+      }
+    }
+    if (serialized == null) {
+      synchronized (this) {
+        misses += 1;
+      }
+      return false;
+    }
+    Annotation cached;
+    try {
+      cached = serializer.fromProto(CoreNLPProtos.Document.parseFrom(serialized));
+    } catch (IOException e) {
+      log.warn("Could not read cached document " + key + ": " + e);
+      return false;
+    }
+    copyInto(cached, annotation);
+    return true;
+  }
+
+  /**
+   * Give a document the annotations of a cached one, keeping the annotations the document already has,
+   * and stamp the document's own docID (or none) on its tokens and sentences.
+   */
+  @SuppressWarnings("unchecked")
+  private static void copyInto(Annotation cached, Annotation annotation) {
+    for (Class<?> key : cached.keySet()) {
+      Class<? extends TypesafeMap.Key<Object>> typedKey = (Class<? extends TypesafeMap.Key<Object>>) key;
+      // the docID is the caller's, even if they didn't set one
+      if (key != CoreAnnotations.DocIDAnnotation.class && ! annotation.containsKey(typedKey)) {
+        annotation.set(typedKey, cached.get(typedKey));
+      }
+    }
+    String docID = annotation.get(CoreAnnotations.DocIDAnnotation.class);
+    List<CoreLabel> tokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    if (tokens != null) {
+      for (CoreLabel token : tokens) {
+        setDocID(token, docID);
+      }
+    }
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences != null) {
+      for (CoreMap sentence : sentences) {
+        setDocID(sentence, docID);
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          setDocID(token, docID);
+        }
+      }
+    }
+    List<CoreMap> mentions = annotation.get(CoreAnnotations.MentionsAnnotation.class);
+    if (mentions != null) {
+      for (CoreMap mention : mentions) {
+        if (mention.containsKey(CoreAnnotations.DocIDAnnotation.class)) {
+          setDocID(mention, docID);
+        }
+      }
+    }
+  }
+
+  private static void setDocID(CoreMap map, String docID) {
+    if (docID == null) {
+      map.remove(CoreAnnotations.DocIDAnnotation.class);
+    } else {
+      map.set(CoreAnnotations.DocIDAnnotation.class, docID);
+    }
+  }
+
+  /**
+   * Add an annotated document to the cache.
+   *
+   * @param key The key of the document, from {@link #key(Annotation, String)} before it was annotated
+   * @param annotation The annotated document
+   */
+  public void put(String key, Annotation annotation) {
+    byte[] serialized;
+    try {
+      serialized = serializer.toProto(annotation).toByteArray();
+    } catch (ProtobufAnnotationSerializer.LossySerializationException e) {
+      synchronized (this) {
+        uncacheable += 1;
+      }
+      return;
+    }
+    remember(key, serialized);
+    if (dir != null) {
+      File file = file(key);
+      try {
+        // write to a temporary file first, so that no one reads a partly written document
+        File tmp = File.createTempFile(key, ".tmp", dir);
+        Files.write(tmp.toPath(), serialized);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        log.warn("Could not write cached document " + file + ": " + e);
+      }
+    }
+  }
+
+  /** Keep a document in memory, dropping the least recently used documents if there isn't room. */
+  private synchronized void remember(String key, byte[] serialized) {
+    if (serialized.length > maxBytes) {
+      return;
+    }
+    byte[] old = memory.put(key, serialized);
+    bytes += serialized.length - (old == null ? 0 : old.length);
+    for (Iterator<byte[]> iter = memory.values().iterator(); bytes > maxBytes; ) {
+      bytes -= iter.next().length;
+      iter.remove();
+    }
+  }
+
+  private File file(String key) {
+    return new File(dir, key + ".pb");
+  }
+
+  /** The number of documents found in memory. */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /** The number of documents found on disk but not in memory. */
+  public synchronized long diskHits() {
+    return diskHits;
+  }
+
+  /** The number of documents which were not in the cache. */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** The number of documents which could not be cached because they could not be serialized losslessly. */
+  public synchronized long uncacheable() {
+    return uncacheable;
+  }
+
+  /** The number of bytes of documents in memory. */
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AnnotationCache[" + memory.size() + " documents (" + bytes + '/' + maxBytes + " bytes) in memory" +
+        (dir == null ? "" : ", in " + dir) + "; " + hits + " hits, " + diskHits + " disk hits, " + misses + " misses, " +
+        uncacheable + " uncacheable]";
+  }
+
+}
@@ -10,6 +10,8 @@ import edu.stanford.nlp.util.logging.Redwood;
 import java.io.IOException;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
 
 
 /**
@@ -64,6 +66,18 @@ public class AnnotationPipeline implements Annotator {
    */
   @Override
   public void annotate(Annotation annotation) {
+    annotate(annotation, (ObjLongConsumer<Annotator>) null);
+  }
+
+  /**
+   * Run the pipeline on an input annotation, reporting how long each annotator took.
+   * The annotation is modified in place.
+   *
+   * @param annotation The input annotation, usually a raw document
+   * @param annotatorTimes If not null, this is called after each annotator with the annotator
+   *                       and the time it took in milliseconds
+   */
+  public void annotate(Annotation annotation, ObjLongConsumer<Annotator> annotatorTimes) {
     Iterator<MutableLong> it = accumulatedTime.iterator();
     Timing t = new Timing();
     for (Annotator annotator : annotators) {
@@ -78,6 +92,9 @@ public class AnnotationPipeline implements Annotator {
         long elapsed = t.stop();
         MutableLong m = it.next();
         m.incValue(elapsed);
+        if (annotatorTimes != null) {
+          annotatorTimes.accept(annotator, elapsed);
+        }
       }
     }
   }
@@ -167,6 +184,34 @@ public class AnnotationPipeline implements Annotator {
     Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
   }
 
+  /**
+   * Annotate a collection of input annotations IN PARALLEL, running each annotator
+   * as its own stage with its own threads, rather than running every annotator
+   * for a document on the same thread.
+   * See {@link StagedAnnotationPipeline} for details.
+   *
+   * @param annotations The input annotations to process
+   * @param threadBudgets The number of threads for each annotator in this pipeline.
+   *                      0 fuses the annotator into the stage before it.
+   * @param maxInFlight The maximum number of documents in the pipeline at once
+   * @param callback A function to be called when an annotation finishes.
+   *                 Annotations are passed to it in the order of the input.
+   */
+  public void annotateStaged(final Iterable<Annotation> annotations, List<Integer> threadBudgets, int maxInFlight,
+                             final Consumer<Annotation> callback) {
+    annotateStaged(annotations, threadBudgets, maxInFlight, ann -> false, callback);
+  }
+
+  /**
+   * As {@link #annotateStaged(Iterable, List, int, Consumer)}, but documents which are
+   * already annotated (see {@link StagedAnnotationPipeline#annotate(Iterable, Predicate, Consumer)})
+   * skip the annotators.
+   */
+  public void annotateStaged(final Iterable<Annotation> annotations, List<Integer> threadBudgets, int maxInFlight,
+                             final Predicate<Annotation> annotated, final Consumer<Annotation> callback) {
+    new StagedAnnotationPipeline(annotators, threadBudgets, maxInFlight).annotate(annotations, annotated, callback);
+  }
+
   /** Return the total pipeline annotation time in milliseconds.
    *
    *  @return The total pipeline annotation time in milliseconds
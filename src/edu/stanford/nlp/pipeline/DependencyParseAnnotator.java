@@ -9,9 +9,11 @@ import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.semgraph.SemanticGraphFactory;
 import edu.stanford.nlp.semgraph.SemanticGraphFactory.Mode;
 import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.TypedDependency;
 import edu.stanford.nlp.util.ArraySet;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.MetaClass;
+import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.PropertiesUtils;
 
 import java.util.*;
@@ -48,6 +50,12 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
    */
   private final GrammaticalStructure.Extras extraDependencies;
 
+  /**
+   * The head and label of each word of sentences seen before, by their words and tags,
+   * or null if they aren't cached.
+   */
+  private final SentenceCache<Pair<int[], String[]>> sentenceCache;
+
   public DependencyParseAnnotator() {
     this(new Properties());
   }
@@ -59,6 +67,7 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     nThreads = PropertiesUtils.getInt(properties, "nthreads", DEFAULT_NTHREADS);
     maxTime = PropertiesUtils.getLong(properties, "sentenceTimeout", DEFAULT_MAXTIME);
     extraDependencies = MetaClass.cast(properties.getProperty("extradependencies", "NONE"), GrammaticalStructure.Extras.class);
+    sentenceCache = SentenceCache.ofSize(PropertiesUtils.getInt(properties, "sentenceCacheSize", 0));
   }
 
   @Override
@@ -71,10 +80,102 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     return maxTime;
   }
 
+  @Override
+  public SentenceCache<Pair<int[], String[]>> sentenceCache() {
+    return sentenceCache;
+  }
+
+  /**
+   * When running single threaded without a time limit, all of the sentences
+   * of the document are parsed together with {@link DependencyParser#predictAll(List)},
+   * which is faster than parsing them one at a time.
+   * (Sentences whose parse is cached, or which repeat an earlier sentence of the document, are not parsed again.)
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null || nThreads() != 1 || maxTime() > 0) {
+      super.annotate(annotation);
+      return;
+    }
+    List<CoreMap> unparsed = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    Set<String> pending = new HashSet<>();
+    List<CoreMap> repeats = new ArrayList<>();
+    for (CoreMap sentence : sentences) {
+      String key = cacheKey(sentence);
+      if (key != null && pending.contains(key)) {
+        repeats.add(sentence);
+      } else if ( ! setCachedDependencies(sentence, key)) {
+        unparsed.add(sentence);
+        keys.add(key);
+        if (key != null) {
+          pending.add(key);
+        }
+      }
+    }
+    List<GrammaticalStructure> structures = parser.predictAll(unparsed);
+    for (int i = 0; i < unparsed.size(); i++) {
+      cache(keys.get(i), structures.get(i));
+      setDependencies(unparsed.get(i), structures.get(i));
+    }
+    for (CoreMap sentence : repeats) {
+      doOneSentence(annotation, sentence);
+    }
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    String key = cacheKey(sentence);
+    if ( ! setCachedDependencies(sentence, key)) {
+      GrammaticalStructure gs = parser.predict(sentence);
+      cache(key, gs);
+      setDependencies(sentence, gs);
+    }
+  }
+
+  /** The key of a sentence in {@link #sentenceCache}, or null if there is no cache. */
+  private String cacheKey(CoreMap sentence) {
+    return sentenceCache == null ? null : SentenceCache.key(sentence.get(CoreAnnotations.TokensAnnotation.class), true, false);
+  }
+
+  /**
+   * If the parse of a sentence with the same words and tags is cached, give it to this sentence.
+   *
+   * @return True if the parse was cached
+   */
+  private boolean setCachedDependencies(CoreMap sentence, String key) {
+    if (key == null) {
+      return false;
+    }
+    Pair<int[], String[]> cached = sentenceCache.get(key);
+    if (cached == null) {
+      return false;
+    }
+    setDependencies(sentence, parser.toGrammaticalStructure(sentence, cached.first, cached.second));
+    return true;
+  }
+
+  /** Cache the head and label of each word of the parse of a sentence. */
+  private void cache(String key, GrammaticalStructure gs) {
+    if (key == null) {
+      return;
+    }
+    Collection<TypedDependency> dependencies = gs.typedDependencies();
+    int[] heads = new int[dependencies.size()];
+    String[] labels = new String[dependencies.size()];
+    for (TypedDependency dependency : dependencies) {
+      int index = dependency.dep().index();
+      if (index < 1 || index > labels.length || labels[index - 1] != null) {
+        return;  // not one dependency per word, so not something we can rebuild
+      }
+      heads[index - 1] = dependency.gov().index();
+      labels[index - 1] = dependency.reln().toString();
+    }
+    sentenceCache.put(key, Pair.makePair(heads, labels));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, Mode.COLLAPSED, extraDependencies, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, Mode.BASIC, extraDependencies, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, Mode.CCPROCESSED, extraDependencies, null),
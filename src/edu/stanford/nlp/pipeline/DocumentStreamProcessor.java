@@ -0,0 +1,433 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * Annotates one large stream of documents, writing the results to one file of
+ * length-delimited {@link CoreNLPProtos.Document} messages as they finish.
+ * Unlike {@link StanfordCoreNLP#processFiles}, which writes one output file per input file,
+ * this keeps only a bounded number of documents in memory and opens each file once,
+ * which suits corpus-scale jobs and filesystems where opening a file is expensive.
+ * <p>
+ * The input is either JSON lines, one document per line, or length-delimited
+ * {@link CoreNLPProtos.Document} messages, as read by {@link ProtobufAnnotationSerializer#read}.
+ * A JSON line is either a string, which is the text of the document, or an object with
+ * a {@code "text"} field and optional {@code "docid"} and {@code "docDate"} fields.
+ * <p>
+ * Documents are written in input order.  Every so often the position in the input and the
+ * length of the output are saved in a checkpoint file.  Running the same job again resumes from the
+ * checkpoint: output after the checkpoint (from a run that was killed) is truncated and
+ * the input is read from the record after the last one saved.
+ * <p>
+ * From the command line it is run with the {@code stream} property:
+ * <pre>
+ * java edu.stanford.nlp.pipeline.StanfordCoreNLP -annotators tokenize,ssplit,pos -threads 8 -stream corpus.jsonl
+ * </pre>
+ * Other properties are:
+ * <ul>
+ * <li> {@code stream.inputFormat}: {@code jsonl} or {@code protobuf}.  The default is protobuf for
+ *      files ending in .pb, .pb.gz or .ser.gz and jsonl otherwise.
+ * <li> {@code stream.output}: the output file; default {@code <outputDirectory>/<input file name>.pb}
+ * <li> {@code stream.checkpoint}: the checkpoint file; default the output file plus {@code .checkpoint}
+ * <li> {@code stream.checkpointEvery}: how many documents to write between checkpoints; default 1000
+ * <li> {@code stream.maxInFlight}: how many documents may be read but not yet written; default 4 per thread
+ * <li> {@code stream.resume}: whether to resume from an existing checkpoint; default true
+ * <li> {@code continueOnAnnotateError}: skip documents which fail to annotate rather than stopping
+ * </ul>
+ */
+public class DocumentStreamProcessor {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(DocumentStreamProcessor.class);
+
+  /** The formats which can be read. */
+  public enum InputFormat { JSONL, PROTOBUF }
+
+  private final StanfordCoreNLP pipeline;
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+  private final int numThreads;
+  private final int maxInFlight;
+  private final int checkpointEvery;
+  private final boolean resume;
+  private final boolean continueOnAnnotateError;
+
+  /**
+   * Create a processor for the given pipeline, configured from the pipeline's properties.
+   */
+  public DocumentStreamProcessor(StanfordCoreNLP pipeline) {
+    this.pipeline = pipeline;
+    Properties props = pipeline.getProperties();
+    this.numThreads = PropertiesUtils.getInt(props, "threads", 1);
+    this.maxInFlight = PropertiesUtils.getInt(props, "stream.maxInFlight", 4 * Math.max(numThreads, 1));
+    this.checkpointEvery = PropertiesUtils.getInt(props, "stream.checkpointEvery", 1000);
+    this.resume = PropertiesUtils.getBool(props, "stream.resume", true);
+    this.continueOnAnnotateError = PropertiesUtils.getBool(props, "continueOnAnnotateError", false);
+    if (checkpointEvery < 1) {
+      throw new IllegalArgumentException("stream.checkpointEvery must be positive, not " + checkpointEvery);
+    }
+  }
+
+  /** Guess the format of a file from its name: protobuf for .pb, .pb.gz and .ser.gz, else JSON lines. */
+  public static InputFormat guessFormat(String path) {
+    if (path.endsWith(".pb") || path.endsWith(".pb.gz") || path.endsWith(".ser.gz")) {
+      return InputFormat.PROTOBUF;
+    }
+    return InputFormat.JSONL;
+  }
+
+  /**
+   * Run the job described by the pipeline's {@code stream} properties.
+   */
+  public void run() throws IOException {
+    Properties props = pipeline.getProperties();
+    String input = props.getProperty("stream");
+    if (input == null) {
+      throw new IllegalArgumentException("No input given: set the stream property");
+    }
+    String formatName = props.getProperty("stream.inputFormat");
+    InputFormat format = formatName == null ? guessFormat(input) : InputFormat.valueOf(formatName.toUpperCase());
+    String output = props.getProperty("stream.output");
+    if (output == null) {
+      output = new File(props.getProperty("outputDirectory", "."), new File(input).getName() + ".pb").getPath();
+    }
+    String checkpoint = props.getProperty("stream.checkpoint", output + ".checkpoint");
+    process(input, format, output, checkpoint);
+  }
+
+  /**
+   * Annotate every document of the input and write them to the output.
+   *
+   * @param input The input file, which may be gzipped
+   * @param format The format of the input
+   * @param output The output file, which is always uncompressed so that it can be truncated on resume
+   * @param checkpointFile Where to save progress
+   * @return The number of documents written to the output by this call
+   * @throws IOException If there is a problem reading or writing
+   */
+  public long process(String input, InputFormat format, String output, String checkpointFile) throws IOException {
+    Checkpoint start = new Checkpoint();
+    File checkpoint = new File(checkpointFile);
+    if (resume && checkpoint.exists()) {
+      start = Checkpoint.read(checkpoint);
+      log.info("Resuming " + input + " after " + start.records + " documents (input byte " + start.inputOffset +
+          ", output byte " + start.outputOffset + ')');
+    }
+    File outputFile = new File(output);
+    if (outputFile.getAbsoluteFile().getParentFile() != null) {
+      outputFile.getAbsoluteFile().getParentFile().mkdirs();
+    }
+
+    try (RecordReader reader = new RecordReader(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(input), format);
+         FileOutputStream fos = new FileOutputStream(outputFile, start.records > 0)) {
+      reader.skipTo(start.inputOffset);
+      FileChannel channel = fos.getChannel();
+      if (channel.size() < start.outputOffset) {
+        throw new IllegalStateException("Output " + output + " has " + channel.size() + " bytes, but the checkpoint " +
+            checkpointFile + " expects " + start.outputOffset);
+      }
+      // throw away anything written after the last checkpoint
+      channel.truncate(start.outputOffset);
+      OutputStream out = new BufferedOutputStream(fos, 1 << 16);
+
+      Checkpoint progress = start.copy();
+      long[] written = new long[1];
+      Timing timing = new Timing();
+      try {
+        pipeline.annotateInOrder(reader, numThreads, maxInFlight, annotation -> {
+          Throwable ex = annotation.get(CoreAnnotations.ExceptionAnnotation.class);
+          long endOffset = reader.nextEndOffset();
+          if (ex != null) {
+            String docid = annotation.get(CoreAnnotations.DocIDAnnotation.class);
+            String where = "document " + progress.records + (docid == null ? "" : " (" + docid + ')');
+            if ( ! continueOnAnnotateError) {
+              throw new RuntimeException("Error annotating " + where + " of " + input, ex);
+            }
+            log.err("Error annotating " + where + ": " + ex);
+          } else {
+            try {
+              serializer.writeCoreDocument(new CoreDocument(annotation), out);
+            } catch (IOException e) {
+              throw new RuntimeIOException(e);
+            }
+            written[0]++;
+          }
+          progress.records++;
+          progress.inputOffset = endOffset;
+          if (progress.records % checkpointEvery == 0) {
+            saveCheckpoint(out, channel, progress, checkpoint);
+            log.info("Processed " + progress.records + " documents");
+          }
+        });
+      } finally {
+        // save whatever was finished, even if we are stopping on an error
+        saveCheckpoint(out, channel, progress, checkpoint);
+      }
+      timing.done(log, "Annotated " + written[0] + " documents from " + input);
+      return written[0];
+    }
+  }
+
+  /** Flush the output, and only then record how far it has got. */
+  private static void saveCheckpoint(OutputStream out, FileChannel channel, Checkpoint progress, File file) {
+    try {
+      out.flush();
+      progress.outputOffset = channel.position();
+      progress.write(file);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+
+  /** How many records have been finished, and where they end in the input and output. */
+  static class Checkpoint {
+
+    long records; // = 0;
+    long inputOffset; // = 0;
+    long outputOffset; // = 0;
+
+    Checkpoint copy() {
+      Checkpoint c = new Checkpoint();
+      c.records = records;
+      c.inputOffset = inputOffset;
+      c.outputOffset = outputOffset;
+      return c;
+    }
+
+    static Checkpoint read(File file) throws IOException {
+      Properties props = new Properties();
+      try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+        props.load(reader);
+      }
+      Checkpoint c = new Checkpoint();
+      c.records = Long.parseLong(props.getProperty("records", "0"));
+      c.inputOffset = Long.parseLong(props.getProperty("inputOffset", "0"));
+      c.outputOffset = Long.parseLong(props.getProperty("outputOffset", "0"));
+      return c;
+    }
+
+    /** Write to a temporary file and then move it into place, so that a crash never leaves half a checkpoint. */
+    void write(File file) throws IOException {
+      Properties props = new Properties();
+      props.setProperty("records", Long.toString(records));
+      props.setProperty("inputOffset", Long.toString(inputOffset));
+      props.setProperty("outputOffset", Long.toString(outputOffset));
+      File tmp = new File(file.getPath() + ".tmp");
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+        props.store(writer, null);
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+  } // end static class Checkpoint
+
+
+  /**
+   * Reads documents one at a time, remembering the input offset at which each ends.
+   * It is read by the pipeline's input thread, while the offsets are taken, in the same order,
+   * by the thread writing the output.
+   */
+  private class RecordReader implements Iterable<Annotation>, Closeable {
+
+    private final InputStream in;
+    private final InputFormat format;
+    private final ConcurrentLinkedQueue<Long> endOffsets = new ConcurrentLinkedQueue<>();
+    private long offset; // = 0;
+    private Annotation next; // = null;
+    private boolean done; // = false;
+
+    RecordReader(InputStream in, InputFormat format) {
+      this.in = new BufferedInputStream(in, 1 << 16);
+      this.format = format;
+    }
+
+    /** Skip the given number of bytes from the start of the input. */
+    void skipTo(long target) throws IOException {
+      while (offset < target) {
+        long skipped = in.skip(target - offset);
+        if (skipped <= 0) {
+          if (in.read() < 0) {
+            throw new EOFException("Input ends before the checkpoint offset " + target);
+          }
+          skipped = 1;
+        }
+        offset += skipped;
+      }
+    }
+
+    /** The input offset just after the next document handed to the callback. */
+    long nextEndOffset() {
+      Long end = endOffsets.poll();
+      if (end == null) {
+        throw new IllegalStateException("More documents annotated than were read");
+      }
+      return end;
+    }
+
+    private Annotation readRecord() throws IOException {
+      switch (format) {
+        case PROTOBUF: {
+          CountingInputStream counting = new CountingInputStream(in);
+          CoreNLPProtos.Document doc = CoreNLPProtos.Document.parseDelimitedFrom(counting);
+          offset += counting.count;
+          return doc == null ? null : serializer.fromProto(doc);
+        }
+        case JSONL: {
+          while (true) {
+            byte[] line = readLine();
+            if (line == null) {
+              return null;
+            }
+            String text = new String(line, StandardCharsets.UTF_8).trim();
+            if ( ! text.isEmpty()) {
+              return fromJson(text);
+            }
+          }
+        }
+        default:
+          throw new IllegalArgumentException("Unknown input format " + format);
+      }
+    }
+
+    /** Read the bytes up to the next newline, or null at the end of the input. */
+    private byte[] readLine() throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) >= 0) {
+        offset++;
+        if (b == '\n') {
+          return line.toByteArray();
+        }
+        line.write(b);
+      }
+      return line.size() > 0 ? line.toByteArray() : null;
+    }
+
+    private Annotation fromJson(String line) {
+      JsonValue value;
+      try (JsonReader reader = Json.createReader(new StringReader(line))) {
+        value = reader.readValue();
+      } catch (JsonException e) {
+        throw new IllegalArgumentException("Bad JSON before input byte " + offset + ": " + e.getMessage(), e);
+      }
+      if (value instanceof JsonString) {
+        return new Annotation(((JsonString) value).getString());
+      }
+      if ( ! (value instanceof JsonObject) || ! ((JsonObject) value).containsKey("text")) {
+        throw new IllegalArgumentException("Expected a string or an object with a \"text\" field before input byte " + offset);
+      }
+      JsonObject obj = (JsonObject) value;
+      Annotation annotation = new Annotation(obj.getString("text"));
+      if (obj.containsKey("docid")) {
+        annotation.set(CoreAnnotations.DocIDAnnotation.class, obj.getString("docid"));
+      }
+      if (obj.containsKey("docDate")) {
+        annotation.set(CoreAnnotations.DocDateAnnotation.class, obj.getString("docDate"));
+      }
+      return annotation;
+    }
+
+    @Override
+    public Iterator<Annotation> iterator() {
+      return new Iterator<Annotation>() {
+        @Override
+        public boolean hasNext() {
+          if (next == null && ! done) {
+            try {
+              next = readRecord();
+            } catch (IOException e) {
+              throw new RuntimeIOException(e);
+            }
+            if (next == null) {
+              done = true;
+            } else {
+              endOffsets.add(offset);
+            }
+          }
+          return next != null;
+        }
+
+        @Override
+        public Annotation next() {
+          if ( ! hasNext()) {
+            throw new NoSuchElementException();
+          }
+          Annotation result = next;
+          next = null;
+          return result;
+        }
+      };
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+  } // end class RecordReader
+
+
+  /** Counts the bytes read through it, without buffering, so the count is an exact offset. */
+  private static class CountingInputStream extends FilterInputStream {
+
+    long count; // = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+  } // end static class CountingInputStream
+
+}
@@ -15,6 +15,7 @@ import edu.stanford.nlp.parser.common.ParserConstraint;
 import edu.stanford.nlp.parser.common.ParserGrammar;
 import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.common.ParserUtils;
+import edu.stanford.nlp.parser.lexparser.ChartTooLargeException;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.parser.lexparser.TreeBinarizer;
 import edu.stanford.nlp.semgraph.SemanticGraph;
@@ -75,7 +76,10 @@ public class ParserAnnotator extends SentenceAnnotator  {
   // around this height, protobuf might potentially barf
   private final static int DEFAULT_MAX_HEIGHT = 80;
   private final int maxHeight;
-  
+
+  /** The parses of sentences seen before, by their words and tags, or null if they aren't cached */
+  private final SentenceCache<List<Tree>> sentenceCache;
+
   public ParserAnnotator(boolean verbose, int maxSent) {
     this(System.getProperty("parse.model", LexicalizedParser.DEFAULT_PARSER_LOC), verbose, maxSent, StringUtils.EMPTY_STRING_ARRAY);
   }
@@ -112,6 +116,7 @@ public class ParserAnnotator extends SentenceAnnotator  {
     this.noSquash = false;
     this.extraDependencies = GrammaticalStructure.Extras.NONE;
     this.maxHeight = DEFAULT_MAX_HEIGHT;
+    this.sentenceCache = null;
   }
 
 
@@ -166,6 +171,7 @@ public class ParserAnnotator extends SentenceAnnotator  {
     this.saveBinaryTrees = PropertiesUtils.getBool(props, annotatorName + ".binaryTrees", usesBinary);
     this.noSquash = PropertiesUtils.getBool(props, annotatorName + ".nosquash", false);
     this.extraDependencies = MetaClass.cast(props.getProperty(annotatorName + ".extradependencies", "NONE"), GrammaticalStructure.Extras.class);
+    this.sentenceCache = SentenceCache.ofSize(PropertiesUtils.getInt(props, annotatorName + ".sentenceCacheSize", 0));
   }
 
   @SuppressWarnings("StringConcatenationInsideStringBufferAppend")
@@ -201,6 +207,8 @@ public class ParserAnnotator extends SentenceAnnotator  {
     boolean usesBinary = StanfordCoreNLP.usesBinaryTrees(props);
     boolean saveBinaryTrees = PropertiesUtils.getBool(props, annotatorName + ".binaryTrees", usesBinary);
     os.append(annotatorName + ".binaryTrees:" + saveBinaryTrees);
+    os.append(annotatorName + ".sentenceCacheSize:" +
+        props.getProperty(annotatorName + ".sentenceCacheSize", "0"));
 
     return os.toString();
   }
@@ -241,6 +249,11 @@ public class ParserAnnotator extends SentenceAnnotator  {
     return maxParseTime;
   }
 
+  @Override
+  public SentenceCache<List<Tree>> sentenceCache() {
+    return sentenceCache;
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
     // If "noSquash" is set, don't re-annotate sentences which already have a tree annotation
@@ -259,7 +272,7 @@ public class ParserAnnotator extends SentenceAnnotator  {
     if (maxSentenceLength <= 0 || words.size() <= maxSentenceLength) {
       try {
         final List<ParserConstraint> constraints = sentence.get(ParserAnnotations.ConstraintAnnotation.class);
-        trees = doOneSentence(constraints, words);
+        trees = cachedParse(constraints, words);
       } catch (RuntimeInterruptedException e) {
         if (VERBOSE) {
           log.info("Took too long parsing: " + words);
@@ -328,13 +341,59 @@ public class ParserAnnotator extends SentenceAnnotator  {
     }
   }
 
+  /**
+   * Parse a sentence, or copy its parses if a sentence with the same words and tags has been
+   * parsed before and {@link #sentenceCache} is on.  Sentences with constraints are not cached.
+   */
+  private List<Tree> cachedParse(List<ParserConstraint> constraints, List<CoreLabel> words) {
+    if (sentenceCache == null || (constraints != null && ! constraints.isEmpty())) {
+      return doOneSentence(constraints, words);
+    }
+    String key = SentenceCache.key(words, true, false);
+    List<Tree> cached = sentenceCache.get(key);
+    if (cached != null) {
+      return copyTrees(cached, words);
+    }
+    List<Tree> trees = doOneSentence(constraints, words);
+    boolean cacheable = ! trees.isEmpty();
+    for (Tree tree : trees) {
+      cacheable &= tree.getLeaves().size() == words.size();
+    }
+    if (cacheable) {
+      // the parser's trees are about to be changed by the dependency conversion, so keep a copy
+      sentenceCache.put(key, copyTrees(trees, null));
+    }
+    return trees;
+  }
+
+  /**
+   * Copy parses, including their scores.  As in a new parse, the leaves are the words of the
+   * sentence, if they are given; otherwise they are copies of the leaves of the parses.
+   */
+  private static List<Tree> copyTrees(List<Tree> trees, List<CoreLabel> words) {
+    List<Tree> copies = Generics.newLinkedList();
+    for (Tree tree : trees) {
+      Tree copy = tree.deepCopy();
+      copy.setScore(tree.score());
+      if (words != null) {
+        List<Tree> leaves = copy.getLeaves();
+        for (int i = 0; i < leaves.size(); i++) {
+          leaves.get(i).setLabel(words.get(i));
+        }
+      }
+      copies.add(copy);
+    }
+    return copies;
+  }
+
   private List<Tree> doOneSentence(List<ParserConstraint> constraints,
                              List<CoreLabel> words) {
     ParserQuery pq = parser.parserQuery();
-    pq.setConstraints(constraints);
-    pq.parse(words);
     List<Tree> trees = Generics.newLinkedList();
+    // give back the parser's chart even if the parse is interrupted
     try {
+      pq.setConstraints(constraints);
+      pq.parse(words);
       // Use bestParse if kBest is set to 1.
       if (this.kBest == 1) {
         Tree t = pq.getBestParse();
@@ -370,6 +429,11 @@ public class ParserAnnotator extends SentenceAnnotator  {
       log.warn("Parsing of sentence failed, possibly because of out of memory.  " +
               "Will ignore and continue: " +
               SentenceUtils.listToString(words));
+    } catch (ChartTooLargeException e) {
+      log.warn("Sentence too long for the parser's chart memory (length=" + words.size() + ").  " +
+              "Will ignore and continue.");
+    } finally {
+      pq.release();
     }
     return trees;
   }
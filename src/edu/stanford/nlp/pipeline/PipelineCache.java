@@ -0,0 +1,156 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import edu.stanford.nlp.util.Lazy;
+
+/**
+ * The pipelines {@link StanfordCoreNLPServer} has built, so that requests with the same properties
+ * share a pipeline rather than each building their own.
+ * <p>
+ * Pipelines are keyed on a {@link #signature(Properties) signature} of their properties, which does not depend
+ * on the order of the properties or the spacing of the annotator list.  At most {@code maxSize} pipelines
+ * are kept, and when another is built the least recently used one is dropped.  (The annotators themselves are
+ * shared between pipelines by {@link StanfordCoreNLP#GLOBAL_ANNOTATOR_CACHE}, so a pipeline which shares its
+ * models with another costs little more than the list of its annotators.)
+ * <p>
+ * A pipeline is built outside the lock on the cache, so a request for a cached pipeline never waits for
+ * another to be built; requests for the same pipeline while it is being built wait for it rather than
+ * building it again.
+ */
+public class PipelineCache {
+
+  /** Properties which don't change what a pipeline does. */
+  private static final String[] IGNORED_PROPERTIES = { "date" };
+
+  private final int maxSize;
+  private final Function<Properties, StanfordCoreNLP> factory;
+  private final LinkedHashMap<String, Lazy<StanfordCoreNLP>> pipelines = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long hits; // = 0;
+  private long misses; // = 0;
+  private long evictions; // = 0;
+
+  /**
+   * @param maxSize The most pipelines to keep (at least 1)
+   * @param factory Builds a pipeline for the given properties
+   */
+  public PipelineCache(int maxSize, Function<Properties, StanfordCoreNLP> factory) {
+    this.maxSize = Math.max(1, maxSize);
+    this.factory = factory;
+  }
+
+  /**
+   * The key of the pipeline for some properties: the properties sorted by name, without those which don't
+   * affect the pipeline, and with the annotators normalized as {@link StanfordCoreNLP} would and
+   * in a canonical comma separated form.
+   */
+  public static String signature(Properties props) {
+    props = copy(props);
+    StanfordCoreNLP.normalizeAnnotators(props);
+    StringBuilder sb = new StringBuilder();
+    for (String key : new TreeSet<>(props.stringPropertyNames())) {
+      boolean ignored = false;
+      for (String ignore : IGNORED_PROPERTIES) {
+        ignored |= key.equalsIgnoreCase(ignore);
+      }
+      if (ignored) {
+        continue;
+      }
+      String value = props.getProperty(key).trim();
+      if (key.equals("annotators")) {
+        value = String.join(",", value.split("[, \t]+"));
+      }
+      sb.append(key).append(':').append(value).append(';');
+    }
+    return sb.toString();
+  }
+
+  /** A copy of the properties, including their defaults, which building a pipeline can change freely. */
+  private static Properties copy(Properties props) {
+    Properties copy = new Properties();
+    for (String key : props.stringPropertyNames()) {
+      copy.setProperty(key, props.getProperty(key));
+    }
+    return copy;
+  }
+
+  /**
+   * Get the pipeline for these properties, building it (from a copy of them) if it isn't cached.
+   * If building it fails, nothing is cached and the exception is thrown.
+   */
+  public StanfordCoreNLP get(Properties props) {
+    String key = signature(props);
+    Properties pipelineProps = copy(props);
+    Lazy<StanfordCoreNLP> pipeline;
+    synchronized (this) {
+      pipeline = pipelines.get(key);
+      if (pipeline != null) {
+        hits += 1;
+      } else {
+        misses += 1;
+        pipeline = Lazy.of(() -> factory.apply(pipelineProps));
+        pipelines.put(key, pipeline);
+        for (Iterator<Lazy<StanfordCoreNLP>> iter = pipelines.values().iterator(); pipelines.size() > maxSize; ) {
+          iter.next();
+          iter.remove();
+          evictions += 1;
+        }
+      }
+    }
+    try {
+      return pipeline.get();
+    } catch (RuntimeException | Error e) {
+      synchronized (this) {
+        pipelines.remove(key, pipeline);
+      }
+      throw e;
+    }
+  }
+
+  /** Whether the pipeline for these properties has been built (or is being built), without counting it as a use. */
+  public synchronized boolean contains(Properties props) {
+    return pipelines.containsKey(signature(props));
+  }
+
+  /** The number of pipelines cached. */
+  public synchronized int size() {
+    return pipelines.size();
+  }
+
+  /** The number of requests for a pipeline which was already cached. */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /** The number of requests for a pipeline which had to be built. */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** The number of pipelines dropped to make room for others. */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /** The statistics of the cache, in the Prometheus text format. */
+  public synchronized String metrics() {
+    StringBuilder sb = new StringBuilder();
+    AdmissionController.gauge(sb, "corenlp_pipelines_cached", "Pipelines in the cache", pipelines.size());
+    AdmissionController.gauge(sb, "corenlp_pipelines_max", "Most pipelines kept in the cache", maxSize);
+    AdmissionController.counter(sb, "corenlp_pipeline_cache_hits_total", "Requests for a pipeline which was cached", hits);
+    AdmissionController.counter(sb, "corenlp_pipeline_cache_misses_total", "Requests for a pipeline which had to be built", misses);
+    AdmissionController.counter(sb, "corenlp_pipeline_cache_evictions_total", "Pipelines dropped to make room for others", evictions);
+    return sb.toString();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "PipelineCache[" + pipelines.size() + '/' + maxSize + " pipelines, " + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+  }
+
+}
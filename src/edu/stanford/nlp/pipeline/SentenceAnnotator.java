@@ -1,97 +1,109 @@
 package edu.stanford.nlp.pipeline;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.RuntimeInterruptedException;
-import edu.stanford.nlp.util.concurrent.InterruptibleMulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 /**
  * A parent class for annotators which might want to analyze one
  * sentence at a time, possibly in a multithreaded manner.
+ * <p>
+ * When running on more than one thread, or with a time limit, sentences
+ * are handed to a work-stealing pool which is created the first time it
+ * is needed and then shared by every document this annotator sees.
+ * Several threads annotating different documents at once therefore
+ * share the same {@link #nThreads()} workers rather than each starting
+ * their own, which matters a lot for short documents.
+ * The {@link #maxTime()} limit applies to each sentence separately,
+ * counted from when a worker starts on it.
  *
  * TODO: also factor out the POS
  *
  * @author John Bauer
  */
 public abstract class SentenceAnnotator implements Annotator {
-  protected class AnnotatorProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
 
-    final Annotation annotation;
+  /** A sentence job which remembers when a worker started on it, so that it can be timed out. */
+  private static class SentenceTask extends FutureTask<CoreMap> {
 
-    AnnotatorProcessor(Annotation annotation) {
-      this.annotation = annotation;
-    }
+    final CoreMap sentence;
+    /** System.nanoTime() when the job started, or 0 if it has not started yet */
+    volatile long startTime; // = 0;
 
-    @Override
-    public CoreMap process(CoreMap sentence) {
-      doOneSentence(annotation, sentence);
-      return sentence;
+    SentenceTask(Runnable job, CoreMap sentence) {
+      super(job, sentence);
+      this.sentence = sentence;
     }
 
     @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
+    public void run() {
+      startTime = Math.max(System.nanoTime(), 1);
+      try {
+        super.run();
+      } finally {
+        // A timed out job is cancelled by interrupting its worker.
+        // Clear that here so it does not leak into the next sentence on this worker.
+        Thread.interrupted();
+      }
     }
-  }
 
-  private InterruptibleMulticoreWrapper<CoreMap, CoreMap> buildWrapper(Annotation annotation) {
-    InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = new InterruptibleMulticoreWrapper<>(nThreads(), new AnnotatorProcessor(annotation), true, maxTime());
-    return wrapper;
+  } // end static class SentenceTask
+
+  /** Shared by all documents processed by this annotator.  Created on first use. */
+  private volatile ForkJoinPool sentencePool; // = null;
+
+  private ForkJoinPool sentencePool() {
+    ForkJoinPool pool = sentencePool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = sentencePool;
+        if (pool == null) {
+          int threads = nThreads() > 0 ? nThreads() : Runtime.getRuntime().availableProcessors();
+          String name = getClass().getSimpleName();
+          pool = new ForkJoinPool(threads, fjp -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(fjp);
+            thread.setName(name + '-' + thread.getPoolIndex());
+            return thread;
+          }, null, true);
+          sentencePool = pool;
+        }
+      }
+    }
+    return pool;
   }
 
   @Override
   public void annotate(Annotation annotation) {
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
       if (nThreads() != 1 || maxTime() > 0) {
-        InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = buildWrapper(annotation);
+        ForkJoinPool pool = sentencePool();
+        List<SentenceTask> tasks = new ArrayList<>();
         for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          boolean success = false;
-          // We iterate twice for each sentence so that if we fail for
-          // a sentence once, we start a new queue and try again.
-          // If the sentence fails a second time we give up.
-          for (int attempt = 0; attempt < 2; ++attempt) {
-            try {
-              wrapper.put(sentence);
-              success = true;
-              break;
-            } catch (RejectedExecutionException e) {
-              // If we time out, for now, we just throw away all jobs which were running at the time.
+          SentenceTask task = new SentenceTask(() -> doOneSentence(annotation, sentence), sentence);
+          tasks.add(task);
+          pool.execute(task);
+        }
+        try {
+          for (SentenceTask task : tasks) {
+            if ( ! awaitSentence(task)) {
               // Note that in order for this to be useful, the underlying job needs to handle Thread.interrupted()
-              List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-              if (failedSentences != null) {
-                for (CoreMap failed : failedSentences) {
-                  doOneFailedSentence(annotation, failed);
-                }
-              }
-              // We don't wait for termination here, and perhaps this
-              // is a mistake.  If the processor used does not respect
-              // interruption, we could easily create many threads
-              // which are all doing useless work.  However, there is
-              // no clean way to interrupt the thread and then
-              // guarantee it finishes without running the risk of
-              // waiting forever for the thread to finish, which is
-              // exactly what we don't want with the timeout.
-              wrapper = buildWrapper(annotation);
+              task.cancel(true);
+              doOneFailedSentence(annotation, task.sentence);
             }
           }
-          if (!success) {
-            doOneFailedSentence(annotation, sentence);
-          }
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
-        }
-        List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-        while (wrapper.peek()) {
-          wrapper.poll();
-        }
-        if (failedSentences != null) {
-          for (CoreMap failed : failedSentences) {
-            doOneFailedSentence(annotation, failed);
+        } finally {
+          // only does anything if we were interrupted or a sentence threw an exception
+          for (SentenceTask task : tasks) {
+            task.cancel(true);
           }
         }
       } else {
@@ -107,6 +119,74 @@ public abstract class SentenceAnnotator implements Annotator {
     }
   }
 
+  /**
+   * Wait for one sentence to finish.
+   *
+   * @return true if the sentence finished, false if it ran for longer than {@link #maxTime()}
+   */
+  private boolean awaitSentence(SentenceTask task) {
+    long maxTime = maxTime();
+    try {
+      if (maxTime <= 0) {
+        task.get();
+        return true;
+      }
+      while (true) {
+        long startTime = task.startTime;
+        long wait = maxTime;
+        if (startTime != 0) {
+          wait = maxTime - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+          if (wait <= 0) {
+            if ( ! task.isDone()) {
+              return false;
+            }
+            wait = 0;
+          }
+        }
+        try {
+          task.get(wait, TimeUnit.MILLISECONDS);
+          return true;
+        } catch (TimeoutException e) {
+          // check again how long it has actually been running for
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Stops the shared sentence threads, if they were ever started.
+   * If the annotator is used again afterwards, they are restarted.
+   */
+  @Override
+  public void unmount() {
+    ForkJoinPool pool;
+    synchronized (this) {
+      pool = sentencePool;
+      sentencePool = null;
+    }
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * The cache of results for sentences seen before, if this annotator keeps one, or null.
+   * Subclasses which keep one look sentences up in it in {@link #doOneSentence}.
+   */
+  public SentenceCache<?> sentenceCache() {
+    return null;
+  }
+
   protected abstract int nThreads();
 
   /**
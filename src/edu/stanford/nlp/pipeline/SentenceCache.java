@@ -0,0 +1,112 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreLabel;
+
+/**
+ * A cache of what a {@link SentenceAnnotator} computed for a sentence, so that a sentence
+ * which has been seen before (a signature, a disclaimer) gets the same result without being
+ * annotated again.
+ * <p>
+ * The key of a sentence is built by {@link #key(List, boolean, boolean)} from whatever the annotator
+ * reads from it, and the value is the annotator's own result.  The annotator is responsible for
+ * storing a value which later sentences can't change, and for copying a value before
+ * attaching it to a new sentence.  At most {@code maxSize} results are kept, and the least recently used
+ * is dropped when another is added.
+ *
+ * @param <V> The type of result cached
+ */
+public class SentenceCache<V> {
+
+  private final int maxSize;
+  private final LinkedHashMap<String, V> results = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long hits; // = 0;
+  private long misses; // = 0;
+
+  /**
+   * @param maxSize The most results to keep
+   */
+  public SentenceCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * A cache of the given size, or null if the size is not positive (which is how annotators
+   * turn the cache off).
+   */
+  public static <V> SentenceCache<V> ofSize(int maxSize) {
+    return maxSize > 0 ? new SentenceCache<>(maxSize) : null;
+  }
+
+  /**
+   * The key of a sentence.
+   *
+   * @param tokens The tokens of the sentence
+   * @param tags Whether the annotator reads the part of speech tags
+   * @param ner Whether the annotator reads the named entity tags
+   */
+  public static String key(List<CoreLabel> tokens, boolean tags, boolean ner) {
+    StringBuilder sb = new StringBuilder();
+    for (CoreLabel token : tokens) {
+      sb.append(token.word());
+      if (tags) {
+        sb.append('\u0001').append(token.tag());
+      }
+      if (ner) {
+        sb.append('\u0001').append(token.ner());
+      }
+      sb.append('\u0000');
+    }
+    return sb.toString();
+  }
+
+  /** The result for a sentence, or null if it isn't cached. */
+  public synchronized V get(String key) {
+    V result = results.get(key);
+    if (result == null) {
+      misses += 1;
+    } else {
+      hits += 1;
+    }
+    return result;
+  }
+
+  /** Cache the result for a sentence. */
+  public synchronized void put(String key, V result) {
+    results.put(key, result);
+    for (Iterator<V> iter = results.values().iterator(); results.size() > maxSize; ) {
+      iter.next();
+      iter.remove();
+    }
+  }
+
+  /** The number of results cached. */
+  public synchronized int size() {
+    return results.size();
+  }
+
+  /** The number of sentences whose result was cached. */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /** The number of sentences whose result was not cached. */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** The fraction of sentences whose result was cached. */
+  public synchronized double hitRate() {
+    return hits + misses == 0 ? 0.0 : hits / (double) (hits + misses);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SentenceCache[" + results.size() + '/' + maxSize + " results, " + hits + " hits, " + misses + " misses]";
+  }
+
+}
@@ -5,10 +5,11 @@ import java.util.*;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Label;
 import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
 import edu.stanford.nlp.sentiment.CollapseUnaryTransformer;
+import edu.stanford.nlp.sentiment.CompiledSentimentModel;
 import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
-import edu.stanford.nlp.sentiment.SentimentCostAndGradient;
 import edu.stanford.nlp.sentiment.SentimentModel;
 import edu.stanford.nlp.sentiment.SentimentUtils;
 import edu.stanford.nlp.trees.Tree;
@@ -43,6 +44,7 @@ public class SentimentAnnotator extends SentenceAnnotator {
 
   private final String modelPath;
   private final SentimentModel model;
+  private final CompiledSentimentModel compiledModel;
   private final CollapseUnaryTransformer transformer = new CollapseUnaryTransformer();
 
   private final int nThreads;
@@ -53,14 +55,19 @@ public class SentimentAnnotator extends SentenceAnnotator {
    */
   private final long maxTime;
 
+  /** The sentiment trees of sentences seen before, by their binarized trees, or null if they aren't cached */
+  private final SentenceCache<Tree> sentenceCache;
+
   public SentimentAnnotator(String annotatorName, Properties props) {
     this.modelPath = props.getProperty(annotatorName + ".model", DEFAULT_MODEL);
     if (modelPath == null) {
       throw new IllegalArgumentException("No model specified for Sentiment annotator");
     }
     this.model = SentimentModel.loadSerialized(modelPath);
+    this.compiledModel = new CompiledSentimentModel(model, PropertiesUtils.getBool(props, annotatorName + ".nodeVectors", false));
     this.nThreads = PropertiesUtils.getInt(props, annotatorName + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
     this.maxTime = PropertiesUtils.getLong(props, annotatorName + ".maxtime", -1);
+    this.sentenceCache = SentenceCache.ofSize(PropertiesUtils.getInt(props, annotatorName + ".sentenceCacheSize", 0));
   }
 
   @Override
@@ -86,6 +93,10 @@ public class SentimentAnnotator extends SentenceAnnotator {
               props.getProperty(annotatorName + ".nthreads", props.getProperty("nthreads", "")));
     os.append(annotatorName + ".maxtime:" +
               props.getProperty(annotatorName + ".maxtime", "-1"));
+    os.append(annotatorName + ".sentenceCacheSize:" +
+              props.getProperty(annotatorName + ".sentenceCacheSize", "0"));
+    os.append(annotatorName + ".nodeVectors:" +
+              props.getProperty(annotatorName + ".nodeVectors", "false"));
     return os.toString();
   }
 
@@ -99,6 +110,11 @@ public class SentimentAnnotator extends SentenceAnnotator {
     return maxTime;
   }
 
+  @Override
+  public SentenceCache<Tree> sentenceCache() {
+    return sentenceCache;
+  }
+
   @Override
   public void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
     // not sure what to do here, so just bail
@@ -110,9 +126,7 @@ public class SentimentAnnotator extends SentenceAnnotator {
     if (binarized == null) {
       throw new AssertionError("Binarized sentences not built by parser");
     }
-    Tree collapsedUnary = transformer.transformTree(binarized);
-    SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
-    scorer.forwardPropagateTree(collapsedUnary);
+    Tree collapsedUnary = sentimentTree(binarized);
     sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, collapsedUnary);
     int sentiment = RNNCoreAnnotations.getPredictedClass(collapsedUnary);
     sentence.set(SentimentCoreAnnotations.SentimentClass.class, SentimentUtils.sentimentString(model, sentiment));
@@ -146,4 +160,33 @@ public class SentimentAnnotator extends SentenceAnnotator {
     }
   }
 
+  /**
+   * The binarized tree of a sentence with its unaries collapsed and the sentiment of each node predicted.
+   * If {@link #sentenceCache} is on and the same tree has been seen before, the predictions are copied.
+   */
+  private Tree sentimentTree(Tree binarized) {
+    String key = sentenceCache == null ? null : binarized.toString();
+    if (key != null) {
+      Tree cached = sentenceCache.get(key);
+      if (cached != null) {
+        Tree collapsedUnary = cached.deepCopy();
+        // as in a new tree, the leaves are copies of the leaves of this sentence's tree
+        List<Tree> leaves = collapsedUnary.getLeaves();
+        List<Tree> words = binarized.getLeaves();
+        for (int i = 0; i < leaves.size(); i++) {
+          Label word = words.get(i).label();
+          leaves.get(i).setLabel(word.labelFactory().newLabel(word));
+        }
+        return collapsedUnary;
+      }
+    }
+    Tree collapsedUnary = transformer.transformTree(binarized);
+    compiledModel.forwardPropagateTree(collapsedUnary);
+    if (key != null) {
+      // later changes to this sentence's tree (such as its spans) shouldn't reach the cache
+      sentenceCache.put(key, collapsedUnary.deepCopy());
+    }
+    return collapsedUnary;
+  }
+
 }
@@ -0,0 +1,276 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+
+/**
+ * Runs a list of Annotators over a stream of documents as a pipeline of stages.
+ * <p>
+ * {@link AnnotationPipeline#annotate(Iterable, int, Consumer)} parallelizes over whole
+ * documents: each worker runs every annotator in turn.  Here instead each stage
+ * (one annotator, or a run of fused annotators) has its own worker threads and
+ * passes finished documents to the next stage through a bounded queue.  A slow
+ * stage such as coref therefore does not stall tokenization of later documents,
+ * and the number of documents alive at once is capped by {@code maxInFlight}.
+ * <p>
+ * Documents are handed to the callback in input order, on the calling thread.
+ * If an annotator throws, the exception is stored under
+ * {@link CoreAnnotations.ExceptionAnnotation}, the remaining annotators are skipped
+ * for that document, and it is still passed to the callback.
+ * <p>
+ * An annotator given a thread budget of 0 is fused into the preceding stage, so cheap
+ * annotators do not pay for a queue hand-off.  Fusing never changes the order the annotators
+ * run in, so it doesn't check their {@link Annotator#requires() requirements}: those are
+ * checked (or not, with {@code enforceRequirements=false}) when the pipeline is built, and
+ * may be met by annotations already on the input documents.
+ */
+public class StagedAnnotationPipeline {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(StagedAnnotationPipeline.class);
+
+  /** A run of consecutive annotators which are executed by the same worker threads. */
+  static class Stage {
+
+    final List<Annotator> annotators = new ArrayList<>();
+    final int numThreads;
+
+    Stage(int numThreads) {
+      this.numThreads = numThreads;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      for (Annotator annotator : annotators) {
+        if (sb.length() > 0) {
+          sb.append('+');
+        }
+        sb.append(StringUtils.getShortClassName(annotator));
+      }
+      return sb.append(" x").append(numThreads).toString();
+    }
+
+  } // end static class Stage
+
+
+  /** A document traveling through the stages, along with its position in the input. */
+  private static class Job {
+
+    final long index;
+    final Annotation annotation;
+    /** No more annotators are run on the document: it failed, or was already annotated. */
+    boolean done; // = false;
+
+    Job(long index, Annotation annotation) {
+      this.index = index;
+      this.annotation = annotation;
+    }
+
+  } // end static class Job
+
+  /** Marks the end of the input. Each stage forwards it once all of its workers have seen it. */
+  private static final Job END = new Job(-1, null);
+
+  private final List<Stage> stages;
+
+  private final int maxInFlight;
+
+
+  /**
+   * Create a staged pipeline.
+   *
+   * @param annotators The annotators to run, in order
+   * @param threadBudgets The number of worker threads for each annotator.  A budget of 0
+   *                      fuses the annotator into the previous stage.  Must be the same size as annotators.
+   * @param maxInFlight The maximum number of documents which are read but not yet passed to the callback
+   */
+  public StagedAnnotationPipeline(List<Annotator> annotators, List<Integer> threadBudgets, int maxInFlight) {
+    if (annotators.size() != threadBudgets.size()) {
+      throw new IllegalArgumentException("Got " + threadBudgets.size() + " thread budgets for " + annotators.size() + " annotators");
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be positive, not " + maxInFlight);
+    }
+    this.stages = planStages(annotators, threadBudgets);
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Group the annotators into stages.  Every annotator with a positive budget starts a new stage;
+   * annotators with a budget of 0 are fused into the stage before them.
+   */
+  static List<Stage> planStages(List<Annotator> annotators, List<Integer> threadBudgets) {
+    List<Stage> stages = new ArrayList<>();
+    for (int i = 0; i < annotators.size(); i++) {
+      Annotator annotator = annotators.get(i);
+      int budget = threadBudgets.get(i);
+      if (budget < 0) {
+        throw new IllegalArgumentException("Negative thread budget " + budget + " for " + StringUtils.getShortClassName(annotator));
+      }
+      if (budget > 0 || stages.isEmpty()) {
+        stages.add(new Stage(Math.max(budget, 1)));
+      }
+      stages.get(stages.size() - 1).annotators.add(annotator);
+    }
+    return stages;
+  }
+
+  /** The number of stages after fusing. */
+  public int numStages() {
+    return stages.size();
+  }
+
+  /**
+   * Annotate the given documents, calling the callback on each one in input order
+   * as soon as it and all documents before it are finished.
+   *
+   * @param annotations The input annotations to process
+   * @param callback A function to be called when an annotation finishes.
+   */
+  public void annotate(Iterable<Annotation> annotations, Consumer<Annotation> callback) {
+    annotate(annotations, ann -> false, callback);
+  }
+
+  /**
+   * Annotate the given documents, calling the callback on each one in input order
+   * as soon as it and all documents before it are finished.  Documents which are
+   * already annotated, such as those read from a cache, pass through the stages
+   * without running any annotators.
+   *
+   * @param annotations The input annotations to process
+   * @param annotated Whether a document is already annotated.  It is tested on the threads of
+   *                  the first stage, and may fill in the document's annotations.
+   * @param callback A function to be called when an annotation finishes.
+   */
+  public void annotate(Iterable<Annotation> annotations, Predicate<Annotation> annotated, Consumer<Annotation> callback) {
+    List<BlockingQueue<Job>> queues = new ArrayList<>();
+    for (int i = 0; i <= stages.size(); i++) {
+      queues.add(new LinkedBlockingQueue<>(maxInFlight + 1));
+    }
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    List<Thread> threads = new ArrayList<>();
+    AtomicReference<RuntimeException> feederException = new AtomicReference<>();
+
+    for (int s = 0; s < stages.size(); s++) {
+      final int stageIndex = s;
+      Stage stage = stages.get(s);
+      BlockingQueue<Job> in = queues.get(s);
+      BlockingQueue<Job> out = queues.get(s + 1);
+      AtomicInteger liveWorkers = new AtomicInteger(stage.numThreads);
+      for (int t = 0; t < stage.numThreads; t++) {
+        Predicate<Annotation> skip = s == 0 ? annotated : null;
+        threads.add(new Thread(() -> runWorker(stage, skip, in, out, liveWorkers), "stage-" + stageIndex + '-' + t + ' ' + stage));
+      }
+    }
+    threads.add(new Thread(() -> {
+      BlockingQueue<Job> first = queues.get(0);
+      try {
+        long index = 0;
+        for (Annotation annotation : annotations) {
+          inFlight.acquire();
+          first.put(new Job(index++, annotation));
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        feederException.set(e);
+      }
+      try {
+        first.put(END);
+      } catch (InterruptedException e) {
+        // we are being shut down; nobody is waiting for the END marker
+      }
+    }, "stage-input"));
+    for (Thread thread : threads) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    // Reorder the finished documents and deliver them on this thread
+    BlockingQueue<Job> last = queues.get(stages.size());
+    Map<Long, Annotation> finished = new HashMap<>();
+    long next = 0;
+    try {
+      while (true) {
+        Job job = last.take();
+        if (job == END) {
+          break;
+        }
+        finished.put(job.index, job.annotation);
+        for (Annotation ready; (ready = finished.remove(next)) != null; next++) {
+          callback.accept(ready);
+          inFlight.release();
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } finally {
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+    }
+    if ( ! finished.isEmpty()) {
+      log.warn("Staged pipeline finished with " + finished.size() + " undelivered documents");
+    }
+    if (feederException.get() != null) {
+      throw feederException.get();
+    }
+  }
+
+  private static void runWorker(Stage stage, Predicate<Annotation> annotated,
+                                BlockingQueue<Job> in, BlockingQueue<Job> out, AtomicInteger liveWorkers) {
+    try {
+      while (true) {
+        Job job = in.take();
+        if (job == END) {
+          // let the other workers of this stage see the marker too; the last one out passes it on
+          in.put(END);
+          if (liveWorkers.decrementAndGet() == 0) {
+            out.put(END);
+          }
+          return;
+        }
+        if (annotated != null && ! job.done) {
+          try {
+            job.done = annotated.test(job.annotation);
+          } catch (Throwable t) {
+            job.annotation.set(CoreAnnotations.ExceptionAnnotation.class, t);
+            job.done = true;
+          }
+        }
+        if ( ! job.done) {
+          for (Annotator annotator : stage.annotators) {
+            try {
+              annotator.annotate(job.annotation);
+            } catch (Throwable t) {
+              job.annotation.set(CoreAnnotations.ExceptionAnnotation.class, t);
+              job.done = true;
+              break;
+            }
+          }
+        }
+        out.put(job);
+      }
+    } catch (InterruptedException e) {
+      // shut down quietly; the pipeline is being torn down
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "StagedAnnotationPipeline" + stages;
+  }
+
+}
@@ -47,6 +47,8 @@ import java.util.concurrent.Semaphore;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 
@@ -172,6 +174,15 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   /** The annotator pool we should be using to get annotators. */
   public final AnnotatorPool pool;
 
+  /** The names of the annotators in this pipeline, in order. */
+  private final List<String> annotatorNames = new ArrayList<>();
+
+  /** The cache of annotated documents, if documentCache.maxBytes or documentCache.dir is set, or null. */
+  private final AnnotationCache documentCache;
+
+  /** The signature of the annotators, for the keys of {@link #documentCache}. */
+  private final String documentCacheSignature;
+
 
   /**
    * Constructs a pipeline using as properties the properties file found in the classpath
@@ -279,6 +290,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
       Annotator an = pool.get(name);
       this.addAnnotator(an);
+      annotatorNames.add(name);
 
       if (enforceRequirements) {
         Set<Class<? extends CoreAnnotation>> allRequirements = an.requires();
@@ -302,6 +314,8 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     if (! alreadyAddedAnnoNames.contains(STANFORD_SSPLIT)) {
       System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
     }
+    this.documentCache = AnnotationCache.fromProperties(this.properties);
+    this.documentCacheSignature = documentCache == null ? null : AnnotationCache.signature(annotatorNames, this.properties);
     this.pipelineSetupTime = tim.report();
   }
 
@@ -738,10 +752,20 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     document.wrapAnnotations();
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   * If the pipeline has a document cache, a plain text document which has been annotated before is
+   * read back from the cache instead (and the annotator times are not reported).
+   */
   @Override
-  public void annotate(Annotation annotation) {
-    super.annotate(annotation);
+  public void annotate(Annotation annotation, ObjLongConsumer<Annotator> annotatorTimes) {
+    String cacheKey = documentCache == null ? null : AnnotationCache.key(annotation, documentCacheSignature);
+    if (cacheKey == null || ! documentCache.get(cacheKey, annotation)) {
+      super.annotate(annotation, annotatorTimes);
+      if (cacheKey != null) {
+        documentCache.put(cacheKey, annotation);
+      }
+    }
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
@@ -773,6 +797,98 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
 
 
+  /**
+   * Annotate a collection of input annotations in parallel.
+   * If the property {@code pipeline.staged} is true, each annotator runs as its own stage
+   * with {@code <annotator>.stageThreads} threads (default 1; 0 fuses it into the previous stage),
+   * and at most {@code pipeline.maxInFlight} documents (default twice the total number
+   * of threads) are in the pipeline at once.  Otherwise, each of the numThreads threads runs
+   * the whole pipeline on one document at a time.
+   *
+   * @param annotations The input annotations to process
+   * @param numThreads The number of threads to run on, if not running in staged mode
+   * @param callback A function to be called when an annotation finishes.
+   */
+  @Override
+  public void annotate(final Iterable<Annotation> annotations, int numThreads, final Consumer<Annotation> callback) {
+    if ( ! PropertiesUtils.getBool(properties, "pipeline.staged", false)) {
+      super.annotate(annotations, numThreads, callback);
+      return;
+    }
+    List<Integer> threadBudgets = stageThreadBudgets(numThreads);
+    int totalThreads = 0;
+    for (int budget : threadBudgets) {
+      totalThreads += budget;
+    }
+    int maxInFlight = PropertiesUtils.getInt(properties, "pipeline.maxInFlight", Math.max(2 * totalThreads, 1));
+    annotateInOrder(annotations, threadBudgets, maxInFlight, callback);
+  }
+
+  /**
+   * Annotate a stream of input annotations in parallel, with at most maxInFlight of them
+   * read but not yet passed to the callback, so that memory use does not grow with the input.
+   * The callback is called in input order, on the calling thread.
+   * If an annotator throws, the exception is stored under
+   * {@link CoreAnnotations.ExceptionAnnotation} and the document is still passed to the callback.
+   * If the pipeline has a document cache, documents in it are read back rather than annotated,
+   * and the others are added to it, as in {@link #annotate(Annotation, ObjLongConsumer)}.
+   *
+   * @param annotations The input annotations to process
+   * @param numThreads The number of threads to run on, if not running in staged mode
+   * @param maxInFlight The maximum number of documents in the pipeline at once
+   * @param callback A function to be called when an annotation finishes.
+   */
+  public void annotateInOrder(final Iterable<Annotation> annotations, int numThreads, int maxInFlight,
+                              final Consumer<Annotation> callback) {
+    annotateInOrder(annotations, stageThreadBudgets(numThreads), maxInFlight, callback);
+  }
+
+  /**
+   * The thread budget of each annotator: {@code <annotator>.stageThreads} in staged mode,
+   * or else all numThreads on the first annotator with the rest fused into it,
+   * so that each thread runs the whole pipeline on one document at a time.
+   */
+  private List<Integer> stageThreadBudgets(int numThreads) {
+    boolean staged = PropertiesUtils.getBool(properties, "pipeline.staged", false);
+    List<Integer> threadBudgets = new ArrayList<>();
+    for (String name : annotatorNames) {
+      if (staged) {
+        threadBudgets.add(PropertiesUtils.getInt(properties, name + ".stageThreads", 1));
+      } else {
+        threadBudgets.add(threadBudgets.isEmpty() ? Math.max(numThreads, 1) : 0);
+      }
+    }
+    return threadBudgets;
+  }
+
+  private void annotateInOrder(final Iterable<Annotation> annotations, List<Integer> threadBudgets, int maxInFlight,
+                               final Consumer<Annotation> callback) {
+    // the keys of the documents which weren't in the cache, to cache them once they are annotated
+    Map<Annotation, String> missedKeys = Collections.synchronizedMap(new IdentityHashMap<>());
+    Predicate<Annotation> cached = ann -> {
+      String cacheKey = documentCache == null ? null : AnnotationCache.key(ann, documentCacheSignature);
+      if (cacheKey == null) {
+        return false;
+      }
+      if (documentCache.get(cacheKey, ann)) {
+        return true;
+      }
+      missedKeys.put(ann, cacheKey);
+      return false;
+    };
+    annotateStaged(annotations, threadBudgets, maxInFlight, cached, ann -> {
+      String cacheKey = missedKeys.remove(ann);
+      if (cacheKey != null && ann.get(CoreAnnotations.ExceptionAnnotation.class) == null) {
+        documentCache.put(cacheKey, ann);
+      }
+      List<CoreLabel> words = ann.get(CoreAnnotations.TokensAnnotation.class);
+      if (words != null) {
+        numWords += words.size();
+      }
+      callback.accept(ann);
+    });
+  }
+
   /**
    * Determines whether the parser annotator should default to
    * producing binary trees.  Currently there is only one condition
@@ -996,6 +1112,8 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     os.println("\t\"extension\" - if -file used with a directory, process only the files with this extension");
     os.println("\t\"fileList\" - run the pipeline on the list of files given in this file");
     os.println("\t             output is generated for every input file as file.outputExtension");
+    os.println("\t\"stream\" - run the pipeline on each document of this file (JSON lines, or delimited protobuf documents if it ends in .pb),");
+    os.println("\t           writing delimited protobuf documents to one output file as they finish; see DocumentStreamProcessor");
     os.println("\t\"outputDirectory\" - where to put output (defaults to the current directory)");
     os.println("\t\"outputExtension\" - extension to use for the output file (defaults to \".xml\" for XML, \".ser.gz\" for serialized).  Don't forget the dot!");
     os.println("\t\"outputFormat\" - \"text\"  (default), \"tagged\", \"json\", \"conll\", \"conllu\", \"serialized\", \"xml\" or \"custom\"");
@@ -1005,6 +1123,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
     os.println("\t\"isOneDocument\" - (for piped input only) treat the text till eof as one document rather than one document per line");
     os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"pipeline.staged\" - when annotating many documents in parallel, run each annotator as its own stage with \"<annotator>.stageThreads\" threads");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -1163,6 +1282,9 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   private static void logTimingInfo(StanfordCoreNLP pipeline, Timing tim) {
     logger.info(""); // puts blank line in logging output
     logger.info(pipeline.timingInformation());
+    if (pipeline.documentCache != null) {
+      logger.info("Document cache: " + pipeline.documentCache);
+    }
     logger.info("Pipeline setup: " +
         Timing.toSecondsString(pipeline.pipelineSetupTime) + " sec.");
     logger.info("Total time for StanfordCoreNLP pipeline: " +
@@ -1469,6 +1591,13 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
       this.processFiles(null, files, numThreads, clearPool, Optional.of(tim));
     }
 
+    //
+    // Stream one large file of documents to one output file
+    //
+    else if (properties.containsKey("stream")) {
+      new DocumentStreamProcessor(this).run();
+    }
+
     //
     // Run as a filter or the interactive shell depending on whether atached to console
     //
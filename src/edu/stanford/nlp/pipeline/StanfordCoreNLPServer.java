@@ -26,7 +26,6 @@ import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.*;
-import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 import java.net.*;
 import javax.net.ssl.*;
@@ -92,6 +91,14 @@ public class StanfordCoreNLPServer implements Runnable {
   protected boolean stanford = false;
   @ArgumentParser.Option(name="srparser", gloss="If true, use the srparser by default if possible.  Should save speed & memory on large queries")
   protected boolean srparser = false;
+  @ArgumentParser.Option(name="queueSize", gloss="Max number of requests waiting for a CoreNLP thread; more are refused with a 503 (non-positive means no limit)")
+  protected static int queueSize = 64;
+  @ArgumentParser.Option(name="queueCost", gloss="Max total cost (characters times annotator weights) of the requests waiting for a CoreNLP thread; more are refused with a 503 (non-positive means no limit)")
+  protected static long queueCost = 25000000;
+  @ArgumentParser.Option(name="pipelineCacheSize", gloss="Max number of pipelines with different properties to keep built")
+  protected static int pipelineCacheSize = 8;
+  @ArgumentParser.Option(name="pipelines", gloss="A file of pipelines to build when the server starts. Each line is the query string of a request, e.g. 'properties={\"annotators\":\"tokenize,ssplit,pos\"}'")
+  protected static String pipelinesPath = null;
 
   /** List of server specific properties **/
   private static final List<String> serverSpecificProperties = ArgumentParser.listOptions(StanfordCoreNLPServer.class);
@@ -104,21 +111,28 @@ public class StanfordCoreNLPServer implements Runnable {
 
   /**
    * The thread pool for the HTTP server.
+   * See {@link #httpExecutor(int, int)}.
    */
   private final ExecutorService serverExecutor;
 
   /**
-   * To prevent grossly wasteful over-creation of pipeline objects, cache the last
-   *  one we created.
+   * The number of HTTP threads beyond those which may be waiting for CoreNLP,
+   * for refusing requests and serving the status endpoints.
    */
-  private SoftReference<Pair<String, StanfordCoreNLP>> lastPipeline = new SoftReference<>(null);
+  private static final int SPARE_HTTP_THREADS = 4;
+
+  /**
+   * To prevent grossly wasteful over-creation of pipeline objects, cache the ones
+   *  we have created most recently.
+   */
+  private final PipelineCache pipelines = new PipelineCache(pipelineCacheSize, this::newStanfordCoreNLP);
 
   private RuleBasedParser sceneParser = null;
 
   /**
-   * An executor to time out CoreNLP execution with.
+   * The threads which run CoreNLP, and the queue of requests waiting for them.
    */
-  private final ExecutorService corenlpExecutor;
+  private final AdmissionController admission;
 
 
   /**
@@ -206,8 +220,8 @@ public class StanfordCoreNLPServer implements Runnable {
             defaultPropertyKeys.stream().map(
                 k -> String.format("\t\t\t%s = %s", k, this.defaultProps.get(k))).collect(Collectors.joining("\n")));
 
-    this.serverExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
-    this.corenlpExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
+    this.serverExecutor = httpExecutor(ArgumentParser.threads, queueSize);
+    this.admission = new AdmissionController(ArgumentParser.threads, queueSize, queueCost);
 
     // Generate and write a shutdown key, get optional server_id from passed in properties
     // this way if multiple servers running can shut them all down with different ids
@@ -259,7 +273,13 @@ public class StanfordCoreNLPServer implements Runnable {
    * @throws IllegalStateException Thrown if we could not decode the URL with utf8.
    */
   private static Map<String, String> getURLParams(URI uri) {
-    String query = uri.getRawQuery();
+    return getURLParams(uri.getRawQuery());
+  }
+
+  /**
+   * Parse a raw (URL encoded) query string into a map of parameters.
+   */
+  private static Map<String, String> getURLParams(String query) {
     if (query != null) {
       try {
         Map<String, String> params = new HashMap<>();
@@ -417,38 +437,55 @@ public class StanfordCoreNLPServer implements Runnable {
    * @return A pipeline parameterized by these properties.
    */
   private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
-    StanfordCoreNLP impl;
-
-    StringBuilder sb = new StringBuilder();
-    props.stringPropertyNames().stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
-      String pvalue = props.getProperty(key);
-      sb.append(key).append(':').append(pvalue).append(';');
-    });
-    String cacheKey = sb.toString();
+    return pipelines.get(props);
+  }
 
-    synchronized (this) {
-      Pair<String, StanfordCoreNLP> lastPipeline = this.lastPipeline.get();
-      if (lastPipeline != null && Objects.equals(lastPipeline.first, cacheKey)) {
-        return lastPipeline.second;
-      } else {
-        // Do some housekeeping on the global cache
-        for (Iterator<Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>>> iter = StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet().iterator();
-             iter.hasNext(); ) {
-          Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry = iter.next();
-          if ( ! entry.getValue().isCache()) {
-            error("Entry in global cache is not garbage collectable!");
-            iter.remove();
-          } else if (entry.getValue().isGarbageCollected()) {
-            iter.remove();
-          }
-        }
-        // Create a CoreNLP
-        impl = new StanfordCoreNLP(props);
-        this.lastPipeline = new SoftReference<>(Pair.makePair(cacheKey, impl));
+  /**
+   * Create a new StanfordCoreNLP object for {@link #pipelines}.
+   * Pipelines are created one at a time, as they were before they were cached.
+   *
+   * @param props The properties to create the object with.
+   * @return A new pipeline parameterized by these properties.
+   */
+  private synchronized StanfordCoreNLP newStanfordCoreNLP(Properties props) {
+    // Do some housekeeping on the global cache
+    for (Iterator<Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>>> iter = StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet().iterator();
+         iter.hasNext(); ) {
+      Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry = iter.next();
+      if ( ! entry.getValue().isCache()) {
+        error("Entry in global cache is not garbage collectable!");
+        iter.remove();
+      } else if (entry.getValue().isGarbageCollected()) {
+        iter.remove();
       }
     }
+    // Create a CoreNLP
+    return new StanfordCoreNLP(props);
+  }
 
-    return impl;
+  /**
+   * Build the pipelines listed in a file, so that the first requests for them don't wait for them to be built.
+   * Each line of the file is the query string of a request (the properties are taken from it as they would
+   * be from the request); blank lines and lines starting with '#' are skipped.
+   *
+   * @param path The file listing the pipelines.
+   */
+  public void warmPipelines(String path) {
+    for (String line : IOUtils.readLines(path)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      try {
+        Properties props = getProperties(getURLParams(line), null);
+        log("Building pipeline for " + line);
+        mkStanfordCoreNLP(props);
+      } catch (Throwable throwable) {
+        err("Could not build pipeline for " + line + "; encountered exception:");
+        err(throwable);
+      }
+    }
+    log("Built pipelines: " + pipelines);
   }
 
   /**
@@ -484,8 +521,20 @@ public class StanfordCoreNLPServer implements Runnable {
    * @throws UnsupportedEncodingException Thrown if we could not decode the key/value pairs with UTF-8.
    */
   private Properties getProperties(HttpExchange httpExchange) throws UnsupportedEncodingException {
-    Map<String, String> urlParams = getURLParams(httpExchange.getRequestURI());
+    return getProperties(getURLParams(httpExchange.getRequestURI()), httpExchange);
+  }
 
+  /**
+   * Get the properties of a request from its URL parameters, on top of the server's default properties.
+   *
+   * @param urlParams The parameters of the request.
+   * @param httpExchange The exchange to report an error over, or null if there is no request to respond to.
+   *
+   * @return A {@link Properties} object corresponding to a combination of default and passed properties.
+   *
+   * @throws UnsupportedEncodingException Thrown if we could not decode the key/value pairs with UTF-8.
+   */
+  private Properties getProperties(Map<String, String> urlParams, HttpExchange httpExchange) throws UnsupportedEncodingException {
     // Load the default properties if resetDefault is false
     // If resetDefault is true, ignore server properties this server was started with,
     // except the keys in serverIOProperties (i.e., don't reset IO properties)
@@ -538,6 +587,9 @@ public class StanfordCoreNLPServer implements Runnable {
           err("Failure to load language specific properties: " + languagePropertiesFile + " for " + language);
         }
       } else {
+        if (httpExchange == null) {
+          throw new IllegalArgumentException("Invalid language: '" + language + '\'');
+        }
         try {
           respondError("Invalid language: '" + language + '\'', httpExchange);
         } catch (IOException e) { warn(e); }
@@ -624,6 +676,81 @@ public class StanfordCoreNLPServer implements Runnable {
     httpExchange.close();
   }
 
+  /**
+   * The thread pool for the HTTP handlers.  A handler waits on its request while it is queued
+   * and run on the CoreNLP threads, so there is a handler for every request which can be running or
+   * queued, and a few more.  A request beyond those then reaches the {@link AdmissionController} at once,
+   * and is refused with a 503, rather than waiting unseen for a handler with its deadline not yet started;
+   * and the spare handlers serve /metrics and the other status endpoints however busy CoreNLP is.
+   *
+   * @param threads The number of CoreNLP threads
+   * @param queueSize The most requests which may wait for a CoreNLP thread (non-positive means no limit,
+   *                  and then there is no limit on the handlers either)
+   */
+  static ExecutorService httpExecutor(int threads, int queueSize) {
+    if (queueSize <= 0) {
+      return Executors.newCachedThreadPool();
+    }
+    return Executors.newFixedThreadPool(threads + queueSize + SPARE_HTTP_THREADS);
+  }
+
+  /**
+   * A helper function to respond to a request which was refused because the server is too busy,
+   * telling the client when to try again.
+   *
+   * @param e The reason the request was refused.
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private static void respondUnavailable(AdmissionController.RequestRejectedException e, HttpExchange httpExchange) throws IOException {
+    warn("Refusing request from " + httpExchange.getRemoteAddress() + ": " + e.getMessage());
+    byte[] content = (e.getMessage() + '\n').getBytes(StandardCharsets.UTF_8);
+    httpExchange.getResponseHeaders().add("Content-type", "text/plain");
+    httpExchange.getResponseHeaders().add("Retry-After", Integer.toString(e.retryAfterSeconds));
+    httpExchange.sendResponseHeaders(HTTP_UNAVAILABLE, content.length);
+    httpExchange.getResponseBody().write(content);
+    httpExchange.close();
+  }
+
+  /**
+   * Submit work to the CoreNLP threads, if there is room for it in the queue.
+   * If there isn't, respond to the request with a 503 saying when to retry.
+   *
+   * @param cost The cost of the request (see {@link AdmissionController#cost(int, String)})
+   * @param timeoutMilliseconds How long the client will wait; if the work hasn't started by then, it is dropped
+   * @param task The work to do
+   * @param httpExchange The exchange to respond over if the request is refused.
+   *
+   * @return The future result, or null if the request was refused (and has been responded to).
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the refusal.
+   */
+  private <T> Future<T> submit(long cost, int timeoutMilliseconds, Callable<T> task, HttpExchange httpExchange) throws IOException {
+    try {
+      return admission.submit(cost, System.currentTimeMillis() + timeoutMilliseconds, task);
+    } catch (AdmissionController.RequestRejectedException e) {
+      respondUnavailable(e, httpExchange);
+      return null;
+    }
+  }
+
+  /**
+   * The cost of a request whose document is only read once it is run, estimated from the length of the request body.
+   */
+  private static long requestCost(Properties props, HttpExchange httpExchange) {
+    int length = 0;
+    try {
+      String contentLength = httpExchange.getRequestHeaders().getFirst("Content-length");
+      if (contentLength != null) {
+        length = Integer.parseInt(contentLength.trim());
+      }
+    } catch (NumberFormatException e) {
+      // just leave it as 0
+    }
+    return AdmissionController.cost(length, props.getProperty("annotators"));
+  }
+
   private static void setHttpExchangeResponseHeaders(HttpExchange httpExchange) {
     // Set common response headers
     httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
@@ -803,6 +930,31 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end static class LiveHandler
 
 
+  /**
+   * A handler reporting the length of the request queue, how long requests wait,
+   * and how long they and each annotator take, in the Prometheus text format.
+   */
+  protected static class MetricsHandler implements HttpHandler {
+    private final AdmissionController admission;
+
+    private final PipelineCache pipelines;
+
+    public MetricsHandler(AdmissionController admission, PipelineCache pipelines) {
+      this.admission = admission;
+      this.pipelines = pipelines;
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().set("Content-type", "text/plain; version=0.0.4");
+      byte[] response = (admission.metrics() + pipelines.metrics()).getBytes(StandardCharsets.UTF_8);
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  } // end static class MetricsHandler
+
+
   /**
    * Sending the appropriate shutdown key will gracefully shut down the server.
    * This key is, by default, saved into the local file /tmp/corenlp.shutdown on the
@@ -1054,12 +1206,16 @@ public class StanfordCoreNLPServer implements Runnable {
       try {
         // Annotate
         StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-        completedAnnotationFuture = corenlpExecutor.submit(() -> {
-          pipeline.annotate(ann);
+        int timeoutMilliseconds = getTimeout(props, httpExchange);
+        long cost = AdmissionController.cost(ann.get(CoreAnnotations.TextAnnotation.class).length(), props.getProperty("annotators"));
+        completedAnnotationFuture = submit(cost, timeoutMilliseconds, () -> {
+          pipeline.annotate(ann, admission::recordAnnotatorTime);
           return ann;
-        });
+        }, httpExchange);
+        if (completedAnnotationFuture == null) {
+          return;  // the server is too busy, and has said so
+        }
         Annotation completedAnnotation;
-        int timeoutMilliseconds = getTimeout(props, httpExchange);
         completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
         completedAnnotationFuture = null;  // No longer any need for the future
 
@@ -1092,6 +1248,9 @@ public class StanfordCoreNLPServer implements Runnable {
         if (completedAnnotationFuture != null) {
           completedAnnotationFuture.cancel(true);
         }
+      } catch (CancellationException e) {
+        // the request expired in the queue before it could start
+        respondError("CoreNLP request timed out: the server was too busy to start it in time.", httpExchange);
       } catch (Exception e) {
         // Print the stack trace for debugging
         warn(e);
@@ -1148,7 +1307,11 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<String, Annotation>> future = corenlpExecutor.submit(() -> {
+      int timeout = getTimeout(props, httpExchange);
+      if ( ! pipelines.contains(props)) {
+        timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
+      }
+      Future<Pair<String, Annotation>> future = submit(requestCost(props, httpExchange), timeout, () -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1213,14 +1376,13 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return new Pair<>("", null);
-      });
+      }, httpExchange);
+      if (future == null) {
+        return;  // the server is too busy, and has said so
+      }
 
       // Send response
       try {
-        int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
-          timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
-        }
         Pair<String, Annotation> response = future.get(timeout, TimeUnit.MILLISECONDS);
         Annotation completedAnnotation = response.second;
         byte[] content = response.first.getBytes();
@@ -1229,7 +1391,11 @@ public class StanfordCoreNLPServer implements Runnable {
           callback.accept(new FinishedRequest(props, completedAnnotation, params.get("pattern"), null));
         }
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        future.cancel(true);  // don't leave the work running or waiting
         respondError("Timeout when executing TokensRegex query", httpExchange);
+      } catch (CancellationException e) {
+        // the request expired in the queue before it could start
+        respondError("Timeout when executing TokensRegex query: the server was too busy to start it in time", httpExchange);
       }
     }
   }
@@ -1276,7 +1442,11 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<byte[], Annotation>> response = corenlpExecutor.submit(() -> {
+      int timeout = getTimeout(props, httpExchange);
+      if ( ! pipelines.contains(props)) {
+        timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
+      }
+      Future<Pair<byte[], Annotation>> response = submit(requestCost(props, httpExchange), timeout, () -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1369,14 +1539,13 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return Pair.makePair("".getBytes(), null);
-      });
+      }, httpExchange);
+      if (response == null) {
+        return;  // the server is too busy, and has said so
+      }
 
       // Send response
       try {
-        int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
-          timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
-        }
         Pair<byte[], Annotation> pair = response.get(timeout, TimeUnit.MILLISECONDS);
         Annotation completedAnnotation = pair.second;
         byte[] content = pair.first;
@@ -1385,7 +1554,11 @@ public class StanfordCoreNLPServer implements Runnable {
           callback.accept(new FinishedRequest(props, completedAnnotation, params.get("pattern"), null));
         }
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        response.cancel(true);  // don't leave the work running or waiting
         respondError("Timeout when executing Semgrex query", httpExchange);
+      } catch (CancellationException e) {
+        // the request expired in the queue before it could start
+        respondError("Timeout when executing Semgrex query: the server was too busy to start it in time", httpExchange);
       }
     }
   }
@@ -1450,7 +1623,11 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<String, Annotation>> response = corenlpExecutor.submit(() -> {
+      int timeout = getTimeout(props, httpExchange);
+      if ( ! pipelines.contains(props)) {
+        timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
+      }
+      Future<Pair<String, Annotation>> response = submit(requestCost(props, httpExchange), timeout, () -> {
         try {
           // Get the document
           Annotation doc = getDocument(props, httpExchange);
@@ -1507,14 +1684,13 @@ public class StanfordCoreNLPServer implements Runnable {
           }
         }
         return Pair.makePair("", null);
-      });
+      }, httpExchange);
+      if (response == null) {
+        return;  // the server is too busy, and has said so
+      }
 
       // Send response
       try {
-        int timeout = getTimeout(props, httpExchange);
-        if (lastPipeline.get() == null) {
-          timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
-        }
         Pair<String, Annotation> pair = response.get(timeout, TimeUnit.MILLISECONDS);
         Annotation completedAnnotation = pair.second;
         byte[] content = pair.first.getBytes();
@@ -1523,7 +1699,11 @@ public class StanfordCoreNLPServer implements Runnable {
           callback.accept(new FinishedRequest(props, completedAnnotation, params.get("pattern"), null));
         }
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        response.cancel(true);  // don't leave the work running or waiting
         respondError("Timeout when executing Tregex query", httpExchange);
+      } catch (CancellationException e) {
+        // the request expired in the queue before it could start
+        respondError("Timeout when executing Tregex query: the server was too busy to start it in time", httpExchange);
       }
     }
   }
@@ -1566,7 +1746,11 @@ public class StanfordCoreNLPServer implements Runnable {
       }
       Map<String, String> params = getURLParams(httpExchange.getRequestURI());
 
-      Future<Pair<String, SceneGraph>> response = corenlpExecutor.submit(() -> {
+      int timeout = getTimeout(props, httpExchange);
+      if (sceneParser == null) {
+        timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
+      }
+      Future<Pair<String, SceneGraph>> response = submit(requestCost(props, httpExchange), timeout, () -> {
           try {
             // Get the document
             String request = getSceneGraphRequest(props, httpExchange);
@@ -1589,14 +1773,13 @@ public class StanfordCoreNLPServer implements Runnable {
             }
           }
           return Pair.makePair("", null);
-        });
+        }, httpExchange);
+      if (response == null) {
+        return;  // the server is too busy, and has said so
+      }
 
       // Send response
       try {
-        int timeout = getTimeout(props, httpExchange);
-        if (sceneParser == null) {
-          timeout = timeout + 60000; // add 60 seconds for loading a pipeline if needed
-        }
         Pair<String, SceneGraph> pair = response.get(timeout, TimeUnit.MILLISECONDS);
         SceneGraph graph = pair.second;
         if (graph == null) {
@@ -1634,7 +1817,11 @@ public class StanfordCoreNLPServer implements Runnable {
         byte[] content = result.getBytes();
         sendAndGetResponse(httpExchange, content);
       } catch (InterruptedException | ExecutionException | TimeoutException e) {
+        response.cancel(true);  // don't leave the work running or waiting
         respondError("Timeout when executing scenegraph query", httpExchange);
+      } catch (CancellationException e) {
+        // the request expired in the queue before it could start
+        respondError("Timeout when executing scenegraph query: the server was too busy to start it in time", httpExchange);
       }
     }
   }
@@ -1705,6 +1892,7 @@ public class StanfordCoreNLPServer implements Runnable {
         // Add the two status endpoints
         withAuth(server.createContext("/live", new LiveHandler()), Optional.empty());
         withAuth(server.createContext("/ready", new ReadyHandler(live)), Optional.empty());
+        withAuth(server.createContext("/metrics", new MetricsHandler(admission, pipelines)), Optional.empty());
         // Start the server
         server.start();
         // Server started
@@ -1813,6 +2001,7 @@ public class StanfordCoreNLPServer implements Runnable {
       if (this.serverPort == this.statusPort) {
         withAuth(server.createContext(uriContext+"/live", new LiveHandler()), Optional.empty());
         withAuth(server.createContext(uriContext+"/ready", new ReadyHandler(live)), Optional.empty());
+        withAuth(server.createContext(uriContext+"/metrics", new MetricsHandler(admission, pipelines)), Optional.empty());
 
       }
       server.setExecutor(serverExecutor);
@@ -1883,6 +2072,9 @@ public class StanfordCoreNLPServer implements Runnable {
         err(throwable);
       }
     }
+    if (StanfordCoreNLPServer.pipelinesPath != null) {
+      server.warmPipelines(StanfordCoreNLPServer.pipelinesPath);
+    }
 
     // Credentials
     Optional<Pair<String, String>> credentials = Optional.empty();
@@ -6,7 +6,9 @@ import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
+import edu.stanford.nlp.ling.tokensregex.matcher.TrieMapMatcher;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
@@ -121,9 +123,20 @@ import java.util.regex.Pattern;
  *      <td>{@code false}</td></tr>
  *   <tr><td>{@code verbose}</td><td>If true, turns on extra debugging messages.</td>
  *      <td>{@code false}</td></tr>
+ *   <tr><td>{@code literalTrie}</td><td>If true, entries which are just a sequence of literal words
+ *      are matched with a trie of words rather than compiled into TokensRegex patterns (see below)</td>
+ *      <td>{@code false}</td></tr>
  * </table>
  *
  * <p>
+ * Most entries of a large gazetteer are just words, such as {@code Palo Alto}, and compiling each of them
+ * into a {@link TokenSequencePattern} makes loading slow and matching slower as the mapping grows.
+ * With {@code literalTrie}, such entries (no regex special characters, no TokensRegex expression,
+ * no group, and no {@code MATCH_ALL_TOKENS} POS restriction) are put in a {@link TrieMap} of words instead,
+ * and only the remaining entries go through TokensRegex.  The matches found and chosen are the same, except that
+ * where TokensRegex breaks a tie between overlapping matches arbitrarily, the earlier mapping entry is chosen.
+ *
+ * <p>
  * You can specify a different header for each mapping file.
  * Here is an example of mapping files with header declaration:
  * <pre>
@@ -160,6 +173,7 @@ public class TokensRegexNERAnnotator implements Annotator  {
   private final List<Entry> entries;
   private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  private final LiteralMatcher literalMatcher; // null unless literalTrie is set
   private final List<Class> annotationFields; // list of fields to annotate (default to just NamedEntityTag)
 
   private final Set<String> myLabels;  // set of labels to always overwrite
@@ -197,6 +211,7 @@ public class TokensRegexNERAnnotator implements Annotator  {
                   " specified overwriteableType for the regex will the NER type be overwritten."),
           new PropertiesUtils.Property("backgroundSymbol", DEFAULT_BACKGROUND_SYMBOL, "Comma separated list of NER labels to always replace."),
           new PropertiesUtils.Property("verbose", "false", ""),
+          new PropertiesUtils.Property("literalTrie", "false", "Whether to match entries which are just literal words with a trie rather than TokensRegex."),
   };
 
   /** Construct a new TokensRegexAnnotator.
@@ -315,8 +330,13 @@ public class TokensRegexNERAnnotator implements Annotator  {
     entryToMappingFileNumber = new HashMap<>();
     annotationFieldnames = processPerFileOptions(name, mappings, ignoreCaseList, validPosPatternList, headerList, ignoreCase, validPosPattern, headerFields, annotationFieldnames, annotationFields);
     entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCaseList, headerList, entryToMappingFileNumber, verbose, annotationFieldnames, mappings));
+    literalMatcher = PropertiesUtils.getBool(properties, prefix + "literalTrie", false) ? new LiteralMatcher(entries) : null;
     IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<>();
     multiPatternMatcher = createPatternMatcher(patternToEntry);
+    if (verbose && literalMatcher != null) {
+      logger.info(name + ": matching " + literalMatcher.size() + " literal entries with a trie and " +
+          patternToEntry.size() + " entries with TokensRegex");
+    }
     this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
     Set<String> myLabels = Generics.newHashSet();
     // Can always override background or none.
@@ -370,6 +390,9 @@ public class TokensRegexNERAnnotator implements Annotator  {
 
       NodePattern<String> posTagPattern = (validPosPatternList.get(entryToMappingFileNumber.get(entry)) != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
               new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPatternList.get(entryToMappingFileNumber.get(entry))):null;
+      if (literalMatcher != null && posTagPattern == null && literalMatcher.add(entry, ignoreCaseEntry)) {
+        continue;
+      }
       if (entry.tokensRegex != null) {
         // TODO: posTagPatterns...
         pattern = TokenSequencePattern.compile(env, entry.tokensRegex);
@@ -395,47 +418,62 @@ public class TokensRegexNERAnnotator implements Annotator  {
       patterns.add(pattern);
       patternToEntry.put(pattern, entry);
     }
+    if (literalMatcher != null) {
+      literalMatcher.setPatterns(patterns);
+    }
     return TokenSequencePattern.getMultiPatternMatcher(patterns);
   }
 
   private void annotateMatched(List<CoreLabel> tokens) {
+    if (literalMatcher != null) {
+      for (LiteralMatcher.Candidate c : literalMatcher.findNonOverlapping(tokens, patternToEntry)) {
+        annotateMatch(tokens, c.entry, c.groupStart, c.groupEnd);
+      }
+      return;
+    }
     List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
     for (SequenceMatchResult<CoreMap> m:matched) {
       Entry entry = patternToEntry.get(m.pattern());
-
-      // Check if we will overwrite the existing annotation with this annotation
       int g = entry.annotateGroup;
-      int start = m.start(g);
-      int end = m.end(g);
-
-      String str = m.group(g);
-      if (commonWords.contains(str)) {
-        if (verbose) {
-          logger.info("Not annotating (common word) '" + str + "': " +
-              StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
-              + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
-        }
-        continue;
-      }
+      annotateMatch(tokens, entry, m.start(g), m.end(g));
+    }
+  }
 
-      boolean overwriteOriginalNer = checkPosTags(tokens, start, end);
-      if (overwriteOriginalNer) {
-        overwriteOriginalNer = checkOrigNerTags(entry, tokens, start, end);
+  /** Annotate tokens [start, end), matched by the entry, unless it is a common word or the checks say not to. */
+  private void annotateMatch(List<CoreLabel> tokens, Entry entry, int start, int end) {
+    if (start < 0) {
+      // the group to annotate did not take part in the match
+      return;
+    }
+    // Check if we will overwrite the existing annotation with this annotation
+    List<CoreLabel> groupNodes = tokens.subList(start, end);
+    String str = ChunkAnnotationUtils.getTokenText(groupNodes, CoreAnnotations.TextAnnotation.class);
+    if (commonWords.contains(str)) {
+      if (verbose) {
+        logger.info("Not annotating (common word) '" + str + "': " +
+            StringUtils.joinFields(groupNodes, CoreAnnotations.NamedEntityTagAnnotation.class)
+            + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
       }
-      if (overwriteOriginalNer) {
-        for (int i = start; i < end; i++) {
-          CoreLabel token = tokens.get(i);
-          for (int j = 0; j < annotationFields.size(); j++) {
-            token.set(annotationFields.get(j), entry.types[j]);
-          }
-         // tokens.get(i).set(CoreAnnotations.NamedEntityTagAnnotation.class, entry.type);
-        }
-      } else {
-        if (verbose) {
-          logger.info("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
-                  + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
+      return;
+    }
+
+    boolean overwriteOriginalNer = checkPosTags(tokens, start, end);
+    if (overwriteOriginalNer) {
+      overwriteOriginalNer = checkOrigNerTags(entry, tokens, start, end);
+    }
+    if (overwriteOriginalNer) {
+      for (int i = start; i < end; i++) {
+        CoreLabel token = tokens.get(i);
+        for (int j = 0; j < annotationFields.size(); j++) {
+          token.set(annotationFields.get(j), entry.types[j]);
         }
+       // tokens.get(i).set(CoreAnnotations.NamedEntityTagAnnotation.class, entry.type);
+      }
+    } else {
+      if (verbose) {
+        logger.info("Not annotating  '" + str + "': " +
+                StringUtils.joinFields(groupNodes, CoreAnnotations.NamedEntityTagAnnotation.class)
+                + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
       }
     }
   }
@@ -593,6 +631,238 @@ public class TokensRegexNERAnnotator implements Annotator  {
   } // end static class Entry
 
 
+  /**
+   * Matches the entries which are just a sequence of literal words with a {@link TrieMap} of words,
+   * and finds the non-overlapping matches of these together with the matches of the TokensRegex patterns
+   * for the other entries.  It finds the same matches as if every entry were a TokensRegex pattern.
+   * <p>
+   * Where overlapping matches tie on priority, weight and length, {@link MultiPatternMatcher} prefers
+   * the pattern which was triggered first: patterns with no trigger word, and then patterns by the first
+   * token which triggers them, case sensitive triggers before case insensitive ones.
+   * The same order is used here, with any remaining ties broken by the order of the entries.
+   */
+  private static class LiteralMatcher {
+
+    /** The same test as {@link ComplexNodePattern} uses to decide that a token regex is matched literally. */
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("[^\\[\\]?.\\\\^$()*+{}|]*");
+
+    private static final Comparator<Candidate> OFFSET_COMPARATOR = (c1, c2) ->
+        c1.start != c2.start ? Integer.compare(c1.start, c2.start) : Integer.compare(c1.end, c2.end);
+
+    /** Orders overlapping matches as {@link SequenceMatchResult#DEFAULT_COMPARATOR} does. */
+    private static final Comparator<Candidate> CANDIDATE_COMPARATOR = (c1, c2) -> {
+      int cmp = Double.compare(c2.entry.priority, c1.entry.priority);
+      if (cmp == 0) {
+        cmp = Double.compare(c2.entry.weight, c1.entry.weight);
+      }
+      if (cmp == 0) {
+        cmp = Integer.compare(c2.end - c2.start, c1.end - c1.start);
+      }
+      if (cmp == 0) {
+        cmp = Integer.compare(c1.triggeredAt, c2.triggeredAt);
+      }
+      if (cmp == 0) {
+        cmp = Boolean.compare(c1.caseless, c2.caseless);
+      }
+      if (cmp == 0) {
+        cmp = Integer.compare(c1.order, c2.order);
+      }
+      return cmp != 0 ? cmp : OFFSET_COMPARATOR.compare(c1, c2);
+    };
+
+    /** A possible match of an entry: the whole span matched, and the span of its annotated group. */
+    private static class Candidate implements HasInterval<Integer> {
+      final Entry entry;
+      final int order;
+      final int triggeredAt; // the first token which triggers the entry, or -1 if it is always tried
+      final boolean caseless;
+      final int start;
+      final int end;
+      final int groupStart;
+      final int groupEnd;
+
+      Candidate(Entry entry, int order, int triggeredAt, boolean caseless, int start, int end, int groupStart, int groupEnd) {
+        this.entry = entry;
+        this.order = order;
+        this.triggeredAt = triggeredAt;
+        this.caseless = caseless;
+        this.start = start;
+        this.end = end;
+        this.groupStart = groupStart;
+        this.groupEnd = groupEnd;
+      }
+
+      @Override
+      public Interval<Integer> getInterval() {
+        return Interval.toInterval(start, end, Interval.INTERVAL_OPEN_END);
+      }
+    } // end static class Candidate
+
+    private final Map<Entry, Integer> order = new IdentityHashMap<>();
+    private final TrieMap<String, List<Entry>> caseSensitive = new TrieMap<>();
+    private final TrieMap<String, List<Entry>> caseInsensitive = new TrieMap<>();
+    /** For each literal entry, the word which would trigger its pattern, lowercased if it ignores case. */
+    private final Map<Entry, String> triggerWords = new IdentityHashMap<>();
+    private CoreMapNodePatternTrigger nodeTrigger;
+    private Set<SequencePattern<CoreMap>> alwaysTriggered = Collections.emptySet();
+
+    LiteralMatcher(List<Entry> entries) {
+      for (Entry entry : entries) {
+        order.put(entry, order.size());
+      }
+    }
+
+    /** The number of entries matched literally. */
+    int size() {
+      return triggerWords.size();
+    }
+
+    /**
+     * Add the entry to the trie if it is just a sequence of literal words.
+     *
+     * @return Whether the entry was added; if not, it needs to be matched with TokensRegex
+     */
+    boolean add(Entry entry, boolean ignoreCase) {
+      if (entry.tokensRegex != null || entry.annotateGroup != 0 || entry.regex.length == 0) {
+        return false;
+      }
+      List<String> key = new ArrayList<>(entry.regex.length);
+      String trigger = null;
+      int triggerLength = -1;
+      for (String word : entry.regex) {
+        if ( ! LITERAL_PATTERN.matcher(word).matches()) {
+          return false;
+        }
+        key.add(ignoreCase ? foldCase(word) : word);
+        // as in CoreMapNodePatternTrigger, the first of the longest words
+        int length = ("-LRB-".equals(word) || "-RRB-".equals(word)) ? 1 : word.length();
+        if (length > triggerLength) {
+          trigger = word;
+          triggerLength = length;
+        }
+      }
+      TrieMap<String, List<Entry>> trie = ignoreCase ? caseInsensitive : caseSensitive;
+      List<Entry> atKey = trie.get(key);
+      if (atKey == null) {
+        atKey = new ArrayList<>(1);
+        trie.put(key, atKey);
+      }
+      atKey.add(entry);
+      triggerWords.put(entry, ignoreCase ? trigger.toLowerCase() : trigger);
+      return true;
+    }
+
+    /** Set the TokensRegex patterns of the entries which are not matched literally. */
+    void setPatterns(Collection<TokenSequencePattern> patterns) {
+      nodeTrigger = new CoreMapNodePatternTrigger(patterns);
+      // a token with no annotations triggers just the patterns which are always tried
+      alwaysTriggered = Collections.newSetFromMap(new IdentityHashMap<>());
+      alwaysTriggered.addAll(nodeTrigger.apply(new ArrayCoreMap()));
+    }
+
+    /**
+     * Map each char so that two strings are {@link String#equalsIgnoreCase} exactly when their folded
+     * forms are equal, which is how a case insensitive literal token pattern matches.
+     */
+    private static String foldCase(String word) {
+      if (word == null) {
+        return null;
+      }
+      char[] chars = word.toCharArray();
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+      }
+      return new String(chars);
+    }
+
+    /**
+     * Find the matches of every entry, literal or not, and choose the non-overlapping ones
+     * in the same way as {@link MultiPatternMatcher#findNonOverlapping}.
+     *
+     * @return The chosen matches, in order of their position in the tokens
+     */
+    List<Candidate> findNonOverlapping(List<CoreLabel> tokens, Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
+      List<Candidate> candidates = new ArrayList<>();
+      Map<SequencePattern<CoreMap>, Integer> triggered = new LinkedHashMap<>();
+      for (int i = 0; i < tokens.size(); i++) {
+        for (SequencePattern<CoreMap> p : nodeTrigger.apply(tokens.get(i))) {
+          triggered.putIfAbsent(p, alwaysTriggered.contains(p) ? -1 : i);
+        }
+      }
+      for (Map.Entry<SequencePattern<CoreMap>, Integer> pattern : triggered.entrySet()) {
+        if (Thread.interrupted()) {  // Allow interrupting
+          throw new RuntimeInterruptedException();
+        }
+        Entry entry = patternToEntry.get(pattern.getKey());
+        int g = entry.annotateGroup;
+        SequenceMatcher<CoreMap> m = pattern.getKey().getMatcher(tokens);
+        while (m.find()) {
+          candidates.add(new Candidate(entry, order.get(entry), pattern.getValue(), false, m.start(), m.end(), m.start(g), m.end(g)));
+        }
+      }
+
+      List<String> words = new ArrayList<>(tokens.size());
+      for (CoreLabel token : tokens) {
+        words.add(token.word());
+      }
+      addLiteralMatches(caseSensitive, false, words, words, candidates);
+      if ( ! caseInsensitive.isEmpty()) {
+        List<String> folded = new ArrayList<>(words.size());
+        for (String word : words) {
+          folded.add(foldCase(word));
+        }
+        addLiteralMatches(caseInsensitive, true, folded, words, candidates);
+      }
+
+      List<Candidate> chosen = IntervalTree.getNonOverlapping(candidates, CANDIDATE_COMPARATOR);
+      chosen.sort(OFFSET_COMPARATOR);
+      return chosen;
+    }
+
+    /**
+     * Add the matches of the entries in the trie.  Like {@link SequenceMatcher#find}, each entry
+     * only matches again after the end of its previous match.
+     *
+     * @param keys The words of the tokens, as they are stored in the trie
+     * @param words The words of the tokens
+     */
+    private void addLiteralMatches(TrieMap<String, List<Entry>> trie, boolean caseless, List<String> keys,
+                                   List<String> words, List<Candidate> candidates) {
+      if (trie.isEmpty()) {
+        return;
+      }
+      // matches come in order of their start
+      Map<Entry, Integer> lastEnd = new IdentityHashMap<>();
+      Map<Entry, Integer> triggeredAt = new IdentityHashMap<>();
+      for (Match<String, List<Entry>> match : new TrieMapMatcher<>(trie).findAllMatches(keys)) {
+        for (Entry entry : match.getValue()) {
+          int trigger = triggeredAt.computeIfAbsent(entry, e -> triggeredAt(e, caseless, words));
+          // TokensRegex lowercases words to trigger case insensitive patterns, which in rare cases
+          // does not trigger a pattern which would match; then the entry does not match there either
+          if (trigger >= 0 && match.getBegin() >= lastEnd.getOrDefault(entry, 0)) {
+            lastEnd.put(entry, match.getEnd());
+            candidates.add(new Candidate(entry, order.get(entry), trigger,
+                caseless, match.getBegin(), match.getEnd(), match.getBegin(), match.getEnd()));
+          }
+        }
+      }
+    }
+
+    /** The first token whose word is the entry's trigger word, or -1 if there is none. */
+    private int triggeredAt(Entry entry, boolean caseless, List<String> words) {
+      String trigger = triggerWords.get(entry);
+      for (int i = 0; i < words.size(); i++) {
+        String word = words.get(i);
+        if (word != null && trigger.equals(caseless ? word.toLowerCase() : word)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+  } // end static class LiteralMatcher
+
+
   /**
    *  Creates a combined list of Entries using the provided mapping files.
    *
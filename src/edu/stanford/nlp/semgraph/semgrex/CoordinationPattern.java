@@ -40,6 +40,8 @@ public class CoordinationPattern extends SemgrexPattern  {
 
   public boolean isNodeCoord() { return isNodeCoord; }
 
+  boolean isConj() { return isConj; }
+
   @Override
   public void setChild(SemgrexPattern child) {
     if (isNodeCoord) {
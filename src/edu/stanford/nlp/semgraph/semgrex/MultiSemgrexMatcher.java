@@ -0,0 +1,368 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import edu.stanford.nlp.graph.CyclicGraphException;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.TypesafeMap;
+
+/**
+ * Matches many {@link SemgrexPattern}s against one graph at a time.
+ * <br>
+ * A plain {@link SemgrexMatcher} tries its pattern at every node of the graph.
+ * This instead indexes the graph once, by the values of the node attributes
+ * and the relations of the edges, and tries each pattern only at the nodes
+ * which have the literal attributes (for example, {@code word:eat} or
+ * {@code tag:/VB.?/}) and the edges (for example, {@code >nsubj}) its root node
+ * requires.  Patterns whose root nodes require the same things share the
+ * nodes found for them.  Patterns which require nothing of their root node,
+ * such as {@code {} >nsubj {}} or {@code !{word:eat}}, are tried at every node,
+ * as usual.
+ * <br>
+ * The matches are the same, in the same order, as those of each pattern's
+ * own {@link SemgrexPattern#matcher(SemanticGraph, boolean) matcher}.
+ * Each call with a graph indexes the graph anew, so the graph may change between calls.
+ * To match several sets of patterns against the same graph, make its
+ * {@link #index(SemanticGraph) index} once and give it to each of them: the
+ * nodes found for a root node are then shared by all of their patterns.
+ */
+public class MultiSemgrexMatcher {
+
+  private final List<SemgrexPattern> patterns;
+  /** What each pattern requires of its root node, or null if it requires nothing */
+  private final List<Seed> seeds;
+
+  public MultiSemgrexMatcher(Collection<? extends SemgrexPattern> patterns) {
+    this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+    this.seeds = new ArrayList<>(this.patterns.size());
+    Map<List<Object>, Seed> shared = Generics.newHashMap();
+    for (SemgrexPattern pattern : this.patterns) {
+      Seed seed = Seed.of(pattern);
+      if (seed != null) {
+        Seed same = shared.putIfAbsent(seed.description, seed);
+        if (same != null) {
+          seed = same;
+        }
+      }
+      seeds.add(seed);
+    }
+  }
+
+  public MultiSemgrexMatcher(SemgrexPattern... patterns) {
+    this(Arrays.asList(patterns));
+  }
+
+  public List<SemgrexPattern> patterns() {
+    return patterns;
+  }
+
+  /**
+   * A matcher for each of the patterns, in order, which only tries the pattern
+   * at the nodes where it could match.
+   */
+  public List<SemgrexMatcher> matchers(SemanticGraph sg) {
+    return matchers(sg, false);
+  }
+
+  /**
+   * A matcher for each of the patterns, in order, which only tries the pattern
+   * at the nodes where it could match.
+   *
+   * @param ignoreCase Whether to ignore case when matching node attributes,
+   *                   as in {@link SemgrexPattern#matcher(SemanticGraph, boolean)}
+   */
+  public List<SemgrexMatcher> matchers(SemanticGraph sg, boolean ignoreCase) {
+    return matchers(index(sg), ignoreCase);
+  }
+
+  /**
+   * A matcher for each of the patterns, in order, over an indexed graph.
+   *
+   * @param index The index of the graph, from {@link #index(SemanticGraph)}, which may be shared
+   *              with other MultiSemgrexMatchers
+   * @param ignoreCase Whether to ignore case when matching node attributes,
+   *                   as in {@link SemgrexPattern#matcher(SemanticGraph, boolean)}
+   */
+  public List<SemgrexMatcher> matchers(GraphIndex index, boolean ignoreCase) {
+    List<SemgrexMatcher> matchers = new ArrayList<>(patterns.size());
+    for (int i = 0; i < patterns.size(); ++i) {
+      SemgrexMatcher matcher = patterns.get(i).matcher(index.sg, ignoreCase);
+      Seed seed = seeds.get(i);
+      if (seed != null) {
+        matcher.findOnly(index.candidates(seed, ignoreCase).iterator());
+      } else {
+        matcher.findOnly(index.order.iterator());
+      }
+      matchers.add(matcher);
+    }
+    return matchers;
+  }
+
+  /** All the matches of all the patterns, pattern by pattern. */
+  public List<SemgrexMatch> findAll(SemanticGraph sg) {
+    return findAll(sg, false);
+  }
+
+  /** All the matches of all the patterns, pattern by pattern. */
+  public List<SemgrexMatch> findAll(SemanticGraph sg, boolean ignoreCase) {
+    List<SemgrexMatch> matches = new ArrayList<>();
+    List<SemgrexMatcher> matchers = matchers(sg, ignoreCase);
+    for (int i = 0; i < patterns.size(); ++i) {
+      SemgrexMatcher matcher = matchers.get(i);
+      while (matcher.find()) {
+        matches.add(new SemgrexMatch(patterns.get(i), matcher));
+      }
+    }
+    return matches;
+  }
+
+  /** The number of patterns which are only tried at some nodes. */
+  public int numIndexed() {
+    int indexed = 0;
+    for (Seed seed : seeds) {
+      if (seed != null) {
+        indexed += 1;
+      }
+    }
+    return indexed;
+  }
+
+
+  /**
+   * Index a graph for {@link #matchers(GraphIndex, boolean)}.
+   * The graph must not change while the index is in use.
+   */
+  public static GraphIndex index(SemanticGraph sg) {
+    return new GraphIndex(sg);
+  }
+
+  /**
+   * The nodes of one graph, in the order {@link SemgrexMatcher#find} visits them,
+   * and indices from attribute values and edge relations to the nodes.
+   * The attribute indices are only made for the attributes the patterns use,
+   * and the nodes found for each root node requirement are kept for every pattern with it.
+   */
+  public static class GraphIndex {
+    final SemanticGraph sg;
+    final List<IndexedWord> order;
+
+    private final Map<Class<? extends TypesafeMap.Key<Object>>, Map<String, Set<IndexedWord>>> values = Generics.newHashMap();
+    private final Map<Class<? extends TypesafeMap.Key<Object>>, Map<String, Set<IndexedWord>>> foldedValues = Generics.newHashMap();
+    private Map<String, Set<IndexedWord>> governors;
+    private Map<String, Set<IndexedWord>> dependents;
+    /** The candidates of each seed, by the seed's description and whether case is ignored */
+    private final Map<List<Object>, List<IndexedWord>> candidates = Generics.newHashMap();
+
+    private GraphIndex(SemanticGraph sg) {
+      this.sg = sg;
+      List<IndexedWord> order;
+      try {
+        order = sg.topologicalSort();
+      } catch (CyclicGraphException e) {
+        order = new ArrayList<>(sg.vertexSet());
+      }
+      this.order = order;
+    }
+
+    /** The nodes which have everything this seed needs */
+    List<IndexedWord> candidates(Seed seed, boolean ignoreCase) {
+      return candidates.computeIfAbsent(Arrays.asList(seed.description, ignoreCase), k -> seed.candidates(this, ignoreCase));
+    }
+
+    /** The nodes with each value of this attribute, ignoring case or not */
+    Map<String, Set<IndexedWord>> values(Class<? extends TypesafeMap.Key<Object>> key, boolean folded) {
+      Map<String, Set<IndexedWord>> index = (folded ? foldedValues : values).get(key);
+      if (index == null) {
+        index = Generics.newHashMap();
+        for (IndexedWord node : order) {
+          Object value = node.get(key);
+          if (value != null) {
+            String string = folded ? fold(value.toString()) : value.toString();
+            index.computeIfAbsent(string, k -> Generics.newHashSet()).add(node);
+          }
+        }
+        (folded ? foldedValues : values).put(key, index);
+      }
+      return index;
+    }
+
+    /** The nodes with an outgoing edge of each relation */
+    Map<String, Set<IndexedWord>> governors() {
+      if (governors == null) {
+        indexEdges();
+      }
+      return governors;
+    }
+
+    /** The nodes with an incoming edge of each relation */
+    Map<String, Set<IndexedWord>> dependents() {
+      if (dependents == null) {
+        indexEdges();
+      }
+      return dependents;
+    }
+
+    private void indexEdges() {
+      governors = Generics.newHashMap();
+      dependents = Generics.newHashMap();
+      for (SemanticGraphEdge edge : sg.edgeIterable()) {
+        String relation = edge.getRelation().toString();
+        governors.computeIfAbsent(relation, k -> Generics.newHashSet()).add(edge.getGovernor());
+        dependents.computeIfAbsent(relation, k -> Generics.newHashSet()).add(edge.getDependent());
+      }
+    }
+  }
+
+  /**
+   * Folds the case of each character the way {@link String#equalsIgnoreCase} compares them,
+   * so that strings which are equal ignoring case fold to the same string.
+   */
+  static String fold(String s) {
+    char[] chars = s.toCharArray();
+    for (int i = 0; i < chars.length; ++i) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+
+  /**
+   * What the root node of a pattern needs for the pattern to match there:
+   * its literal and regex attributes, whether it is a root of the graph,
+   * and the relations of the edges its required children hang from.
+   */
+  private static class Seed {
+    final List<Class<? extends TypesafeMap.Key<Object>>> keys = new ArrayList<>();
+    final List<Attribute> attributes = new ArrayList<>();
+    boolean graphRoot; // = false;
+    final List<String> governs = new ArrayList<>();
+    final List<String> governedBy = new ArrayList<>();
+    /** Seeds with equal descriptions find the same nodes */
+    List<Object> description;
+
+    /** The seed for this pattern, or null if it doesn't narrow down where the pattern matches */
+    @SuppressWarnings("unchecked")  // the values of the keys are only used as strings
+    static Seed of(SemgrexPattern pattern) {
+      if ( ! (pattern instanceof NodePattern) || pattern.isNegated() || pattern.isOptional()) {
+        return null;
+      }
+      NodePattern root = (NodePattern) pattern;
+      if (root.getReln() != GraphRelation.ROOT || root.isNegDesc() || root.isNull() || root.isLink()) {
+        return null;
+      }
+      Seed seed = new Seed();
+      for (Attribute attr : root.getAttributes()) {
+        if (attr.negated || attr.cased instanceof Boolean) {
+          continue;
+        }
+        Class<? extends TypesafeMap.Key<Object>> key = (Class<? extends TypesafeMap.Key<Object>>) Env.lookupAnnotationKey(root.env, attr.key);
+        if (key != null) {
+          seed.keys.add(key);
+          seed.attributes.add(attr);
+        }
+      }
+      seed.graphRoot = root.isRoot();
+      for (SemgrexPattern child : root.getChildren()) {
+        seed.addRelations(child);
+      }
+      if (seed.keys.isEmpty() && ! seed.graphRoot && seed.governs.isEmpty() && seed.governedBy.isEmpty()) {
+        return null;
+      }
+
+      List<String> values = new ArrayList<>();
+      for (Attribute attr : seed.attributes) {
+        values.add(attr.cased instanceof Pattern ? "/" + ((Pattern) attr.cased).pattern() : "=" + attr.cased);
+      }
+      seed.description = Arrays.asList(seed.keys, values, seed.graphRoot, seed.governs, seed.governedBy);
+      return seed;
+    }
+
+    /** Adds the relations this child (or all of this conjunction of children) needs the root to have */
+    private void addRelations(SemgrexPattern child) {
+      if (child.isNegated() || child.isOptional()) {
+        return;
+      }
+      if (child instanceof CoordinationPattern) {
+        CoordinationPattern coordination = (CoordinationPattern) child;
+        if (coordination.isConj() && ! coordination.isNodeCoord()) {
+          for (SemgrexPattern conjunct : coordination.getChildren()) {
+            addRelations(conjunct);
+          }
+        }
+      } else if (child instanceof NodePattern) {
+        GraphRelation reln = ((NodePattern) child).getReln();
+        if (reln.rawType == null || reln.rawType.isEmpty() || reln.rawType.matches("/.*/") || ! reln.type.test(reln.rawType)) {
+          return;
+        }
+        if (reln.symbol.equals(">")) {
+          governs.add(reln.rawType);
+        } else if (reln.symbol.equals("<")) {
+          governedBy.add(reln.rawType);
+        }
+      }
+    }
+
+    /** The nodes of the graph which have everything the seed needs, in the order of the index */
+    List<IndexedWord> candidates(GraphIndex index, boolean ignoreCase) {
+      Set<IndexedWord> candidates = null;
+      for (int i = 0; i < keys.size(); ++i) {
+        Attribute attr = attributes.get(i);
+        Object toMatch = ignoreCase ? attr.caseless : attr.cased;
+        Set<IndexedWord> nodes;
+        if (toMatch instanceof Pattern) {
+          nodes = Generics.newHashSet();
+          for (Map.Entry<String, Set<IndexedWord>> entry : index.values(keys.get(i), false).entrySet()) {
+            if (((Pattern) toMatch).matcher(entry.getKey()).matches()) {
+              nodes.addAll(entry.getValue());
+            }
+          }
+        } else if (ignoreCase) {
+          nodes = index.values(keys.get(i), true).get(fold(toMatch.toString()));
+        } else {
+          nodes = index.values(keys.get(i), false).get(toMatch.toString());
+        }
+        candidates = intersect(candidates, nodes);
+      }
+      if (graphRoot) {
+        candidates = intersect(candidates, Generics.newHashSet(index.sg.getRoots()));
+      }
+      for (String relation : governs) {
+        candidates = intersect(candidates, index.governors().get(relation));
+      }
+      for (String relation : governedBy) {
+        candidates = intersect(candidates, index.dependents().get(relation));
+      }
+
+      List<IndexedWord> ordered = new ArrayList<>();
+      if (candidates != null && ! candidates.isEmpty()) {
+        for (IndexedWord node : index.order) {
+          if (candidates.contains(node)) {
+            ordered.add(node);
+          }
+        }
+      }
+      return ordered;
+    }
+
+    private static Set<IndexedWord> intersect(Set<IndexedWord> candidates, Set<IndexedWord> nodes) {
+      if (nodes == null) {
+        return Collections.emptySet();
+      }
+      if (candidates == null) {
+        return nodes;
+      }
+      Set<IndexedWord> both = Generics.newHashSet();
+      for (IndexedWord node : candidates) {
+        if (nodes.contains(node)) {
+          both.add(node);
+        }
+      }
+      return both;
+    }
+  }
+
+}
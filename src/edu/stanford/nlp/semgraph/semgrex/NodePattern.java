@@ -297,6 +297,22 @@ public class NodePattern extends SemgrexPattern  {
     return isRoot;
   }
 
+  GraphRelation getReln() {
+    return reln;
+  }
+
+  boolean isNegDesc() {
+    return negDesc;
+  }
+
+  boolean isLink() {
+    return isLink;
+  }
+
+  List<Attribute> getAttributes() {
+    return attributes;
+  }
+
   public boolean isNull() {
     return isEmpty;
   }
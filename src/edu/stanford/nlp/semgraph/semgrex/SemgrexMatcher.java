@@ -124,6 +124,17 @@ public abstract class SemgrexMatcher  {
   public abstract IndexedWord getMatch();
 
 
+  /**
+   * Makes {@link #find} try the pattern at only these nodes, in this order,
+   * rather than at every node of the graph.  The nodes left out must be ones
+   * where the pattern can't match, or the matcher will miss those matches.
+   * {@link #reset} goes back to trying every node.
+   */
+  void findOnly(Iterator<IndexedWord> candidates) {
+    findIterator = candidates;
+    findCurrent = null;
+  }
+
   /**
    * Find the next match of the pattern in the graph.
    *
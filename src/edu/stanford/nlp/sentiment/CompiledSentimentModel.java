@@ -0,0 +1,344 @@
+package edu.stanford.nlp.sentiment;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.neural.SimpleTensor;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.TwoDimensionalMap;
+
+/**
+ * A {@link SentimentModel} flattened for predicting sentiment, rather than
+ * for training.
+ * <br>
+ * The transforms, tensors and classification matrices are copied into
+ * contiguous arrays, indexed by integer category ids, and the word vectors
+ * are stored with tanh already applied.  {@link #forwardPropagateTree}
+ * then computes the same predictions as
+ * {@link SentimentCostAndGradient#forwardPropagateTree}, but without looking
+ * up the parameters of each node in maps or making a matrix for each step:
+ * the node vectors are kept in scratch buffers which each thread reuses from
+ * tree to tree.  Only the predictions and the predicted class are attached
+ * to the nodes, unless node vectors are asked for too.
+ * <br>
+ * A compiled model can be shared between threads.  Changes to the
+ * {@link SentimentModel} after compiling don't reach the compiled model.
+ */
+public class CompiledSentimentModel {
+
+  private final SentimentModel model;
+  private final int numHid;
+  private final int numClasses;
+  private final boolean useTensors;
+  private final boolean nodeVectors;
+
+  /** The basic categories of the model */
+  private final Map<String, Integer> categories = Generics.newHashMap();
+  /** For each pair of categories, the index of their transform (and tensor), or -1 */
+  private final int[] binaryTransforms;
+  /** For each pair of categories, the index of their classification matrix, or -1 */
+  private final int[] binaryClassifications;
+  /** For each category, the index of its classification matrix, or -1 */
+  private final int[] unaryClassifications;
+
+  /** numHid x (2 numHid + 1) transforms, row by row */
+  private final double[] transforms;
+  /** numHid slices of 2 numHid x 2 numHid, row by row */
+  private final double[] tensors;
+  /** numClasses x (numHid + 1) classification matrices, row by row */
+  private final double[] classifications;
+
+  private final Map<String, Integer> words = Generics.newHashMap();
+  /** tanh of the word vectors */
+  private final double[] wordVectors;
+  private final int unknownWord;
+
+  private final ThreadLocal<Scratch> scratch;
+
+  /** Compiles a model which attaches the predictions and the predicted class of each node */
+  public CompiledSentimentModel(SentimentModel model) {
+    this(model, false);
+  }
+
+  /**
+   * @param nodeVectors Whether to also attach the node vector of each node,
+   *                    as {@link RNNCoreAnnotations.NodeVector}
+   */
+  public CompiledSentimentModel(SentimentModel model, boolean nodeVectors) {
+    this.model = model;
+    this.numHid = model.numHid;
+    this.numClasses = model.numClasses;
+    this.useTensors = model.op.useTensors;
+    this.nodeVectors = nodeVectors;
+
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
+      category(entry.getFirstKey());
+      category(entry.getSecondKey());
+    }
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryClassification) {
+      category(entry.getFirstKey());
+      category(entry.getSecondKey());
+    }
+    for (String category : model.unaryClassification.keySet()) {
+      category(category);
+    }
+    int numCategories = categories.size();
+
+    int transformSize = numHid * (2 * numHid + 1);
+    int tensorSize = numHid * 4 * numHid * numHid;
+    binaryTransforms = new int[numCategories * numCategories];
+    Arrays.fill(binaryTransforms, -1);
+    transforms = new double[model.binaryTransform.size() * transformSize];
+    tensors = new double[useTensors ? model.binaryTransform.size() * tensorSize : 0];
+    int index = 0;
+    for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryTransform) {
+      binaryTransforms[categories.get(entry.getFirstKey()) * numCategories + categories.get(entry.getSecondKey())] = index;
+      copy(entry.getValue(), transforms, index * transformSize);
+      if (useTensors) {
+        SimpleTensor tensor = model.binaryTensors.get(entry.getFirstKey(), entry.getSecondKey());
+        for (int slice = 0; slice < numHid; ++slice) {
+          copy(tensor.getSlice(slice), tensors, index * tensorSize + slice * 4 * numHid * numHid);
+        }
+      }
+      index++;
+    }
+
+    int classificationSize = numClasses * (numHid + 1);
+    unaryClassifications = new int[numCategories];
+    binaryClassifications = new int[numCategories * numCategories];
+    Arrays.fill(unaryClassifications, -1);
+    Arrays.fill(binaryClassifications, -1);
+    int numClassifications = model.unaryClassification.size() +
+        (model.op.combineClassification ? 0 : model.binaryClassification.size());
+    classifications = new double[numClassifications * classificationSize];
+    index = 0;
+    for (Map.Entry<String, SimpleMatrix> entry : model.unaryClassification.entrySet()) {
+      unaryClassifications[categories.get(entry.getKey())] = index;
+      copy(entry.getValue(), classifications, index * classificationSize);
+      index++;
+    }
+    if (model.op.combineClassification) {
+      Integer combined = categories.get("");
+      if (combined != null) {
+        Arrays.fill(binaryClassifications, unaryClassifications[combined]);
+      }
+    } else {
+      for (TwoDimensionalMap.Entry<String, String, SimpleMatrix> entry : model.binaryClassification) {
+        binaryClassifications[categories.get(entry.getFirstKey()) * numCategories + categories.get(entry.getSecondKey())] = index;
+        copy(entry.getValue(), classifications, index * classificationSize);
+        index++;
+      }
+    }
+
+    wordVectors = new double[model.wordVectors.size() * numHid];
+    index = 0;
+    for (Map.Entry<String, SimpleMatrix> entry : model.wordVectors.entrySet()) {
+      words.put(entry.getKey(), index);
+      for (int i = 0; i < numHid; ++i) {
+        wordVectors[index * numHid + i] = Math.tanh(entry.getValue().get(i));
+      }
+      index++;
+    }
+    Integer unknown = words.get(SentimentModel.UNKNOWN_WORD);
+    unknownWord = unknown == null ? -1 : unknown;
+
+    scratch = ThreadLocal.withInitial(() -> new Scratch(numHid, numClasses));
+  }
+
+  private void category(String category) {
+    categories.putIfAbsent(category, categories.size());
+  }
+
+  private static void copy(SimpleMatrix matrix, double[] array, int offset) {
+    for (int row = 0; row < matrix.numRows(); ++row) {
+      for (int col = 0; col < matrix.numCols(); ++col) {
+        array[offset++] = matrix.get(row, col);
+      }
+    }
+  }
+
+  /** The node vectors of one tree, and room for the vectors one node is computed from */
+  private static class Scratch {
+    double[] vectors;
+    int numVectors; // = 0;
+    final double[] children;
+    final double[] tensorRow;
+    final double[] scores;
+
+    Scratch(int numHid, int numClasses) {
+      vectors = new double[64 * numHid];
+      children = new double[2 * numHid + 1];
+      tensorRow = new double[2 * numHid];
+      scores = new double[numClasses];
+    }
+  }
+
+  /**
+   * Predicts the sentiment of each node of a binarized tree whose unaries
+   * are collapsed, as {@link SentimentCostAndGradient#forwardPropagateTree}
+   * does, and attaches the predictions and the predicted class of each node
+   * (and its node vector, if asked for) to the node's {@link CoreLabel}.
+   */
+  public void forwardPropagateTree(Tree tree) {
+    Scratch s = scratch.get();
+    int size = tree.size() * numHid;
+    if (s.vectors.length < size) {
+      s.vectors = new double[Math.max(size, 2 * s.vectors.length)];
+    }
+    s.numVectors = 0;
+    forwardPropagate(tree, s);
+  }
+
+  /** Computes the node vector of the tree, and returns where it is in the scratch vectors */
+  private int forwardPropagate(Tree tree, Scratch s) {
+    int vector;
+    int classification;
+    if (tree.isLeaf()) {
+      throw new ForwardPropagationException("We should not have reached leaves in forwardPropagate");
+    } else if (tree.isPreTerminal()) {
+      classification = unaryClassifications[categoryId(tree.label().value())];
+      int word = wordId(tree.children()[0].label().value());
+      vector = s.numVectors++;
+      System.arraycopy(wordVectors, word * numHid, s.vectors, vector * numHid, numHid);
+    } else if (tree.children().length == 1) {
+      throw new ForwardPropagationException("Non-preterminal nodes of size 1 should have already been collapsed");
+    } else if (tree.children().length == 2) {
+      int left = forwardPropagate(tree.children()[0], s);
+      int right = forwardPropagate(tree.children()[1], s);
+      int binary = categoryId(tree.children()[0].label().value()) * categories.size() +
+          categoryId(tree.children()[1].label().value());
+      int transform = binaryTransforms[binary];
+      classification = binaryClassifications[binary];
+      if (transform < 0) {
+        throw new ForwardPropagationException("No transform for the children of " + tree.value());
+      }
+      vector = s.numVectors++;
+      binaryVector(transform, left, right, vector, s);
+    } else {
+      StringBuilder error = new StringBuilder();
+      error.append("CompiledSentimentModel: Tree not correctly binarized:\n   ");
+      error.append(tree);
+      error.append("\nToo many top level constituents present: ");
+      error.append("(" + tree.value());
+      for (Tree child : tree.children()) {
+        error.append(" (" + child.value() + " ...)");
+      }
+      error.append(")");
+      throw new ForwardPropagationException(error.toString());
+    }
+    if (classification < 0) {
+      throw new ForwardPropagationException("No classification matrix for " + tree.value());
+    }
+
+    if (!(tree.label() instanceof CoreLabel)) {
+      throw new AssertionError("Expected CoreLabels in the nodes");
+    }
+    CoreLabel label = (CoreLabel) tree.label();
+    SimpleMatrix predictions = predictions(classification, vector, s);
+    int index = 0;
+    for (int i = 1; i < numClasses; ++i) {
+      if (predictions.get(i) > predictions.get(index)) {
+        index = i;
+      }
+    }
+    label.set(RNNCoreAnnotations.Predictions.class, predictions);
+    label.set(RNNCoreAnnotations.PredictedClass.class, index);
+    if (nodeVectors) {
+      SimpleMatrix nodeVector = new SimpleMatrix(numHid, 1);
+      for (int i = 0; i < numHid; ++i) {
+        nodeVector.set(i, s.vectors[vector * numHid + i]);
+      }
+      label.set(RNNCoreAnnotations.NodeVector.class, nodeVector);
+    }
+    return vector;
+  }
+
+  /** tanh(W [left; right; 1] + [left; right]' V [left; right]) */
+  private void binaryVector(int transform, int left, int right, int vector, Scratch s) {
+    double[] in = s.children;
+    System.arraycopy(s.vectors, left * numHid, in, 0, numHid);
+    System.arraycopy(s.vectors, right * numHid, in, numHid, numHid);
+    in[2 * numHid] = 1.0;
+    int width = 2 * numHid + 1;
+    int wOffset = transform * numHid * width;
+    int tensorSize = numHid * 4 * numHid * numHid;
+    for (int row = 0; row < numHid; ++row) {
+      double total = 0;
+      for (int col = 0; col < width; ++col) {
+        total += transforms[wOffset + row * width + col] * in[col];
+      }
+      if (useTensors) {
+        // in' V: one row, then its product with in
+        double[] tensorRow = s.tensorRow;
+        Arrays.fill(tensorRow, 0.0);
+        int vOffset = transform * tensorSize + row * 4 * numHid * numHid;
+        for (int a = 0; a < 2 * numHid; ++a) {
+          double inA = in[a];
+          int aOffset = vOffset + a * 2 * numHid;
+          for (int b = 0; b < 2 * numHid; ++b) {
+            tensorRow[b] += inA * tensors[aOffset + b];
+          }
+        }
+        double product = 0;
+        for (int b = 0; b < 2 * numHid; ++b) {
+          product += tensorRow[b] * in[b];
+        }
+        total += product;
+      }
+      s.vectors[vector * numHid + row] = Math.tanh(total);
+    }
+  }
+
+  /** softmax(C [vector; 1]) */
+  private SimpleMatrix predictions(int classification, int vector, Scratch s) {
+    int width = numHid + 1;
+    int offset = classification * numClasses * width;
+    double[] scores = s.scores;
+    for (int c = 0; c < numClasses; ++c) {
+      double total = 0;
+      for (int i = 0; i < numHid; ++i) {
+        total += classifications[offset + c * width + i] * s.vectors[vector * numHid + i];
+      }
+      total += classifications[offset + c * width + numHid];
+      scores[c] = Math.exp(total);
+    }
+    double sum = 0;
+    for (int c = 0; c < numClasses; ++c) {
+      sum += scores[c];
+    }
+    double scale = 1.0 / sum;
+    SimpleMatrix predictions = new SimpleMatrix(numClasses, 1);
+    for (int c = 0; c < numClasses; ++c) {
+      predictions.set(c, scores[c] * scale);
+    }
+    return predictions;
+  }
+
+  private int categoryId(String category) {
+    Integer id = categories.get(model.basicCategory(category));
+    if (id == null) {
+      throw new ForwardPropagationException("Unknown category " + category);
+    }
+    return id;
+  }
+
+  private int wordId(String word) {
+    if (model.op.lowercaseWordVectors) {
+      word = word.toLowerCase();
+    }
+    Integer id = words.get(word);
+    if (id != null) {
+      return id;
+    }
+    if (unknownWord < 0) {
+      throw new ForwardPropagationException("No vector for unknown words, such as " + word);
+    }
+    return unknownWord;
+  }
+
+}
@@ -324,6 +324,10 @@ public class SentimentPipeline  {
       tokenizerProps.setProperty("annotators", "tokenize, ssplit");
     }
 
+    if (outputFormats.contains(Output.VECTORS)) {
+      pipelineProps.setProperty("sentiment.nodeVectors", "true");
+    }
+
     if (stdin && tokenizerProps != null) {
       tokenizerProps.setProperty(StanfordCoreNLP.NEWLINE_SPLITTER_PROPERTY, "true");
     }
@@ -445,6 +445,8 @@ public class SeqClassifierFlags implements Serializable  {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  /** Write the CRF classifier as a flat model file, which is memory-mapped when loaded. */
+  public transient String serializeToFlat = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<>();
@@ -1085,6 +1087,12 @@ public class SeqClassifierFlags implements Serializable  {
   /** if using dict2 in a segmenter, load it with this filename */
   public String dict2name = "";
 
+  /**
+   * At test time, look CRF features up by a hash computed while they are extracted
+   * rather than by building their names as Strings.  Same features, less garbage.
+   */
+  public boolean featureHashInference = false;
+
   // "ADD VARIABLES ABOVE HERE"
 
 
@@ -1588,6 +1596,8 @@ public class SeqClassifierFlags implements Serializable  {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToFlat")) {
+        serializeToFlat = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -2641,6 +2651,8 @@ public class SeqClassifierFlags implements Serializable  {
       } else if (key.equalsIgnoreCase("sutime.language")) {
       } else if (key.equalsIgnoreCase("dict2name")) {
         dict2name = val;
+      } else if (key.equalsIgnoreCase("featureHashInference")) {
+        featureHashInference = Boolean.parseBoolean(val);
         // ADD VALUE ABOVE HERE
       } else if ( ! key.isEmpty() && ! key.equals("prop")) {
         log.info("Unknown property: |" + key + '|');
@@ -179,6 +179,17 @@ public class Extractor implements Serializable  {
     return isTag ? pH.getTag(h, position) : pH.getWord(h, position);
   }
 
+  /**
+   * @return The positions, relative to the current word, of the tags which are all that the
+   * value of this extractor depends on, or null if it depends on anything else.
+   * If this is non-null, the features are looked up by tag ids at tagging time
+   * (see {@link TagFeatureTable}), so subclasses must override it if they
+   * extract anything other than these tags.
+   */
+  int[] tagPositions() {
+    return isTag && getClass() == Extractor.class ? new int[] { position } : null;
+  }
+
   @SuppressWarnings({"MethodMayBeStatic"})
   String extractLV(History h, PairsHolder pH) {
     // should extract last verbal word and also the current word
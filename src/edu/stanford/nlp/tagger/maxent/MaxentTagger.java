@@ -368,6 +368,8 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   // For each extractor index (List index), we have a Map from possible extracted
   // feature values to an array which maps from tag number to feature weight index in the lambdas array.
   List<Map<String, int[]>> fAssociations = Generics.newArrayList();
+  // The same associations by tag ids, for the extractors which only look at tags; built when first tagging
+  private volatile TagFeatureTable[] tagFeatureTables; // = null;
   //PairsHolder pairs = new PairsHolder();
   Extractors extractors;
   Extractors extractorsRare;
@@ -468,6 +470,27 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return prob;
   }
 
+  /**
+   * For each extractor index (as in fAssociations), a table of its feature associations by
+   * the ids of the tags it looks at, or null for extractors which look at anything but tags.
+   * The tables are built the first time this is called, after the model is loaded or trained.
+   */
+  TagFeatureTable[] tagFeatureTables() {
+    TagFeatureTable[] tables = tagFeatureTables;
+    if (tables == null) {
+      // Threads which get here at the same time build the same tables, so there is no need to lock
+      tables = new TagFeatureTable[fAssociations.size()];
+      for (int i = 0; i < tables.length; i++) {
+        Extractor extractor = i < extractors.size() ? extractors.get(i) : extractorsRare.get(i - extractors.size());
+        if (extractor.isDynamic()) {
+          tables[i] = TagFeatureTable.build(extractor, fAssociations.get(i), tags);
+        }
+      }
+      tagFeatureTables = tables;
+    }
+    return tables;
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
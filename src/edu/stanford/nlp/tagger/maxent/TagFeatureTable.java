@@ -0,0 +1,105 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.Map;
+
+/**
+ * The feature associations of an extractor whose value depends only on the tags at some
+ * positions relative to the current word (see {@link Extractor#tagPositions()}),
+ * indexed by the ids of those tags in {@link TTags}.
+ * <p>
+ * Dynamic extractors are run for every sequence of tags that the search considers at every
+ * position, and normally each run builds a String and looks it up in a HashMap.  With a table,
+ * the tag ids the search already has are combined into an int and used as an array index instead.
+ * The table is filled when it is built by running the extractor over every combination of tags,
+ * so a lookup gives exactly the associations that looking up the extracted value would.
+ * Positions outside the sentence (where the extractor sees "NA") are not in the table, and
+ * for them the extractor has to be run as usual.
+ *
+ * @see MaxentTagger#tagFeatureTables()
+ */
+class TagFeatureTable {
+
+  /** A table is not built if it would have more entries than this. */
+  static final int MAX_ENTRIES = 1 << 18;
+
+  private final int[] positions;
+  private final int numTags;
+  private final int[][] associations;
+
+  private TagFeatureTable(int[] positions, int numTags, int[][] associations) {
+    this.positions = positions;
+    this.numTags = numTags;
+    this.associations = associations;
+  }
+
+  /**
+   * Build the table of an extractor.
+   *
+   * @param extractor The extractor
+   * @param fAssociations The feature associations of the extractor, by extracted value
+   * @param tags The tag set
+   * @return The table, or null if the extractor doesn't depend only on tags, or its table would be too big
+   */
+  static TagFeatureTable build(Extractor extractor, Map<String, int[]> fAssociations, TTags tags) {
+    int[] positions = extractor.tagPositions();
+    int numTags = tags.getSize();
+    if (positions == null || positions.length == 0 || numTags == 0) {
+      return null;
+    }
+    long entries = 1;
+    int min = 0;
+    int max = 0;
+    for (int position : positions) {
+      entries *= numTags;
+      if (entries > MAX_ENTRIES) {
+        return null;
+      }
+      min = Math.min(min, position);
+      max = Math.max(max, position);
+    }
+
+    // a scratch sentence just long enough to hold all the positions around the current word
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(max - min + 1);
+    History h = new History(0, max - min, -min, pairs, null);
+    int[][] associations = new int[(int) entries][];
+    for (int code = 0; code < associations.length; code++) {
+      int rest = code;
+      for (int i = positions.length - 1; i >= 0; i--) {
+        pairs.setTag(positions[i] - min, tags.getTag(rest % numTags));
+        rest /= numTags;
+      }
+      associations[code] = fAssociations.get(extractor.extract(h));
+    }
+    return new TagFeatureTable(positions, numTags, associations);
+  }
+
+  /**
+   * The index in the table for the tags around a word.
+   *
+   * @param tagIds The current tag ids of the words in the sentence
+   * @param current The index of the current word in the sentence
+   * @return The index, or -1 if a position is outside the sentence or has no valid tag id
+   */
+  int code(int[] tagIds, int current) {
+    int code = 0;
+    for (int position : positions) {
+      int i = current + position;
+      if (i < 0 || i >= tagIds.length) {
+        return -1;
+      }
+      int tag = tagIds[i];
+      if (tag < 0 || tag >= numTags) {
+        return -1;
+      }
+      code = code * numTags + tag;
+    }
+    return code;
+  }
+
+  /** The feature associations at an index returned by {@link #code}, or null if there are none. */
+  int[] get(int code) {
+    return associations[code];
+  }
+
+}
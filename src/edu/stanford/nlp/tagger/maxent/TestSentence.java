@@ -86,6 +86,9 @@ public class TestSentence implements SequenceModel  {
   private volatile History history;
   private volatile Map<String,double[]> localScores = Generics.newHashMap();
   private volatile double[][] localContextScores;
+  // the tag ids currently in pairs for this sentence, for looking up features in the tag feature tables
+  private int[] tagIds;
+  private TagFeatureTable[] tagFeatureTables;
 
   protected final MaxentTagger maxentTagger;
 
@@ -168,6 +171,9 @@ public class TestSentence implements SequenceModel  {
   protected void init() {
     //the eos are assumed already there
     localContextScores = new double[size][];
+    tagIds = new int[size];
+    Arrays.fill(tagIds, -1);
+    tagFeatureTables = maxentTagger.tagFeatureTables();
     for (int i = 0; i < size - 1; i++) {
       if (maxentTagger.dict.isUnknown(sent.get(i))) {
         numUnknown++;
@@ -227,6 +233,7 @@ public class TestSentence implements SequenceModel  {
       for (int i = 0; i < size; i++) {
         pairs.setWord(i,sent.get(i));
         pairs.setTag(i,finalTags[i]);
+        tagIds[i] = maxentTagger.tags.getIndex(finalTags[i]);
         //pairs.add(new WordTag(sent.get(i),finalTags[i]));
         // TODO: if kBestSize > 1, use KBestSequenceFinder and save
         // k-best hypotheses into finalTags:
@@ -362,6 +369,7 @@ public class TestSentence implements SequenceModel  {
     final int e = Math.min(current + right, size + left - 1);
     for (int j = s; j <= e; j++) {
       h.setTag(j - left, ttags.getTag(tags[j]));
+      tagIds[j - left] = tags[j];
     }
   }
 
@@ -524,8 +532,20 @@ public class TestSentence implements SequenceModel  {
     return scores;
   }
 
+  /** The feature associations of an extractor at the current position, looked up by tag ids if it only looks at tags. */
+  private int[] associations(int kf, Extractor ex, History h) {
+    TagFeatureTable table = tagFeatureTables[kf];
+    if (table != null) {
+      int code = table.code(tagIds, h.current - h.start);
+      if (code >= 0) {
+        return table.get(code);
+      }
+    }
+    return maxentTagger.fAssociations.get(kf).get(ex.extract(h));
+  }
+
   private void runExactExtractor(int kf, Extractor ex, History h, double[] scores, double[] lambda) {
-    int[] fAssociations = maxentTagger.fAssociations.get(kf).get(ex.extract(h));
+    int[] fAssociations = associations(kf, ex, h);
     if (fAssociations != null) {
       for (int j = 0; j < maxentTagger.ySize; j++) {
         int fNum = fAssociations[j];
@@ -556,7 +576,7 @@ public class TestSentence implements SequenceModel  {
   }
 
   private void runApproximateExtractor(int kf, Extractor extractor, History h, String[] tags, double[] scores, double[] lambda) {
-    int[] fAssociations = maxentTagger.fAssociations.get(kf).get(extractor.extract(h));
+    int[] fAssociations = associations(kf, extractor, h);
     if (fAssociations == null) return;
     final TTags ttags = maxentTagger.tags;
     for (int j = 0; j < tags.length; j++) {
@@ -277,6 +277,36 @@ public class DescriptionPattern extends TregexPattern  {
     return sb.toString();
   }
 
+  /**
+   * A test which the value of any node this pattern matches passes, or null
+   * if the pattern can match nodes whatever their value (as with {@code __},
+   * {@code _ROOT_}, links, or a negated description).  The test takes the
+   * value of the node as it is, before any basic category function.
+   */
+  Predicate<String> valueTest() {
+    if (negDesc || descriptionMode == null) {
+      return null;
+    }
+    final Predicate<String> test;
+    switch (descriptionMode) {
+    case EXACT:
+      test = exactMatch::equals;
+      break;
+    case PATTERN:
+      test = value -> descPattern.matcher(value).find();
+      break;
+    case STRINGS:
+      test = stringFilter;
+      break;
+    default:
+      return null;
+    }
+    if (basicCatFunction == null) {
+      return test;
+    }
+    return value -> test.test(basicCatFunction.apply(value));
+  }
+
   public void setChild(TregexPattern n) {
     child = n;
   }
@@ -0,0 +1,479 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import edu.stanford.nlp.ling.HasIndex;
+import edu.stanford.nlp.ling.HasTag;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.trees.*;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * A treebank stored compactly in memory or on disk, with an index from each
+ * node value (each label and word) to the trees which contain it, for
+ * searching with {@link TregexPattern}s.
+ * <br>
+ * The trees are read once, when the index is built, rather than parsed from
+ * text for every search.  A search only matches the pattern against the
+ * trees which have a node for each of the descriptions the pattern needs:
+ * for example, {@code NP < (DT < these)} is only matched against trees with
+ * an {@code NP}, a {@code DT} and the word {@code these}, and
+ * {@code /^VB/ < __} against trees with a node whose label starts with
+ * {@code VB}.  The trees are matched on several threads, and the matches
+ * come back in the order of the trees, the same as those of
+ * {@link TregexMatcher#find} on each tree.
+ * <br>
+ * The trees are rebuilt with a {@link LabeledScoredTreeFactory}, as
+ * {@link TregexPattern#main} reads them, so only the value of each label is kept.
+ * <br>
+ * Usage: <br>
+ * {@code java edu.stanford.nlp.trees.tregex.TreebankIndex -build index treePath [-e extension] [-encoding enc]} <br>
+ * {@code java edu.stanford.nlp.trees.tregex.TreebankIndex -index index [-threads n] [-C] [-n] [-s] [-h handle]* pattern}
+ */
+public class TreebankIndex {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(TreebankIndex.class);
+
+  private static final int MAGIC = 0x54524958; // "TRIX"
+  private static final int VERSION = 1;
+
+  /** Every value of a node, by id */
+  private final String[] values;
+  /** Each tree in preorder: for each node, its value id plus one (0 for no value) and its number of children */
+  private final byte[] trees;
+  /** Where each tree starts in {@code trees}, and then where the last one ends */
+  private final int[] offsets;
+  /** For each value, the ids of the trees with that value, as differences from the previous id */
+  private final byte[][] postings;
+
+  private final TreeFactory treeFactory = new LabeledScoredTreeFactory();
+
+  /** Indexes these trees, keeping them in the order given. */
+  public TreebankIndex(Iterable<Tree> treebank) {
+    Index<String> valueIndex = new HashIndex<>();
+    List<Postings> postings = new ArrayList<>();
+    ByteStream treeBytes = new ByteStream();
+    List<Integer> offsets = new ArrayList<>();
+    int treeId = 0;
+    for (Tree tree : treebank) {
+      offsets.add(treeBytes.size);
+      for (Tree node : tree) {
+        int valueId = -1;
+        if (node.value() != null) {
+          valueId = valueIndex.addToIndex(node.value());
+          if (valueId == postings.size()) {
+            postings.add(new Postings());
+          }
+          postings.get(valueId).add(treeId);
+        }
+        treeBytes.writeVInt(valueId + 1);
+        treeBytes.writeVInt(node.numChildren());
+      }
+      treeId += 1;
+    }
+    offsets.add(treeBytes.size);
+
+    this.values = valueIndex.objectsList().toArray(new String[0]);
+    this.trees = treeBytes.toArray();
+    this.offsets = new int[offsets.size()];
+    for (int i = 0; i < this.offsets.length; ++i) {
+      this.offsets[i] = offsets.get(i);
+    }
+    this.postings = new byte[postings.size()][];
+    for (int i = 0; i < this.postings.length; ++i) {
+      this.postings[i] = postings.get(i).bytes.toArray();
+    }
+  }
+
+  private TreebankIndex(String[] values, byte[] trees, int[] offsets, byte[][] postings) {
+    this.values = values;
+    this.trees = trees;
+    this.offsets = offsets;
+    this.postings = postings;
+  }
+
+  /** The number of trees. */
+  public int size() {
+    return offsets.length - 1;
+  }
+
+  /** The number of different node values. */
+  public int numValues() {
+    return values.length;
+  }
+
+  /** Rebuilds tree {@code id}, counting from 0. */
+  public Tree getTree(int id) {
+    int[] position = { offsets[id] };
+    int[] wordIndex = { 1 };
+    return readTree(position, wordIndex);
+  }
+
+  private Tree readTree(int[] position, int[] wordIndex) {
+    int valueId = readVInt(trees, position) - 1;
+    int numChildren = readVInt(trees, position);
+    String value = (valueId < 0) ? null : values[valueId];
+    if (numChildren == 0) {
+      // label the leaf as PennTreeReader does
+      Tree leaf = treeFactory.newLeaf(value);
+      if (leaf.label() instanceof HasIndex) {
+        ((HasIndex) leaf.label()).setIndex(wordIndex[0]);
+      }
+      if (leaf.label() instanceof HasWord) {
+        ((HasWord) leaf.label()).setWord(value);
+      }
+      wordIndex[0] += 1;
+      return leaf;
+    }
+    List<Tree> children = new ArrayList<>(numChildren);
+    for (int i = 0; i < numChildren; ++i) {
+      Tree child = readTree(position, wordIndex);
+      if (child.isLeaf() && child.label() instanceof HasTag) {
+        ((HasTag) child.label()).setTag(value);
+      }
+      children.add(child);
+    }
+    return treeFactory.newTreeNode(value, children);
+  }
+
+  /**
+   * The trees which the pattern could match: those with a node for each
+   * description the pattern needs to match.
+   */
+  public BitSet candidates(TregexPattern pattern) {
+    List<Predicate<String>> tests = new ArrayList<>();
+    valueTests(pattern, tests);
+
+    BitSet candidates = new BitSet(size());
+    candidates.set(0, size());
+    for (Predicate<String> test : tests) {
+      BitSet withValue = new BitSet(size());
+      for (int valueId = 0; valueId < values.length; ++valueId) {
+        if (test.test(values[valueId])) {
+          int[] position = { 0 };
+          int treeId = -1;
+          while (position[0] < postings[valueId].length) {
+            treeId += readVInt(postings[valueId], position);
+            withValue.set(treeId);
+          }
+        }
+      }
+      candidates.and(withValue);
+    }
+    return candidates;
+  }
+
+  /**
+   * Adds the tests which the values of the nodes matching each
+   * description the pattern can't do without must pass.  Descriptions
+   * which are negated, optional, or one of several alternatives
+   * don't need to match for the pattern to match, so they are left out.
+   */
+  private static void valueTests(TregexPattern pattern, List<Predicate<String>> tests) {
+    if (pattern.isNegated() || pattern.isOptional()) {
+      return;
+    }
+    if (pattern instanceof DescriptionPattern) {
+      Predicate<String> test = ((DescriptionPattern) pattern).valueTest();
+      if (test != null) {
+        tests.add(test);
+      }
+    } else if ( ! (pattern instanceof CoordinationPattern) || ! ((CoordinationPattern) pattern).isConj()) {
+      return;
+    }
+    for (TregexPattern child : pattern.getChildren()) {
+      valueTests(child, tests);
+    }
+  }
+
+
+  /** The matches of a pattern in one tree, in the order {@link TregexMatcher#find} finds them. */
+  public static class TreeMatches {
+    /** The id of the tree, counting from 0 */
+    public final int treeId;
+    public final Tree tree;
+    /** The node matching the root of the pattern, for each match */
+    public final List<Tree> matches = new ArrayList<>();
+    /** The named nodes, for each match */
+    public final List<Map<String, Tree>> namedNodes = new ArrayList<>();
+
+    TreeMatches(int treeId, Tree tree) {
+      this.treeId = treeId;
+      this.tree = tree;
+    }
+  }
+
+  /**
+   * Matches the pattern against each tree it could match.  The output is
+   * given the matches of each tree with at least one match, in the order of
+   * the trees.
+   *
+   * @param numThreads How many trees to match at once
+   */
+  public void search(TregexPattern pattern, int numThreads, Consumer<TreeMatches> output) {
+    BitSet candidates = candidates(pattern);
+    if (numThreads <= 1) {
+      for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+        TreeMatches matches = match(pattern, id);
+        if ( ! matches.matches.isEmpty()) {
+          output.accept(matches);
+        }
+      }
+      return;
+    }
+
+    MulticoreWrapper<Integer, TreeMatches> wrapper = new MulticoreWrapper<>(numThreads, new SearchProcessor(pattern), true);
+    for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+      wrapper.put(id);
+      while (wrapper.peek()) {
+        TreeMatches matches = wrapper.poll();
+        if ( ! matches.matches.isEmpty()) {
+          output.accept(matches);
+        }
+      }
+    }
+    wrapper.join();
+    while (wrapper.peek()) {
+      TreeMatches matches = wrapper.poll();
+      if ( ! matches.matches.isEmpty()) {
+        output.accept(matches);
+      }
+    }
+  }
+
+  /** All the matches of the pattern, tree by tree. */
+  public List<TreeMatches> search(TregexPattern pattern, int numThreads) {
+    List<TreeMatches> matches = new ArrayList<>();
+    search(pattern, numThreads, matches::add);
+    return matches;
+  }
+
+  private TreeMatches match(TregexPattern pattern, int id) {
+    Tree tree = getTree(id);
+    TreeMatches matches = new TreeMatches(id, tree);
+    TregexMatcher matcher = pattern.matcher(tree);
+    while (matcher.find()) {
+      matches.matches.add(matcher.getMatch());
+      Map<String, Tree> namedNodes = Generics.newHashMap();
+      for (String name : matcher.getNodeNames()) {
+        namedNodes.put(name, matcher.getNode(name));
+      }
+      matches.namedNodes.add(namedNodes);
+    }
+    return matches;
+  }
+
+  private class SearchProcessor implements ThreadsafeProcessor<Integer, TreeMatches> {
+    private final TregexPattern pattern;
+
+    SearchProcessor(TregexPattern pattern) {
+      this.pattern = pattern;
+    }
+
+    @Override
+    public TreeMatches process(Integer id) {
+      return match(pattern, id);
+    }
+
+    @Override
+    public ThreadsafeProcessor<Integer, TreeMatches> newInstance() {
+      return this;
+    }
+  }
+
+
+  /** Writes the trees and the index to a file, which {@link #load} reads back. */
+  public void save(String path) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(values.length);
+      for (String value : values) {
+        out.writeUTF(value);
+      }
+      out.writeInt(offsets.length);
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      out.writeInt(trees.length);
+      out.write(trees);
+      for (byte[] posting : postings) {
+        out.writeInt(posting.length);
+        out.write(posting);
+      }
+    }
+  }
+
+  public static TreebankIndex load(String path) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a treebank index");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException(path + " is a treebank index of version " + version + ", not " + VERSION);
+      }
+      String[] values = new String[in.readInt()];
+      for (int i = 0; i < values.length; ++i) {
+        values[i] = in.readUTF();
+      }
+      int[] offsets = new int[in.readInt()];
+      for (int i = 0; i < offsets.length; ++i) {
+        offsets[i] = in.readInt();
+      }
+      byte[] trees = new byte[in.readInt()];
+      in.readFully(trees);
+      byte[][] postings = new byte[values.length][];
+      for (int i = 0; i < postings.length; ++i) {
+        postings[i] = new byte[in.readInt()];
+        in.readFully(postings[i]);
+      }
+      return new TreebankIndex(values, trees, offsets, postings);
+    }
+  }
+
+
+  private static int readVInt(byte[] bytes, int[] position) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = bytes[position[0]++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /** A growable array of bytes, written as variable length ints */
+  private static class ByteStream {
+    byte[] bytes = new byte[16];
+    int size; // = 0;
+
+    void writeVInt(int value) {
+      if (size + 5 > bytes.length) {
+        long length = Math.max((long) bytes.length * 2, size + 5);
+        if (length > Integer.MAX_VALUE - 8) {
+          throw new IllegalStateException("Treebank too big to index: more than " + size + " bytes");
+        }
+        bytes = Arrays.copyOf(bytes, (int) length);
+      }
+      while ((value & ~0x7F) != 0) {
+        bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    byte[] toArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  /** The trees with one value, as they are found */
+  private static class Postings {
+    final ByteStream bytes = new ByteStream();
+    int last = -1;
+
+    void add(int treeId) {
+      if (treeId != last) {
+        bytes.writeVInt(treeId - last);
+        last = treeId;
+      }
+    }
+  }
+
+
+  /**
+   * Builds an index of a treebank, or searches one.  See the class
+   * documentation for the options; {@code -C}, {@code -n}, {@code -s} and
+   * {@code -h} work as in {@link TregexPattern#main}.
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-build", 2);
+    flagMap.put("-index", 1);
+    flagMap.put("-e", 1);
+    flagMap.put("-encoding", 1);
+    flagMap.put("-threads", 1);
+    flagMap.put("-h", 1);
+    flagMap.put("-C", 0);
+    flagMap.put("-n", 0);
+    flagMap.put("-s", 0);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    args = argsMap.get(null);
+    String encoding = argsMap.containsKey("-encoding") ? argsMap.get("-encoding")[0] : "UTF-8";
+
+    if (argsMap.containsKey("-build")) {
+      String indexPath = argsMap.get("-build")[0];
+      String treePath = argsMap.get("-build")[1];
+      String extension = argsMap.containsKey("-e") ? argsMap.get("-e")[0] : null;
+      Timing timing = new Timing();
+      DiskTreebank treebank = new DiskTreebank(new TregexPattern.TRegexTreeReaderFactory(), encoding);
+      treebank.loadPath(treePath, extension, true);
+      TreebankIndex index = new TreebankIndex(treebank);
+      index.save(indexPath);
+      log.info("Indexed " + index.size() + " trees with " + index.numValues() + " different labels and words in " + timing.toSecondsString() + " s");
+      return;
+    }
+
+    if ( ! argsMap.containsKey("-index") || args.length != 1) {
+      log.info("Usage: java edu.stanford.nlp.trees.tregex.TreebankIndex -build index treePath [-e extension] [-encoding enc]");
+      log.info("       java edu.stanford.nlp.trees.tregex.TreebankIndex -index index [-threads n] [-C] [-n] [-s] [-h handle]* pattern");
+      return;
+    }
+    TreebankIndex index = load(argsMap.get("-index")[0]);
+    TregexPattern pattern = TregexPattern.compile(args[0]);
+    int numThreads = argsMap.containsKey("-threads") ? Integer.parseInt(argsMap.get("-threads")[0]) : Runtime.getRuntime().availableProcessors();
+    boolean countOnly = argsMap.containsKey("-C");
+    boolean reportTreeNumbers = argsMap.containsKey("-n");
+    String[] handles = argsMap.get("-h");
+    TreePrint tp = new TreePrint(argsMap.containsKey("-s") ? "oneline" : "penn", new PennTreebankLanguagePack());
+    PrintWriter pw = new PrintWriter(new OutputStreamWriter(System.out, encoding), true);
+
+    Timing timing = new Timing();
+    int[] numMatches = { 0 };
+    index.search(pattern, numThreads, matches -> {
+      numMatches[0] += matches.matches.size();
+      if (countOnly) {
+        return;
+      }
+      for (int i = 0; i < matches.matches.size(); ++i) {
+        if (reportTreeNumbers) {
+          // tree numbers count from 1, as in TregexPattern
+          pw.print(matches.treeId + 1);
+          pw.print(": ");
+        }
+        if (handles == null) {
+          tp.printTree(matches.matches.get(i), pw);
+        } else {
+          for (String handle : handles) {
+            Tree node = matches.namedNodes.get(i).get(handle);
+            if (node == null) {
+              log.info("Error!!  There is no matched node \"" + handle + "\"!  Did you specify such a label in the pattern?");
+            } else {
+              tp.printTree(node, pw);
+            }
+          }
+        }
+      }
+    });
+    if (countOnly) {
+      System.out.println(numMatches[0]);
+    } else {
+      log.info("There were " + numMatches[0] + " matches in total.");
+    }
+    log.info("Searched " + index.candidates(pattern).cardinality() + " of " + index.size() + " trees in " + timing.toSecondsString() + " s");
+  }
+
+}
@@ -0,0 +1,305 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * A read-only {@link Index} of Strings stored in a flat binary layout inside a {@link ByteBuffer},
+ * typically a memory-mapped file.  Nothing is copied onto the Java heap when the Index
+ * is opened: {@link #indexOf} probes a hash table kept in the buffer and compares the
+ * UTF-8 bytes there directly against the query, and {@link #get} decodes a String on demand.
+ * Several processes mapping the same file therefore share one copy of it in the page cache.
+ * <p>
+ * The layout, written by {@link #write}, is (all ints big-endian):
+ * <ul>
+ * <li> the number of strings {@code n}, the hash table size {@code t} (a power of 2), and the number of UTF-8 bytes {@code b}
+ * <li> {@code n + 1} ints giving the start of each string within the bytes
+ * <li> {@code t} ints of hash table, each the position of a string or -1 if empty,
+ *      probed linearly from the spread {@link String#hashCode()} of the string
+ * <li> {@code b} bytes of UTF-8, padded with zeros to a multiple of 4
+ * </ul>
+ * The Index is always locked.  Asking to add a new element leaves it unchanged, as for a
+ * locked {@link HashIndex}; {@link #unlock} and {@link #clear} throw an UnsupportedOperationException.
+ * When it is Java-serialized, a {@link HashIndex} with the same contents is written instead.
+ */
+public class MappedStringIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int size;
+  private final IntBuffer offsets;
+  private final IntBuffer table;
+  private final int mask;
+  private final ByteBuffer bytes;
+
+  private MappedStringIndex(int size, IntBuffer offsets, IntBuffer table, ByteBuffer bytes) {
+    this.size = size;
+    this.offsets = offsets;
+    this.table = table;
+    this.mask = table.capacity() - 1;
+    this.bytes = bytes;
+  }
+
+  /**
+   * Open an Index stored at the current position of the buffer, and advance the buffer past it.
+   *
+   * @param buf A buffer as written by {@link #write}
+   * @return An Index which reads from (a view of) the buffer
+   */
+  public static MappedStringIndex read(ByteBuffer buf) {
+    int size = buf.getInt();
+    int tableSize = buf.getInt();
+    int numBytes = buf.getInt();
+    IntBuffer offsets = slice(buf, 4 * (size + 1)).asIntBuffer();
+    IntBuffer table = slice(buf, 4 * tableSize).asIntBuffer();
+    ByteBuffer bytes = slice(buf, padded(numBytes));
+    return new MappedStringIndex(size, offsets, table, bytes);
+  }
+
+  /**
+   * Returns a view of the next {@code length} bytes of buf, and advances buf past them.
+   * Useful for reading other flat structures stored alongside an Index.
+   */
+  public static ByteBuffer slice(ByteBuffer buf, int length) {
+    ByteBuffer view = buf.duplicate();
+    // cast to Buffer so that the code compiled here also links against Java 8
+    ((Buffer) view).limit(view.position() + length);
+    ((Buffer) buf).position(buf.position() + length);
+    return view.slice();
+  }
+
+  private static int padded(int numBytes) {
+    return (numBytes + 3) & ~3;
+  }
+
+  /**
+   * Write the given strings in the layout read by {@link #read}.
+   * The position of each string in the list is its index.
+   *
+   * @param out Where to write
+   * @param strings The strings, which should all be different
+   * @throws IOException If the stream throws one
+   */
+  public static void write(DataOutputStream out, List<String> strings) throws IOException {
+    int size = strings.size();
+    int tableSize = Integer.highestOneBit(Math.max(size, 1)) << 2;
+    int mask = tableSize - 1;
+    int[] table = new int[tableSize];
+    Arrays.fill(table, -1);
+    byte[][] encoded = new byte[size][];
+    long numBytes = 0;
+    for (int i = 0; i < size; i++) {
+      String s = strings.get(i);
+      encoded[i] = s.getBytes(StandardCharsets.UTF_8);
+      numBytes += encoded[i].length;
+      int slot = spread(s.hashCode()) & mask;
+      while (table[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = i;
+    }
+    if (numBytes > Integer.MAX_VALUE - 4) {
+      throw new IllegalArgumentException("Too many bytes of strings for a MappedStringIndex: " + numBytes);
+    }
+    out.writeInt(size);
+    out.writeInt(tableSize);
+    out.writeInt((int) numBytes);
+    int offset = 0;
+    for (byte[] b : encoded) {
+      out.writeInt(offset);
+      offset += b.length;
+    }
+    out.writeInt(offset);
+    for (int slot : table) {
+      out.writeInt(slot);
+    }
+    for (byte[] b : encoded) {
+      out.write(b);
+    }
+    for (int i = offset; i < padded(offset); i++) {
+      out.writeByte(0);
+    }
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ')');
+    }
+    int start = offsets.get(i);
+    byte[] b = new byte[offsets.get(i + 1) - start];
+    ByteBuffer view = bytes.duplicate();
+    ((Buffer) view).position(start);
+    view.get(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    for (int slot = spread(o.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int i = table.get(slot);
+      if (i < 0 || matches(i, o)) {
+        return i;
+      }
+    }
+  }
+
+  /** Whether string i is equal to s, decoding its UTF-8 in place rather than building a String. */
+  private boolean matches(int i, String s) {
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    int len = s.length();
+    int k = 0;
+    while (pos < end) {
+      int b = bytes.get(pos) & 0xff;
+      int cp;
+      if (b < 0x80) {
+        cp = b;
+        pos++;
+      } else if (b < 0xe0) {
+        cp = ((b & 0x1f) << 6) | (bytes.get(pos + 1) & 0x3f);
+        pos += 2;
+      } else if (b < 0xf0) {
+        cp = ((b & 0x0f) << 12) | ((bytes.get(pos + 1) & 0x3f) << 6) | (bytes.get(pos + 2) & 0x3f);
+        pos += 3;
+      } else {
+        cp = ((b & 0x07) << 18) | ((bytes.get(pos + 1) & 0x3f) << 12) | ((bytes.get(pos + 2) & 0x3f) << 6) | (bytes.get(pos + 3) & 0x3f);
+        pos += 4;
+      }
+      if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        if (k >= len || s.charAt(k) != cp) {
+          return false;
+        }
+        k++;
+      } else {
+        if (k + 1 >= len || s.charAt(k) != Character.highSurrogate(cp) || s.charAt(k + 1) != Character.lowSurrogate(cp)) {
+          return false;
+        }
+        k += 2;
+      }
+    }
+    return k == len;
+  }
+
+  /** Returns the index of o if it is present, else -1: this Index is locked. */
+  @Override
+  public int addToIndex(String o) {
+    return indexOf(o);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return objectsList().iterator();
+  }
+
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+    // always locked
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("A MappedStringIndex is read-only");
+  }
+
+  @Override
+  public void saveToWriter(Writer out) throws IOException {
+    for (int i = 0; i < size; i++) {
+      out.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+      saveToWriter(bw);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && indexOf((String) o) >= 0;
+  }
+
+  @Override
+  public boolean add(String s) {
+    return false;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A MappedStringIndex is read-only");
+  }
+
+  /** Serialize as an ordinary HashIndex, since the buffer cannot be serialized. */
+  private Object writeReplace() {
+    return new HashIndex<>(objectsList());
+  }
+
+}
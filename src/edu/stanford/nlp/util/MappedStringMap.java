@@ -0,0 +1,124 @@
+package edu.stanford.nlp.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * A read-only String to String Map stored in a {@link ByteBuffer}, typically a memory-mapped file.
+ * The keys are a {@link MappedStringIndex} and the value of each key is stored as the
+ * position of a distinct value, so only the distinct values are read onto the heap.
+ * It suits maps with many keys but few distinct values, such as a word cluster lexicon.
+ * <p>
+ * When it is Java-serialized, a {@link HashMap} with the same contents is written instead.
+ */
+public class MappedStringMap extends AbstractMap<String,String> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final MappedStringIndex keys;
+  private final IntBuffer valueIds;
+  private final String[] values;
+
+  private MappedStringMap(MappedStringIndex keys, IntBuffer valueIds, String[] values) {
+    this.keys = keys;
+    this.valueIds = valueIds;
+    this.values = values;
+  }
+
+  /**
+   * Open a Map stored at the current position of the buffer, and advance the buffer past it.
+   *
+   * @param buf A buffer as written by {@link #write}
+   * @return A Map which reads its keys from (a view of) the buffer
+   */
+  public static MappedStringMap read(ByteBuffer buf) {
+    MappedStringIndex keys = MappedStringIndex.read(buf);
+    IntBuffer valueIds = MappedStringIndex.slice(buf, 4 * keys.size()).asIntBuffer();
+    MappedStringIndex valueIndex = MappedStringIndex.read(buf);
+    String[] values = valueIndex.objectsList().toArray(new String[0]);
+    return new MappedStringMap(keys, valueIds, values);
+  }
+
+  /**
+   * Write the given map in the layout read by {@link #read}.
+   *
+   * @param out Where to write
+   * @param map The map to write.  It may not contain null keys or values.
+   * @throws IOException If the stream throws one
+   */
+  public static void write(DataOutputStream out, Map<String,String> map) throws IOException {
+    List<String> keys = new ArrayList<>(map.size());
+    Index<String> values = new HashIndex<>();
+    int[] valueIds = new int[map.size()];
+    for (Map.Entry<String,String> entry : map.entrySet()) {
+      valueIds[keys.size()] = values.addToIndex(entry.getValue());
+      keys.add(entry.getKey());
+    }
+    MappedStringIndex.write(out, keys);
+    for (int id : valueIds) {
+      out.writeInt(id);
+    }
+    MappedStringIndex.write(out, values.objectsList());
+  }
+
+  @Override
+  public String get(Object key) {
+    if ( ! (key instanceof String)) {
+      return null;
+    }
+    int i = keys.indexOf((String) key);
+    return i < 0 ? null : values[valueIds.get(i)];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return keys.contains(key);
+  }
+
+  @Override
+  public int size() {
+    return keys.size();
+  }
+
+  @Override
+  public Set<Map.Entry<String,String>> entrySet() {
+    return new AbstractSet<Map.Entry<String,String>>() {
+      @Override
+      public Iterator<Map.Entry<String,String>> iterator() {
+        return new Iterator<Map.Entry<String,String>>() {
+          private int i; // = 0;
+
+          @Override
+          public boolean hasNext() {
+            return i < keys.size();
+          }
+
+          @Override
+          public Map.Entry<String,String> next() {
+            if ( ! hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<String,String> entry = new AbstractMap.SimpleImmutableEntry<>(keys.get(i), values[valueIds.get(i)]);
+            i++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return keys.size();
+      }
+    };
+  }
+
+  /** Serialize as an ordinary HashMap, since the buffer cannot be serialized. */
+  private Object writeReplace() {
+    return new HashMap<>(this);
+  }
+
+}
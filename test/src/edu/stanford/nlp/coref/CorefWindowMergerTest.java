@@ -0,0 +1,130 @@
+package edu.stanford.nlp.coref;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.stanford.nlp.coref.data.CorefChain;
+import edu.stanford.nlp.coref.data.CorefCluster;
+import edu.stanford.nlp.coref.data.Dictionaries.Animacy;
+import edu.stanford.nlp.coref.data.Dictionaries.Gender;
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Dictionaries.Number;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.IntTuple;
+
+/**
+ * Checks that the clusters of overlapping windows are merged into chains,
+ * through shared mentions and through the summaries of entities which left
+ * the window.
+ */
+public class CorefWindowMergerTest {
+
+  private static Mention mention(String head, MentionType type, Gender gender) {
+    Mention m = new Mention();
+    CoreLabel word = new CoreLabel();
+    word.setWord(head);
+    word.setValue(head);
+    word.setOriginalText(head);
+    m.headWord = word;
+    m.headString = head.toLowerCase();
+    m.originalSpan = Collections.singletonList(word);
+    m.startIndex = 0;
+    m.endIndex = 1;
+    m.headIndex = 0;
+    m.mentionType = type;
+    m.gender = gender;
+    m.number = Number.SINGULAR;
+    m.animacy = gender == Gender.NEUTRAL ? Animacy.INANIMATE : Animacy.ANIMATE;
+    return m;
+  }
+
+  /** One mention per sentence: Obama, he, car, it, Obama (or she), he */
+  private static List<List<Mention>> document(Mention fifth) {
+    List<List<Mention>> sentences = new ArrayList<>();
+    sentences.add(Arrays.asList(mention("Obama", MentionType.PROPER, Gender.MALE)));
+    sentences.add(Arrays.asList(mention("he", MentionType.PRONOMINAL, Gender.MALE)));
+    sentences.add(Arrays.asList(mention("car", MentionType.NOMINAL, Gender.NEUTRAL)));
+    sentences.add(Arrays.asList(mention("it", MentionType.PRONOMINAL, Gender.NEUTRAL)));
+    sentences.add(Arrays.asList(fifth));
+    sentences.add(Arrays.asList(mention("he", MentionType.PRONOMINAL, Gender.MALE)));
+    return sentences;
+  }
+
+  /** Windows of two sentences which overlap by one, with the clusters a coref system might find in each */
+  private static Set<Set<Integer>> merge(List<List<Mention>> sentences, int entityCacheSize) {
+    int[][][] windows = {
+      { { 0, 1 } },
+      { { 1 }, { 2 } },
+      { { 2, 3 } },
+      { { 3 }, { 4 } },
+      { { 4, 5 } },
+    };
+    CorefWindowMerger merger = new CorefWindowMerger(sentences, entityCacheSize);
+    for (int start = 0; start < windows.length; ++start) {
+      List<CorefCluster> clusters = new ArrayList<>();
+      Map<Mention, IntTuple> positions = new IdentityHashMap<>();
+      for (int[] cluster : windows[start]) {
+        Set<Mention> mentions = Generics.newHashSet();
+        for (int sentNum : cluster) {
+          Mention m = sentences.get(sentNum).get(0);
+          mentions.add(m);
+          IntTuple position = new IntTuple(2);
+          position.set(0, sentNum - start);
+          position.set(1, 0);
+          positions.put(m, position);
+        }
+        clusters.add(new CorefCluster(clusters.size(), mentions));
+      }
+      merger.addWindow(clusters, positions, start, start == 0 ? 0 : start + 1);
+      assertTrue(merger.numCached() <= entityCacheSize);
+    }
+
+    Set<Set<Integer>> chains = Generics.newHashSet();
+    for (Map.Entry<Integer, CorefChain> entry : merger.chains(false).entrySet()) {
+      Set<Integer> chain = new TreeSet<>();
+      for (CorefChain.CorefMention m : entry.getValue().getMentionsInTextualOrder()) {
+        chain.add(m.mentionID);
+        assertEquals(m.mentionID + 1, m.sentNum);
+        assertEquals((int) entry.getKey(), m.corefClusterID);
+      }
+      assertEquals(chain.iterator().next(), entry.getKey());
+      chains.add(chain);
+    }
+    return chains;
+  }
+
+  private static Set<Integer> chain(Integer... ids) {
+    return new TreeSet<>(Arrays.asList(ids));
+  }
+
+  @Test
+  public void testMerge() {
+    List<List<Mention>> sentences = document(mention("Obama", MentionType.PROPER, Gender.MALE));
+    assertEquals(Generics.newHashSet(Arrays.asList(chain(0, 1, 4, 5), chain(2, 3))), merge(sentences, 10));
+  }
+
+  @Test
+  public void testDisagreement() {
+    List<List<Mention>> sentences = document(mention("Obama", MentionType.PROPER, Gender.FEMALE));
+    assertEquals(Generics.newHashSet(Arrays.asList(chain(0, 1), chain(2, 3), chain(4, 5))), merge(sentences, 10));
+  }
+
+  @Test
+  public void testBoundedCache() {
+    // the first Obama is forgotten by the time the second one is seen
+    List<List<Mention>> sentences = document(mention("Obama", MentionType.PROPER, Gender.MALE));
+    assertEquals(Generics.newHashSet(Arrays.asList(chain(0, 1), chain(2, 3), chain(4, 5))), merge(sentences, 1));
+  }
+
+}
@@ -0,0 +1,84 @@
+package edu.stanford.nlp.coref.neural;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.neural.NeuralUtils;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Checks that scoring mentions and mention pairs in batches gives exactly
+ * the scores of scoring them one at a time, so that coref makes the same
+ * decisions either way.
+ */
+public class NeuralCorefModelTest {
+
+  private static final int EMBEDDING_SIZE = 12;
+  private static final int HIDDEN_SIZE = 10;
+  private static final int PAIR_FEATURES = 7;
+  private static final int ANAPHORICITY_FEATURES = 5;
+  private static final int NUM_MENTIONS = 20;
+
+  private static List<SimpleMatrix> layers(Random random, int... sizes) {
+    SimpleMatrix[] layers = new SimpleMatrix[(sizes.length - 1) * 2];
+    for (int i = 0; i < sizes.length - 1; ++i) {
+      layers[i * 2] = NeuralUtils.randomGaussian(sizes[i + 1], sizes[i], random);
+      layers[i * 2 + 1] = NeuralUtils.randomGaussian(sizes[i + 1], 1, random);
+    }
+    return Arrays.asList(layers);
+  }
+
+  private static NeuralCorefModel model(Random random) {
+    return new NeuralCorefModel(NeuralUtils.randomGaussian(HIDDEN_SIZE, EMBEDDING_SIZE, random),
+                                NeuralUtils.randomGaussian(HIDDEN_SIZE, EMBEDDING_SIZE, random),
+                                NeuralUtils.randomGaussian(HIDDEN_SIZE, PAIR_FEATURES, random),
+                                NeuralUtils.randomGaussian(HIDDEN_SIZE, 1, random),
+                                layers(random, EMBEDDING_SIZE + ANAPHORICITY_FEATURES, 8, 6, 1),
+                                layers(random, HIDDEN_SIZE, 8, 6, 1),
+                                null);
+  }
+
+  @Test
+  public void testBatchedScores() {
+    Random random = new Random(1234);
+    NeuralCorefModel model = model(random);
+    SimpleMatrix mentionEmbeddings = NeuralUtils.randomGaussian(EMBEDDING_SIZE, NUM_MENTIONS, random);
+    SimpleMatrix anaphoricityFeatures = NeuralUtils.randomGaussian(ANAPHORICITY_FEATURES, NUM_MENTIONS, random);
+
+    SimpleMatrix antecedentEmbeddings = model.getAntecedentEmbedding(mentionEmbeddings);
+    SimpleMatrix anaphorEmbeddings = model.getAnaphorEmbedding(mentionEmbeddings);
+    double[] anaphoricityScores = model.getAnaphoricityScores(mentionEmbeddings, anaphoricityFeatures);
+    for (int m = 0; m < NUM_MENTIONS; ++m) {
+      SimpleMatrix mentionEmbedding = mentionEmbeddings.extractVector(false, m);
+      assertTrue(model.getAntecedentEmbedding(mentionEmbedding).isIdentical(antecedentEmbeddings.extractVector(false, m), 0.0));
+      assertTrue(model.getAnaphorEmbedding(mentionEmbedding).isIdentical(anaphorEmbeddings.extractVector(false, m), 0.0));
+      assertEquals(model.getAnaphoricityScore(mentionEmbedding, anaphoricityFeatures.extractVector(false, m)),
+                   anaphoricityScores[m], 0.0);
+    }
+
+    int numPairs = NUM_MENTIONS * (NUM_MENTIONS - 1) / 2;
+    int[] antecedents = new int[numPairs];
+    int[] anaphors = new int[numPairs];
+    int pair = 0;
+    for (int m = 0; m < NUM_MENTIONS; ++m) {
+      for (int ca = 0; ca < m; ++ca) {
+        antecedents[pair] = ca;
+        anaphors[pair] = m;
+        pair++;
+      }
+    }
+    SimpleMatrix pairFeatures = NeuralUtils.randomGaussian(PAIR_FEATURES, numPairs, random);
+    double[] pairScores = model.getPairwiseScores(antecedentEmbeddings, anaphorEmbeddings, antecedents, anaphors, pairFeatures);
+    for (int p = 0; p < numPairs; ++p) {
+      double score = model.getPairwiseScore(model.getAntecedentEmbedding(mentionEmbeddings.extractVector(false, antecedents[p])),
+                                            model.getAnaphorEmbedding(mentionEmbeddings.extractVector(false, anaphors[p])),
+                                            pairFeatures.extractVector(false, p));
+      assertEquals(score, pairScores[p], 0.0);
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+package edu.stanford.nlp.coref.statistical;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.stanford.nlp.coref.data.Dictionaries.MentionType;
+import edu.stanford.nlp.coref.data.Mention;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Checks that a {@link PairwiseScorer} gives the scores {@link PairwiseModel#predict} gives,
+ * for pairs and for mentions starting new clusters.
+ */
+public class PairwiseScorerTest {
+
+  private static final String[][] MENTIONS = {
+    { "PROPER", "head-word=obama", "head-ne-type=PERSON", "parent-word=said", "gender=MALE" },
+    { "PRONOMINAL", "head-word=he", "head-ne-type=O", "parent-word=went", "gender=MALE" },
+    { "NOMINAL", "head-word=car", "head-ne-type=O", "parent-word=drove", "gender=NEUTRAL" },
+    { "PRONOMINAL", "head-word=it", "head-ne-type=O", "parent-word=broke", "gender=NEUTRAL" },
+    { "PROPER", "head-word=washington", "head-ne-type=LOCATION", "parent-word=to", "gender=NEUTRAL" },
+  };
+
+  private static Counter<String> pairFeatures(int i, int j) {
+    Counter<String> features = new ClassicCounter<>();
+    features.incrementCount("bias");
+    features.incrementCount("mention-distance=" + (j - i));
+    features.incrementCount("word-distance", 3.5 * (j - i));
+    if (MENTIONS[i][4].equals(MENTIONS[j][4])) {
+      features.incrementCount("gender-match");
+    }
+    return features;
+  }
+
+  @Test
+  public void testScores() {
+    Random random = new Random(1234);
+    Compressor<String> compressor = new Compressor<>();
+    Map<Integer, Mention> mentions = new HashMap<>();
+    Map<Integer, CompressedFeatureVector> mentionFeatures = new HashMap<>();
+    for (int i = 0; i < MENTIONS.length; ++i) {
+      Mention m = new Mention();
+      m.mentionID = i;
+      m.mentionType = MentionType.valueOf(MENTIONS[i][0]);
+      mentions.put(i, m);
+      Counter<String> features = new ClassicCounter<>();
+      for (int f = 1; f < MENTIONS[i].length; ++f) {
+        features.incrementCount(MENTIONS[i][f]);
+      }
+      features.incrementCount("mention-position", i / (double) MENTIONS.length);
+      mentionFeatures.put(i, compressor.compress(features));
+    }
+    List<Example> examples = new ArrayList<>();
+    for (int j = 0; j < MENTIONS.length; ++j) {
+      for (int i = 0; i < j; ++i) {
+        examples.add(new Example(0, mentions.get(i), mentions.get(j), 0.0, compressor.compress(pairFeatures(i, j))));
+      }
+    }
+
+    PairwiseModel[] models = {
+      PairwiseModel.newBuilder("classification", MetaFeatureExtractor.newBuilder().build()).build(),
+      PairwiseModel.newBuilder("other", MetaFeatureExtractor.newBuilder()
+          .pairConjunctions(MetaFeatureExtractor.PairConjunction.values())
+          .singleConjunctions(MetaFeatureExtractor.SingleConjunction.values())
+          .disallowedPrefixes(new String[] { "gender" }).build()).build(),
+      PairwiseModel.newBuilder("anaphoricity", MetaFeatureExtractor.anaphoricityMFE()).build(),
+    };
+    for (PairwiseModel model : models) {
+      // give a weight to every feature the model makes, and to some it doesn't
+      for (Example example : examples) {
+        Example newLink = new Example(example, false);
+        for (Example e : new Example[] { example, newLink }) {
+          if (e.isNewLink() || ! model.name.equals("anaphoricity")) {
+            for (String feature : model.meta.getFeatures(e, mentionFeatures, compressor).keySet()) {
+              model.getClassifier().setWeight(feature, random.nextGaussian());
+            }
+          }
+        }
+      }
+      model.getClassifier().setWeight("parent-word=said_1", 1.0);
+
+      PairwiseScorer scorer = new PairwiseScorer(model, mentions, mentionFeatures, compressor);
+      int[] keys = new int[2];
+      double[] values = new double[2];
+      for (int pass = 0; pass < 2; ++pass) {
+        for (Example example : examples) {
+          Example newLink = new Example(example, false);
+          assertEquals(model.predict(newLink, mentionFeatures, compressor),
+                       scorer.scoreNewLink(example.mentionId2), 1e-12);
+          if (model.name.equals("anaphoricity")) {
+            continue;
+          }
+          Counter<String> features = pairFeatures(example.mentionId1, example.mentionId2);
+          if (features.size() > keys.length) {
+            keys = new int[features.size()];
+            values = new double[features.size()];
+          }
+          int numFeatures = compressor.compress(features, keys, values);
+          assertEquals(model.predict(example, mentionFeatures, compressor),
+                       scorer.score(example.mentionId1, example.mentionId2, keys, values, numFeatures), 1e-12);
+        }
+      }
+    }
+  }
+
+}
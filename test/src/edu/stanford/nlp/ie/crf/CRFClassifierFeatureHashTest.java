@@ -0,0 +1,119 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.FeatureHashIndex;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.Triple;
+
+/**
+ * Checks that looking up CRF features by hash gives the same data, and so the same
+ * labels, as looking them up by name.
+ */
+public class CRFClassifierFeatureHashTest {
+
+  static List<CoreLabel> sentence(String text, String labels) {
+    String[] words = text.split(" ");
+    String[] answers = labels.split(" ");
+    List<CoreLabel> sentence = new ArrayList<>();
+    for (int i = 0; i < words.length; i++) {
+      CoreLabel word = new CoreLabel();
+      word.setWord(words[i]);
+      word.setValue(words[i]);
+      word.set(CoreAnnotations.AnswerAnnotation.class, answers[i]);
+      word.set(CoreAnnotations.GoldAnswerAnnotation.class, answers[i]);
+      sentence.add(word);
+    }
+    return sentence;
+  }
+
+  static List<List<CoreLabel>> trainingData() {
+    return Arrays.asList(
+        sentence("John Smith went to Paris .", "PER PER O O LOC O"),
+        sentence("Mary lives in London and Paris .", "PER O O LOC O LOC O"),
+        sentence("Barack Obama visited Berlin yesterday .", "PER PER O LOC O O"),
+        sentence("The office in Tokyo hired Jane Doe .", "O O O LOC O PER PER O"));
+  }
+
+  private static CRFClassifier<CoreLabel> train() {
+    Properties props = new Properties();
+    props.setProperty("maxLeft", "2");
+    props.setProperty("useWord", "true");
+    props.setProperty("useNGrams", "true");
+    props.setProperty("maxNGramLeng", "4");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("useTypeSeqs", "true");
+    props.setProperty("useTypeSeqs2", "true");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("maxIterations", "30");
+    props.setProperty("featureCountThresh", "2");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train(trainingData());
+    return crf;
+  }
+
+  private static int[][][] sorted(int[][][] data) {
+    for (int[][] position : data) {
+      for (int[] clique : position) {
+        Arrays.sort(clique);
+      }
+    }
+    return data;
+  }
+
+  @Test
+  public void testSameFeaturesAndLabels() {
+    CRFClassifier<CoreLabel> crf = train();
+    List<List<CoreLabel>> tests = new ArrayList<>(trainingData());
+    tests.add(sentence("Jane Doe went to Berlin and Rome .", "O O O O O O O O"));
+    tests.add(sentence("Unseen words everywhere", "O O O"));
+
+    for (List<CoreLabel> test : tests) {
+      crf.flags.featureHashInference = false;
+      Triple<int[][][], int[], double[][][]> byName = crf.documentToDataAndLabels(test);
+      crf.flags.featureHashInference = true;
+      Triple<int[][][], int[], double[][][]> byHash = crf.documentToDataAndLabels(test);
+      Assert.assertArrayEquals(sorted(byName.first()), sorted(byHash.first()));
+      Assert.assertArrayEquals(byName.second(), byHash.second());
+
+      // classify overwrites the answers, so compare the labels only after the data
+      crf.flags.featureHashInference = false;
+      List<String> expected = new ArrayList<>();
+      for (CoreLabel word : crf.classify(test)) {
+        expected.add(word.get(CoreAnnotations.AnswerAnnotation.class));
+      }
+      crf.flags.featureHashInference = true;
+      List<CoreLabel> labeledByHash = crf.classify(test);
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertEquals(expected.get(i), labeledByHash.get(i).get(CoreAnnotations.AnswerAnnotation.class));
+      }
+    }
+  }
+
+  @Test
+  public void testHashIndex() {
+    Index<String> features = new HashIndex<>(Arrays.asList("a-WORD|C", "b-WORD|C", "null-PW|C", "ab|CpC"));
+    FeatureHashIndex hashes = new FeatureHashIndex(features);
+    Assert.assertFalse(hashes.hasCollisions());
+    for (int i = 0; i < features.size(); i++) {
+      Assert.assertEquals(i, hashes.indexOf(FeatureHashIndex.hash(features.get(i))));
+    }
+    long incremental = FeatureHashIndex.extend(FeatureHashIndex.extend(FeatureHashIndex.EMPTY, 'a'), "b|CpC");
+    Assert.assertEquals(3, hashes.indexOf(incremental));
+    Assert.assertEquals(-1, hashes.indexOf(FeatureHashIndex.hash("c-WORD|C")));
+  }
+
+}
@@ -0,0 +1,124 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.NERFeatureFactory;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.MappedStringIndex;
+import edu.stanford.nlp.util.MappedStringMap;
+
+/**
+ * Checks that a CRF written as a flat model file and memory-mapped back labels text
+ * the same as the original, and the same as the usual serialized form, also when
+ * it is loaded as a {@link CRFBiasedClassifier} and biased.
+ */
+public class CRFClassifierFlatModelTest {
+
+  private static File tempFile(String suffix) throws IOException {
+    File file = File.createTempFile("CRFClassifierFlatModelTest", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static CRFClassifier<CoreLabel> train() throws IOException {
+    File lexicon = tempFile(".distsim");
+    try (PrintWriter pw = new PrintWriter(lexicon, "UTF-8")) {
+      pw.println("John 1");
+      pw.println("Mary 1");
+      pw.println("Jane 1");
+      pw.println("Paris 2");
+      pw.println("London 2");
+      pw.println("Berlin 2");
+      pw.println("Tokyo 2");
+    }
+    Properties props = new Properties();
+    props.setProperty("maxLeft", "1");
+    props.setProperty("useWord", "true");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("wordShape", "chris2useLC");
+    props.setProperty("useDistSim", "true");
+    props.setProperty("distSimLexicon", lexicon.getPath());
+    props.setProperty("maxIterations", "30");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train(CRFClassifierFeatureHashTest.trainingData());
+    return crf;
+  }
+
+  private static List<String> labels(CRFClassifier<CoreLabel> crf, List<CoreLabel> sentence) {
+    List<String> labels = new ArrayList<>();
+    for (CoreLabel word : crf.classify(sentence)) {
+      labels.add(word.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return labels;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    File flat = tempFile(".flat");
+    crf.serializeFlatClassifier(flat.getPath());
+    Assert.assertTrue(CRFClassifier.isFlatClassifier(flat.getPath()));
+
+    CRFClassifier<CoreLabel> mapped = CRFClassifier.getClassifier(flat.getPath());
+    Assert.assertTrue(mapped.featureIndex instanceof MappedStringIndex);
+    Assert.assertTrue(((NERFeatureFactory<?>) mapped.featureFactories.get(0)).getDistSimLexicon() instanceof MappedStringMap);
+    Assert.assertEquals(crf.featureIndex.objectsList(), new ArrayList<>(mapped.featureIndex.objectsList()));
+
+    List<List<CoreLabel>> tests = new ArrayList<>(CRFClassifierFeatureHashTest.trainingData());
+    tests.add(CRFClassifierFeatureHashTest.sentence("Jane went to Berlin and Rome .", "O O O O O O O"));
+    List<List<String>> expected = new ArrayList<>();
+    for (List<CoreLabel> test : tests) {
+      expected.add(labels(crf, test));
+      Assert.assertEquals(expected.get(expected.size() - 1), labels(mapped, test));
+    }
+
+    // converting back to the usual format copies the mapped model onto the heap
+    File ser = tempFile(".ser.gz");
+    mapped.serializeClassifier(ser.getPath());
+    Assert.assertFalse(CRFClassifier.isFlatClassifier(ser.getPath()));
+    CRFClassifier<CoreLabel> reloaded = CRFClassifier.getClassifier(ser.getPath());
+    Assert.assertEquals(crf.getNumWeights(), reloaded.getNumWeights());
+    for (int i = 0; i < tests.size(); i++) {
+      Assert.assertEquals(expected.get(i), labels(reloaded, tests.get(i)));
+      Assert.assertEquals(expected.get(i), labels(mapped, tests.get(i)));
+    }
+  }
+
+
+  @Test
+  public void testBiased() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    File ser = tempFile(".ser.gz");
+    crf.serializeClassifier(ser.getPath());
+    File flat = tempFile(".flat");
+    crf.serializeFlatClassifier(flat.getPath());
+
+    CRFBiasedClassifier<CoreLabel> onHeap = new CRFBiasedClassifier<>(new Properties());
+    onHeap.loadClassifier(ser.getPath(), null);
+    CRFBiasedClassifier<CoreLabel> mapped = new CRFBiasedClassifier<>(new Properties());
+    mapped.loadClassifier(flat.getPath(), null);
+    Assert.assertTrue(mapped.featureIndex instanceof MappedStringIndex);
+
+    List<CoreLabel> test = CRFClassifierFeatureHashTest.sentence("Jane went to Berlin and Rome .", "O O O O O O O");
+    List<String> unbiased = labels(onHeap, test);
+    Assert.assertEquals(unbiased, labels(mapped, test));
+    onHeap.setBiasWeight("LOC", 100.0);
+    mapped.setBiasWeight("LOC", 100.0);
+    Assert.assertNotEquals(unbiased, labels(onHeap, test));
+    Assert.assertEquals(labels(onHeap, test), labels(mapped, test));
+  }
+
+}
@@ -213,4 +213,22 @@ public class RegexNERSequenceClassifierTest {
     }
   }
 
+  @Test
+  public void testFirstWordIndex() {
+    // entries starting with a literal are only tried where that word occurs,
+    // but must still be applied in priority order along with the other entries
+    String patterns = "Shoreline Park\tPARK\t\t1\nshore.*\tSHORE\nPark\tPLACE\nSão\tCITY\nPark Park\tPARKS\n";
+    List<CoreLabel> sentence = SentenceUtils.toCoreLabelList("SHORELINE PARK and são park Shore".split(" "));
+    RegexNERSequenceClassifier uncased =
+      new RegexNERSequenceClassifier(new BufferedReader(new StringReader(patterns)), true, false, null);
+    uncased.classify(sentence);
+    compareAnswers("PARK PARK - CITY PLACE SHORE".split(" "), sentence);
+
+    sentence = SentenceUtils.toCoreLabelList("SHORELINE PARK and São Park Park".split(" "));
+    RegexNERSequenceClassifier cased =
+      new RegexNERSequenceClassifier(new BufferedReader(new StringReader(patterns)), false, false, null);
+    cased.classify(sentence);
+    compareAnswers("- - - CITY PARKS PARKS".split(" "), sentence);
+  }
+
 }
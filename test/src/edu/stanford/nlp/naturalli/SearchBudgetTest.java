@@ -0,0 +1,127 @@
+package edu.stanford.nlp.naturalli;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import edu.stanford.nlp.international.Language;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+
+/**
+ * Checks that the OpenIE searches stop when their {@link SearchBudget} runs out, keeping
+ * what they found, and that fragments keeping the same edges hash the same.
+ */
+public class SearchBudgetTest {
+
+  /** "cats eat fresh fish quickly" */
+  private static SemanticGraph tree() {
+    String[] words = { "cats", "eat", "fresh", "fish", "quickly" };
+    String[] tags = { "NNS", "VBP", "JJ", "NN", "RB" };
+    IndexedWord[] nodes = new IndexedWord[words.length];
+    for (int i = 0; i < words.length; ++i) {
+      CoreLabel token = new CoreLabel();
+      token.setWord(words[i]);
+      token.setValue(words[i]);
+      token.setLemma(words[i]);
+      token.setTag(tags[i]);
+      token.setIndex(i + 1);
+      token.set(NaturalLogicAnnotations.PolarityAnnotation.class, Polarity.DEFAULT);
+      nodes[i] = new IndexedWord(token);
+    }
+    SemanticGraph tree = new SemanticGraph();
+    tree.addRoot(nodes[1]);
+    for (IndexedWord node : nodes) {
+      tree.addVertex(node);
+    }
+    addEdge(tree, nodes[1], nodes[0], "nsubj");
+    addEdge(tree, nodes[1], nodes[3], "obj");
+    addEdge(tree, nodes[3], nodes[2], "amod");
+    addEdge(tree, nodes[1], nodes[4], "advmod");
+    return tree;
+  }
+
+  private static void addEdge(SemanticGraph tree, IndexedWord governor, IndexedWord dependent, String relation) {
+    tree.addEdge(governor, dependent, GrammaticalRelation.valueOf(Language.English, relation), 1.0, false);
+  }
+
+  private static Set<String> glosses(List<SentenceFragment> fragments) {
+    return fragments.stream().map(SentenceFragment::toString).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testBudgetStates() {
+    SearchBudget budget = new SearchBudget(3, -1);
+    assertTrue(budget.tick());
+    assertTrue(budget.tick());
+    assertTrue(budget.tick());
+    assertFalse(budget.tick());
+    assertFalse(budget.tick());
+    assertEquals(3, budget.statesExpanded());
+    assertTrue(budget.isOutOfStates());
+    assertFalse(budget.isOutOfTime());
+    assertTrue(budget.isExhausted());
+  }
+
+  @Test
+  public void testBudgetTime() {
+    SearchBudget budget = new SearchBudget(-1, 0);
+    assertFalse(budget.tick());
+    assertEquals(0, budget.statesExpanded());
+    assertTrue(budget.isOutOfTime());
+    assertFalse(budget.isOutOfStates());
+
+    SearchBudget unlimited = SearchBudget.unlimited();
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(unlimited.tick());
+    }
+    assertFalse(unlimited.isExhausted());
+  }
+
+  @Test
+  public void testEntailerStopsOnBudget() {
+    ForwardEntailer entailer = new ForwardEntailer(new NaturalLogicWeights(1.0 / 3.0));
+    SearchBudget unlimited = SearchBudget.unlimited();
+    Set<String> all = glosses(entailer.apply(tree(), true).search(unlimited));
+    assertFalse(unlimited.isExhausted());
+    assertTrue(all.contains("cats eat fish quickly"));
+    assertTrue(all.contains("cats eat fish"));
+    assertEquals(all, glosses(entailer.apply(tree(), true).search()));
+
+    SearchBudget budget = new SearchBudget(2, -1);
+    List<SentenceFragment> some = entailer.apply(tree(), true).search(budget);
+    assertTrue(budget.isOutOfStates());
+    assertEquals(2, budget.statesExpanded());
+    assertFalse(some.isEmpty());
+    assertTrue(some.size() < all.size());
+    assertTrue(all.containsAll(glosses(some)));
+
+    // the budget is spent; another search on it finds nothing
+    assertTrue(entailer.apply(tree(), true).search(budget).isEmpty());
+  }
+
+  @Test
+  public void testKeptEdgesHash() {
+    SemanticGraph tree = tree();
+    SemanticGraph copy = new SemanticGraph(tree);
+    assertEquals(SentenceFragment.keptEdgesHash(tree), SentenceFragment.keptEdgesHash(copy));
+    assertEquals(new SentenceFragment(tree, true, false).keptEdgesHash(), SentenceFragment.keptEdgesHash(copy));
+
+    Set<Long> hashes = new HashSet<>();
+    hashes.add(SentenceFragment.keptEdgesHash(tree));
+    for (IndexedWord vertex : tree.vertexListSorted()) {
+      if (!vertex.equals(tree.getFirstRoot())) {
+        SemanticGraph smaller = new SemanticGraph(tree);
+        smaller.removeVertex(vertex);
+        assertTrue(hashes.add(SentenceFragment.keptEdgesHash(smaller)));
+      }
+    }
+  }
+
+}
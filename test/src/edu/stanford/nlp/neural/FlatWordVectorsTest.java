@@ -0,0 +1,88 @@
+package edu.stanford.nlp.neural;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ejml.simple.SimpleMatrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+
+/**
+ * Converts embeddings to the flat format and checks that lookups give the same vectors.
+ */
+public class FlatWordVectorsTest {
+
+  private static File tempFile(String suffix) throws IOException {
+    File file = File.createTempFile("FlatWordVectorsTest", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static SimpleMatrix vector(double... values) {
+    SimpleMatrix vector = new SimpleMatrix(values.length, 1);
+    for (int i = 0; i < values.length; i++) {
+      vector.set(i, values[i]);
+    }
+    return vector;
+  }
+
+  private static void assertSameVector(SimpleMatrix expected, SimpleMatrix actual) {
+    Assert.assertEquals(expected.getNumElements(), actual.getNumElements());
+    Assert.assertEquals(1, actual.numCols());
+    for (int i = 0; i < expected.getNumElements(); i++) {
+      Assert.assertEquals(expected.get(i), actual.get(i), 1e-6);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Map<String, SimpleMatrix> vectors = new HashMap<>();
+    vectors.put(Embedding.UNKNOWN_WORD, vector(0.0, 0.0, 0.0));
+    vectors.put("the", vector(0.1, -0.2, 0.3));
+    vectors.put("北京", vector(1.5, 2.5, -3.5));
+    vectors.put(Embedding.START_WORD, vector(1, 1, 1));
+    Embedding embedding = new Embedding(vectors);
+
+    File flat = tempFile(".flat");
+    embedding.writeFlatToFile(flat.getPath());
+    Embedding loaded = Embedding.load(flat.getPath());
+    Assert.assertTrue(loaded.getWordVectors() instanceof FlatWordVectors);
+    Assert.assertEquals(3, loaded.getEmbeddingSize());
+    Assert.assertEquals(vectors.keySet(), loaded.keySet());
+    for (String word : vectors.keySet()) {
+      Assert.assertTrue(loaded.containsWord(word));
+      assertSameVector(vectors.get(word), loaded.get(word));
+    }
+    assertSameVector(vectors.get(Embedding.UNKNOWN_WORD), loaded.get("unseen"));
+    assertSameVector(vectors.get(Embedding.START_WORD), loaded.getStartWordVector());
+    Assert.assertFalse(loaded.containsWord("unseen"));
+
+    // serializing a flat embedding writes ordinary SimpleMatrix vectors
+    File ser = tempFile(".ser.gz");
+    IOUtils.writeObjectToFile(loaded, ser);
+    Embedding deserialized = Embedding.load(ser.getPath());
+    Assert.assertFalse(deserialized.getWordVectors() instanceof FlatWordVectors);
+    assertSameVector(vectors.get("北京"), deserialized.get("北京"));
+  }
+
+  @Test
+  public void testConvertText() throws Exception {
+    File text = tempFile(".txt");
+    try (PrintWriter pw = new PrintWriter(text, "UTF-8")) {
+      pw.println("UNK 0 0");
+      pw.println("cat 0.5 0.25");
+      pw.println("dog -1 2");
+    }
+    File flat = tempFile(".flat");
+    Embedding.main(new String[] { "-wordVectorFile", text.getPath(), "-output", flat.getPath() });
+    Embedding loaded = Embedding.load(flat.getPath());
+    assertSameVector(vector(0.5, 0.25), loaded.get("cat"));
+    assertSameVector(vector(0, 0), loaded.get("mouse"));
+  }
+
+}
@@ -0,0 +1,154 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.ParserAnnotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that parsers sharing their charts through a {@link ChartArenaPool}
+ * find the same parses, reuse the charts, and stay within the budget.
+ */
+public class ChartArenaPoolTest {
+
+  private static final String[] TREES = {
+    "(ROOT (S (NP (DT the) (NN cat)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))) (. .)))",
+    "(ROOT (S (NP (DT a) (NN dog)) (VP (VBD sat)) (. .)))",
+    "(ROOT (S (NP (DT the) (NN dog)) (VP (VBD saw) (NP (DT a) (NN cat))) (. .)))",
+    "(ROOT (S (NP (NP (DT the) (NN cat)) (PP (IN on) (NP (DT the) (NN mat)))) (VP (VBD saw) (NP (DT the) (NN dog))) (. .)))",
+  };
+
+  private static final String SHORT = "the dog sat .";
+  private static final String LONG = "the cat on the mat saw the dog on the mat .";
+
+  private static LexicalizedParser parser;
+
+  @BeforeClass
+  public static void setUp() {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (String tree : TREES) {
+      treebank.add(Tree.valueOf(tree));
+    }
+    parser = LexicalizedParser.trainFromTreebank(treebank, new Options());
+  }
+
+  @After
+  public void tearDown() {
+    parser.getOp().testOptions.chartArenaBytes = 0;
+  }
+
+  private static List<HasWord> words(String sentence) {
+    return SentenceUtils.toWordList(sentence.split(" "));
+  }
+
+  /** The size of a chart for sentences up to the given bucket */
+  private static long bytes(int capacity) {
+    Options op = parser.getOp();
+    return ChartArena.bytes(capacity, parser.stateIndex.size(), parser.tagIndex.size(),
+                            op.doDep && ! op.testOptions.useFastFactored, op.testOptions.lengthNormalization);
+  }
+
+  @Test
+  public void testReuse() {
+    Tree shortTree = parser.parseTree(words(SHORT));
+    Tree longTree = parser.parseTree(words(LONG));
+
+    parser.getOp().testOptions.chartArenaBytes = 100 * bytes(ChartArenaPool.BUCKET_SIZE * 2);
+    ChartArenaPool pool = parser.chartArenaPool();
+    Assert.assertSame(pool, parser.chartArenaPool());
+    Assert.assertEquals(shortTree, parser.parseTree(words(SHORT)));
+    Assert.assertEquals(longTree, parser.parseTree(words(LONG)));
+    Assert.assertEquals(shortTree, parser.parseTree(words(SHORT)));
+    // the long sentence needed a bigger chart, which the short one then reused
+    Assert.assertEquals(2, pool.allocated());
+    Assert.assertEquals(1, pool.reused());
+    Assert.assertEquals(0, pool.bytesInUse());
+    Assert.assertEquals(bytes(ChartArenaPool.BUCKET_SIZE) + bytes(ChartArenaPool.BUCKET_SIZE * 2), pool.idleBytes());
+  }
+
+  @Test
+  public void testRefusal() {
+    parser.getOp().testOptions.chartArenaBytes = bytes(ChartArenaPool.BUCKET_SIZE);
+    ChartArenaPool pool = parser.chartArenaPool();
+    Assert.assertEquals(ChartArenaPool.BUCKET_SIZE - 1, pool.maxLength(true, false));
+    long refused = pool.refused();
+
+    LexicalizedParserQuery pq = (LexicalizedParserQuery) parser.parserQuery();
+    Assert.assertFalse(pq.parse(words(LONG)));
+    Assert.assertTrue(pq.parseSkipped());
+    Assert.assertEquals(refused + 1, pool.refused());
+
+    Assert.assertTrue(pq.parse(words(SHORT)));
+    Assert.assertNotNull(pq.getBestParse());
+    pq.release();
+    Assert.assertEquals(0, pool.bytesInUse());
+  }
+
+  @Test
+  public void testAnnotatorRefusal() {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    Annotation doc = new Annotation(SHORT + ' ' + LONG);
+    new StanfordCoreNLP(props).annotate(doc);
+    List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
+    Assert.assertEquals(2, sentences.size());
+
+    // the long sentence's chart is bigger than the whole budget
+    parser.getOp().testOptions.chartArenaBytes = bytes(ChartArenaPool.BUCKET_SIZE);
+    ChartArenaPool pool = parser.chartArenaPool();
+    long refused = pool.refused();
+    new ParserAnnotator(parser, false, -1).annotate(doc);
+    Assert.assertEquals(refused + 1, pool.refused());
+    Assert.assertEquals(0, pool.bytesInUse());
+    Assert.assertNotEquals("X", sentences.get(0).get(TreeCoreAnnotations.TreeAnnotation.class).label().value());
+    Assert.assertEquals("X", sentences.get(1).get(TreeCoreAnnotations.TreeAnnotation.class).label().value());
+  }
+
+  @Test
+  public void testBudget() throws InterruptedException {
+    parser.getOp().testOptions.chartArenaBytes = bytes(ChartArenaPool.BUCKET_SIZE);
+    ChartArenaPool pool = parser.chartArenaPool();
+    // (another test may have used the pool already)
+    long allocated = pool.allocated();
+    long reused = pool.reused();
+    long waited = pool.waited();
+
+    LexicalizedParserQuery first = (LexicalizedParserQuery) parser.parserQuery();
+    Assert.assertTrue(first.parse(words(SHORT)));
+    Assert.assertEquals(pool.maxBytes(), pool.bytesInUse());
+
+    // the second parser has to wait for the first to give back its chart
+    LexicalizedParserQuery second = (LexicalizedParserQuery) parser.parserQuery();
+    boolean[] parsed = new boolean[1];
+    Thread thread = new Thread(() -> parsed[0] = second.parse(words(SHORT)));
+    thread.start();
+    for (int i = 0; i < 500 && pool.waited() == waited; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(waited + 1, pool.waited());
+    Assert.assertTrue(thread.isAlive());
+    Tree tree = first.getBestParse();
+    first.release();
+    thread.join(10000);
+    Assert.assertTrue(parsed[0]);
+    Assert.assertEquals(tree, second.getBestParse());
+    Assert.assertEquals(2, pool.allocated() + pool.reused() - allocated - reused);
+    Assert.assertTrue(pool.allocated() <= 1);
+    second.release();
+  }
+
+}
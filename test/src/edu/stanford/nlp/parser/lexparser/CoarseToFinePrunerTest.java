@@ -0,0 +1,145 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks that coarse-to-fine parsing finds the same parses as the exhaustive
+ * parser when the threshold is generous, and still finds a parse when the
+ * threshold prunes a lot.
+ */
+public class CoarseToFinePrunerTest {
+
+  private static final String[] TREES = {
+    "(ROOT (S (NP (DT the) (NN cat)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))) (. .)))",
+    "(ROOT (S (NP (DT a) (NN dog)) (VP (VBD sat)) (. .)))",
+    "(ROOT (S (NP (DT the) (NN dog)) (VP (VBD saw) (NP (DT a) (NN cat))) (. .)))",
+    "(ROOT (S (NP (NP (DT the) (NN cat)) (PP (IN on) (NP (DT the) (NN mat)))) (VP (VBD saw) (NP (DT the) (NN dog))) (. .)))",
+    "(ROOT (S (NP (PRP it)) (VP (VBD saw) (NP (DT a) (JJ big) (NN dog)) (PP (IN with) (NP (DT a) (NN hat)))) (. .)))",
+    "(ROOT (S (NP (DT a) (JJ big) (NN cat)) (VP (VBD sat) (PP (IN with) (NP (PRP it)))) (. .)))",
+  };
+
+  private static final String[] SENTENCES = {
+    "the cat sat on the mat .",
+    "the dog saw a big cat with a hat .",
+    "a cat on the mat saw the dog .",
+    "it sat .",
+  };
+
+  private static LexicalizedParser parser;
+
+  @BeforeClass
+  public static void setUp() {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (String tree : TREES) {
+      treebank.add(Tree.valueOf(tree));
+    }
+    parser = LexicalizedParser.trainFromTreebank(treebank, new Options());
+  }
+
+  private static LexicalizedParserQuery parse(String sentence, double threshold) {
+    parser.getOp().testOptions.coarseToFineThreshold = threshold;
+    try {
+      LexicalizedParserQuery pq = (LexicalizedParserQuery) parser.parserQuery();
+      List<HasWord> words = SentenceUtils.toWordList(sentence.split(" "));
+      Assert.assertTrue(pq.parse(words));
+      return pq;
+    } finally {
+      parser.getOp().testOptions.coarseToFineThreshold = 0.0;
+    }
+  }
+
+  @Test
+  public void testProjection() {
+    BasicCategoryGrammarProjection gp = parser.coarseGrammar();
+    Assert.assertSame(gp, parser.coarseGrammar());
+    Assert.assertTrue(gp.targetIndex().size() < parser.stateIndex.size());
+    for (int state = 0; state < parser.stateIndex.size(); state++) {
+      String coarse = gp.targetIndex().get(gp.project(state));
+      Assert.assertEquals(parser.treebankLanguagePack().basicCategory(parser.stateIndex.get(state)), coarse);
+    }
+    // each coarse rule is at least as good as the rules projected onto it
+    for (BinaryRule rule : parser.bg) {
+      BinaryRule coarse = new BinaryRule(gp.project(rule.parent), gp.project(rule.leftChild), gp.project(rule.rightChild));
+      Assert.assertTrue(gp.targetBG().scoreRule(coarse) >= rule.score);
+    }
+  }
+
+  @Test
+  public void testSameParses() {
+    for (String sentence : SENTENCES) {
+      LexicalizedParserQuery exhaustive = parse(sentence, 0.0);
+      LexicalizedParserQuery pruned = parse(sentence, 100.0);
+      Assert.assertEquals(exhaustive.getBestParse().toString(), pruned.getBestParse().toString());
+      Assert.assertEquals(exhaustive.getPCFGScore(), pruned.getPCFGScore(), 1e-4);
+    }
+  }
+
+  /** Checks that the states the parser builds over each span of a parse may be built,
+   *  which are the ones built by binary rules and the tops of chains of unaries.
+   *  @return The end of the tree
+   */
+  private static int checkLive(Tree tree, int start, boolean top, boolean[][][] live, int[] projection) {
+    if (tree.isPreTerminal()) {
+      return start + 1;
+    }
+    int end = start;
+    for (Tree child : tree.children()) {
+      end = checkLive(child, end, tree.numChildren() > 1, live, projection);
+    }
+    if (end - start > 1 && (top || tree.numChildren() > 1)) {
+      int state = parser.stateIndex.indexOf(tree.value());
+      Assert.assertNotNull(tree.toString(), live[start][end]);
+      Assert.assertTrue(tree.toString(), live[start][end][projection[state]]);
+    }
+    return end;
+  }
+
+  @Test
+  public void testPruning() {
+    for (String sentence : SENTENCES) {
+      LexicalizedParserQuery exhaustive = parse(sentence, 0.0);
+      ExhaustivePCFGParser pparser = (ExhaustivePCFGParser) exhaustive.getPCFGParser();
+      int goal = parser.stateIndex.indexOf(pparser.goalStr);
+      // (recovery parses score below -1000, so they wouldn't survive pruning)
+      Assert.assertTrue(exhaustive.getPCFGScore() > -100.0);
+      CoarseToFinePruner pruner = new CoarseToFinePruner(parser.coarseGrammar(), parser.stateIndex.size());
+
+      // the best parse is never pruned with a generous threshold
+      boolean[][][] live = pruner.prune(pparser.iScore, pparser.length, goal, 100.0);
+      Assert.assertNotNull(live);
+      checkLive(pparser.getBestParse(), 0, true, live, pruner.projection());
+      int livePrunedSpans = 0;
+      for (int start = 0; start < pparser.length; start++) {
+        for (int end = start + 2; end < pparser.length; end++) {
+          if (live[start][end] == null) {
+            livePrunedSpans++;
+          }
+        }
+      }
+
+      // a tight threshold leaves fewer spans, but the parser still finds a parse
+      boolean[][][] tight = pruner.prune(pparser.iScore, pparser.length, goal, 0.5);
+      int tightPrunedSpans = 0;
+      for (int start = 0; start < pparser.length; start++) {
+        for (int end = start + 2; end < pparser.length; end++) {
+          if (tight[start][end] == null) {
+            tightPrunedSpans++;
+          }
+        }
+      }
+      Assert.assertTrue(tightPrunedSpans >= livePrunedSpans);
+      Assert.assertNotNull(tight[0][pparser.length]);
+      Assert.assertNotNull(parse(sentence, 0.5).getBestParse());
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that parsing sentences in a batch gives exactly the same parses as
+ * parsing them one at a time.  Uses a small randomly initialized model.
+ */
+public class DependencyParserBatchTest {
+
+  private static final List<String> WORDS = RandomDependencyParserModel.WORDS;
+  private static final List<String> TAGS = RandomDependencyParserModel.TAGS;
+
+  private static CoreMap randomSentence(Random random) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    int length = random.nextInt(12);
+    for (int i = 1; i <= length; i++) {
+      CoreLabel token = new CoreLabel();
+      String word = WORDS.get(3 + random.nextInt(WORDS.size() - 3));
+      token.setWord(word);
+      token.setValue(word);
+      token.setTag(TAGS.get(3 + random.nextInt(TAGS.size() - 3)));
+      token.setIndex(i);
+      tokens.add(token);
+    }
+    CoreMap sentence = new ArrayCoreMap();
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    return sentence;
+  }
+
+  @Test
+  public void testBatchMatchesSingle() throws IOException {
+    Random random = new Random(1234);
+    File model = RandomDependencyParserModel.write(random);
+    for (String numCached : Arrays.asList("0", "5")) {
+      Properties props = new Properties();
+      props.setProperty("numCached", numCached);
+      props.setProperty("predictBatchSize", "7");
+      DependencyParser parser = new DependencyParser(props);
+      parser.loadModelFile(model.getPath(), false);
+
+      List<CoreMap> sentences = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        sentences.add(randomSentence(random));
+      }
+      List<GrammaticalStructure> batched = parser.predictAll(sentences);
+      Assert.assertEquals(sentences.size(), batched.size());
+      for (int i = 0; i < sentences.size(); i++) {
+        GrammaticalStructure single = parser.predict(sentences.get(i));
+        Assert.assertEquals(single.typedDependencies().toString(), batched.get(i).typedDependencies().toString());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.io.IOUtils;
+
+/**
+ * A small randomly initialized {@link DependencyParser} model, written as a text model file,
+ * for tests which need a parser but not a good one.
+ */
+public class RandomDependencyParserModel {
+
+  /** The words of the model; the first three are the special tokens */
+  public static final List<String> WORDS = Collections.unmodifiableList(Arrays.asList("-UNKNOWN-", "-NULL-", "-ROOT-", "the", "cat", "sat", "on", "mat", "."));
+  /** The tags of the model; the first three are the special tokens */
+  public static final List<String> TAGS = Collections.unmodifiableList(Arrays.asList("-UNKNOWN-", "-NULL-", "-ROOT-", "DT", "NN", "VBD", "IN", "."));
+  public static final List<String> LABELS = Collections.unmodifiableList(Arrays.asList("-NULL-", "root", "nsubj", "obl", "det", "punct"));
+
+  private static final int EMBEDDING_SIZE = 4;
+  private static final int HIDDEN_SIZE = 6;
+
+  private RandomDependencyParserModel() { } // static methods only
+
+  /**
+   * Write a random model to a temporary file, which is deleted on exit.
+   *
+   * @return The model file, which {@link DependencyParser#loadModelFile(String)} can read
+   */
+  public static File write(Random random) throws IOException {
+    File file = File.createTempFile("nndep", ".txt");
+    file.deleteOnExit();
+    try (PrintWriter out = IOUtils.getPrintWriter(file.getPath())) {
+      out.println("language=UniversalEnglish");
+      out.println("tlp=edu.stanford.nlp.trees.PennTreebankLanguagePack");
+      out.println("dict=" + WORDS.size());
+      out.println("pos=" + TAGS.size());
+      out.println("label=" + LABELS.size());
+      out.println("embeddingSize=" + EMBEDDING_SIZE);
+      out.println("hiddenSize=" + HIDDEN_SIZE);
+      out.println("numTokens=" + Config.numTokens);
+      out.println("preComputed=3");
+      for (List<String> vocab : Arrays.asList(WORDS, TAGS, LABELS)) {
+        for (String item : vocab) {
+          out.print(item);
+          for (int i = 0; i < EMBEDDING_SIZE; i++) {
+            out.print(" " + (random.nextFloat() - 0.5f));
+          }
+          out.println();
+        }
+      }
+      printMatrix(out, random, EMBEDDING_SIZE * Config.numTokens, HIDDEN_SIZE);
+      printMatrix(out, random, 1, HIDDEN_SIZE);
+      printMatrix(out, random, HIDDEN_SIZE, LABELS.size() * 2 - 1);
+      // a few feature ids whose hidden layer contributions are precomputed
+      out.println((3 * Config.numTokens) + " " + (4 * Config.numTokens + 1) + " " + (WORDS.size() * Config.numTokens + 18));
+    }
+    return file;
+  }
+
+  private static void printMatrix(PrintWriter out, Random random, int rows, int columns) {
+    for (int j = 0; j < rows; j++) {
+      for (int i = 0; i < columns; i++) {
+        out.print(i == 0 ? "" : " ");
+        out.print(random.nextFloat() - 0.5f);
+      }
+      out.println();
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.ScoredObject;
+
+/**
+ * Checks that hashing features and looking them up in a
+ * {@link HashedWeightMap} scores states exactly as building the feature
+ * Strings and looking them up in the {@link WeightMap} does.
+ */
+public class HashedWeightMapTest {
+
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  /** Every state along the gold transitions of the trees */
+  List<State> states(Index<Transition> transitionIndex) {
+    List<State> states = new ArrayList<>();
+    for (String treeText : treeStrings) {
+      Tree tree = convertTree(treeText);
+      List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+      for (Transition transition : transitions) {
+        transitionIndex.addToIndex(transition);
+        states.add(state);
+        state = transition.apply(state);
+      }
+      states.add(state);
+    }
+    return states;
+  }
+
+  /** Random weights for about half of the features of the states */
+  WeightMap weights(List<State> states, FeatureFactory featureFactory, int numTransitions) {
+    Random random = new Random(1234);
+    WeightMap weights = new WeightMap();
+    for (State state : states) {
+      for (String feature : featureFactory.featurize(state)) {
+        if (weights.containsKey(feature) || random.nextBoolean()) {
+          continue;
+        }
+        Weight weight = new Weight();
+        for (int i = 0; i < 3; ++i) {
+          weight.updateWeight(random.nextInt(numTransitions), random.nextFloat() - 0.5f);
+        }
+        weights.put(feature, weight);
+      }
+    }
+    return weights;
+  }
+
+  @Test
+  public void testHashedFeatures() {
+    FeatureFactory featureFactory = new BasicFeatureFactory();
+    for (State state : states(new HashIndex<>())) {
+      List<String> features = featureFactory.featurize(state);
+      HashedFeatureSink sink = new HashedFeatureSink(4);
+      featureFactory.featurize(state, sink);
+      assertEquals(features.size(), sink.size());
+      for (int i = 0; i < features.size(); ++i) {
+        assertEquals(features.get(i), HashedFeatureSink.hash(features.get(i)), sink.keys()[i]);
+      }
+    }
+
+    for (int number : new int[] { 0, 7, 10, 1203, -45, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+      HashedFeatureSink sink = new HashedFeatureSink();
+      sink.start("Sepb-").append(number).append('-').end();
+      assertEquals(HashedFeatureSink.hash("Sepb-" + number + "-"), sink.keys()[0]);
+    }
+  }
+
+  @Test
+  public void testScores() {
+    FeatureFactory featureFactory = new BasicFeatureFactory();
+    Index<Transition> transitionIndex = new HashIndex<>();
+    List<State> states = states(transitionIndex);
+    WeightMap weights = weights(states, featureFactory, transitionIndex.size());
+    HashedWeightMap hashed = HashedWeightMap.fromWeights(weights);
+    assertEquals(weights.size(), hashed.size());
+
+    for (State state : states) {
+      float[] expected = new float[transitionIndex.size()];
+      for (String feature : featureFactory.featurize(state)) {
+        Weight weight = weights.get(feature);
+        if (weight != null) {
+          weight.score(expected);
+        }
+      }
+
+      HashedFeatureSink sink = new HashedFeatureSink();
+      featureFactory.featurize(state, sink);
+      float[] scores = new float[transitionIndex.size() + 3];
+      for (int i = 0; i < sink.size(); ++i) {
+        hashed.score(sink.keys()[i], scores, 3);
+      }
+      for (int i = 0; i < expected.length; ++i) {
+        assertEquals(expected[i], scores[i + 3], 0.0f);
+      }
+    }
+  }
+
+  @Test
+  public void testBeam() {
+    Index<Transition> transitionIndex = new HashIndex<>();
+    List<State> states = states(transitionIndex);
+    PerceptronModel model = new PerceptronModel(new ShiftReduceOptions(), transitionIndex,
+                                                Collections.singleton("ROOT"), Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+    model.featureWeights = weights(states, model.featureFactory, transitionIndex.size());
+
+    List<Collection<ScoredObject<Integer>>> beam = model.findHighestScoringTransitions(states, false, 3, null);
+    assertEquals(states.size(), beam.size());
+    for (int i = 0; i < states.size(); ++i) {
+      Collection<ScoredObject<Integer>> expected = model.findHighestScoringTransitions(states.get(i), false, 3, null);
+      assertEquals(expected.size(), beam.get(i).size());
+      Iterator<ScoredObject<Integer>> expectedIt = expected.iterator();
+      Iterator<ScoredObject<Integer>> beamIt = beam.get(i).iterator();
+      while (expectedIt.hasNext()) {
+        ScoredObject<Integer> e = expectedIt.next();
+        ScoredObject<Integer> b = beamIt.next();
+        assertEquals(e.object(), b.object());
+        assertEquals(e.score(), b.score(), 0.0);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the server's request queue refuses requests once it is full or too costly,
+ * and that expired and cancelled requests leave it.
+ */
+public class AdmissionControllerTest {
+
+  private static final long FOREVER = Long.MAX_VALUE;
+
+  private AdmissionController admission;
+  private CountDownLatch release;
+
+  @Before
+  public void setUp() {
+    release = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (admission != null) {
+      admission.shutdownNow();
+    }
+  }
+
+  /** Occupy the one thread until the test releases it. */
+  private Future<String> block() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    Future<String> future = admission.submit(1, FOREVER, () -> {
+      started.countDown();
+      release.await();
+      return "blocker";
+    });
+    Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+    return future;
+  }
+
+  @Test
+  public void testCost() {
+    Assert.assertEquals(100, AdmissionController.cost(100, null));
+    Assert.assertEquals(200, AdmissionController.cost(100, "tokenize,ssplit"));
+    Assert.assertEquals(2600, AdmissionController.cost(100, "tokenize, ssplit, pos, parse, unknown"));
+    Assert.assertEquals(0, AdmissionController.cost(0, "tokenize,ssplit,parse"));
+  }
+
+  @Test
+  public void testQueueFull() throws Exception {
+    admission = new AdmissionController(1, 2, 0);
+    Future<String> blocker = block();
+    Future<String> first = admission.submit(1, FOREVER, () -> "first");
+    Future<String> second = admission.submit(1, FOREVER, () -> "second");
+    Assert.assertEquals(2, admission.queueDepth());
+    Assert.assertEquals(1, admission.running());
+    try {
+      admission.submit(1, FOREVER, () -> "third");
+      Assert.fail("The queue should be full");
+    } catch (AdmissionController.RequestRejectedException e) {
+      Assert.assertTrue(e.retryAfterSeconds >= 1);
+    }
+    release.countDown();
+    Assert.assertEquals("blocker", blocker.get(10, TimeUnit.SECONDS));
+    Assert.assertEquals("first", first.get(10, TimeUnit.SECONDS));
+    Assert.assertEquals("second", second.get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(0, admission.queueDepth());
+  }
+
+  @Test
+  public void testQueueCost() throws Exception {
+    admission = new AdmissionController(1, 0, 100);
+    block();
+    // an empty queue takes a request of any cost
+    Future<String> costly = admission.submit(1000, FOREVER, () -> "costly");
+    try {
+      admission.submit(1, FOREVER, () -> "cheap");
+      Assert.fail("The queue should be too costly");
+    } catch (AdmissionController.RequestRejectedException e) {
+      // expected
+    }
+    release.countDown();
+    Assert.assertEquals("costly", costly.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testExpiredAndCancelled() throws Exception {
+    admission = new AdmissionController(1, 1, 0);
+    block();
+    Future<String> waiting = admission.submit(1, FOREVER, () -> "waiting");
+    Assert.assertEquals(1, admission.queueDepth());
+    // cancelling a waiting request makes room for another straight away
+    Assert.assertTrue(waiting.cancel(true));
+    Assert.assertEquals(0, admission.queueDepth());
+    Future<String> expired = admission.submit(1, System.currentTimeMillis() - 1, () -> "expired");
+    release.countDown();
+    try {
+      expired.get(10, TimeUnit.SECONDS);
+      Assert.fail("An expired request should not be run");
+    } catch (java.util.concurrent.CancellationException e) {
+      // expected
+    }
+    String metrics = admission.metrics();
+    Assert.assertTrue(metrics, metrics.contains("corenlp_requests_cancelled_total 1\n"));
+    Assert.assertTrue(metrics, metrics.contains("corenlp_requests_expired_total 1\n"));
+    Assert.assertTrue(metrics, metrics.contains("corenlp_queue_depth 0\n"));
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    admission = new AdmissionController(2, 0, 0);
+    Annotator annotator = new TokenizerAnnotator(false, "en");
+    admission.submit(1, FOREVER, () -> {
+      admission.recordAnnotatorTime(annotator, 5);
+      return null;
+    }).get(10, TimeUnit.SECONDS);
+    String metrics = admission.metrics();
+    Assert.assertTrue(metrics, metrics.contains("# TYPE corenlp_queue_wait_seconds summary\n"));
+    Assert.assertTrue(metrics, metrics.contains("corenlp_service_seconds_count 1\n"));
+    Assert.assertTrue(metrics, metrics.contains("corenlp_annotator_seconds_sum{annotator=\"TokenizerAnnotator\"} 0.005\n"));
+    Assert.assertTrue(metrics, metrics.contains("corenlp_threads 2\n"));
+  }
+
+}
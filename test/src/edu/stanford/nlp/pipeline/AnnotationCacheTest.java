@@ -0,0 +1,183 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that a document annotated before is read back from the cache with the same annotations,
+ * and that documents from different pipelines or with different dates are kept apart.
+ */
+public class AnnotationCacheTest {
+
+  private static final String TEXT = "The first sentence is here.  The second one has a date: May 1, 2020.";
+
+  private static Properties props(String maxBytes, String dir, String annotators) {
+    Properties props = new Properties();
+    props.setProperty("annotators", annotators);
+    if (maxBytes != null) {
+      props.setProperty("documentCache.maxBytes", maxBytes);
+    }
+    if (dir != null) {
+      props.setProperty("documentCache.dir", dir);
+    }
+    return props;
+  }
+
+  private static String json(Annotation annotation) {
+    try {
+      return JSONOutputter.jsonPrint(annotation);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    Properties props = props("1000000", null, "tokenize,ssplit");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+    AnnotationCache cache = AnnotationCache.fromProperties(props);
+    Assert.assertNotNull(cache);
+    Assert.assertNull(AnnotationCache.fromProperties(props(null, null, "tokenize,ssplit")));
+
+    Annotation first = new Annotation(TEXT);
+    pipeline.annotate(first);
+    Annotation second = new Annotation(TEXT);
+    pipeline.annotate(second);
+    Assert.assertEquals(json(first), json(second));
+    Assert.assertEquals(2, second.get(CoreAnnotations.SentencesAnnotation.class).size());
+    long hits = cache.hits();
+    Assert.assertTrue(hits >= 1);
+
+    // a different date is a different document
+    Annotation dated = new Annotation(TEXT);
+    dated.set(CoreAnnotations.DocDateAnnotation.class, "2020-05-01");
+    pipeline.annotate(dated);
+    Assert.assertEquals(hits, cache.hits());
+
+    // already tokenized documents are not cached
+    Assert.assertNull(AnnotationCache.key(second, "signature"));
+  }
+
+  @Test
+  public void testDocID() {
+    Properties props = props("1000000", null, "tokenize,ssplit");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+    AnnotationCache cache = AnnotationCache.fromProperties(props);
+    String text = "The same story ran twice.  It was syndicated.";
+    for (String docID : new String[] { "first.txt", "second.txt", null }) {
+      Annotation doc = new Annotation(text);
+      if (docID != null) {
+        doc.set(CoreAnnotations.DocIDAnnotation.class, docID);
+      }
+      long hits = cache.hits();
+      pipeline.annotate(doc);
+      if (docID == null || docID.equals("second.txt")) {
+        Assert.assertEquals(hits + 1, cache.hits());
+      }
+      Assert.assertEquals(docID, doc.get(CoreAnnotations.DocIDAnnotation.class));
+      for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+        Assert.assertEquals(docID, token.docID());
+      }
+      for (CoreMap sentence : doc.get(CoreAnnotations.SentencesAnnotation.class)) {
+        Assert.assertEquals(docID, sentence.get(CoreAnnotations.DocIDAnnotation.class));
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          Assert.assertEquals(docID, token.docID());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testStaged() throws Exception {
+    Properties props = props("1000000", null, "tokenize,ssplit");
+    props.setProperty("pipeline.staged", "true");
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+    AnnotationCache cache = AnnotationCache.fromProperties(props);
+    List<String> texts = Arrays.asList("Staged one.  It is here.", "Staged two.", "Staged three.");
+
+    List<String> first = new ArrayList<>();
+    long hits = cache.hits();
+    pipeline.annotate(documents(texts), 2, doc -> first.add(json(doc)));
+    Assert.assertEquals(hits, cache.hits());
+
+    // the second time, the documents are all read from the cache, in order
+    List<String> second = new ArrayList<>();
+    pipeline.annotateInOrder(documents(texts), 2, 2, doc -> second.add(json(doc)));
+    Assert.assertEquals(hits + texts.size(), cache.hits());
+    Assert.assertEquals(first, second);
+  }
+
+  private static List<Annotation> documents(List<String> texts) {
+    List<Annotation> docs = new ArrayList<>();
+    for (String text : texts) {
+      docs.add(new Annotation(text));
+    }
+    return docs;
+  }
+
+  @Test
+  public void testSignature() {
+    Properties props = props("1000000", null, "tokenize,ssplit");
+    String signature = AnnotationCache.signature(Collections.singletonList("tokenize"), props);
+    props.setProperty("tokenize.whitespace", "true");
+    Assert.assertNotEquals(signature, AnnotationCache.signature(Collections.singletonList("tokenize"), props));
+    props.setProperty("pos.model", "somewhere");
+    Annotation doc = new Annotation(TEXT);
+    Assert.assertEquals(AnnotationCache.key(doc, AnnotationCache.signature(Collections.singletonList("tokenize"), props)),
+        AnnotationCache.key(new Annotation(TEXT), AnnotationCache.signature(Collections.singletonList("tokenize"), props)));
+  }
+
+  @Test
+  public void testDisk() throws Exception {
+    File dir = Files.createTempDirectory("AnnotationCacheTest").toFile();
+    dir.deleteOnExit();
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props("1000000", dir.getPath(), "tokenize,ssplit"));
+    Annotation annotated = new Annotation(TEXT);
+    pipeline.annotate(annotated);
+    File[] files = dir.listFiles();
+    Assert.assertNotNull(files);
+    Assert.assertEquals(1, files.length);
+    files[0].deleteOnExit();
+
+    // a new cache (as in another run) reads the document from disk
+    AnnotationCache cache = new AnnotationCache(0, dir);
+    String key = AnnotationCache.key(new Annotation(TEXT), AnnotationCache.signature(Collections.singletonList("tokenize"),
+        props("1000000", dir.getPath(), "tokenize,ssplit")));
+    Annotation read = new Annotation(TEXT);
+    Assert.assertTrue(cache.get(key, read));
+    Assert.assertEquals(1, cache.diskHits());
+    Assert.assertEquals(json(annotated), json(read));
+    Assert.assertFalse(cache.get(key + "0", new Annotation(TEXT)));
+    Assert.assertEquals(1, cache.misses());
+  }
+
+  @Test
+  public void testMemoryBound() throws Exception {
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props(null, null, "tokenize,ssplit"));
+    AnnotationCache cache = new AnnotationCache(2000, null);
+    for (int i = 0; i < 20; i++) {
+      Annotation doc = new Annotation(TEXT + ' ' + i);
+      String key = AnnotationCache.key(doc, "signature");
+      pipeline.annotate(doc);
+      cache.put(key, doc);
+      Assert.assertTrue(cache.bytes() <= 2000);
+      Assert.assertTrue(cache.get(key, new Annotation(TEXT + ' ' + i)));
+    }
+    Assert.assertFalse(cache.get(AnnotationCache.key(new Annotation(TEXT + " 0"), "signature"), new Annotation(TEXT + " 0")));
+  }
+
+}
@@ -0,0 +1,212 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that streaming a file of documents writes them all in order, that a job
+ * resumed from its checkpoint neither loses nor repeats documents, and that
+ * already annotated documents can be streamed through later annotators only.
+ */
+public class DocumentStreamProcessorTest {
+
+  /** Tags every token NN. */
+  public static class Tagger implements Annotator {
+
+    public Tagger(String name, Properties props) { }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+        token.setTag("NN");
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.singleton(CoreAnnotations.PartOfSpeechAnnotation.class);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.singleton(CoreAnnotations.TokensAnnotation.class);
+    }
+
+  } // end static class Tagger
+
+  /** Lemmatizes every tagged token by lowercasing it. */
+  public static class Lemmatizer implements Annotator {
+
+    public Lemmatizer(String name, Properties props) { }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          token.setLemma(token.tag() + ':' + token.word().toLowerCase());
+        }
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.singleton(CoreAnnotations.LemmaAnnotation.class);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return new HashSet<>(Arrays.asList(CoreAnnotations.TokensAnnotation.class,
+          CoreAnnotations.SentencesAnnotation.class, CoreAnnotations.PartOfSpeechAnnotation.class));
+    }
+
+  } // end static class Lemmatizer
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("DocumentStreamProcessorTest").toFile();
+    dir.deleteOnExit();
+  }
+
+  private File file(String name) {
+    File file = new File(dir, name);
+    file.deleteOnExit();
+    return file;
+  }
+
+  private static StanfordCoreNLP pipeline(String threads) {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    props.setProperty("threads", threads);
+    props.setProperty("stream.checkpointEvery", "2");
+    props.setProperty("stream.maxInFlight", "3");
+    return new StanfordCoreNLP(props);
+  }
+
+  private static void append(File file, String... lines) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+  }
+
+  private static List<Annotation> readOutput(File file) throws Exception {
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+    List<Annotation> docs = new ArrayList<>();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      CoreNLPProtos.Document doc;
+      while ((doc = CoreNLPProtos.Document.parseDelimitedFrom(in)) != null) {
+        docs.add(serializer.fromProto(doc));
+      }
+    }
+    return docs;
+  }
+
+  private static String text(int i) {
+    return "Document number " + i + " is here.  It has two sentences.";
+  }
+
+  @Test
+  public void testJsonLines() throws Exception {
+    File input = file("input.jsonl");
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 9; i++) {
+      lines.add(i % 2 == 0 ? "{\"text\": \"" + text(i) + "\", \"docid\": \"d" + i + "\"}" : "\"" + text(i) + '"');
+    }
+    lines.add("");
+    append(input, lines.toArray(new String[0]));
+    File output = file("output.pb");
+    File checkpoint = file("output.pb.checkpoint");
+
+    long written = new DocumentStreamProcessor(pipeline("3")).process(input.getPath(),
+        DocumentStreamProcessor.InputFormat.JSONL, output.getPath(), checkpoint.getPath());
+    Assert.assertEquals(9, written);
+    List<Annotation> docs = readOutput(output);
+    Assert.assertEquals(9, docs.size());
+    for (int i = 0; i < docs.size(); i++) {
+      Annotation doc = docs.get(i);
+      Assert.assertEquals(text(i), doc.get(CoreAnnotations.TextAnnotation.class));
+      Assert.assertEquals(2, doc.get(CoreAnnotations.SentencesAnnotation.class).size());
+      Assert.assertEquals(i % 2 == 0 ? "d" + i : null, doc.get(CoreAnnotations.DocIDAnnotation.class));
+    }
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File input = file("resume.jsonl");
+    append(input, "\"" + text(0) + '"', "\"" + text(1) + '"', "\"" + text(2) + '"');
+    File output = file("resume.pb");
+    File checkpoint = file("resume.pb.checkpoint");
+    DocumentStreamProcessor processor = new DocumentStreamProcessor(pipeline("1"));
+    Assert.assertEquals(3, processor.process(input.getPath(), DocumentStreamProcessor.InputFormat.JSONL, output.getPath(), checkpoint.getPath()));
+
+    // a killed job may leave a partly written document after the checkpoint
+    try (OutputStream out = new FileOutputStream(output, true)) {
+      out.write(new byte[] { 100, 1, 2, 3 });
+    }
+    append(input, "\"" + text(3) + '"', "\"" + text(4) + '"');
+    Assert.assertEquals(2, processor.process(input.getPath(), DocumentStreamProcessor.InputFormat.JSONL, output.getPath(), checkpoint.getPath()));
+    List<Annotation> docs = readOutput(output);
+    Assert.assertEquals(5, docs.size());
+    for (int i = 0; i < docs.size(); i++) {
+      Assert.assertEquals(text(i), docs.get(i).get(CoreAnnotations.TextAnnotation.class));
+    }
+
+    // the output can be streamed through again as protobuf input
+    File again = file("again.pb");
+    Assert.assertEquals(5, processor.process(output.getPath(), DocumentStreamProcessor.InputFormat.PROTOBUF,
+        again.getPath(), file("again.pb.checkpoint").getPath()));
+    Assert.assertEquals(5, readOutput(again).size());
+  }
+
+  @Test
+  public void testPreAnnotatedProtobuf() throws Exception {
+    File input = file("tokenized.jsonl");
+    append(input, "\"" + text(0) + '"', "\"" + text(1) + '"', "\"" + text(2) + '"');
+    File tokenized = file("tokenized.pb");
+    Assert.assertEquals(3, new DocumentStreamProcessor(pipeline("1")).process(input.getPath(),
+        DocumentStreamProcessor.InputFormat.JSONL, tokenized.getPath(), file("tokenized.pb.checkpoint").getPath()));
+
+    // a pipeline which starts after tokenize and ssplit, with its second annotator fused into its first
+    Properties props = new Properties();
+    props.setProperty("annotators", "tagger,lemmatizer");
+    props.setProperty("customAnnotatorClass.tagger", Tagger.class.getName());
+    props.setProperty("customAnnotatorClass.lemmatizer", Lemmatizer.class.getName());
+    props.setProperty("enforceRequirements", "false");
+    props.setProperty("threads", "2");
+    File output = file("lemmatized.pb");
+    Assert.assertEquals(3, new DocumentStreamProcessor(new StanfordCoreNLP(props)).process(tokenized.getPath(),
+        DocumentStreamProcessor.InputFormat.PROTOBUF, output.getPath(), file("lemmatized.pb.checkpoint").getPath()));
+    List<Annotation> docs = readOutput(output);
+    Assert.assertEquals(3, docs.size());
+    for (int i = 0; i < docs.size(); i++) {
+      Annotation doc = docs.get(i);
+      Assert.assertEquals(text(i), doc.get(CoreAnnotations.TextAnnotation.class));
+      Assert.assertEquals(2, doc.get(CoreAnnotations.SentencesAnnotation.class).size());
+      for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+        Assert.assertEquals("NN:" + token.word().toLowerCase(), token.lemma());
+      }
+    }
+  }
+
+}
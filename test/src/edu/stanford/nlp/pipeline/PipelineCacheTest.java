@@ -0,0 +1,105 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the server's pipeline cache shares pipelines between equivalent properties,
+ * and drops the least recently used pipeline when it is full.
+ */
+public class PipelineCacheTest {
+
+  private final AtomicInteger built = new AtomicInteger();
+
+  private StanfordCoreNLP build(Properties props) {
+    built.incrementAndGet();
+    return new StanfordCoreNLP(props);
+  }
+
+  private static Properties props(String... keyValues) {
+    Properties props = new Properties();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      props.setProperty(keyValues[i], keyValues[i + 1]);
+    }
+    return props;
+  }
+
+  @Test
+  public void testSignature() {
+    Assert.assertEquals(PipelineCache.signature(props("annotators", "tokenize,ssplit", "tokenize.language", "en")),
+        PipelineCache.signature(props("tokenize.language", "en", "annotators", " tokenize, ssplit", "date", "2020-01-01")));
+    // ssplit is part of tokenize
+    Assert.assertEquals(PipelineCache.signature(props("annotators", "tokenize,ssplit,pos")),
+        PipelineCache.signature(props("annotators", "tokenize,pos")));
+    Assert.assertNotEquals(PipelineCache.signature(props("annotators", "tokenize,ssplit")),
+        PipelineCache.signature(props("annotators", "tokenize,ssplit", "ssplit.eolonly", "true")));
+  }
+
+  @Test
+  public void testLeastRecentlyUsed() {
+    PipelineCache cache = new PipelineCache(2, this::build);
+    Properties a = props("annotators", "tokenize");
+    Properties b = props("annotators", "tokenize", "tokenize.whitespace", "true");
+    Properties c = props("annotators", "tokenize", "ssplit.eolonly", "true");
+
+    StanfordCoreNLP pipelineA = cache.get(a);
+    Assert.assertSame(pipelineA, cache.get(props("annotators", " tokenize, ssplit")));
+    cache.get(b);
+    cache.get(a);   // b is now the least recently used
+    cache.get(c);
+    Assert.assertEquals(3, built.get());
+    Assert.assertTrue(cache.contains(a));
+    Assert.assertFalse(cache.contains(b));
+    Assert.assertTrue(cache.contains(c));
+    Assert.assertSame(pipelineA, cache.get(a));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(3, cache.hits());
+    Assert.assertEquals(3, cache.misses());
+    Assert.assertEquals(1, cache.evictions());
+    Assert.assertTrue(cache.metrics().contains("corenlp_pipeline_cache_hits_total 3\n"));
+  }
+
+  @Test
+  public void testFailureNotCached() {
+    PipelineCache cache = new PipelineCache(2, this::build);
+    Properties bad = props("annotators", "tokenize,noSuchAnnotator");
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get(bad);
+        Assert.fail("The pipeline should not build");
+      } catch (RuntimeException e) {
+        // expected
+      }
+      Assert.assertFalse(cache.contains(bad));
+    }
+    Assert.assertEquals(2, built.get());
+  }
+
+  @Test
+  public void testBuiltOnce() throws Exception {
+    PipelineCache cache = new PipelineCache(2, this::build);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<StanfordCoreNLP>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> cache.get(props("annotators", "tokenize,ssplit"))));
+      }
+      StanfordCoreNLP first = futures.get(0).get();
+      for (Future<StanfordCoreNLP> future : futures) {
+        Assert.assertSame(first, future.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(1, built.get());
+  }
+
+}
@@ -0,0 +1,121 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Tests the shared sentence pool in SentenceAnnotator, including the per-sentence timeout.
+ */
+public class SentenceAnnotatorTest {
+
+  /** Marks each sentence as done, or as failed.  Sentences with the text "slow" take a long time. */
+  static class MarkingAnnotator extends SentenceAnnotator {
+
+    @Override
+    protected int nThreads() {
+      return 3;
+    }
+
+    @Override
+    protected long maxTime() {
+      return 200;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      if (sentence.get(CoreAnnotations.TextAnnotation.class).equals("slow")) {
+        try {
+          Thread.sleep(10000);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      sentence.set(CoreAnnotations.CategoryAnnotation.class, "done");
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+      sentence.set(CoreAnnotations.CategoryAnnotation.class, "failed");
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+
+  } // end static class MarkingAnnotator
+
+
+  private static Annotation document(String ... sentenceTexts) {
+    List<CoreMap> sentences = new ArrayList<>();
+    for (String text : sentenceTexts) {
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TextAnnotation.class, text);
+      sentences.add(sentence);
+    }
+    Annotation annotation = new Annotation(String.join(" ", sentenceTexts));
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  private static List<String> categories(Annotation annotation) {
+    List<String> categories = new ArrayList<>();
+    for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      categories.add(sentence.get(CoreAnnotations.CategoryAnnotation.class));
+    }
+    return categories;
+  }
+
+  @Test
+  public void testTimeoutIsPerSentence() {
+    MarkingAnnotator annotator = new MarkingAnnotator();
+    Annotation annotation = document("a", "slow", "b", "c", "d", "e");
+    annotator.annotate(annotation);
+    Assert.assertEquals(Arrays.asList("done", "failed", "done", "done", "done", "done"), categories(annotation));
+
+    // the pool is still usable after a timeout
+    Annotation second = document("f", "g");
+    annotator.annotate(second);
+    Assert.assertEquals(Arrays.asList("done", "done"), categories(second));
+    annotator.unmount();
+  }
+
+  @Test
+  public void testManyDocumentsConcurrently() throws InterruptedException {
+    MarkingAnnotator annotator = new MarkingAnnotator();
+    List<Annotation> documents = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Annotation annotation = document("x" + i, "y" + i, "z" + i);
+      documents.add(annotation);
+      threads.add(new Thread(() -> annotator.annotate(annotation)));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (Annotation annotation : documents) {
+      Assert.assertEquals(Arrays.asList("done", "done", "done"), categories(annotation));
+    }
+    annotator.unmount();
+  }
+
+}
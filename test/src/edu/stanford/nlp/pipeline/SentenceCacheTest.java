@@ -0,0 +1,222 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.parser.nndep.RandomDependencyParserModel;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.sentiment.RNNOptions;
+import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.sentiment.SentimentModel;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that annotators which cache the results of sentences they have seen before
+ * give repeated sentences exactly what they would get from annotating them again.
+ */
+public class SentenceCacheTest {
+
+  private static final String TEXT = "the cat sat on the mat . a dog sat . the cat sat on the mat . " +
+      "the dog sat on a cat . a dog sat . the cat sat on the mat .";
+
+  private static StanfordCoreNLP tokenizer;
+
+  @BeforeClass
+  public static void setUp() {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    tokenizer = new StanfordCoreNLP(props);
+  }
+
+  private static Annotation document(boolean tagged) {
+    Annotation doc = new Annotation(TEXT);
+    tokenizer.annotate(doc);
+    if (tagged) {
+      for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+        String word = token.word();
+        token.setTag(word.equals(".") ? "." : word.equals("sat") ? "VBD" : word.equals("on") ? "IN" :
+            word.equals("the") || word.equals("a") ? "DT" : "NN");
+      }
+    }
+    return doc;
+  }
+
+  @Test
+  public void testKeysAndEviction() {
+    Assert.assertNull(SentenceCache.ofSize(0));
+    SentenceCache<String> cache = SentenceCache.ofSize(2);
+    List<CoreLabel> tokens = document(true).get(CoreAnnotations.TokensAnnotation.class);
+    String words = SentenceCache.key(tokens.subList(0, 3), false, false);
+    String tagged = SentenceCache.key(tokens.subList(0, 3), true, false);
+    Assert.assertNotEquals(words, tagged);
+    Assert.assertEquals(tagged, SentenceCache.key(tokens.subList(11, 14), true, false));
+
+    cache.put("a", "A");
+    cache.put("b", "B");
+    Assert.assertEquals("A", cache.get("a"));
+    cache.put("c", "C");  // b is the least recently used
+    Assert.assertNull(cache.get("b"));
+    Assert.assertEquals("C", cache.get("c"));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(2, cache.hits());
+    Assert.assertEquals(1, cache.misses());
+    Assert.assertEquals(2.0 / 3.0, cache.hitRate(), 1e-9);
+  }
+
+  private static void checkDependencies(Annotation expected, Annotation actual) {
+    List<CoreMap> expectedSentences = expected.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> actualSentences = actual.get(CoreAnnotations.SentencesAnnotation.class);
+    for (int i = 0; i < expectedSentences.size(); i++) {
+      CoreMap expectedSentence = expectedSentences.get(i);
+      CoreMap actualSentence = actualSentences.get(i);
+      Assert.assertEquals(expectedSentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class).toString(),
+          actualSentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class).toString());
+      Assert.assertEquals(expectedSentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class).toString(),
+          actualSentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class).toString());
+      // the graph is built on this sentence's own tokens
+      SemanticGraph graph = actualSentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+      List<CoreLabel> tokens = actualSentence.get(CoreAnnotations.TokensAnnotation.class);
+      Assert.assertSame(tokens.get(0), graph.getNodeByIndex(1).backingLabel());
+    }
+  }
+
+  @Test
+  public void testDependencyParser() throws Exception {
+    File model = RandomDependencyParserModel.write(new Random(1234));
+    for (String threads : new String[] { "1", "2" }) {
+      Properties props = new Properties();
+      props.setProperty("model", model.getPath());
+      props.setProperty("nthreads", threads);
+      Annotation expected = document(true);
+      new DependencyParseAnnotator(props).annotate(expected);
+
+      props.setProperty("sentenceCacheSize", "10");
+      DependencyParseAnnotator annotator = new DependencyParseAnnotator(props);
+      Annotation actual = document(true);
+      annotator.annotate(actual);
+      checkDependencies(expected, actual);
+      if (threads.equals("1")) {
+        Assert.assertEquals(3, annotator.sentenceCache().hits());
+      }
+      Assert.assertEquals(6, annotator.sentenceCache().hits() + annotator.sentenceCache().misses());
+    }
+  }
+
+  private static MemoryTreebank treebank() {
+    MemoryTreebank treebank = new MemoryTreebank();
+    treebank.add(Tree.valueOf("(ROOT (S (NP (DT the) (NN cat)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))) (. .)))"));
+    treebank.add(Tree.valueOf("(ROOT (S (NP (DT a) (NN dog)) (VP (VBD sat)) (. .)))"));
+    treebank.add(Tree.valueOf("(ROOT (S (NP (DT the) (NN dog)) (VP (VBD sat) (PP (IN on) (NP (DT a) (NN cat)))) (. .)))"));
+    return treebank;
+  }
+
+  /** Properties for a parser trained on {@link #treebank()}, which saves binarized trees. */
+  private static Properties parserProperties() throws Exception {
+    LexicalizedParser parser = LexicalizedParser.trainFromTreebank(treebank(), new Options());
+    File model = File.createTempFile("SentenceCacheTest", ".ser.gz");
+    model.deleteOnExit();
+    parser.saveParserToSerialized(model.getPath());
+    Properties props = new Properties();
+    props.setProperty("parse.model", model.getPath());
+    props.setProperty("parse.binaryTrees", "true");
+    return props;
+  }
+
+  @Test
+  public void testParser() throws Exception {
+    Properties props = parserProperties();
+    Annotation expected = document(false);
+    new ParserAnnotator("parse", props).annotate(expected);
+
+    props.setProperty("parse.sentenceCacheSize", "10");
+    ParserAnnotator annotator = new ParserAnnotator("parse", props);
+    Annotation actual = document(false);
+    annotator.annotate(actual);
+    Assert.assertEquals(3, annotator.sentenceCache().hits());
+
+    List<CoreMap> expectedSentences = expected.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> actualSentences = actual.get(CoreAnnotations.SentencesAnnotation.class);
+    List<Tree> trees = new ArrayList<>();
+    for (int i = 0; i < expectedSentences.size(); i++) {
+      Tree tree = actualSentences.get(i).get(TreeCoreAnnotations.TreeAnnotation.class);
+      trees.add(tree);
+      Assert.assertEquals(expectedSentences.get(i).get(TreeCoreAnnotations.TreeAnnotation.class).toString(), tree.toString());
+      Assert.assertEquals(expectedSentences.get(i).get(TreeCoreAnnotations.TreeAnnotation.class).score(), tree.score(), 1e-9);
+      Assert.assertEquals(expectedSentences.get(i).get(TreeCoreAnnotations.BinarizedTreeAnnotation.class).toString(),
+          actualSentences.get(i).get(TreeCoreAnnotations.BinarizedTreeAnnotation.class).toString());
+      // as with a new parse, the leaves are the tokens of the sentence
+      List<CoreLabel> tokens = actualSentences.get(i).get(CoreAnnotations.TokensAnnotation.class);
+      List<Tree> leaves = tree.getLeaves();
+      for (int j = 0; j < tokens.size(); j++) {
+        Assert.assertSame(tokens.get(j), leaves.get(j).label());
+        Assert.assertEquals(expected.get(CoreAnnotations.TokensAnnotation.class).get(j).tag(), actual.get(CoreAnnotations.TokensAnnotation.class).get(j).tag());
+      }
+    }
+    checkDependencies(expected, actual);
+    // repeated sentences don't share their trees
+    Assert.assertNotSame(trees.get(0), trees.get(2));
+  }
+
+  @Test
+  public void testSentiment() throws Exception {
+    Properties props = parserProperties();
+    ParserAnnotator parser = new ParserAnnotator("parse", props);
+    RNNOptions op = new RNNOptions();
+    op.numHid = 4;
+    List<Tree> trainingTrees = new ArrayList<>(treebank());
+    File model = File.createTempFile("SentenceCacheTest", ".ser.gz");
+    model.deleteOnExit();
+    new SentimentModel(op, trainingTrees).saveSerialized(model.getPath());
+    props.setProperty("sentiment.model", model.getPath());
+
+    Annotation expected = document(false);
+    parser.annotate(expected);
+    new SentimentAnnotator("sentiment", props).annotate(expected);
+
+    props.setProperty("sentiment.sentenceCacheSize", "10");
+    SentimentAnnotator annotator = new SentimentAnnotator("sentiment", props);
+    Annotation actual = document(false);
+    parser.annotate(actual);
+    annotator.annotate(actual);
+    Assert.assertEquals(3, annotator.sentenceCache().hits());
+
+    List<CoreMap> expectedSentences = expected.get(CoreAnnotations.SentencesAnnotation.class);
+    List<CoreMap> actualSentences = actual.get(CoreAnnotations.SentencesAnnotation.class);
+    for (int i = 0; i < expectedSentences.size(); i++) {
+      CoreMap expectedSentence = expectedSentences.get(i);
+      CoreMap actualSentence = actualSentences.get(i);
+      Assert.assertEquals(expectedSentence.get(SentimentCoreAnnotations.SentimentClass.class),
+          actualSentence.get(SentimentCoreAnnotations.SentimentClass.class));
+      Tree expectedTree = expectedSentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+      Tree actualTree = actualSentence.get(SentimentCoreAnnotations.SentimentAnnotatedTree.class);
+      Assert.assertEquals(expectedTree.toString(), actualTree.toString());
+      Assert.assertTrue(RNNCoreAnnotations.getPredictions(expectedTree).isIdentical(RNNCoreAnnotations.getPredictions(actualTree), 1e-9));
+      Assert.assertEquals(expectedSentence.get(TreeCoreAnnotations.TreeAnnotation.class).toString(),
+          actualSentence.get(TreeCoreAnnotations.TreeAnnotation.class).toString());
+      // the leaves are copies of this sentence's leaves, as in a new tree
+      Tree binarized = actualSentence.get(TreeCoreAnnotations.BinarizedTreeAnnotation.class);
+      Assert.assertEquals(binarized.getLeaves().get(0).label().value(), actualTree.getLeaves().get(0).label().value());
+      Assert.assertNotSame(binarized.getLeaves().get(0).label(), actualTree.getLeaves().get(0).label());
+    }
+    // repeated sentences don't share their trees
+    Assert.assertNotSame(actualSentences.get(0).get(SentimentCoreAnnotations.SentimentAnnotatedTree.class),
+        actualSentences.get(2).get(SentimentCoreAnnotations.SentimentAnnotatedTree.class));
+  }
+
+}
@@ -0,0 +1,122 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+/**
+ * Checks that the staged pipeline runs every annotator, keeps documents in input order,
+ * and fuses stages whether or not earlier annotators satisfy the requirements.
+ */
+public class StagedAnnotationPipelineTest {
+
+  /** Appends its name to the document's TextAnnotation, sleeping longer on some documents. */
+  static class AppendingAnnotator implements Annotator {
+
+    private final String name;
+    private final Set<Class<? extends CoreAnnotation>> requires;
+    private final Set<Class<? extends CoreAnnotation>> satisfies;
+
+    AppendingAnnotator(String name, Set<Class<? extends CoreAnnotation>> requires, Set<Class<? extends CoreAnnotation>> satisfies) {
+      this.name = name;
+      this.requires = requires;
+      this.satisfies = satisfies;
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      if (text.startsWith("boom") && name.equals("b")) {
+        throw new IllegalStateException("boom");
+      }
+      try {
+        Thread.sleep(text.length() % 3);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      annotation.set(CoreAnnotations.TextAnnotation.class, text + name);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return satisfies;
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return requires;
+    }
+
+  } // end static class AppendingAnnotator
+
+
+  private static List<Annotator> annotators() {
+    return Arrays.asList(
+        new AppendingAnnotator("a", Collections.emptySet(), Collections.singleton(CoreAnnotations.TokensAnnotation.class)),
+        new AppendingAnnotator("b", Collections.singleton(CoreAnnotations.TokensAnnotation.class), Collections.singleton(CoreAnnotations.PartOfSpeechAnnotation.class)),
+        new AppendingAnnotator("c", Collections.singleton(CoreAnnotations.PartOfSpeechAnnotation.class), Collections.emptySet()));
+  }
+
+  @Test
+  public void testOrderAndCompleteness() {
+    StagedAnnotationPipeline pipeline = new StagedAnnotationPipeline(annotators(), Arrays.asList(2, 3, 1), 4);
+    Assert.assertEquals(3, pipeline.numStages());
+
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      docs.add(new Annotation(i + ":"));
+    }
+    List<String> results = new ArrayList<>();
+    pipeline.annotate(docs, ann -> results.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+
+    Assert.assertEquals(100, results.size());
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(i + ":abc", results.get(i));
+    }
+  }
+
+  @Test
+  public void testFusion() {
+    StagedAnnotationPipeline pipeline = new StagedAnnotationPipeline(annotators(), Arrays.asList(2, 0, 0), 3);
+    Assert.assertEquals(1, pipeline.numStages());
+    List<String> results = new ArrayList<>();
+    pipeline.annotate(Arrays.asList(new Annotation("x"), new Annotation("y")),
+                      ann -> results.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+    Assert.assertEquals(Arrays.asList("xabc", "yabc"), results);
+  }
+
+  @Test
+  public void testUnsatisfiedFusion() {
+    // c requires what b satisfies, but (as for already annotated input) runs before it anyway
+    List<Annotator> reversed = new ArrayList<>(annotators());
+    Collections.swap(reversed, 1, 2);
+    StagedAnnotationPipeline pipeline = new StagedAnnotationPipeline(reversed, Arrays.asList(1, 0, 1), 3);
+    Assert.assertEquals(2, pipeline.numStages());
+    List<String> results = new ArrayList<>();
+    pipeline.annotate(Collections.singletonList(new Annotation("x")),
+                      ann -> results.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+    Assert.assertEquals(Collections.singletonList("xacb"), results);
+  }
+
+  @Test
+  public void testExceptionSkipsLaterStages() {
+    StagedAnnotationPipeline pipeline = new StagedAnnotationPipeline(annotators(), Arrays.asList(1, 1, 1), 2);
+    List<Annotation> results = new ArrayList<>();
+    pipeline.annotate(Arrays.asList(new Annotation("ok"), new Annotation("boom"), new Annotation("fine")), results::add);
+
+    Assert.assertEquals(3, results.size());
+    Assert.assertEquals("okabc", results.get(0).get(CoreAnnotations.TextAnnotation.class));
+    Assert.assertEquals("booma", results.get(1).get(CoreAnnotations.TextAnnotation.class));
+    Assert.assertTrue(results.get(1).get(CoreAnnotations.ExceptionAnnotation.class) instanceof IllegalStateException);
+    Assert.assertEquals("fineabc", results.get(2).get(CoreAnnotations.TextAnnotation.class));
+  }
+
+}
@@ -0,0 +1,148 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.util.ArgumentParser;
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Checks that a server whose CoreNLP threads and queue are full refuses further
+ * requests with a 503 at once, and still serves its metrics.
+ */
+public class StanfordCoreNLPServerTest {
+
+  /** Started requests wait here until the test lets them finish. */
+  private static volatile CountDownLatch release;
+  private static volatile CountDownLatch started;
+
+  /** An annotator which waits for the test to let it finish. */
+  public static class Gate implements Annotator {
+
+    public Gate(String name, Properties props) { }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      started.countDown();
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+
+  }
+
+  private StanfordCoreNLPServer server;
+  private ExecutorService clients;
+  private int port;
+
+  @Before
+  public void setUp() throws IOException {
+    release = new CountDownLatch(1);
+    started = new CountDownLatch(1);
+    int threads = ArgumentParser.threads;
+    int queueSize = StanfordCoreNLPServer.queueSize;
+    try {
+      // one thread running requests, and one request waiting for it
+      ArgumentParser.threads = 1;
+      StanfordCoreNLPServer.queueSize = 1;
+      server = new StanfordCoreNLPServer(new Properties(), 0, 30000, false);
+    } finally {
+      ArgumentParser.threads = threads;
+      StanfordCoreNLPServer.queueSize = queueSize;
+    }
+    server.quiet = true;
+    server.run(Optional.empty(), p -> true, r -> { }, null, false, new AtomicBoolean(false));
+    port = server.getServer().get().getAddress().getPort();
+    clients = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    server.getServer().ifPresent(s -> s.stop(0));
+    clients.shutdownNow();
+  }
+
+  private HttpURLConnection post() throws IOException {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,gate");
+    props.setProperty("customAnnotatorClass.gate", Gate.class.getName());
+    props.setProperty("outputFormat", "text");
+    String query = "properties=" + URLEncoder.encode(PropertiesUtils.propsAsJsonString(props), "utf-8");
+    HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, "/?" + query).openConnection();
+    connection.setDoOutput(true);
+    connection.setRequestMethod("POST");
+    connection.setConnectTimeout(10000);
+    connection.setReadTimeout(10000);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write("The gate is closed.".getBytes(StandardCharsets.UTF_8));
+    }
+    return connection;
+  }
+
+  private String metrics() throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, "/metrics").openConnection();
+    connection.setReadTimeout(10000);
+    Assert.assertEquals(200, connection.getResponseCode());
+    return IOUtils.slurpInputStream(connection.getInputStream(), "utf-8");
+  }
+
+  @Test
+  public void testSaturated() throws Exception {
+    Future<Integer> running = clients.submit(() -> post().getResponseCode());
+    Assert.assertTrue(started.await(30, TimeUnit.SECONDS));
+    Future<Integer> waiting = clients.submit(() -> post().getResponseCode());
+    for (int i = 0; i < 1000 && ! metrics().contains("corenlp_queue_depth 1\n"); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(metrics().contains("corenlp_queue_depth 1\n"));
+
+    // the CoreNLP thread and the queue are full, so more requests are refused straight away
+    for (int i = 0; i < 3; i++) {
+      HttpURLConnection refused = post();
+      Assert.assertEquals(503, refused.getResponseCode());
+      Assert.assertNotNull(refused.getHeaderField("Retry-After"));
+    }
+    Assert.assertTrue(metrics().contains("corenlp_requests_rejected_total 3\n"));
+    Assert.assertFalse(running.isDone());
+    Assert.assertFalse(waiting.isDone());
+
+    release.countDown();
+    Assert.assertEquals(200, (int) running.get(30, TimeUnit.SECONDS));
+    Assert.assertEquals(200, (int) waiting.get(30, TimeUnit.SECONDS));
+  }
+
+}
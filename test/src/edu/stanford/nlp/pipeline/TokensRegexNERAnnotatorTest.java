@@ -0,0 +1,103 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+
+/**
+ * Checks that matching literal entries with a trie gives the same labels as compiling
+ * every entry into a TokensRegex pattern.
+ */
+public class TokensRegexNERAnnotatorTest {
+
+  private static StanfordCoreNLP pipeline;
+
+  @BeforeClass
+  public static void setUp() {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    pipeline = new StanfordCoreNLP(props);
+  }
+
+  private static String mappingFile(String... lines) throws IOException {
+    File file = File.createTempFile("TokensRegexNERAnnotatorTest", ".tab");
+    file.deleteOnExit();
+    try (PrintWriter pw = IOUtils.getPrintWriter(file.getPath())) {
+      for (String line : lines) {
+        pw.println(line);
+      }
+    }
+    return file.getPath();
+  }
+
+  private static List<String> labels(String mapping, boolean literalTrie, String text) {
+    Properties props = new Properties();
+    props.setProperty("regexner.mapping", mapping);
+    props.setProperty("regexner.literalTrie", String.valueOf(literalTrie));
+    TokensRegexNERAnnotator annotator = new TokensRegexNERAnnotator("regexner", props);
+    Annotation doc = new Annotation(text);
+    pipeline.annotate(doc);
+    annotator.annotate(doc);
+    List<String> labels = new ArrayList<>();
+    for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+      labels.add(token.ner());
+    }
+    return labels;
+  }
+
+  private static void assertSameLabels(String mapping, String text) {
+    List<String> expected = labels(mapping, false, text);
+    Assert.assertEquals(expected, labels(mapping, true, text));
+  }
+
+  @Test
+  public void testSameLabels() throws IOException {
+    String cased = mappingFile(
+        "Palo Alto\tCITY\t\t1",
+        "Palo Alto Research Center\tORGANIZATION\t\t2",
+        "Stanford\tSCHOOL",
+        "Stanford University\tSCHOOL\t\t1",
+        "Stan.*\tPERSON",
+        "( /University/ /of/ [ {word:/[A-Z].*/} ] )\tSCHOOL\t\t3",
+        "New York City\tCITY\t\t1",
+        "York\tPERSON\t\t0",
+        "Z A\tMISC\t\t5",
+        "A A\tNUMBER\t\t1",
+        "and\tCONJ\t\t-1");
+    String caseless = "ignorecase=true," + mappingFile(
+        "stanford university\tSCHOOL\t\t1",
+        "new york\tSTATE\t\t2",
+        "İstanbul\tCITY\t\t1");
+    String[] texts = {
+        "Stanford University is near Palo Alto and the Palo Alto Research Center.",
+        "She studied at the University of Michigan and Stanford, and Stanley moved to New York City.",
+        "STANFORD UNIVERSITY and NEW YORK are in capitals, as is İSTANBUL.",
+        "Z A A A and A A A A",
+    };
+    for (String text : texts) {
+      assertSameLabels(cased, text);
+      assertSameLabels(cased + ';' + caseless, text);
+    }
+  }
+
+  @Test
+  public void testLiteralMatchesOnlyAfterPrevious() throws IOException {
+    // "A A" matches at 1 and then not again until 3, so it is blocked by "Z A" and leaves the last A alone
+    String mapping = mappingFile("Z A\tMISC\t\t5", "A A\tNUMBER\t\t1");
+    List<String> labels = labels(mapping, true, "Z A A A");
+    Assert.assertEquals("[MISC, MISC, null, null]", labels.toString());
+    Assert.assertEquals(labels(mapping, false, "Z A A A"), labels);
+  }
+
+}
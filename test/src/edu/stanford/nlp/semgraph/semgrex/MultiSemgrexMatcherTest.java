@@ -0,0 +1,139 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.semgraph.SemanticGraph;
+
+/**
+ * Checks that matching patterns through a {@link MultiSemgrexMatcher} finds
+ * the same matches, in the same order, as matching each pattern on its own.
+ */
+public class MultiSemgrexMatcherTest {
+
+  private static final String[] GRAPHS = {
+    "[ate subj>Bill obj>[muffins compound>blueberry]]",
+    "[ate subj>Bill obj>[muffins compound>blueberry] obl>[table case>at det>the]]",
+    "[Ate subj>bill obj>[Muffins compound>Blueberry] conj>[drank subj>Bill obj>tea]]",
+    "[saw subj>I obj>[man amod>old] advcl>[left mark>before subj>he]]",
+  };
+
+  private static final String[] PATTERNS = {
+    "{}",
+    "{word:ate}",
+    "{word:Bill}",
+    "{word:bill}",
+    "!{word:Bill}",
+    "{word:/^(?!Bill).*$/}",
+    "{word:/.*ed?/}",
+    "{word:/Bill/}",
+    "{word:muffins} >compound {word:blueberry}",
+    "{word:muffins} >compound {word:blueberry}=b",
+    "{} >compound {}",
+    "{} >subj {}=s",
+    "{} >subj {}=s >obj {}=o",
+    "{}=gov >subj=r {}=s >obj {}=o",
+    "{} [>subj {}=s | >obj {}=o]",
+    "{} >subj {} !>obj {}",
+    "{} >subj {} ?>obj {}=o",
+    "{} </subj|obj/ {}=gov",
+    "{} <subj {}=gov",
+    "{$}",
+    "{$} >subj {}=s",
+    "{word:ate;tag:/.*/}",
+    "{word:ate} >> {}=d",
+    "{word:ate} : {word:Bill}",
+    "{word:nothing}",
+    "{word:ate} >nothing {}",
+  };
+
+  private static List<String> describe(List<SemgrexMatch> matches) {
+    List<String> descriptions = new ArrayList<>();
+    for (SemgrexMatch match : matches) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(match.matchedPattern).append(' ').append(match.getMatch());
+      for (String name : match.getNodeNames()) {
+        sb.append(' ').append(name).append('=').append(match.getNode(name));
+      }
+      for (String name : match.getRelationNames()) {
+        sb.append(' ').append(name).append('=').append(match.getRelnString(name));
+      }
+      descriptions.add(sb.toString());
+    }
+    return descriptions;
+  }
+
+  private static List<SemgrexPattern> compile(String... patterns) {
+    List<SemgrexPattern> compiled = new ArrayList<>();
+    for (String pattern : patterns) {
+      compiled.add(SemgrexPattern.compile(pattern));
+    }
+    return compiled;
+  }
+
+  @Test
+  public void testSameMatches() {
+    List<SemgrexPattern> patterns = compile(PATTERNS);
+    MultiSemgrexMatcher multi = new MultiSemgrexMatcher(patterns);
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      for (String graphText : GRAPHS) {
+        SemanticGraph graph = SemanticGraph.valueOf(graphText);
+        List<SemgrexMatch> expected = new ArrayList<>();
+        for (SemgrexPattern pattern : patterns) {
+          SemgrexMatcher matcher = pattern.matcher(graph, ignoreCase);
+          while (matcher.find()) {
+            expected.add(new SemgrexMatch(pattern, matcher));
+          }
+        }
+        assertEquals(graphText, describe(expected), describe(multi.findAll(graph, ignoreCase)));
+      }
+    }
+  }
+
+  @Test
+  public void testSharedIndex() {
+    // two sets of patterns, as for two relations, matched over one index of each graph
+    List<SemgrexPattern> patterns = compile(PATTERNS);
+    int half = patterns.size() / 2;
+    MultiSemgrexMatcher first = new MultiSemgrexMatcher(patterns.subList(0, half));
+    MultiSemgrexMatcher second = new MultiSemgrexMatcher(patterns.subList(half, patterns.size()));
+    MultiSemgrexMatcher all = new MultiSemgrexMatcher(patterns);
+    for (boolean ignoreCase : new boolean[] { false, true }) {
+      for (String graphText : GRAPHS) {
+        SemanticGraph graph = SemanticGraph.valueOf(graphText);
+        MultiSemgrexMatcher.GraphIndex index = MultiSemgrexMatcher.index(graph);
+        List<SemgrexMatch> matches = new ArrayList<>();
+        for (MultiSemgrexMatcher multi : new MultiSemgrexMatcher[] { first, second, first }) {
+          List<SemgrexMatcher> matchers = multi.matchers(index, ignoreCase);
+          for (int i = 0; i < matchers.size(); ++i) {
+            while (matchers.get(i).find()) {
+              matches.add(new SemgrexMatch(multi.patterns().get(i), matchers.get(i)));
+            }
+          }
+        }
+        List<String> expected = new ArrayList<>(describe(all.findAll(graph, ignoreCase)));
+        expected.addAll(describe(first.findAll(graph, ignoreCase)));
+        assertEquals(graphText, expected, describe(matches));
+      }
+    }
+  }
+
+  @Test
+  public void testIndexed() {
+    MultiSemgrexMatcher multi = new MultiSemgrexMatcher(compile("{}", "!{word:Bill}", "{} >subj {}", "{word:Bill}",
+                                                                "{} >/subj/ {}", "{} ?>subj {}", "{word:Bill} : {}"));
+    assertEquals(2, multi.numIndexed());
+  }
+
+  @Test
+  public void testFold() {
+    for (String[] pair : new String[][] { { "Bill", "bILL" }, { "STRASSE", "strasse" }, { "ΣΊΣΥΦΟΣ", "σίσυφος" } }) {
+      assertTrue(pair[0].equalsIgnoreCase(pair[1]));
+      assertEquals(MultiSemgrexMatcher.fold(pair[0]), MultiSemgrexMatcher.fold(pair[1]));
+    }
+  }
+
+}
@@ -0,0 +1,83 @@
+package edu.stanford.nlp.sentiment;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.ejml.simple.SimpleMatrix;
+
+import edu.stanford.nlp.neural.SimpleTensor;
+import edu.stanford.nlp.neural.rnn.RNNCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * Checks that a {@link CompiledSentimentModel} predicts what
+ * {@link SentimentCostAndGradient#forwardPropagateTree} does.
+ */
+public class CompiledSentimentModelTest {
+
+  private static final String[] TREES = {
+    "(3 (2 good) (2 movie))",
+    "(1 (2 (2 not) (3 good)) (2 (2 at) (2 all)))",
+    "(2 (2 Unseen) (2 (2 words) (2 (2 in) (2 (2 a) (2 row)))))",
+    "(4 (2 WORD) (2 .))",
+  };
+
+  private static SentimentModel model(Random random, boolean useTensors) {
+    RNNOptions op = new RNNOptions();
+    op.numHid = 6;
+    op.useTensors = useTensors;
+    op.lowercaseWordVectors = true;
+    int numHid = op.numHid;
+    SimpleMatrix W = SimpleMatrix.random_DDRM(numHid, 2 * numHid + 1, -1.0, 1.0, random);
+    SimpleMatrix Wcat = SimpleMatrix.random_DDRM(op.numClasses, numHid + 1, -1.0, 1.0, random);
+    SimpleTensor Wt = SimpleTensor.random(2 * numHid, 2 * numHid, numHid, -0.2, 0.2, random);
+    Map<String, SimpleMatrix> wordVectors = Generics.newTreeMap();
+    for (String word : new String[] { "good", "movie", "not", "at", "all", "word", ".", SentimentModel.UNKNOWN_WORD }) {
+      wordVectors.put(word, SimpleMatrix.random_DDRM(numHid, 1, -1.0, 1.0, random));
+    }
+    return SentimentModel.modelFromMatrices(W, Wcat, Wt, wordVectors, op);
+  }
+
+  @Test
+  public void testSamePredictions() {
+    Random random = new Random(1234);
+    for (boolean useTensors : new boolean[] { true, false }) {
+      SentimentModel model = model(random, useTensors);
+      SentimentCostAndGradient scorer = new SentimentCostAndGradient(model, null);
+      for (boolean nodeVectors : new boolean[] { true, false }) {
+        CompiledSentimentModel compiled = new CompiledSentimentModel(model, nodeVectors);
+        for (String treeString : TREES) {
+          Tree expected = Tree.valueOf(treeString);
+          scorer.forwardPropagateTree(expected);
+          Tree tree = Tree.valueOf(treeString);
+          compiled.forwardPropagateTree(tree);
+
+          Tree[] found = new Tree[tree.size()];
+          int i = 0;
+          for (Tree node : tree) {
+            found[i++] = node;
+          }
+          i = 0;
+          for (Tree node : expected) {
+            Tree other = found[i++];
+            if (node.isLeaf()) {
+              continue;
+            }
+            assertEquals(RNNCoreAnnotations.getPredictedClass(node), RNNCoreAnnotations.getPredictedClass(other));
+            assertTrue(RNNCoreAnnotations.getPredictions(node).isIdentical(RNNCoreAnnotations.getPredictions(other), 1e-12));
+            if (nodeVectors) {
+              assertTrue(RNNCoreAnnotations.getNodeVector(node).isIdentical(RNNCoreAnnotations.getNodeVector(other), 1e-12));
+            } else {
+              assertNull(RNNCoreAnnotations.getNodeVector(other));
+            }
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * Checks that looking up features by tag ids gives the same associations as looking up
+ * the value the extractor extracts.
+ */
+public class TagFeatureTableTest {
+
+  private static final String[] TAGS = { "DT", "NN", "VB", "JJ" };
+
+  private static TTags tags() {
+    TTags tags = new TTags();
+    for (String tag : TAGS) {
+      tags.add(tag);
+    }
+    return tags;
+  }
+
+  private static void checkTable(Extractor extractor, String... values) {
+    TTags tags = tags();
+    Map<String, int[]> fAssociations = Generics.newHashMap();
+    for (int i = 0; i < values.length; i++) {
+      fAssociations.put(values[i], new int[] { i, -1, i, -1 });
+    }
+    TagFeatureTable table = TagFeatureTable.build(extractor, fAssociations, tags);
+    Assert.assertNotNull(table);
+
+    // every assignment of tags to a five word sentence, at every position
+    int size = 5;
+    PairsHolder pairs = new PairsHolder();
+    pairs.setSize(size);
+    int[] tagIds = new int[size];
+    for (int assignment = 0; assignment < Math.pow(TAGS.length, size); assignment++) {
+      int rest = assignment;
+      for (int i = 0; i < size; i++) {
+        tagIds[i] = rest % TAGS.length;
+        pairs.setTag(i, tags.getTag(tagIds[i]));
+        rest /= TAGS.length;
+      }
+      for (int current = 0; current < size; current++) {
+        History h = new History(0, size - 1, current, pairs, null);
+        int code = table.code(tagIds, current);
+        int[] expected = fAssociations.get(extractor.extract(h));
+        if (code < 0) {
+          Assert.assertTrue(extractor.extract(h).contains("NA"));
+        } else {
+          Assert.assertSame(expected, table.get(code));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTagExtractors() {
+    checkTable(new Extractor(-1, true), "DT", "JJ");
+    checkTable(new ExtractorFrames.ExtractorTwoTags(-2, -1), "DT!JJ", "JJ!NN", "NN!NN");
+    checkTable(new ExtractorFrames.ExtractorTwoTags(-1, 1), "DT!NN", "VB!DT");
+    checkTable(new ExtractorFrames.ExtractorThreeTags(-2, -1, 1), "DT!JJ!VB", "NN!VB!DT");
+    checkTable(new ExtractorFrames.ExtractorContinuousTagConjunction(-3), "DT!JJ!NN", "VB!DT!NN");
+    checkTable(new ExtractorFrames.ExtractorContinuousTagConjunction(2), "VB!DT", "NN!NN");
+  }
+
+  @Test
+  public void testOtherExtractors() {
+    TTags tags = tags();
+    Map<String, int[]> fAssociations = Generics.newHashMap();
+    Assert.assertNull(TagFeatureTable.build(new Extractor(-1, false), fAssociations, tags));
+    Assert.assertNull(TagFeatureTable.build(new ExtractorFrames.ExtractorWordTag(0, -1), fAssociations, tags));
+    Assert.assertNull(TagFeatureTable.build(new ExtractorFrames.ExtractorWordTwoTags(0, -1, -2), fAssociations, tags));
+  }
+
+}
@@ -0,0 +1,128 @@
+package edu.stanford.nlp.trees.tregex;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Checks that searching a {@link TreebankIndex} finds the same matches as
+ * matching each tree with a {@link TregexMatcher}, while skipping trees the
+ * pattern can't match.
+ */
+public class TreebankIndexTest {
+
+  private static final String[] TREES = {
+    "(ROOT (S (NP (DT the) (NN cat)) (VP (VBD sat) (PP (IN on) (NP (DT the) (NN mat)))) (. .)))",
+    "(ROOT (S (NP (DT these) (NNS snails)) (VP (VBP are) (ADJP (JJ slow))) (. .)))",
+    "(ROOT (NP (NP (DT a) (NN dog)) (PP (IN with) (NP (DT a) (NN bone)))))",
+    "(VP (VP (VBZ Try) (NP (NP (DT this) (NN wine)) (CC and) (NP (DT these) (NNS snails)))) (PUNCT .))",
+    "(ROOT (S (NP-SBJ (PRP He)) (VP (VBD left) (ADVP (RB early))) (. .)))",
+    "(ROOT (FRAG (INTJ (UH Yes)) (. !)))",
+  };
+
+  private static final String[] PATTERNS = {
+    "NP",
+    "NP < DT",
+    "NP=np < (DT=dt < these)",
+    "NP < (DT < these) $ VP",
+    "/^VB/ < __",
+    "@NP",
+    "NP !< DT",
+    "NP ?< DT=dt",
+    "NP [< NNS | < NN]",
+    "__ < (NN < /^[bm]/)",
+    "NP|VP < NP",
+    "S < (NP < PRP) < VP",
+    "ROOT << UH",
+    "nothing",
+    "__",
+  };
+
+  private static List<Tree> trees() {
+    List<Tree> trees = new ArrayList<>();
+    for (String tree : TREES) {
+      trees.add(TregexTest.treeFromString(tree));
+    }
+    return trees;
+  }
+
+  private static String describe(int treeId, Tree match, Tree tree, List<Tree> named) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(treeId).append(' ').append(match.nodeNumber(tree)).append(' ').append(match);
+    for (Tree node : named) {
+      sb.append(' ').append(node == null ? "null" : node.nodeNumber(tree));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testTrees() throws IOException {
+    List<Tree> trees = trees();
+    TreebankIndex index = new TreebankIndex(trees);
+    File file = File.createTempFile("treebankindex", ".bin");
+    file.deleteOnExit();
+    index.save(file.getPath());
+    TreebankIndex loaded = TreebankIndex.load(file.getPath());
+
+    assertEquals(trees.size(), loaded.size());
+    assertEquals(index.numValues(), loaded.numValues());
+    for (int i = 0; i < trees.size(); ++i) {
+      assertEquals(trees.get(i), index.getTree(i));
+      assertEquals(trees.get(i), loaded.getTree(i));
+      assertEquals(trees.get(i).toString(), loaded.getTree(i).toString());
+    }
+  }
+
+  @Test
+  public void testCandidates() {
+    TreebankIndex index = new TreebankIndex(trees());
+    assertEquals(TREES.length, index.candidates(TregexPattern.compile("__")).cardinality());
+    assertEquals(2, index.candidates(TregexPattern.compile("NP < (DT < these)")).cardinality());
+    assertEquals(4, index.candidates(TregexPattern.compile("NP")).cardinality());
+    // neither alternative is needed, so only the NP narrows the search
+    assertEquals(index.candidates(TregexPattern.compile("NP")), index.candidates(TregexPattern.compile("NP [< NNS | < UH]")));
+    assertEquals(0, index.candidates(TregexPattern.compile("NP < nothing")).cardinality());
+    // @NP also matches NP-SBJ
+    assertEquals(5, index.candidates(TregexPattern.compile("@NP")).cardinality());
+  }
+
+  @Test
+  public void testSearch() {
+    List<Tree> trees = trees();
+    TreebankIndex index = new TreebankIndex(trees);
+    for (String patternString : PATTERNS) {
+      TregexPattern pattern = TregexPattern.compile(patternString);
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < trees.size(); ++i) {
+        TregexMatcher matcher = pattern.matcher(trees.get(i));
+        while (matcher.find()) {
+          List<Tree> named = new ArrayList<>();
+          for (String name : new TreeSet<>(matcher.getNodeNames())) {
+            named.add(matcher.getNode(name));
+          }
+          expected.add(describe(i, matcher.getMatch(), trees.get(i), named));
+        }
+      }
+
+      for (int numThreads : new int[] { 1, 3 }) {
+        List<String> found = new ArrayList<>();
+        for (TreebankIndex.TreeMatches matches : index.search(pattern, numThreads)) {
+          for (int i = 0; i < matches.matches.size(); ++i) {
+            List<Tree> named = new ArrayList<>(new TreeMap<>(matches.namedNodes.get(i)).values());
+            found.add(describe(matches.treeId, matches.matches.get(i), matches.tree, named));
+          }
+        }
+        assertEquals(patternString, expected, found);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Round trips strings, including non-ASCII ones, through a MappedStringIndex and a MappedStringMap.
+ */
+public class MappedStringIndexTest {
+
+  private static final List<String> STRINGS = Arrays.asList("", "a", "b|C", "naïve-WORD", "北京", "😀 smile", "a-b", "ab");
+
+  @Test
+  public void testIndex() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(42);
+      MappedStringIndex.write(out, STRINGS);
+      out.writeInt(17);
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+    Assert.assertEquals(42, buf.getInt());
+    MappedStringIndex index = MappedStringIndex.read(buf);
+    Assert.assertEquals(17, buf.getInt());
+
+    Assert.assertEquals(STRINGS.size(), index.size());
+    for (int i = 0; i < STRINGS.size(); i++) {
+      Assert.assertEquals(STRINGS.get(i), index.get(i));
+      Assert.assertEquals(i, index.indexOf(STRINGS.get(i)));
+    }
+    Assert.assertEquals(STRINGS, new ArrayList<>(index.objectsList()));
+    Assert.assertEquals(-1, index.indexOf("naive-WORD"));
+    Assert.assertEquals(-1, index.indexOf("😀"));
+    Assert.assertEquals(-1, index.indexOf("abc"));
+    Assert.assertFalse(index.add("new"));
+    Assert.assertEquals(-1, index.addToIndex("new"));
+    Assert.assertTrue(index.isLocked());
+  }
+
+  @Test
+  public void testSerializesAsHashIndex() throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      MappedStringIndex.write(out, STRINGS);
+    }
+    Index<String> index = MappedStringIndex.read(ByteBuffer.wrap(bytes.toByteArray()));
+    Object copy = IOUtils.readObjectFromFile(serialize(index));
+    Assert.assertTrue(copy instanceof HashIndex);
+    Assert.assertEquals(STRINGS, ((HashIndex<?>) copy).objectsList());
+  }
+
+  private static File serialize(Object o) throws IOException {
+    File file = File.createTempFile("MappedStringIndexTest", ".ser");
+    file.deleteOnExit();
+    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+      oos.writeObject(o);
+    }
+    return file;
+  }
+
+  @Test
+  public void testMap() throws IOException {
+    Map<String,String> map = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      map.put("word" + i, "class" + (i % 7));
+    }
+    map.put("北京", "class0");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      MappedStringMap.write(out, map);
+    }
+    MappedStringMap mapped = MappedStringMap.read(ByteBuffer.wrap(bytes.toByteArray()));
+    Assert.assertEquals(map.size(), mapped.size());
+    Assert.assertEquals(map, new HashMap<>(mapped));
+    for (Map.Entry<String,String> entry : map.entrySet()) {
+      Assert.assertEquals(entry.getValue(), mapped.get(entry.getKey()));
+    }
+    Assert.assertNull(mapped.get("word1000"));
+    Assert.assertFalse(mapped.containsKey("word1000"));
+  }
+
+}